@@ -0,0 +1,188 @@
+package org.opencv.android;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pool of mutable Bitmaps keyed by size and config, for the Mat/Bitmap conversions done on every
+ * frame. A Bitmap obtained with lease() is given back with recycle() and handed out again by a
+ * later lease() of the same size and config instead of allocating a new one.
+ * At most maxIdleBytes of idle Bitmaps are kept, the least recently used sizes are dropped first.
+ */
+public class BitmapPool {
+
+    public static final long DEFAULT_MAX_IDLE_BYTES = 16L * 1024 * 1024;
+
+    private final long mMaxIdleBytes;
+    // access order, the eldest entry is the least recently used size
+    private final LinkedHashMap<Key, ArrayDeque<Bitmap>> mIdle = new LinkedHashMap<Key, ArrayDeque<Bitmap>>(16, 0.75f, true);
+    private final Key mLookup = new Key();
+    private long mIdleBytes = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_IDLE_BYTES);
+    }
+
+    /**
+     * @param maxIdleBytes - maximum size of the pixels of all the idle Bitmaps
+     */
+    public BitmapPool(long maxIdleBytes) {
+        if (maxIdleBytes < 0)
+            throw new IllegalArgumentException("Invalid idle byte budget: " + maxIdleBytes);
+        mMaxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * Returns a mutable Bitmap of the given size and config, reused from the pool when possible.
+     * Its content is undefined.
+     */
+    public Bitmap lease(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            mLookup.set(width, height, config);
+            ArrayDeque<Bitmap> idle = mIdle.get(mLookup);
+            Bitmap bitmap = idle == null ? null : idle.pollLast();
+            if (bitmap != null) {
+                mIdleBytes -= mLookup.bytes;
+                mHits++;
+                return bitmap;
+            }
+            mMisses++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Gives a Bitmap back to the pool, the caller must not use it anymore.
+     * Recycled or immutable Bitmaps are ignored.
+     * @throws IllegalStateException if the Bitmap is already in the pool
+     */
+    public synchronized void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        mLookup.set(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> idle = mIdle.get(mLookup);
+        if (idle == null) {
+            Key key = new Key();
+            key.set(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            idle = new ArrayDeque<Bitmap>();
+            mIdle.put(key, idle);
+        }
+        for (Bitmap b : idle) {
+            if (b == bitmap)
+                throw new IllegalStateException("Bitmap " + mLookup + " was returned to the pool twice");
+        }
+        idle.addLast(bitmap);
+        mIdleBytes += mLookup.bytes;
+        trim(mMaxIdleBytes);
+    }
+
+    /**
+     * Recycles the idle Bitmaps of the least recently used sizes until at most maxIdleBytes are kept
+     */
+    public synchronized void trim(long maxIdleBytes) {
+        Iterator<Map.Entry<Key, ArrayDeque<Bitmap>>> it = mIdle.entrySet().iterator();
+        while (mIdleBytes > maxIdleBytes && it.hasNext()) {
+            Map.Entry<Key, ArrayDeque<Bitmap>> entry = it.next();
+            ArrayDeque<Bitmap> idle = entry.getValue();
+            while (mIdleBytes > maxIdleBytes && !idle.isEmpty()) {
+                idle.pollFirst().recycle();
+                mIdleBytes -= entry.getKey().bytes;
+                mEvictions++;
+            }
+            if (idle.isEmpty())
+                it.remove();
+        }
+    }
+
+    /**
+     * Recycles all the idle Bitmaps. Leased Bitmaps are not affected.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> idle : mIdle.values()) {
+            for (Bitmap bitmap : idle)
+                bitmap.recycle();
+        }
+        mIdle.clear();
+        mIdleBytes = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns the share of lease() calls served from the pool, between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long leases = mHits + mMisses;
+        return leases == 0 ? 0 : (double) mHits / leases;
+    }
+
+    public synchronized long getIdleBytes() {
+        return mIdleBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "BitmapPool hit rate %.1f%% (%d/%d), %d evicted, %d KB idle",
+                100 * getHitRate(), mHits, mHits + mMisses, mEvictions, mIdleBytes / 1024);
+    }
+
+    private static final class Key {
+        int width;
+        int height;
+        Bitmap.Config config;
+        long bytes;
+
+        void set(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            this.bytes = (long) width * height * bytesPerPixel(config);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return width == other.width && height == other.height && config == other.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return (width * 31 + height) * 31 + (config == null ? 0 : config.ordinal());
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + " " + config;
+        }
+
+        private static int bytesPerPixel(Bitmap.Config config) {
+            if (config == Bitmap.Config.ALPHA_8)
+                return 1;
+            if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444)
+                return 2;
+            if (config == Bitmap.Config.RGBA_F16)
+                return 8;
+            return 4;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package org.opencv.android;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.opencv.BuildConfig;
 import org.opencv.R;
 import org.opencv.core.Core;
+import org.opencv.core.DirectMat;
 import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
 import org.opencv.core.Size;
 
 import android.app.Activity;
@@ -15,12 +20,16 @@ import android.content.DialogInterface;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.ViewGroup.LayoutParams;
 import android.view.WindowManager;
 
 /**
@@ -53,12 +62,43 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected boolean mEnabled;
     protected boolean mCameraPermissionGranted = false;
     protected FpsMeter mFpsMeter = null;
+    protected PipelineMetrics mPipelineMetrics = null;
+    protected final MatPool mMatPool = new MatPool();
+    protected final BitmapPool mBitmapPool = new BitmapPool();
+    protected volatile FrameRecorder mFrameRecorder = null;
+    private MetricsOverlay mMetricsOverlay = null;
+    private long mLastFrameNanos = 0;
+    protected ResolutionPolicy mResolutionPolicy = null;
+    protected boolean mCaptureRateMatching = false;
+    protected CaptureRateController mCaptureRateController = null;
+    protected int mRendererBackend = RENDERER_CANVAS;
+    private GLFrameRenderer mGLRenderer = null;
+    protected boolean mRenderThreadEnabled = false;
+    private volatile TripleBuffer<RenderSlot> mRenderBuffer = null;
+    private RenderSlot[] mRenderSlots = null;
+    private Thread mRenderThread = null;
+    private volatile boolean mStopRenderThread = false;
+    private volatile double mDisplayLatencyMs = -1;
+    private final LatencyWindow mSensorToAnalysisLatency = new LatencyWindow(LATENCY_WINDOW_SIZE);
+    private final LatencyWindow mSensorToDisplayLatency = new LatencyWindow(LATENCY_WINDOW_SIZE);
+    protected boolean mLatencyOverlay = false;
+    private Paint mLatencyPaint = null;
+    private String mLatencyText = "";
+    private long mLatencyTextNanos = 0;
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private volatile long mSwitchStartNanos = 0;
+    private volatile long mLastSwitchTimeMs = -1;
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
     public static final int CAMERA_ID_FRONT = 98;
     public static final int RGBA = 1;
     public static final int GRAY = 2;
+    public static final int RENDERER_CANVAS = 0;
+    public static final int RENDERER_GL = 1;
+    private static final long RENDER_WAIT_MS = 100;
+    private static final int LATENCY_WINDOW_SIZE = 120;
+    private static final long LATENCY_TEXT_REFRESH_NANOS = 250000000L;
 
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
@@ -78,8 +118,24 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         if (styledAttrs.getBoolean(R.styleable.CameraBridgeViewBase_show_fps, false))
             enableFpsMeter();
 
+        if (styledAttrs.getBoolean(R.styleable.CameraBridgeViewBase_show_metrics, false))
+            enablePipelineMetrics(true);
+
+        if (styledAttrs.getBoolean(R.styleable.CameraBridgeViewBase_show_latency, false))
+            setLatencyOverlayEnabled(true);
+
         mCameraIndex = styledAttrs.getInt(R.styleable.CameraBridgeViewBase_camera_id, -1);
 
+        mCaptureRateMatching = styledAttrs.getBoolean(R.styleable.CameraBridgeViewBase_capture_rate_matching, false);
+
+        mRendererBackend = styledAttrs.getInt(R.styleable.CameraBridgeViewBase_renderer, RENDERER_CANVAS);
+        mRenderThreadEnabled = styledAttrs.getBoolean(R.styleable.CameraBridgeViewBase_render_thread, false);
+
+        int analysisWidth = styledAttrs.getInt(R.styleable.CameraBridgeViewBase_analysis_width, 0);
+        int analysisHeight = styledAttrs.getInt(R.styleable.CameraBridgeViewBase_analysis_height, 0);
+        if (analysisWidth > 0 && analysisHeight > 0)
+            setAnalysisFrameSize(analysisWidth, analysisHeight);
+
         getHolder().addCallback(this);
         mMaxWidth = MAX_UNSPECIFIED;
         mMaxHeight = MAX_UNSPECIFIED;
@@ -94,6 +150,39 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         this.mCameraIndex = cameraIndex;
     }
 
+    /**
+     * Switches to another camera while the view is started. Subclasses supporting it keep their
+     * worker thread, frame buffers and cache bitmap, and reuse them when the new camera delivers
+     * frames of the same size. Otherwise the camera is disconnected and connected again.
+     * The time from this call to the first processed frame is logged and available from
+     * getLastCameraSwitchTimeMs().
+     * @param cameraIndex new camera index
+     */
+    public void switchCamera(int cameraIndex) {
+        synchronized(mSyncObject) {
+            mCameraIndex = cameraIndex;
+            if (mState != STARTED)
+                return;
+
+            mSwitchStartNanos = SystemClock.elapsedRealtimeNanos();
+            if (!switchCameraDevice(getWidth(), getHeight())) {
+                Log.d(TAG, "hot camera switch is not supported, restarting camera");
+                processExitState(mState);
+                mState = STOPPED;
+                processEnterState(mState);
+                checkCurrentState();
+            }
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds from the last switchCamera() call to the first frame
+     * processed by the new camera, or -1 if no switch has completed yet
+     */
+    public long getLastCameraSwitchTimeMs() {
+        return mLastSwitchTimeMs;
+    }
+
     public interface CvCameraViewListener {
         /**
          * This method is invoked when camera preview has started. After this method is invoked
@@ -193,6 +282,23 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
          */
         public Mat gray();
 
+        /**
+         * This method returns the faces detected by the camera hardware for this frame, in the
+         * coordinates of the delivered frame, or null if hardware face detection is not active
+         */
+        default org.opencv.core.Rect[] hardwareFaces() {
+            return null;
+        }
+
+        /**
+         * This method returns the origin time of the frame in the SystemClock.elapsedRealtimeNanos()
+         * time base: the sensor timestamp when the camera reports it in that base, the arrival time
+         * of the frame otherwise, or 0 if unknown
+         */
+        default long timestampNanos() {
+            return 0;
+        }
+
         public void release();
     };
 
@@ -200,7 +306,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         @Override
         public Mat gray() {
             if (mRotation != 0) {
-                Core.rotate(mFrame.gray(), mGrayRotated, getCvRotationCode(mRotation));
+                Mat gray = mFrame.gray();
+                long start = System.nanoTime();
+                FrameTracer.begin(PipelineMetrics.STAGE_ROTATE);
+                if (mGrayRotated == null)
+                    mGrayRotated = leaseRotated(gray);
+                Core.rotate(gray, mGrayRotated, getCvRotationCode(mRotation));
+                FrameTracer.end();
+                recordStage(PipelineMetrics.STAGE_ROTATE, start);
                 return mGrayRotated;
             } else {
                 return mFrame.gray();
@@ -210,13 +323,37 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         @Override
         public Mat rgba() {
             if (mRotation != 0) {
-                Core.rotate(mFrame.rgba(), mRgbaRotated, getCvRotationCode(mRotation));
+                Mat rgba = mFrame.rgba();
+                long start = System.nanoTime();
+                FrameTracer.begin(PipelineMetrics.STAGE_ROTATE);
+                if (mRgbaRotated == null)
+                    mRgbaRotated = leaseRotated(rgba);
+                Core.rotate(rgba, mRgbaRotated, getCvRotationCode(mRotation));
+                FrameTracer.end();
+                recordStage(PipelineMetrics.STAGE_ROTATE, start);
                 return mRgbaRotated;
             } else {
                 return mFrame.rgba();
             }
         }
 
+        @Override
+        public org.opencv.core.Rect[] hardwareFaces() {
+            // faces are mapped into rotated frame coordinates by the camera view
+            return mFrame.hardwareFaces();
+        }
+
+        @Override
+        public long timestampNanos() {
+            return mFrame.timestampNanos();
+        }
+
+        private Mat leaseRotated(Mat src) {
+            if (mRotation == 180)
+                return mMatPool.lease(src.rows(), src.cols(), src.type());
+            return mMatPool.lease(src.cols(), src.rows(), src.type());
+        }
+
         private int getCvRotationCode(int degrees) {
             if  (degrees == 90) {
                 return Core.ROTATE_90_CLOCKWISE;
@@ -230,15 +367,16 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public RotatedCameraFrame(CvCameraViewFrame frame, int rotation) {
             super();
             mFrame = frame;
-            mRgbaRotated = new Mat();
-            mGrayRotated = new Mat();
             mRotation = rotation;
         }
 
         @Override
         public void release() {
-            mRgbaRotated.release();
-            mGrayRotated.release();
+            // the rotation targets go back to the pool for the next frames
+            mMatPool.recycle(mRgbaRotated);
+            mMatPool.recycle(mGrayRotated);
+            mRgbaRotated = null;
+            mGrayRotated = null;
         }
 
         public CvCameraViewFrame mFrame;
@@ -352,6 +490,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         if (mFpsMeter == null) {
             mFpsMeter = new FpsMeter();
             mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+            if (mResolutionPolicy != null)
+                mFpsMeter.setDisplayResolution(getWidth(), getHeight());
         }
     }
 
@@ -359,6 +499,128 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method enables latency histograms of the frame pipeline stages: frame interval, YUV
+     * conversion, rotation, listener and drawing. The listener may record its own stages into
+     * getPipelineMetrics(). With showOverlay, the breakdown is drawn below the FPS label.
+     * @param showOverlay - whether the p50/p95/p99/max breakdown is drawn on the frames
+     */
+    public void enablePipelineMetrics(boolean showOverlay) {
+        if (mPipelineMetrics == null)
+            mPipelineMetrics = new PipelineMetrics();
+        mMetricsOverlay = showOverlay ? new MetricsOverlay() : null;
+    }
+
+    public void disablePipelineMetrics() {
+        mPipelineMetrics = null;
+        mMetricsOverlay = null;
+    }
+
+    /**
+     * Returns the latency histograms of the pipeline stages, or null if they are not enabled
+     */
+    public PipelineMetrics getPipelineMetrics() {
+        return mPipelineMetrics;
+    }
+
+    /**
+     * Returns the pool of the per-frame Mats of the view: YUV staging, RGBA conversion and rotation
+     * targets. The listener may lease its own temporaries from it. Idle Mats are released when the
+     * camera stops.
+     */
+    public MatPool getMatPool() {
+        return mMatPool;
+    }
+
+    /**
+     * Returns the pool of the Bitmaps of the view, which holds the frame Bitmap while the camera is
+     * stopped so that resuming or switching cameras reuses it. The listener may lease its own
+     * Bitmaps from it.
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Starts appending the raw camera frames to the given file, replacing any previous content.
+     * The recording can be played back with ReplayCameraView or read with FrameRecordReader.
+     * Recording goes on across camera switches until stopFrameRecording() is called.
+     */
+    public void startFrameRecording(File file) throws IOException {
+        FrameRecorder previous = mFrameRecorder;
+        mFrameRecorder = new FrameRecorder(file);
+        if (previous != null)
+            closeRecorder(previous);
+        Log.i(TAG, "Recording frames to " + file);
+    }
+
+    /**
+     * Stops the recording started by startFrameRecording() and completes the file
+     */
+    public void stopFrameRecording() {
+        FrameRecorder recorder = mFrameRecorder;
+        mFrameRecorder = null;
+        if (recorder != null)
+            closeRecorder(recorder);
+    }
+
+    public boolean isFrameRecording() {
+        return mFrameRecorder != null;
+    }
+
+    /**
+     * Records a frame delivered as a single NV21 or YV12 array, if recording. Called by the subclasses
+     * on the camera thread before the frame buffer is given back to the camera.
+     */
+    protected void recordPackedFrame(int format, byte[] data, int width, int height, int rotation, long timestampNanos) {
+        FrameRecorder recorder = mFrameRecorder;
+        if (recorder == null)
+            return;
+        try {
+            recorder.writeFrame(format, data, width, height, rotation, timestampNanos);
+        } catch (IOException e) {
+            Log.e(TAG, "Frame recording failed, stopping it", e);
+            stopFrameRecording();
+        }
+    }
+
+    /**
+     * Records a YUV_420_888 frame given by its planes, if recording. Called by the subclasses on the
+     * camera thread before the image is closed.
+     */
+    protected void recordYuvFrame(int width, int height, int rotation, long timestampNanos,
+                                  ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                  ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        FrameRecorder recorder = mFrameRecorder;
+        if (recorder == null)
+            return;
+        try {
+            recorder.writeYuv420888(width, height, rotation, timestampNanos,
+                    yPlane, yRowStride, yPixelStride, uPlane, vPlane, uvRowStride, uvPixelStride);
+        } catch (IOException e) {
+            Log.e(TAG, "Frame recording failed, stopping it", e);
+            stopFrameRecording();
+        }
+    }
+
+    private void closeRecorder(FrameRecorder recorder) {
+        try {
+            recorder.close();
+            Log.i(TAG, "Recorded " + recorder.getFrameCount() + " frames, " + recorder.getBytesWritten() / 1024 + " KB");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to complete the frame recording", e);
+        }
+    }
+
+    /**
+     * Records the time elapsed since startNanos for the given stage if pipeline metrics are enabled
+     */
+    protected void recordStage(String stage, long startNanos) {
+        PipelineMetrics metrics = mPipelineMetrics;
+        if (metrics != null)
+            metrics.record(stage, startNanos);
+    }
+
     /**
      *
      * @param listener
@@ -388,6 +650,119 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mMaxHeight = maxHeight;
     }
 
+    /**
+     * This method sets the policy used to pick the camera frame size independently of the display.
+     * With a policy set, frames are delivered at the supported size with the lowest analysis cost
+     * and scaled up to fit the surface when drawn. Pass null to go back to the largest size that
+     * fits the surface. Takes effect the next time the camera is connected.
+     * @param policy - the resolution policy or null
+     */
+    public void setResolutionPolicy(ResolutionPolicy policy) {
+        mResolutionPolicy = policy;
+    }
+
+    public ResolutionPolicy getResolutionPolicy() {
+        return mResolutionPolicy;
+    }
+
+    /**
+     * Shortcut for setResolutionPolicy() with the default cost model.
+     * @param analysisWidth - the target width of the frames delivered to the listener
+     * @param analysisHeight - the target height of the frames delivered to the listener
+     */
+    public void setAnalysisFrameSize(int analysisWidth, int analysisHeight) {
+        setResolutionPolicy(new ResolutionPolicy(analysisWidth, analysisHeight));
+    }
+
+    /**
+     * This method enables matching the camera frame rate to the rate frames can be processed at.
+     * The target FPS range closest to the sustainable processing rate is requested from the camera
+     * and re-negotiated when that rate changes substantially. Takes effect the next time the camera
+     * is connected.
+     * @param enabled - whether the capture rate follows the processing rate
+     */
+    public void setCaptureRateMatchingEnabled(boolean enabled) {
+        mCaptureRateMatching = enabled;
+    }
+
+    /**
+     * Returns the controller of the capture rate, with the requested range and the achieved
+     * capture and processing rates, or null if capture rate matching is not active
+     */
+    public CaptureRateController getCaptureRateController() {
+        return mCaptureRateController;
+    }
+
+    /**
+     * This method selects how the frames returned by the listener are drawn. RENDERER_CANVAS converts
+     * them to a Bitmap drawn on the surface Canvas. RENDERER_GL uploads them into an OpenGL ES texture
+     * scaled by the GPU, falling back to the Canvas when OpenGL ES is not available.
+     * Takes effect the next time the camera is connected.
+     * @param backend - RENDERER_CANVAS or RENDERER_GL
+     */
+    public void setRendererBackend(int backend) {
+        if (backend != RENDERER_CANVAS && backend != RENDERER_GL)
+            throw new IllegalArgumentException("Unknown renderer backend: " + backend);
+        mRendererBackend = backend;
+    }
+
+    /**
+     * Returns the renderer backend in use, RENDERER_CANVAS after a fallback from RENDERER_GL
+     */
+    public int getRendererBackend() {
+        return mRendererBackend;
+    }
+
+    /**
+     * This method enables drawing on a dedicated render thread. The frame processing thread copies
+     * the frame returned by the listener into a triple buffer and goes on with the next frame right
+     * away, instead of waiting for the surface to be drawn and posted. The render thread draws the
+     * most recent frame; frames processed faster than they can be displayed are skipped.
+     * Takes effect the next time the camera is connected.
+     * @param enabled - whether frames are drawn on a render thread
+     */
+    public void setRenderThreadEnabled(boolean enabled) {
+        mRenderThreadEnabled = enabled;
+    }
+
+    /**
+     * Returns the average time in milliseconds from the end of frame processing to the frame being
+     * posted to the display by the render thread, or -1 if no frame was drawn on a render thread yet
+     */
+    public double getDisplayLatencyMs() {
+        return mDisplayLatencyMs;
+    }
+
+    /**
+     * This method enables a label with the current sensor-to-display latency and its p95 over the
+     * last frames, drawn below the FPS label
+     * @param enabled - whether the latency label is drawn
+     */
+    public void setLatencyOverlayEnabled(boolean enabled) {
+        if (enabled && mLatencyPaint == null) {
+            mLatencyPaint = new Paint();
+            mLatencyPaint.setColor(Color.GREEN);
+            mLatencyPaint.setTextSize(20);
+        }
+        mLatencyOverlay = enabled;
+    }
+
+    /**
+     * Returns the rolling distribution of the time from frame origin (see CvCameraViewFrame.timestampNanos())
+     * to the listener returning from onCameraFrame()
+     */
+    public LatencyWindow getSensorToAnalysisLatency() {
+        return mSensorToAnalysisLatency;
+    }
+
+    /**
+     * Returns the rolling distribution of the time from frame origin to the processed frame being
+     * posted to the display. Empty when the view does not draw the frames (dual stream mode).
+     */
+    public LatencyWindow getSensorToDisplayLatency() {
+        return mSensorToDisplayLatency;
+    }
+
     public void SetCaptureFormat(int format)
     {
         mPreviewFormat = format;
@@ -460,8 +835,12 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        /* The render thread must be ready before the first frame is delivered */
+        if (mRenderThreadEnabled)
+            startRenderThread();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
+            stopRenderThread();
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
             ad.setCancelable(false); // This blocks the 'BACK' button
             ad.setMessage("It seems that your device does not support camera (or it is locked). Application will be closed.");
@@ -478,9 +857,47 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
+        stopRenderThread();
+        mLastFrameNanos = 0;
+        if (mGLRenderer != null) {
+            // drawing has stopped with the camera, release the surface for the next connection
+            mGLRenderer.release();
+            mGLRenderer = null;
+        }
+        mMatPool.clear();
         if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
+            // kept by the pool for the next connection, usually of the same size
+            mBitmapPool.recycle(mCacheBitmap);
+            mCacheBitmap = null;
+            Log.d(TAG, mBitmapPool.toString());
+        }
+    }
+
+    /**
+     * This method shall be called by the subclasses which display the camera stream by other means
+     * (for example a hardware composited preview surface). The frame is only delivered to the
+     * external client, the returned Mat is not drawn.
+     * @param frame - the current frame to be delivered
+     */
+    protected void deliverFrame(CvCameraViewFrame frame) {
+        long processingStart = System.nanoTime();
+        FrameTracer.beginFrame();
+        FrameTracer.begin(FrameTracer.SPAN_CAMERA_FRAME);
+        recordFrameInterval(processingStart);
+        if (mListener != null) {
+            FrameTracer.begin(PipelineMetrics.STAGE_LISTENER);
+            mListener.onCameraFrame(frame);
+            FrameTracer.end();
+            recordStage(PipelineMetrics.STAGE_LISTENER, processingStart);
         }
+        recordOriginLatency(mSensorToAnalysisLatency, PipelineMetrics.STAGE_SENSOR_TO_ANALYSIS, frame.timestampNanos());
+        reportCameraSwitch();
+        updateCaptureRate(processingStart);
+
+        if (mFpsMeter != null) {
+            mFpsMeter.measure();
+        }
+        FrameTracer.end();
     }
 
     /**
@@ -492,15 +909,61 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        long processingStart = System.nanoTime();
+        FrameTracer.beginFrame();
+        FrameTracer.begin(FrameTracer.SPAN_CAMERA_FRAME);
+        recordFrameInterval(processingStart);
         if (mListener != null) {
+            FrameTracer.begin(PipelineMetrics.STAGE_LISTENER);
             modified = mListener.onCameraFrame(frame);
+            FrameTracer.end();
+            recordStage(PipelineMetrics.STAGE_LISTENER, processingStart);
         } else {
             modified = frame.rgba();
         }
+        long originNanos = frame.timestampNanos();
+        recordOriginLatency(mSensorToAnalysisLatency, PipelineMetrics.STAGE_SENSOR_TO_ANALYSIS, originNanos);
+        reportCameraSwitch();
+
+        TripleBuffer<RenderSlot> renderBuffer = mRenderBuffer;
+        if (renderBuffer != null) {
+            // hand the frame over to the render thread and go back to processing
+            if (modified != null && !modified.empty()) {
+                RenderSlot slot = renderBuffer.getBack();
+                slot.copyFrom(modified);
+                slot.processedNanos = System.nanoTime();
+                slot.originNanos = originNanos;
+                renderBuffer.publish();
+            }
+            updateCaptureRate(processingStart);
+            FrameTracer.end();
+            return;
+        }
+
+        long drawStart = System.nanoTime();
+        FrameTracer.begin(PipelineMetrics.STAGE_DRAW);
+        drawFrame(modified, originNanos);
+        FrameTracer.end();
+        recordStage(PipelineMetrics.STAGE_DRAW, drawStart);
+
+        // drawing runs on the same thread, so it is part of the sustainable rate
+        updateCaptureRate(processingStart);
+        FrameTracer.end();
+    }
+
+    private void drawFrame(Mat modified, long originNanos) {
+        if (modified != null && mRendererBackend == RENDERER_GL && drawFrameGL(modified)) {
+            if (mFpsMeter != null) {
+                mFpsMeter.measure();
+            }
+            recordOriginLatency(mSensorToDisplayLatency, PipelineMetrics.STAGE_SENSOR_TO_DISPLAY, originNanos);
+            return;
+        }
 
         boolean bmpValid = true;
         if (modified != null) {
             try {
+                resizeCacheBitmap(modified.cols(), modified.rows());
                 Utils.matToBitmap(modified, mCacheBitmap);
             } catch(Exception e) {
                 Log.e(TAG, "Mat type: " + modified);
@@ -522,7 +985,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                             new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
                                     (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
                                     (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                                    (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
+                                    (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())),
+                            mScale > 1 ? mScalePaint : null);
                 } else {
                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
                             new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
@@ -535,11 +999,236 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                     mFpsMeter.measure();
                     mFpsMeter.draw(canvas, 20, 30);
                 }
+                if (mLatencyOverlay) {
+                    drawLatency(canvas, 20, 55);
+                }
+                if (mMetricsOverlay != null && mPipelineMetrics != null) {
+                    mMetricsOverlay.draw(canvas, mPipelineMetrics, 20, mLatencyOverlay ? 85 : 60);
+                }
                 getHolder().unlockCanvasAndPost(canvas);
+                recordOriginLatency(mSensorToDisplayLatency, PipelineMetrics.STAGE_SENSOR_TO_DISPLAY, originNanos);
             }
         }
     }
 
+    // Swaps the cache bitmap for one of the given size. Only the drawing thread (the render thread when
+    // enabled) calls it, so a camera switch never recycles the bitmap while it is being drawn.
+    private void resizeCacheBitmap(int width, int height) {
+        Bitmap bitmap = mCacheBitmap;
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height)) {
+            mBitmapPool.recycle(bitmap);
+            mCacheBitmap = mBitmapPool.lease(width, height, Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    private void startRenderThread() {
+        mRenderSlots = new RenderSlot[] { new RenderSlot(), new RenderSlot(), new RenderSlot() };
+        mRenderBuffer = new TripleBuffer<RenderSlot>(mRenderSlots[0], mRenderSlots[1], mRenderSlots[2]);
+        mStopRenderThread = false;
+        mDisplayLatencyMs = -1;
+        mRenderThread = new Thread(new RenderWorker(mRenderBuffer), "CameraBridgeRender");
+        mRenderThread.start();
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null)
+            return;
+
+        TripleBuffer<RenderSlot> buffer = mRenderBuffer;
+        mRenderBuffer = null;
+        mStopRenderThread = true;
+        mRenderThread.interrupt();
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while waiting for the render thread", e);
+        }
+        mRenderThread = null;
+        Log.d(TAG, "render thread stopped, " + buffer.getDroppedCount() + " of " + buffer.getPublishedCount() + " frames not displayed");
+
+        for (RenderSlot slot : mRenderSlots)
+            slot.release();
+        mRenderSlots = null;
+    }
+
+    // The frame is a DirectMat, so the GL renderer uploads it from its buffer without another copy
+    private static class RenderSlot {
+        DirectMat frame;
+        long processedNanos;
+        long originNanos;
+
+        void copyFrom(Mat modified) {
+            if (frame == null || frame.rows() != modified.rows() || frame.cols() != modified.cols()
+                    || frame.type() != modified.type()) {
+                release();
+                frame = new DirectMat(modified.rows(), modified.cols(), modified.type());
+            }
+            modified.copyTo(frame);
+        }
+
+        void release() {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+        }
+    }
+
+    private class RenderWorker implements Runnable {
+        private final TripleBuffer<RenderSlot> mBuffer;
+
+        RenderWorker(TripleBuffer<RenderSlot> buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            while (!mStopRenderThread) {
+                RenderSlot slot;
+                try {
+                    slot = mBuffer.acquire(RENDER_WAIT_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (slot == null)
+                    continue;
+
+                long drawStart = System.nanoTime();
+                FrameTracer.begin(PipelineMetrics.STAGE_DRAW);
+                drawFrame(slot.frame, slot.originNanos);
+                FrameTracer.end();
+                recordStage(PipelineMetrics.STAGE_DRAW, drawStart);
+
+                double latencyMs = (System.nanoTime() - slot.processedNanos) / 1e6;
+                double average = mDisplayLatencyMs;
+                mDisplayLatencyMs = average < 0 ? latencyMs : average + 0.1 * (latencyMs - average);
+            }
+            onFrameThreadExit();
+        }
+    }
+
+    /**
+     * This method shall be called by the subclasses on the thread calling deliverAndDrawFrame(), once
+     * it has delivered its last frame and before it ends. It releases the drawing resources bound to
+     * the thread, such as the OpenGL ES context.
+     */
+    protected void onFrameThreadExit() {
+        GLFrameRenderer renderer = mGLRenderer;
+        if (renderer != null)
+            renderer.detachThread();
+    }
+
+    private boolean drawFrameGL(Mat frame) {
+        if (mGLRenderer == null) {
+            GLFrameRenderer renderer = new GLFrameRenderer();
+            if (!renderer.init(getHolder().getSurface())) {
+                Log.e(TAG, "OpenGL ES renderer is not available, falling back to Canvas drawing");
+                renderer.release();
+                mRendererBackend = RENDERER_CANVAS;
+                return false;
+            }
+            mGLRenderer = renderer;
+        }
+        // The FPS label is not drawn on the GL surface, FpsMeter still logs it
+        mGLRenderer.draw(frame, mScale);
+        return true;
+    }
+
+    private void recordOriginLatency(LatencyWindow window, String stage, long originNanos) {
+        if (originNanos <= 0)
+            return;
+        long latency = SystemClock.elapsedRealtimeNanos() - originNanos;
+        window.record(latency);
+        PipelineMetrics metrics = mPipelineMetrics;
+        if (metrics != null)
+            metrics.stage(stage).record(latency);
+    }
+
+    // the label shows the latency of the previous frames, refreshed a few times per second
+    private void drawLatency(Canvas canvas, float offsetx, float offsety) {
+        long now = System.nanoTime();
+        if (mLatencyTextNanos == 0 || now - mLatencyTextNanos >= LATENCY_TEXT_REFRESH_NANOS) {
+            if (mSensorToDisplayLatency.size() > 0)
+                mLatencyText = "sensor->display " + mSensorToDisplayLatency.getLast() / 1000000 + " ms, p95 " +
+                        mSensorToDisplayLatency.getPercentile(95) / 1000000 + " ms";
+            mLatencyTextNanos = now;
+        }
+        canvas.drawText(mLatencyText, offsetx, offsety, mLatencyPaint);
+    }
+
+    private void recordFrameInterval(long nowNanos) {
+        long last = mLastFrameNanos;
+        mLastFrameNanos = nowNanos;
+        PipelineMetrics metrics = mPipelineMetrics;
+        if (metrics != null && last != 0)
+            metrics.stage(PipelineMetrics.STAGE_FRAME_INTERVAL).record(nowNanos - last);
+    }
+
+    private void updateCaptureRate(long processingStart) {
+        CaptureRateController controller = mCaptureRateController;
+        if (controller == null)
+            return;
+
+        long processingEnd = System.nanoTime();
+        controller.onFrameProcessed(processingStart, processingEnd);
+        int[] range = controller.update(processingEnd);
+        if (range != null) {
+            Log.i(TAG, "Requesting capture rate " + range[0] + "-" + range[1] + " fps (sustainable " +
+                    (int) controller.getSustainableRate() + " fps, captured " + (int) controller.getCaptureRate() +
+                    " fps, processed " + (int) controller.getProcessedRate() + " fps)");
+            applyCaptureRate(range[0], range[1]);
+        }
+    }
+
+    /**
+     * This method shall be overridden by subclasses supporting capture rate matching to request
+     * the given target FPS range from the camera. Called on the frame processing thread.
+     * @param minFps - the lower bound of the range
+     * @param maxFps - the upper bound of the range
+     */
+    protected void applyCaptureRate(int minFps, int maxFps) {
+    }
+
+    private void reportCameraSwitch() {
+        long start = mSwitchStartNanos;
+        if (start != 0) {
+            mSwitchStartNanos = 0;
+            mLastSwitchTimeMs = (SystemClock.elapsedRealtimeNanos() - start) / 1000000;
+            Log.i(TAG, "Camera switch to first processed frame: " + mLastSwitchTimeMs + " ms");
+        }
+    }
+
+    /**
+     * This method may be overridden by subclasses which can switch to camera mCameraIndex without
+     * stopping their worker thread. It is called with mSyncObject lock held while the view is started
+     * and may complete asynchronously; onCameraSwitched() must be called once the new frame size is known.
+     * The asynchronous part runs without mSyncObject, so it must not open the new camera once
+     * disconnectCamera() has started, and must leave the cache bitmap to the drawing thread.
+     * @param width - the width of this SurfaceView
+     * @param height - the height of this SurfaceView
+     * @return false if a full disconnect and connect is needed
+     */
+    protected boolean switchCameraDevice(int width, int height) {
+        return false;
+    }
+
+    /**
+     * This method shall be called by the subclasses after a hot camera switch, once mFrameWidth and
+     * mFrameHeight describe the new camera. The listener is restarted only if the frame size changed.
+     * @param previousWidth - the frame width before the switch
+     * @param previousHeight - the frame height before the switch
+     */
+    protected void onCameraSwitched(int previousWidth, int previousHeight) {
+        if (mFpsMeter != null) {
+            mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+        }
+        if (mListener != null && (previousWidth != mFrameWidth || previousHeight != mFrameHeight)) {
+            Log.d(TAG, "frame size changed on camera switch, restarting listener");
+            mListener.onCameraViewStopped();
+            mListener.onCameraViewStarted(mFrameWidth, mFrameHeight);
+        }
+    }
+
     /**
      * This method is invoked shall perform concrete operation to initialize the camera.
      * CONTRACT: as a result of this method variables mFrameWidth and mFrameHeight MUST be
@@ -556,9 +1245,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected abstract void disconnectCamera();
 
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
+    // After a camera switch the bitmap is kept: the drawing thread may still be drawing it and resizes it
+    // itself when the frames change size.
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        if (mCacheBitmap != null && !mCacheBitmap.isRecycled()) {
+            return;
+        }
+        mCacheBitmap = mBitmapPool.lease(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
     }
 
     public interface ListItemAccessor {
@@ -576,6 +1270,12 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * @return optimal frame size
      */
     protected Size calculateCameraFrameSize(List<?> supportedSizes, ListItemAccessor accessor, int surfaceWidth, int surfaceHeight) {
+        if (mResolutionPolicy != null) {
+            Size size = mResolutionPolicy.selectFrameSize(supportedSizes, accessor, surfaceWidth, surfaceHeight, mMaxWidth, mMaxHeight);
+            Log.d(TAG, "selected frame size " + (int) size.width + "x" + (int) size.height + " with " + mResolutionPolicy);
+            return size;
+        }
+
         int calcWidth = 0;
         int calcHeight = 0;
 
@@ -604,4 +1304,21 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
         return new Size(calcWidth, calcHeight);
     }
+
+    /**
+     * This helper method can be called by subclasses to compute mScale once mFrameWidth and
+     * mFrameHeight are known. Frames are stretched to fit the surface when the view fills its parent
+     * or when a resolution policy decouples the analysis size from the display size.
+     * @param surfaceWidth
+     * @param surfaceHeight
+     * @return scale to apply when drawing, 0 to draw frames unscaled
+     */
+    protected float calculateDisplayScale(int surfaceWidth, int surfaceHeight) {
+        LayoutParams params = getLayoutParams();
+        boolean matchParent = params != null && params.width == LayoutParams.MATCH_PARENT && params.height == LayoutParams.MATCH_PARENT;
+        if ((matchParent || mResolutionPolicy != null) && mFrameWidth > 0 && mFrameHeight > 0)
+            return Math.min(((float)surfaceHeight)/mFrameHeight, ((float)surfaceWidth)/mFrameWidth);
+        else
+            return 0;
+    }
 }
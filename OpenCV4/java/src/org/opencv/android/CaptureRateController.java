@@ -0,0 +1,163 @@
+package org.opencv.android;
+
+/**
+ * Matches the camera frame rate to the rate the processing pipeline can sustain.
+ * Capturing 30 fps when the listener only keeps up with 12 means most frames are captured,
+ * converted and dropped. This class measures the time spent processing frames, derives the
+ * sustainable rate and picks the closest supported target FPS range, re-negotiating only when
+ * the sustainable rate changes substantially.
+ * The camera views feed it and apply the selected range; it has no Android dependencies.
+ * All methods are synchronized since capture and processing may run on different threads.
+ */
+public class CaptureRateController {
+
+    /** Processed frames needed before the first negotiation */
+    public static final int WARMUP_FRAMES = 30;
+    /** Relative change of the sustainable rate that triggers a re-negotiation */
+    public static final double CHANGE_THRESHOLD = 0.25;
+    /** Minimum time between two negotiations */
+    public static final long MIN_INTERVAL_NANOS = 2000000000L;
+    /** Window of the achieved rate measurements */
+    public static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private static final double EMA_ALPHA = 0.1;
+
+    private final int[][] mSupportedRanges;
+    private int[] mRequestedRange;
+
+    private double mAvgProcessingNanos = 0;
+    private int mProcessedFrames = 0;
+    private double mNegotiatedRate = 0;
+    private long mLastNegotiationNanos = 0;
+
+    private long mWindowStartNanos = 0;
+    private int mWindowCaptured = 0;
+    private int mWindowProcessed = 0;
+    private double mCaptureRate = 0;
+    private double mProcessedRate = 0;
+
+    /**
+     * @param supportedRanges - the target FPS ranges supported by the camera, as {min, max} pairs in frames per second
+     */
+    public CaptureRateController(int[][] supportedRanges) {
+        mSupportedRanges = supportedRanges;
+    }
+
+    /**
+     * Called when the camera delivers a frame, whether or not it gets processed
+     */
+    public synchronized void onFrameCaptured(long nowNanos) {
+        updateWindow(nowNanos);
+        mWindowCaptured++;
+    }
+
+    /**
+     * Called when the listener has finished processing a frame
+     * @param startNanos - when the processing started
+     * @param endNanos - when the processing ended
+     */
+    public synchronized void onFrameProcessed(long startNanos, long endNanos) {
+        long duration = endNanos - startNanos;
+        if (mProcessedFrames == 0)
+            mAvgProcessingNanos = duration;
+        else
+            mAvgProcessingNanos += EMA_ALPHA * (duration - mAvgProcessingNanos);
+        mProcessedFrames++;
+
+        updateWindow(endNanos);
+        mWindowProcessed++;
+    }
+
+    /**
+     * Decides whether the capture rate has to change.
+     * @return the {min, max} range to request from the camera, or null to keep the current one
+     */
+    public synchronized int[] update(long nowNanos) {
+        if (mSupportedRanges == null || mSupportedRanges.length == 0 || mProcessedFrames < WARMUP_FRAMES)
+            return null;
+        if (mRequestedRange != null && nowNanos - mLastNegotiationNanos < MIN_INTERVAL_NANOS)
+            return null;
+
+        double rate = getSustainableRate();
+        if (mRequestedRange != null && Math.abs(rate - mNegotiatedRate) <= CHANGE_THRESHOLD * mNegotiatedRate)
+            return null;
+
+        int[] range = selectRange(mSupportedRanges, rate);
+        mNegotiatedRate = rate;
+        mLastNegotiationNanos = nowNanos;
+        if (range == null || (mRequestedRange != null && mRequestedRange[0] == range[0] && mRequestedRange[1] == range[1]))
+            return null;
+
+        mRequestedRange = range;
+        return range;
+    }
+
+    /**
+     * Picks the range with the lowest maximum that still reaches the given rate (or the highest
+     * maximum if none does), preferring the steadier range (higher minimum) on ties.
+     */
+    public static int[] selectRange(int[][] ranges, double rate) {
+        int[] best = null;
+        for (int[] range : ranges) {
+            if (best == null) {
+                best = range;
+                continue;
+            }
+            boolean reaches = range[1] >= rate;
+            boolean bestReaches = best[1] >= rate;
+            if (reaches != bestReaches) {
+                if (reaches)
+                    best = range;
+            } else if (range[1] != best[1]) {
+                if (reaches ? range[1] < best[1] : range[1] > best[1])
+                    best = range;
+            } else if (range[0] > best[0]) {
+                best = range;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the last range returned by update(), or null if the camera default is still in use
+     */
+    public synchronized int[] getRequestedRange() {
+        return mRequestedRange == null ? null : mRequestedRange.clone();
+    }
+
+    /**
+     * Returns the frame rate the processing could sustain given its average duration per frame
+     */
+    public synchronized double getSustainableRate() {
+        return mAvgProcessingNanos > 0 ? 1e9 / mAvgProcessingNanos : 0;
+    }
+
+    /**
+     * Returns the rate frames were delivered by the camera over the last complete window
+     */
+    public synchronized double getCaptureRate() {
+        return mCaptureRate;
+    }
+
+    /**
+     * Returns the rate frames were processed over the last complete window
+     */
+    public synchronized double getProcessedRate() {
+        return mProcessedRate;
+    }
+
+    private void updateWindow(long nowNanos) {
+        if (mWindowStartNanos == 0) {
+            mWindowStartNanos = nowNanos;
+            return;
+        }
+        long elapsed = nowNanos - mWindowStartNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            mCaptureRate = mWindowCaptured * 1e9 / elapsed;
+            mProcessedRate = mWindowProcessed * 1e9 / elapsed;
+            mWindowCaptured = 0;
+            mWindowProcessed = 0;
+            mWindowStartNanos = nowNanos;
+        }
+    }
+}
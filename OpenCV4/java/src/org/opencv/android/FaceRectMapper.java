@@ -0,0 +1,108 @@
+package org.opencv.android;
+
+import org.opencv.core.Rect;
+
+/**
+ * Maps face rectangles reported by the camera HAL (CaptureResult.STATISTICS_FACES) from sensor
+ * active array coordinates into the coordinates of the frames delivered to the listener.
+ * The output stream shows the capture request crop region, further center-cropped to the stream
+ * aspect ratio and scaled to the stream size. The frame is then rotated like RotatedCameraFrame does.
+ * This class has no Android dependencies, so the mapping can be tested off-device.
+ */
+public class FaceRectMapper {
+
+    private double mOffsetX;
+    private double mOffsetY;
+    private double mScale;
+    private int mStreamWidth;
+    private int mStreamHeight;
+    private int mRotation;
+
+    /**
+     * Updates the transform for the current capture result.
+     * @param cropLeft - left of the crop region in active array coordinates
+     * @param cropTop - top of the crop region in active array coordinates
+     * @param cropWidth - width of the crop region
+     * @param cropHeight - height of the crop region
+     * @param streamWidth - width of the output stream (in sensor orientation)
+     * @param streamHeight - height of the output stream (in sensor orientation)
+     * @param rotation - clockwise rotation applied to the stream frames: 0, 90, 180 or 270
+     */
+    public void setTransform(int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                             int streamWidth, int streamHeight, int rotation) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270)
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        if (cropWidth <= 0 || cropHeight <= 0 || streamWidth <= 0 || streamHeight <= 0)
+            throw new IllegalArgumentException("Invalid crop or stream size");
+
+        // Region of the sensor actually visible in the stream after the aspect ratio crop
+        double visibleWidth = cropWidth;
+        double visibleHeight = cropHeight;
+        if ((double) cropWidth * streamHeight > (double) cropHeight * streamWidth) {
+            visibleWidth = (double) cropHeight * streamWidth / streamHeight;
+        } else {
+            visibleHeight = (double) cropWidth * streamHeight / streamWidth;
+        }
+
+        mOffsetX = cropLeft + (cropWidth - visibleWidth) / 2;
+        mOffsetY = cropTop + (cropHeight - visibleHeight) / 2;
+        mScale = streamWidth / visibleWidth;
+        mStreamWidth = streamWidth;
+        mStreamHeight = streamHeight;
+        mRotation = rotation;
+    }
+
+    /**
+     * Maps a rectangle given by its edges in active array coordinates.
+     * @return the rectangle in frame coordinates clipped to the frame, or null if it is not visible
+     */
+    public Rect map(int left, int top, int right, int bottom) {
+        Rect rect = new Rect();
+        return map(left, top, right, bottom, rect) ? rect : null;
+    }
+
+    /**
+     * Maps a rectangle given by its edges in active array coordinates into a reused Rect.
+     * @return false, leaving out unchanged, if the rectangle is not visible
+     */
+    public boolean map(int left, int top, int right, int bottom, Rect out) {
+        // Active array -> stream, clipped to the stream
+        int x0 = clip((int) Math.round((left - mOffsetX) * mScale), mStreamWidth);
+        int y0 = clip((int) Math.round((top - mOffsetY) * mScale), mStreamHeight);
+        int x1 = clip((int) Math.round((right - mOffsetX) * mScale), mStreamWidth);
+        int y1 = clip((int) Math.round((bottom - mOffsetY) * mScale), mStreamHeight);
+        if (x1 <= x0 || y1 <= y0)
+            return false;
+
+        int w = x1 - x0;
+        int h = y1 - y0;
+
+        // Stream -> rotated frame
+        switch (mRotation) {
+            case 90:
+                set(out, mStreamHeight - y1, x0, h, w);
+                break;
+            case 180:
+                set(out, mStreamWidth - x1, mStreamHeight - y1, w, h);
+                break;
+            case 270:
+                set(out, y0, mStreamWidth - x1, h, w);
+                break;
+            default:
+                set(out, x0, y0, w, h);
+                break;
+        }
+        return true;
+    }
+
+    private static void set(Rect rect, int x, int y, int width, int height) {
+        rect.x = x;
+        rect.y = y;
+        rect.width = width;
+        rect.height = height;
+    }
+
+    private static int clip(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
@@ -22,6 +22,8 @@ public class FpsMeter {
     boolean                     mIsInitialized = false;
     int                         mWidth = 0;
     int                         mHeight = 0;
+    int                         mDisplayWidth = 0;
+    int                         mDisplayHeight = 0;
 
     public void init() {
         mFramesCounter = 0;
@@ -44,7 +46,10 @@ public class FpsMeter {
                 long time = Core.getTickCount();
                 double fps = STEP * mFrequency / (time - mprevFrameTime);
                 mprevFrameTime = time;
-                if (mWidth != 0 && mHeight != 0)
+                if (mWidth != 0 && mHeight != 0 && mDisplayWidth != 0 && mDisplayHeight != 0)
+                    mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight)
+                            + " -> " + Integer.valueOf(mDisplayWidth) + "x" + Integer.valueOf(mDisplayHeight);
+                else if (mWidth != 0 && mHeight != 0)
                     mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
                 else
                     mStrfps = FPS_FORMAT.format(fps) + " FPS";
@@ -59,8 +64,16 @@ public class FpsMeter {
         mHeight = height;
     }
 
+    /**
+     * Sets the size frames are scaled to on screen when it differs from the analysis resolution
+     */
+    public void setDisplayResolution(int width, int height) {
+        Log.d(TAG, "FpsMeter.setDisplayResolution " + Integer.valueOf(width) + "x" + Integer.valueOf(height));
+        mDisplayWidth = width;
+        mDisplayHeight = height;
+    }
+
     public void draw(Canvas canvas, float offsetx, float offsety) {
-        Log.d(TAG, mStrfps);
         canvas.drawText(mStrfps, offsetx, offsety, mPaint);
     }
 
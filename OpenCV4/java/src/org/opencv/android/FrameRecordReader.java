@@ -0,0 +1,148 @@
+package org.opencv.android;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames of a recording written by FrameRecorder, in order. It only depends on java.nio,
+ * so recordings made on a device can drive benchmarks and tests on the host JVM.
+ * The file is mapped in windows, recordings larger than 2 GB are supported.
+ */
+public class FrameRecordReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mSize;
+    private final int mWindowSize;
+    private final long mDataStart;
+    private MappedByteBuffer mWindow = null;
+    private long mWindowStart = 0;
+    private long mPosition;
+    private int mFrameIndex = 0;
+
+    public FrameRecordReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize - size of the regions of the file mapped at once
+     * @throws IOException if the file is not a recording of a supported version
+     */
+    public FrameRecordReader(File file, int windowSize) throws IOException {
+        if (windowSize < FrameRecorder.HEADER_SIZE)
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        mWindowSize = windowSize;
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            mChannel = mFile.getChannel();
+            mSize = mChannel.size();
+            if (mSize < FrameRecorder.HEADER_SIZE)
+                throw new IOException("Not a frame recording: " + file);
+            ByteBuffer header = map(0, FrameRecorder.HEADER_SIZE);
+            if (header.getInt() != FrameRecorder.MAGIC)
+                throw new IOException("Not a frame recording: " + file);
+            int version = header.getInt();
+            if (version != FrameRecorder.VERSION)
+                throw new IOException("Unsupported frame recording version " + version + ": " + file);
+            mDataStart = header.getInt();
+            mPosition = mDataStart;
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next frame into the given frame, whose planes stay valid until the next call
+     * @return false at the end of the recording
+     * @throws IOException if a record is corrupt
+     */
+    public synchronized boolean next(RecordedFrame frame) throws IOException {
+        if (mPosition + 4 > mSize)
+            return false;
+        int length = map(mPosition, 4).getInt();
+        if (length == 0)
+            return false; // zero end of the last chunk of an unclosed recording
+        if (length < FrameRecorder.RECORD_FIXED_SIZE || mPosition + 4 + length > mSize)
+            throw new IOException("Corrupt frame record " + mFrameIndex + " at offset " + mPosition);
+
+        ByteBuffer record = map(mPosition + 4, length);
+        long timestampNanos = record.getLong();
+        int format = record.getInt();
+        int width = record.getInt();
+        int height = record.getInt();
+        int rotation = record.getInt();
+        int yRowStride = record.getInt();
+        int yPixelStride = record.getInt();
+        int uvRowStride = record.getInt();
+        int uvPixelStride = record.getInt();
+        int yLength = record.getInt();
+        int uLength = record.getInt();
+        int vLength = record.getInt();
+        if (yLength < 0 || uLength < 0 || vLength < 0
+                || (long) yLength + uLength + vLength != length - FrameRecorder.RECORD_FIXED_SIZE)
+            throw new IOException("Corrupt frame record " + mFrameIndex + " at offset " + mPosition);
+
+        ByteBuffer yPlane = slice(record, yLength);
+        ByteBuffer uPlane = slice(record, uLength);
+        ByteBuffer vPlane = slice(record, vLength);
+        frame.set(timestampNanos, format, width, height, rotation,
+                yRowStride, yPixelStride, uvRowStride, uvPixelStride, yPlane, uPlane, vPlane);
+
+        mPosition += 4 + length;
+        mFrameIndex++;
+        return true;
+    }
+
+    /**
+     * Goes back to the first frame
+     */
+    public synchronized void rewind() {
+        mPosition = mDataStart;
+        mFrameIndex = 0;
+    }
+
+    /**
+     * Returns the index of the frame next() reads
+     */
+    public synchronized int getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mWindow = null;
+        mFile.close();
+    }
+
+    // Returns the window holding the given range of the file, positioned at its start
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (mWindow == null || offset < mWindowStart || offset + length > mWindowStart + mWindow.capacity()) {
+            long size = Math.min(Math.max((long) mWindowSize, length), mSize - offset);
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            mWindow.order(ByteOrder.LITTLE_ENDIAN);
+            mWindowStart = offset;
+        }
+        mWindow.limit(mWindow.capacity());
+        mWindow.position((int) (offset - mWindowStart));
+        return mWindow;
+    }
+
+    // Returns the next length bytes of the buffer as a buffer of their own, and skips them
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        ByteBuffer plane = buffer.slice();
+        buffer.position(buffer.limit());
+        buffer.limit(limit);
+        return plane;
+    }
+}
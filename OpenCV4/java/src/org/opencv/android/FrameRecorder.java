@@ -0,0 +1,193 @@
+package org.opencv.android;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends raw camera frames to a file, to be played back with ReplayCameraView or read on any JVM
+ * with FrameRecordReader, so that performance runs and regression tests see identical frames.
+ * <p>
+ * The file is written through memory-mapped chunks, so appending a frame is a copy into the page
+ * cache and never waits for the disk. Layout, little endian:
+ * <pre>
+ * header: int magic "TMFR", int version, int header size, int reserved
+ * record: int body length, then the body:
+ *         long timestamp, int format, width, height, rotation,
+ *         int Y row stride, Y pixel stride, UV row stride, UV pixel stride,
+ *         int Y length, U length, V length, then the Y, U and V bytes
+ * </pre>
+ * The length of a record is written after its body, and the unused end of the last chunk is zero,
+ * so a recording left unclosed by a crash ends cleanly at the last complete frame.
+ * close() truncates the file to the recorded frames.
+ */
+public class FrameRecorder implements Closeable {
+
+    public static final int MAGIC = 0x52464D54; // "TMFR" in little endian
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_FIXED_SIZE = 8 + 11 * 4;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mChunkSize;
+    private MappedByteBuffer mChunk = null;
+    private long mChunkStart = 0;
+    private long mPosition = 0;
+    private int mFrameCount = 0;
+    private boolean mClosed = false;
+
+    public FrameRecorder(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize - size of the regions of the file mapped at once, a frame larger than it
+     *                    gets a region of its own
+     */
+    public FrameRecorder(File file, int chunkSize) throws IOException {
+        if (chunkSize < HEADER_SIZE)
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        mChunkSize = chunkSize;
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(0);
+            mChannel = mFile.getChannel();
+            ByteBuffer chunk = reserve(HEADER_SIZE);
+            chunk.putInt(MAGIC);
+            chunk.putInt(VERSION);
+            chunk.putInt(HEADER_SIZE);
+            chunk.putInt(0);
+            mPosition = HEADER_SIZE;
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a frame delivered as a single array, NV21 or YV12 as by the Camera1 preview callback
+     * @param format - RecordedFrame.FORMAT_NV21 or FORMAT_YV12
+     * @param rotation - clockwise rotation the camera view applies to the frame
+     * @return false if the recorder is already closed, the frame is then dropped
+     */
+    public synchronized boolean writeFrame(int format, byte[] data, int width, int height, int rotation,
+                                           long timestampNanos) throws IOException {
+        if (format != RecordedFrame.FORMAT_NV21 && format != RecordedFrame.FORMAT_YV12)
+            throw new IllegalArgumentException("Unsupported packed format: " + format);
+        if (mClosed)
+            return false;
+        ByteBuffer chunk = beginRecord(data.length, timestampNanos, format, width, height, rotation,
+                width, 1, width, format == RecordedFrame.FORMAT_NV21 ? 2 : 1);
+        chunk.putInt(data.length);
+        chunk.putInt(0);
+        chunk.putInt(0);
+        chunk.put(data);
+        endRecord(chunk);
+        return true;
+    }
+
+    /**
+     * Appends a YUV_420_888 frame as the planes of an android.media.Image. The bytes between the
+     * position and the limit of each plane are recorded, the positions are left unchanged.
+     * @return false if the recorder is already closed, the frame is then dropped
+     */
+    public synchronized boolean writeYuv420888(int width, int height, int rotation, long timestampNanos,
+                                               ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                               ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride)
+            throws IOException {
+        if (mClosed)
+            return false;
+        int yLength = yPlane.remaining();
+        int uLength = uPlane.remaining();
+        int vLength = vPlane.remaining();
+        ByteBuffer chunk = beginRecord(yLength + uLength + vLength, timestampNanos, RecordedFrame.FORMAT_YUV_420_888,
+                width, height, rotation, yRowStride, yPixelStride, uvRowStride, uvPixelStride);
+        chunk.putInt(yLength);
+        chunk.putInt(uLength);
+        chunk.putInt(vLength);
+        putPlane(chunk, yPlane);
+        putPlane(chunk, uPlane);
+        putPlane(chunk, vPlane);
+        endRecord(chunk);
+        return true;
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the size of the recording so far, header included
+     */
+    public synchronized long getBytesWritten() {
+        return mPosition;
+    }
+
+    /**
+     * Truncates the file to the recorded frames and closes it. Later writes are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed)
+            return;
+        mClosed = true;
+        // the mapped chunks go away with the GC, the file is complete once truncated
+        mChunk = null;
+        try {
+            mChannel.truncate(mPosition);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private ByteBuffer beginRecord(int planeBytes, long timestampNanos, int format, int width, int height, int rotation,
+                                   int yRowStride, int yPixelStride, int uvRowStride, int uvPixelStride) throws IOException {
+        ByteBuffer chunk = reserve(4L + RECORD_FIXED_SIZE + planeBytes);
+        // the length is written last, see endRecord()
+        chunk.putInt(0);
+        chunk.putLong(timestampNanos);
+        chunk.putInt(format);
+        chunk.putInt(width);
+        chunk.putInt(height);
+        chunk.putInt(rotation);
+        chunk.putInt(yRowStride);
+        chunk.putInt(yPixelStride);
+        chunk.putInt(uvRowStride);
+        chunk.putInt(uvPixelStride);
+        return chunk;
+    }
+
+    private void endRecord(ByteBuffer chunk) {
+        int start = (int) (mPosition - mChunkStart);
+        chunk.putInt(start, chunk.position() - start - 4);
+        mPosition = mChunkStart + chunk.position();
+        mFrameCount++;
+    }
+
+    // Returns the current chunk positioned at mPosition with at least bytes left, mapping a new one if needed
+    private ByteBuffer reserve(long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("Frame of " + bytes + " bytes is too large to record");
+        if (mChunk == null || mPosition + bytes > mChunkStart + mChunk.capacity()) {
+            mChunkStart = mPosition;
+            mChunk = mChannel.map(FileChannel.MapMode.READ_WRITE, mChunkStart, Math.max(mChunkSize, bytes));
+            mChunk.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mChunk.position((int) (mPosition - mChunkStart));
+        return mChunk;
+    }
+
+    private static void putPlane(ByteBuffer chunk, ByteBuffer plane) {
+        int position = plane.position();
+        chunk.put(plane);
+        plane.position(position);
+    }
+}
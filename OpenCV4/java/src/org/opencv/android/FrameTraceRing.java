@@ -0,0 +1,159 @@
+package org.opencv.android;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Preallocated ring of begin and end events of the frame pipeline, written out as Trace Event
+ * JSON which can be opened in Perfetto (ui.perfetto.dev) or chrome://tracing.
+ * Recording stores a few primitives and the span name reference, it does not allocate.
+ * Once the ring is full the oldest events are overwritten.
+ */
+public class FrameTraceRing {
+
+    private static final byte PHASE_BEGIN = 'B';
+    private static final byte PHASE_END = 'E';
+
+    private final int mCapacity;
+    private final byte[] mPhases;
+    private final String[] mNames;
+    private final long[] mTimesNanos;
+    private final long[] mThreadIds;
+    private final int[] mFrameIds;
+    private final int[] mFaceIds;
+    private int mNext = 0;
+    private int mSize = 0;
+
+    /**
+     * @param capacity - maximum number of events kept, a span uses two
+     */
+    public FrameTraceRing(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        mCapacity = capacity;
+        mPhases = new byte[capacity];
+        mNames = new String[capacity];
+        mTimesNanos = new long[capacity];
+        mThreadIds = new long[capacity];
+        mFrameIds = new int[capacity];
+        mFaceIds = new int[capacity];
+    }
+
+    /**
+     * Records the beginning of a span on the given thread
+     * @param name - name of the span, expected to be a constant
+     * @param frameId - the frame the span belongs to
+     * @param faceId - the face within the frame the span belongs to, -1 for none
+     */
+    public synchronized void begin(String name, int frameId, int faceId, long timeNanos, long threadId) {
+        add(PHASE_BEGIN, name, frameId, faceId, timeNanos, threadId);
+    }
+
+    /**
+     * Records the end of the innermost open span of the given thread
+     */
+    public synchronized void end(long timeNanos, long threadId) {
+        add(PHASE_END, null, 0, -1, timeNanos, threadId);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mNext = 0;
+        mSize = 0;
+        Arrays.fill(mNames, null);
+    }
+
+    /**
+     * Writes the events in the ring as a Trace Event JSON object. End events whose begin event was
+     * already overwritten are skipped so that every written span is well formed.
+     * The events are copied under the lock and formatted outside of it, so recording threads only
+     * wait for the copy, not for the writer.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        int size;
+        byte[] phases;
+        String[] names;
+        long[] timesNanos;
+        long[] threadIds;
+        int[] frameIds;
+        int[] faceIds;
+        synchronized (this) {
+            size = mSize;
+            phases = new byte[size];
+            names = new String[size];
+            timesNanos = new long[size];
+            threadIds = new long[size];
+            frameIds = new int[size];
+            faceIds = new int[size];
+            // oldest first: from start to the end of the arrays, then from 0
+            int start = (mNext - mSize + mCapacity) % mCapacity;
+            int head = Math.min(size, mCapacity - start);
+            copyEvents(start, 0, head, phases, names, timesNanos, threadIds, frameIds, faceIds);
+            copyEvents(0, head, size - head, phases, names, timesNanos, threadIds, frameIds, faceIds);
+        }
+
+        Map<Long, Integer> depths = new HashMap<Long, Integer>();
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (int i = 0; i < size; i++) {
+            Long tid = threadIds[i];
+            Integer depth = depths.get(tid);
+            int d = depth == null ? 0 : depth;
+            if (phases[i] == PHASE_END) {
+                if (d == 0)
+                    continue;
+                depths.put(tid, d - 1);
+            } else {
+                depths.put(tid, d + 1);
+            }
+
+            if (!first)
+                writer.write(',');
+            first = false;
+            writer.write(String.format(Locale.US, "\n{\"ph\":\"%c\",\"ts\":%.3f,\"pid\":1,\"tid\":%d",
+                    (char) phases[i], timesNanos[i] / 1000.0, threadIds[i]));
+            if (phases[i] == PHASE_BEGIN) {
+                writer.write(",\"name\":\"" + escape(names[i]) + "\",\"args\":{\"frame\":" + frameIds[i]);
+                if (faceIds[i] >= 0)
+                    writer.write(",\"face\":" + faceIds[i]);
+                writer.write('}');
+            }
+            writer.write('}');
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    private void copyEvents(int from, int to, int count, byte[] phases, String[] names, long[] timesNanos,
+                            long[] threadIds, int[] frameIds, int[] faceIds) {
+        System.arraycopy(mPhases, from, phases, to, count);
+        System.arraycopy(mNames, from, names, to, count);
+        System.arraycopy(mTimesNanos, from, timesNanos, to, count);
+        System.arraycopy(mThreadIds, from, threadIds, to, count);
+        System.arraycopy(mFrameIds, from, frameIds, to, count);
+        System.arraycopy(mFaceIds, from, faceIds, to, count);
+    }
+
+    private void add(byte phase, String name, int frameId, int faceId, long timeNanos, long threadId) {
+        mPhases[mNext] = phase;
+        mNames[mNext] = name;
+        mTimesNanos[mNext] = timeNanos;
+        mThreadIds[mNext] = threadId;
+        mFrameIds[mNext] = frameId;
+        mFaceIds[mNext] = faceId;
+        mNext = (mNext + 1) % mCapacity;
+        if (mSize < mCapacity)
+            mSize++;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,165 @@
+package org.opencv.android;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Opt-in tracer of the frame pipeline. Spans are recorded with begin() and end() on the thread
+ * doing the work and tagged with the current frame id and an optional face id.
+ * When enabled, the spans go into a FrameTraceRing that writeTo() saves as Trace Event JSON.
+ * Independently, the spans are emitted as android.os.Trace sections while systrace/Perfetto
+ * is capturing, so they also show up in system traces.
+ */
+public final class FrameTracer {
+
+    private static final String TAG = "FrameTracer";
+
+    /** Default number of events kept, enough for a few seconds of frames */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    public static final String SPAN_CAMERA_FRAME = "camera_frame";
+
+    // Deepest nesting of spans emitted as android.os.Trace sections, deeper spans are only recorded in the ring
+    private static final int MAX_SECTION_DEPTH = 64;
+
+    private static volatile FrameTraceRing sRing = null;
+    private static volatile int sFrameId = 0;
+
+    // Which of the open spans of a thread opened an android.os.Trace section, one bit per nesting level.
+    // end() closes a section only if its begin() opened one, so toggling systrace mid-span keeps them balanced.
+    private static final class OpenSpans {
+        long mSectionBits;
+        int mDepth;
+    }
+
+    private static final ThreadLocal<OpenSpans> sOpenSpans = new ThreadLocal<OpenSpans>() {
+        @Override
+        protected OpenSpans initialValue() {
+            return new OpenSpans();
+        }
+    };
+
+    private FrameTracer() {
+    }
+
+    /**
+     * Starts recording spans into a new ring of the given capacity
+     */
+    public static void enable(int capacity) {
+        sRing = new FrameTraceRing(capacity);
+        Log.i(TAG, "Frame tracing enabled, " + capacity + " events");
+    }
+
+    /**
+     * Stops recording spans and drops the recorded ones
+     */
+    public static void disable() {
+        sRing = null;
+    }
+
+    public static boolean isEnabled() {
+        return sRing != null;
+    }
+
+    /**
+     * Starts a new frame: the following spans are tagged with the returned id.
+     * Called by the camera view when a frame arrives.
+     */
+    public static int beginFrame() {
+        int id = sFrameId + 1;
+        sFrameId = id;
+        return id;
+    }
+
+    public static int getFrameId() {
+        return sFrameId;
+    }
+
+    /**
+     * Begins a span of the current frame, to be closed by end() on the same thread
+     * @param name - name of the span, expected to be a constant
+     */
+    public static void begin(String name) {
+        begin(name, -1);
+    }
+
+    /**
+     * Begins a span of the given face of the current frame, to be closed by end() on the same thread
+     * @param name - name of the span, expected to be a constant
+     * @param faceId - index of the face in the frame
+     */
+    public static void begin(String name, int faceId) {
+        OpenSpans spans = sOpenSpans.get();
+        if (spans.mDepth < MAX_SECTION_DEPTH && isSystraceEnabled()) {
+            Trace.beginSection(name);
+            spans.mSectionBits |= 1L << spans.mDepth;
+        }
+        spans.mDepth++;
+        FrameTraceRing ring = sRing;
+        if (ring != null)
+            ring.begin(name, sFrameId, faceId, System.nanoTime(), Thread.currentThread().getId());
+    }
+
+    /**
+     * Ends the innermost span begun on this thread
+     */
+    public static void end() {
+        FrameTraceRing ring = sRing;
+        if (ring != null)
+            ring.end(System.nanoTime(), Thread.currentThread().getId());
+        OpenSpans spans = sOpenSpans.get();
+        if (spans.mDepth == 0)
+            return;
+        spans.mDepth--;
+        if (spans.mDepth < MAX_SECTION_DEPTH) {
+            long bit = 1L << spans.mDepth;
+            if ((spans.mSectionBits & bit) != 0) {
+                Trace.endSection();
+                spans.mSectionBits &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded spans as Trace Event JSON, to be opened in Perfetto
+     * @return false if tracing is not enabled or the file could not be written
+     */
+    public static boolean writeTo(File file) {
+        FrameTraceRing ring = sRing;
+        if (ring == null) {
+            Log.w(TAG, "Frame tracing is not enabled");
+            return false;
+        }
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            ring.writeJson(writer);
+            Log.i(TAG, ring.size() + " trace events written to " + file.getAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write trace to " + file.getAbsolutePath(), e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not close " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+
+    private static boolean isSystraceEnabled() {
+        // Before Android Q there is no way to ask, beginSection() is a no-op when not tracing
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || Trace.isEnabled();
+    }
+}
@@ -0,0 +1,278 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.DirectMat;
+import org.opencv.core.Mat;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.Surface;
+
+/**
+ * Draws processed frames of CameraBridgeViewBase with OpenGL ES instead of a Canvas.
+ * The Mat is uploaded into a texture with glTexSubImage2D straight from a direct buffer and scaled
+ * to the surface by the GPU, using the shaders of CameraGLRendererBase. This avoids the conversion
+ * to a Bitmap and the software scaled blit of the Canvas path. A DirectMat is uploaded in place,
+ * any other Mat is first copied natively into a DirectMat kept by the renderer.
+ * The EGL context is made current once on the drawing thread and stays current there; the drawing
+ * thread calls detachThread() before it ends, so the renderer may then be released from another thread.
+ */
+class GLFrameRenderer {
+
+    private static final String TAG = "GLFrameRenderer";
+
+    // Mat rows go top to bottom, the quad goes bottom to top
+    private static final float VERTICES[] = {
+           -1, -1,
+           -1,  1,
+            1, -1,
+            1,  1 };
+    private static final float TEX_COORDS[] = {
+            0,  1,
+            0,  0,
+            1,  1,
+            1,  0 };
+
+    private EGLDisplay mDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext mContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface mSurface = EGL14.EGL_NO_SURFACE;
+
+    private int mProgram = 0;
+    private int mPositionLoc;
+    private int mTexCoordLoc;
+    private int mTextureLoc;
+    private int[] mTexture = {0};
+    private int mTextureWidth = 0;
+    private int mTextureHeight = 0;
+    private int mTextureFormat = 0;
+
+    private final FloatBuffer mVertexBuffer;
+    private final FloatBuffer mTexCoordBuffer;
+    // Upload source for the frames which are not a DirectMat, reused while the size and type do not change
+    private DirectMat mUploadMat;
+    // The thread the context is current on, null when it is not current
+    private Thread mCurrentThread;
+    private final int[] mSurfaceSize = new int[2];
+
+    GLFrameRenderer() {
+        int bytes = VERTICES.length * Float.SIZE / Byte.SIZE;
+        mVertexBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mTexCoordBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVertexBuffer.put(VERTICES).position(0);
+        mTexCoordBuffer.put(TEX_COORDS).position(0);
+    }
+
+    /**
+     * Creates the EGL context and window surface and builds the shader program.
+     * Once this succeeded, the surface can no longer be drawn with lockCanvas() until release().
+     * @param surface - the surface of the view
+     * @return false if OpenGL ES 2.0 rendering is not available
+     */
+    boolean init(Surface surface) {
+        mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (mDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mDisplay, version, 0, version, 1)) {
+            Log.e(TAG, "eglInitialize failed: " + EGL14.eglGetError());
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+
+        int[] configAttribs = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+                EGL14.EGL_NONE };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(mDisplay, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            Log.e(TAG, "eglChooseConfig failed: " + EGL14.eglGetError());
+            return false;
+        }
+
+        int[] contextAttribs = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+        mContext = EGL14.eglCreateContext(mDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        if (mContext == EGL14.EGL_NO_CONTEXT) {
+            Log.e(TAG, "eglCreateContext failed: " + EGL14.eglGetError());
+            return false;
+        }
+
+        int[] surfaceAttribs = { EGL14.EGL_NONE };
+        mSurface = EGL14.eglCreateWindowSurface(mDisplay, configs[0], surface, surfaceAttribs, 0);
+        if (mSurface == EGL14.EGL_NO_SURFACE) {
+            Log.e(TAG, "eglCreateWindowSurface failed: " + EGL14.eglGetError());
+            return false;
+        }
+
+        if (!makeCurrent())
+            return false;
+
+        mProgram = CameraGLRendererBase.loadShader(CameraGLRendererBase.vss, CameraGLRendererBase.fss2D);
+        if (mProgram == 0) {
+            detachThread();
+            return false;
+        }
+        mPositionLoc = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        mTexCoordLoc = GLES20.glGetAttribLocation(mProgram, "vTexCoord");
+        mTextureLoc = GLES20.glGetUniformLocation(mProgram, "sTexture");
+        GLES20.glEnableVertexAttribArray(mPositionLoc);
+        GLES20.glEnableVertexAttribArray(mTexCoordLoc);
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+
+        GLES20.glGenTextures(1, mTexture, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+        // stays current on the drawing thread, which called init()
+        Log.i(TAG, "OpenGL ES renderer initialized, EGL " + version[0] + "." + version[1]);
+        return true;
+    }
+
+    /**
+     * Uploads the frame and draws it centered on the surface.
+     * @param frame - 8 bit RGBA, RGB or gray scale frame
+     * @param scale - scale to apply, 0 to draw the frame unscaled (same meaning as mScale)
+     */
+    void draw(Mat frame, float scale) {
+        int format;
+        int type = frame.type();
+        if (type == CvType.CV_8UC4) {
+            format = GLES20.GL_RGBA;
+        } else if (type == CvType.CV_8UC3) {
+            format = GLES20.GL_RGB;
+        } else if (type == CvType.CV_8UC1) {
+            format = GLES20.GL_LUMINANCE;
+        } else {
+            Log.e(TAG, "Unsupported Mat type for drawing: " + frame);
+            return;
+        }
+
+        int width = frame.cols();
+        int height = frame.rows();
+        ByteBuffer pixels = getPixels(frame);
+
+        if (mCurrentThread != Thread.currentThread() && !makeCurrent())
+            return;
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        if (width != mTextureWidth || height != mTextureHeight || format != mTextureFormat) {
+            Log.d(TAG, "Allocating texture " + width + "x" + height);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, GLES20.GL_UNSIGNED_BYTE, null);
+            mTextureWidth = width;
+            mTextureHeight = height;
+            mTextureFormat = format;
+        }
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, format, GLES20.GL_UNSIGNED_BYTE, pixels);
+
+        EGL14.eglQuerySurface(mDisplay, mSurface, EGL14.EGL_WIDTH, mSurfaceSize, 0);
+        EGL14.eglQuerySurface(mDisplay, mSurface, EGL14.EGL_HEIGHT, mSurfaceSize, 1);
+        int surfaceWidth = mSurfaceSize[0];
+        int surfaceHeight = mSurfaceSize[1];
+
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        // Aspect fit: the quad covers the viewport, the texture sampler does the scaling
+        int drawWidth = scale != 0 ? (int) (scale * width) : width;
+        int drawHeight = scale != 0 ? (int) (scale * height) : height;
+        GLES20.glViewport((surfaceWidth - drawWidth) / 2, (surfaceHeight - drawHeight) / 2, drawWidth, drawHeight);
+
+        GLES20.glUseProgram(mProgram);
+        GLES20.glVertexAttribPointer(mPositionLoc, 2, GLES20.GL_FLOAT, false, 4*2, mVertexBuffer);
+        GLES20.glVertexAttribPointer(mTexCoordLoc, 2, GLES20.GL_FLOAT, false, 4*2, mTexCoordBuffer);
+        GLES20.glUniform1i(mTextureLoc, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        if (!EGL14.eglSwapBuffers(mDisplay, mSurface))
+            Log.e(TAG, "eglSwapBuffers failed: " + EGL14.eglGetError());
+    }
+
+    /**
+     * Releases the context from the calling thread, to be called by the drawing thread before it ends
+     */
+    void detachThread() {
+        if (mCurrentThread != Thread.currentThread())
+            return;
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglReleaseThread();
+        mCurrentThread = null;
+    }
+
+    // Returns a direct buffer holding the continuous pixels of the frame
+    private ByteBuffer getPixels(Mat frame) {
+        if (frame instanceof DirectMat) {
+            DirectMat direct = (DirectMat) frame;
+            if (direct.isBufferBacked() && direct.buffer().position() == 0)
+                return direct.buffer();
+        }
+        if (mUploadMat == null || mUploadMat.rows() != frame.rows() || mUploadMat.cols() != frame.cols()
+                || mUploadMat.type() != frame.type()) {
+            if (mUploadMat != null)
+                mUploadMat.release();
+            mUploadMat = new DirectMat(frame.rows(), frame.cols(), frame.type());
+        }
+        // native copy into the direct buffer, the pixels do not go through the Java heap
+        frame.copyTo(mUploadMat);
+        return mUploadMat.buffer();
+    }
+
+    /**
+     * Destroys the GL objects and the EGL context and disconnects from the surface.
+     * Must not be called while another thread is drawing.
+     */
+    void release() {
+        if (mDisplay == EGL14.EGL_NO_DISPLAY)
+            return;
+
+        if (mContext != EGL14.EGL_NO_CONTEXT && mSurface != EGL14.EGL_NO_SURFACE && makeCurrent()) {
+            if (mTexture[0] != 0)
+                GLES20.glDeleteTextures(1, mTexture, 0);
+            if (mProgram != 0)
+                GLES20.glDeleteProgram(mProgram);
+            EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        }
+        mCurrentThread = null;
+        if (mUploadMat != null) {
+            mUploadMat.release();
+            mUploadMat = null;
+        }
+        mTexture[0] = 0;
+        mProgram = 0;
+        mTextureWidth = mTextureHeight = mTextureFormat = 0;
+
+        if (mSurface != EGL14.EGL_NO_SURFACE)
+            EGL14.eglDestroySurface(mDisplay, mSurface);
+        if (mContext != EGL14.EGL_NO_CONTEXT)
+            EGL14.eglDestroyContext(mDisplay, mContext);
+        // the default display is shared with other EGL users of the process, so it is not terminated
+        EGL14.eglReleaseThread();
+
+        mSurface = EGL14.EGL_NO_SURFACE;
+        mContext = EGL14.EGL_NO_CONTEXT;
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+    }
+
+    private boolean makeCurrent() {
+        if (!EGL14.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)) {
+            Log.e(TAG, "eglMakeCurrent failed: " + EGL14.eglGetError());
+            return false;
+        }
+        mCurrentThread = Thread.currentThread();
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+package org.opencv.android;
+
+import org.opencv.core.Rect;
+
+/**
+ * Keeps the faces of the last few capture results keyed by their sensor timestamp, so that a frame
+ * gets the faces detected in that very frame rather than in whichever result came last.
+ * The slots keep their Rect objects and arrays, a slot only allocates when its face count grows or
+ * changes, so steady face counts record and look up without allocating.
+ * The returned arrays are owned by the ring and valid until the slot is reused, capacity results later.
+ * This class has no Android dependencies, so the matching can be tested off-device.
+ */
+public class HardwareFaceRing {
+
+    private static final Rect[] NO_FACES = new Rect[0];
+
+    private final long[] mTimestamps;
+    private final Rect[][] mFaces;
+    private int mNext = 0;
+    private int mSize = 0;
+
+    /**
+     * @param capacity - number of capture results kept, a few frames of latency between the image
+     *                   and its result
+     */
+    public HardwareFaceRing(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        mTimestamps = new long[capacity];
+        mFaces = new Rect[capacity][];
+        for (int i = 0; i < capacity; i++)
+            mFaces[i] = NO_FACES;
+    }
+
+    /**
+     * Records the faces of a capture result, replacing the oldest result
+     * @param timestampNanos - CaptureResult.SENSOR_TIMESTAMP of the result
+     * @param faces - the faces in frame coordinates, copied
+     * @param count - number of faces used in faces
+     */
+    public synchronized void put(long timestampNanos, Rect[] faces, int count) {
+        int slot = mNext;
+        Rect[] kept = mFaces[slot];
+        if (kept.length != count) {
+            Rect[] resized = count == 0 ? NO_FACES : new Rect[count];
+            for (int i = 0; i < count; i++)
+                resized[i] = i < kept.length ? kept[i] : new Rect();
+            kept = resized;
+            mFaces[slot] = kept;
+        }
+        for (int i = 0; i < count; i++) {
+            kept[i].x = faces[i].x;
+            kept[i].y = faces[i].y;
+            kept[i].width = faces[i].width;
+            kept[i].height = faces[i].height;
+        }
+        mTimestamps[slot] = timestampNanos;
+        mNext = (slot + 1) % mTimestamps.length;
+        if (mSize < mTimestamps.length)
+            mSize++;
+    }
+
+    /**
+     * Returns the faces of the frame with the given sensor timestamp (Image.getTimestamp()).
+     * When the result of that frame has not arrived yet, returns the faces of the latest earlier
+     * result, and no faces when there is none.
+     */
+    public synchronized Rect[] get(long timestampNanos) {
+        int earlier = -1;
+        for (int n = 0; n < mSize; n++) {
+            int i = (mNext - 1 - n + mTimestamps.length) % mTimestamps.length;
+            long t = mTimestamps[i];
+            if (t == timestampNanos)
+                return mFaces[i];
+            if (t < timestampNanos && (earlier < 0 || t > mTimestamps[earlier]))
+                earlier = i;
+        }
+        return earlier < 0 ? NO_FACES : mFaces[earlier];
+    }
+
+    /**
+     * Drops the recorded results, e.g. when the camera changes
+     */
+    public synchronized void clear() {
+        mNext = 0;
+        mSize = 0;
+    }
+}
@@ -1,30 +1,44 @@
 package org.opencv.android;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.ImageFormat;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.Face;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Range;
 import android.util.Log;
 import android.view.Surface;
-import android.view.ViewGroup.LayoutParams;
+import android.view.SurfaceHolder;
 
+import org.opencv.R;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
@@ -36,6 +50,13 @@ import org.opencv.imgproc.Imgproc;
  * disconnectCamera - closes the camera and stops preview.
  * When frame is delivered via callback from Camera - it processed via OpenCV to be
  * converted to RGBA32 and then passed to the external callback for modifications if required.
+ * In STREAM_MODE_DUAL the capture session has two targets instead: the surface of this view, which
+ * is composited by the hardware at display resolution, and a small ImageReader whose frames are only
+ * delivered for analysis. Results should then be drawn on a transparent overlay view. The view surface
+ * is first resized to the display stream size, the session is created once it has been.
+ * When hardware face detection is enabled and supported, the faces reported by the camera HAL are
+ * mapped into frame coordinates and returned by CvCameraViewFrame.hardwareFaces() of the frame whose
+ * sensor timestamp matches the capture result.
  */
 
 @TargetApi(21)
@@ -43,6 +64,18 @@ public class JavaCamera2View extends CameraBridgeViewBase {
 
     private static final String LOGTAG = "JavaCamera2View";
 
+    public static final int STREAM_MODE_SINGLE = 0;
+    public static final int STREAM_MODE_DUAL = 1;
+
+    public static final int DEFAULT_ANALYSIS_WIDTH = 640;
+    public static final int DEFAULT_ANALYSIS_HEIGHT = 480;
+
+    // aspect ratios closer than this are considered to show the same field of view
+    private static final double ASPECT_TOLERANCE = 0.01;
+
+    // longest wait of disconnectCamera() for a device being opened
+    private static final long OPEN_WAIT_MS = 1000;
+
     protected ImageReader mImageReader;
     protected int mPreviewFormat = ImageFormat.YUV_420_888;
     protected int mRequestTemplate = CameraDevice.TEMPLATE_PREVIEW;
@@ -51,18 +84,91 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     protected CameraDevice mCameraDevice;
     protected CameraCaptureSession mCaptureSession;
     protected CaptureRequest.Builder mPreviewRequestBuilder;
+    private CameraCaptureSession.CaptureCallback mCaptureCallback;
     protected String mCameraID;
     protected android.util.Size mPreviewSize = new android.util.Size(-1, -1);
+    protected android.util.Size mDisplaySize = new android.util.Size(-1, -1);
+    protected int mStreamMode = STREAM_MODE_SINGLE;
+
+    protected boolean mHardwareFaceDetection = false;
+    private int mFaceDetectMode = CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+    private android.graphics.Rect mActiveArraySize;
+    private final FaceRectMapper mFaceRectMapper = new FaceRectMapper();
+    // Faces of the last capture results by sensor timestamp, matched with the images by their timestamp
+    private final HardwareFaceRing mHardwareFaces = new HardwareFaceRing(4);
+    // Mapped faces of the current capture result, grown as needed and reused
+    private Rect[] mMappedFaces = new Rect[0];
+    private boolean mRealtimeTimestamps = false;
 
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
 
+    // Guards opening and closing the device between the background thread (camera switch, device
+    // callbacks) and disconnectCamera(). mSyncObject cannot be used: disconnectCamera() holds it
+    // while it joins the background thread.
+    private final Object mCameraLock = new Object();
+    // Set by disconnectCamera(): no device may be opened any more and an opened one is closed at once
+    private boolean mClosing = false;
+    // An openCamera() call whose device has not been reported by mStateCallback yet
+    private boolean mOpening = false;
+    // STREAM_MODE_DUAL: the view surface was given the display size with setFixedSize() and has not been
+    // resized yet. The capture session waits for it, created by surfaceChanged() instead of onOpened().
+    private boolean mSurfaceResizePending = false;
+
+    // CameraCharacteristics never change for a camera id, and the lookup is an IPC
+    private final Map<String, CameraCharacteristics> mCharacteristicsCache = new HashMap<String, CameraCharacteristics>();
+
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
     }
 
     public JavaCamera2View(Context context, AttributeSet attrs) {
         super(context, attrs);
+
+        TypedArray styledAttrs = getContext().obtainStyledAttributes(attrs, R.styleable.JavaCamera2View);
+        mStreamMode = styledAttrs.getInt(R.styleable.JavaCamera2View_stream_mode, STREAM_MODE_SINGLE);
+        mHardwareFaceDetection = styledAttrs.getBoolean(R.styleable.JavaCamera2View_hardware_face_detection, false);
+        styledAttrs.recycle();
+    }
+
+    /**
+     * Selects between converting and drawing every frame (STREAM_MODE_SINGLE) and a hardware
+     * preview plus low resolution analysis stream (STREAM_MODE_DUAL).
+     * Takes effect the next time the camera is connected.
+     * @param mode - STREAM_MODE_SINGLE or STREAM_MODE_DUAL
+     */
+    public void setStreamMode(int mode) {
+        if (mode != STREAM_MODE_SINGLE && mode != STREAM_MODE_DUAL)
+            throw new IllegalArgumentException("Unknown stream mode: " + mode);
+        mStreamMode = mode;
+    }
+
+    public int getStreamMode() {
+        return mStreamMode;
+    }
+
+    /**
+     * Returns the size of the hardware preview stream in STREAM_MODE_DUAL (in sensor orientation)
+     */
+    public android.util.Size getDisplaySize() {
+        return mDisplaySize;
+    }
+
+    /**
+     * Requests face detection from the camera HAL when the device supports it.
+     * Takes effect the next time the camera is connected.
+     * @param enabled - whether the camera should report faces
+     */
+    public void setHardwareFaceDetectionEnabled(boolean enabled) {
+        mHardwareFaceDetection = enabled;
+    }
+
+    /**
+     * Returns true if hardware face detection was requested and is supported by the connected camera.
+     * When false, CvCameraViewFrame.hardwareFaces() returns null and a software detector has to be used.
+     */
+    public boolean isHardwareFaceDetectionActive() {
+        return mHardwareFaceDetection && mFaceDetectMode != CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
     }
 
     private void startBackgroundThread() {
@@ -87,9 +193,21 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         }
     }
 
+    protected CameraCharacteristics getCameraCharacteristics(CameraManager manager, String cameraID) throws CameraAccessException {
+        synchronized (mCharacteristicsCache) {
+            CameraCharacteristics characteristics = mCharacteristicsCache.get(cameraID);
+            if (characteristics == null) {
+                characteristics = manager.getCameraCharacteristics(cameraID);
+                mCharacteristicsCache.put(cameraID, characteristics);
+            }
+            return characteristics;
+        }
+    }
+
     protected boolean selectCamera() {
         Log.i(LOGTAG, "selectCamera");
         CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+        mCameraID = null;
         try {
             String camList[] = manager.getCameraIdList();
             if (camList.length == 0) {
@@ -100,7 +218,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mCameraID = camList[0];
             } else {
                 for (String cameraID : camList) {
-                    CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraID);
+                    CameraCharacteristics characteristics = getCameraCharacteristics(manager, cameraID);
                     if ((mCameraIndex == CameraBridgeViewBase.CAMERA_ID_BACK &&
                             characteristics.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_BACK) ||
                         (mCameraIndex == CameraBridgeViewBase.CAMERA_ID_FRONT &&
@@ -135,20 +253,39 @@ public class JavaCamera2View extends CameraBridgeViewBase {
 
         @Override
         public void onOpened(CameraDevice cameraDevice) {
-            mCameraDevice = cameraDevice;
-            createCameraPreviewSession();
+            synchronized (mCameraLock) {
+                mOpening = false;
+                mCameraLock.notifyAll();
+                if (mClosing) {
+                    // the view was stopped while the device was opening
+                    cameraDevice.close();
+                    return;
+                }
+                mCameraDevice = cameraDevice;
+                createCameraPreviewSession();
+            }
         }
 
         @Override
         public void onDisconnected(CameraDevice cameraDevice) {
-            cameraDevice.close();
-            mCameraDevice = null;
+            synchronized (mCameraLock) {
+                mOpening = false;
+                mCameraLock.notifyAll();
+                cameraDevice.close();
+                if (mCameraDevice == cameraDevice) // may be a device closed by a camera switch
+                    mCameraDevice = null;
+            }
         }
 
         @Override
         public void onError(CameraDevice cameraDevice, int error) {
-            cameraDevice.close();
-            mCameraDevice = null;
+            synchronized (mCameraLock) {
+                mOpening = false;
+                mCameraLock.notifyAll();
+                cameraDevice.close();
+                if (mCameraDevice == cameraDevice)
+                    mCameraDevice = null;
+            }
         }
 
     };
@@ -168,7 +305,21 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
                             CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
 
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), null, mBackgroundHandler);
+                    CameraCaptureSession.CaptureCallback captureCallback = null;
+                    if (isHardwareFaceDetectionActive()) {
+                        mPreviewRequestBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, mFaceDetectMode);
+                        captureCallback = mFaceCaptureCallback;
+                    }
+                    mCaptureCallback = captureCallback;
+
+                    CaptureRateController controller = mCaptureRateController;
+                    int[] range = controller != null ? controller.getRequestedRange() : null;
+                    if (range != null) {
+                        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                                new Range<Integer>(range[0], range[1]));
+                    }
+
+                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), captureCallback, mBackgroundHandler);
                     Log.i(LOGTAG, "CameraPreviewSession has been started");
                 } catch (Exception e) {
                     Log.e(LOGTAG, "createCaptureSession failed", e);
@@ -182,6 +333,52 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         };
     }
 
+    private final CameraCaptureSession.CaptureCallback mFaceCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            Face[] faces = result.get(CaptureResult.STATISTICS_FACES);
+            android.graphics.Rect crop = result.get(CaptureResult.SCALER_CROP_REGION);
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (faces == null || timestamp == null)
+                return;
+            if (crop == null)
+                crop = mActiveArraySize;
+
+            mFaceRectMapper.setTransform(crop.left, crop.top, crop.width(), crop.height(),
+                    mPreviewSize.getWidth(), mPreviewSize.getHeight(), mFrameRotation);
+            if (mMappedFaces.length < faces.length) {
+                Rect[] grown = Arrays.copyOf(mMappedFaces, faces.length);
+                for (int i = mMappedFaces.length; i < grown.length; i++)
+                    grown[i] = new Rect();
+                mMappedFaces = grown;
+            }
+            int count = 0;
+            for (Face face : faces) {
+                android.graphics.Rect bounds = face.getBounds();
+                if (mFaceRectMapper.map(bounds.left, bounds.top, bounds.right, bounds.bottom, mMappedFaces[count]))
+                    count++;
+            }
+            mHardwareFaces.put(timestamp, mMappedFaces, count);
+        }
+    };
+
+    /**
+     * Picks the cheapest face detection mode the camera supports, or OFF
+     */
+    private int selectFaceDetectMode(CameraCharacteristics characteristics) {
+        int[] modes = characteristics.get(CameraCharacteristics.STATISTICS_INFO_AVAILABLE_FACE_DETECT_MODES);
+        int selected = CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+        if (modes != null) {
+            for (int mode : modes) {
+                if (mode == CaptureRequest.STATISTICS_FACE_DETECT_MODE_SIMPLE)
+                    return mode;
+                if (mode == CaptureRequest.STATISTICS_FACE_DETECT_MODE_FULL)
+                    selected = mode;
+            }
+        }
+        return selected;
+    }
+
     private void createCameraPreviewSession() {
         final int w = mPreviewSize.getWidth(), h = mPreviewSize.getHeight();
         Log.i(LOGTAG, "createCameraPreviewSession(" + w + "x" + h + ")");
@@ -196,11 +393,26 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 Log.e(LOGTAG, "createCameraPreviewSession: mCaptureSession is already started");
                 return;
             }
+            if (mStreamMode == STREAM_MODE_DUAL && mSurfaceResizePending) {
+                Log.d(LOGTAG, "createCameraPreviewSession: waiting for the view surface to be resized");
+                return;
+            }
 
-            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            if (mImageReader != null && mImageReader.getWidth() == w && mImageReader.getHeight() == h) {
+                Log.d(LOGTAG, "reusing ImageReader");
+            } else {
+                if (mImageReader != null)
+                    mImageReader.close();
+                mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            }
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
+                    long arrivalNanos = SystemClock.elapsedRealtimeNanos();
+
+                    CaptureRateController controller = mCaptureRateController;
+                    if (controller != null)
+                        controller.onFrameCaptured(System.nanoTime());
 
                     Image image = reader.acquireLatestImage();
                     if (image == null)
@@ -211,8 +423,18 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    RotatedCameraFrame tempFrame = new RotatedCameraFrame(new JavaCamera2Frame(image), mFrameRotation);
-                    deliverAndDrawFrame(tempFrame);
+                    long originNanos = mRealtimeTimestamps ? image.getTimestamp() : arrivalNanos;
+                    if (mFrameRecorder != null) {
+                        recordYuvFrame(image.getWidth(), image.getHeight(), mFrameRotation, image.getTimestamp(),
+                                planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+                    }
+                    RotatedCameraFrame tempFrame = new RotatedCameraFrame(
+                            new JavaCamera2Frame(image, originNanos, image.getTimestamp()), mFrameRotation);
+                    if (mStreamMode == STREAM_MODE_DUAL)
+                        deliverFrame(tempFrame);
+                    else
+                        deliverAndDrawFrame(tempFrame);
                     tempFrame.mFrame.release();
                     tempFrame.release();
                     image.close();
@@ -223,7 +445,17 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             mPreviewRequestBuilder = mCameraDevice.createCaptureRequest(mRequestTemplate);
             mPreviewRequestBuilder.addTarget(surface);
 
-            mCameraDevice.createCaptureSession(Arrays.asList(surface),
+            List<Surface> targets;
+            if (mStreamMode == STREAM_MODE_DUAL) {
+                // the view surface is fed by the camera and composited without touching the CPU
+                Surface previewSurface = getHolder().getSurface();
+                mPreviewRequestBuilder.addTarget(previewSurface);
+                targets = Arrays.asList(surface, previewSurface);
+            } else {
+                targets = Arrays.asList(surface);
+            }
+
+            mCameraDevice.createCaptureSession(targets,
                                                allocateSessionStateCallback(), null);
         } catch (CameraAccessException e) {
             Log.e(LOGTAG, "createCameraPreviewSession", e);
@@ -234,16 +466,42 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     protected void disconnectCamera() {
         Log.i(LOGTAG, "close camera");
         try {
-            CameraDevice c = mCameraDevice;
-            mCameraDevice = null;
-            if (null != mCaptureSession) {
-                mCaptureSession.close();
-                mCaptureSession = null;
-            }
-            if (null != c) {
-                c.close();
+            synchronized (mCameraLock) {
+                mClosing = true;
+                // a device still opening is closed by onOpened(), which has to run before the thread quits
+                long deadline = SystemClock.elapsedRealtime() + OPEN_WAIT_MS;
+                long remaining = OPEN_WAIT_MS;
+                while (mOpening && remaining > 0) {
+                    mCameraLock.wait(remaining);
+                    remaining = deadline - SystemClock.elapsedRealtime();
+                }
+                if (mOpening)
+                    Log.w(LOGTAG, "camera still opening after " + OPEN_WAIT_MS + " ms");
+                mSurfaceResizePending = false;
+
+                CameraDevice c = mCameraDevice;
+                mCameraDevice = null;
+                if (null != mCaptureSession) {
+                    mCaptureSession.close();
+                    mCaptureSession = null;
+                }
+                if (null != c) {
+                    c.close();
+                }
             }
+        } catch (InterruptedException e) {
+            Log.e(LOGTAG, "disconnectCamera interrupted", e);
         } finally {
+            Handler handler = mBackgroundHandler;
+            if (handler != null) {
+                // frames are drawn on the background thread, it runs this before quitting
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFrameThreadExit();
+                    }
+                });
+            }
             stopBackgroundThread();
             if (null != mImageReader) {
                 mImageReader.close();
@@ -275,11 +533,18 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         }
         CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
         try {
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(mCameraID);
+            CameraCharacteristics characteristics = getCameraCharacteristics(manager, mCameraID);
             StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             android.util.Size[] sizes = map.getOutputSizes(ImageReader.class);
             List<android.util.Size> sizes_list = Arrays.asList(sizes);
-            Size frameSize = calculateCameraFrameSize(sizes_list, new JavaCameraSizeAccessor(), width, height);
+            Size frameSize;
+            if (mStreamMode == STREAM_MODE_DUAL) {
+                mDisplaySize = selectDisplaySize(map.getOutputSizes(SurfaceHolder.class), width, height);
+                Log.i(LOGTAG, "Selected display stream size " + mDisplaySize.getWidth() + "x" + mDisplaySize.getHeight());
+                frameSize = selectAnalysisSize(sizes_list, mDisplaySize);
+            } else {
+                frameSize = calculateCameraFrameSize(sizes_list, new JavaCameraSizeAccessor(), width, height);
+            }
             Log.i(LOGTAG, "Selected preview size to " + Integer.valueOf((int)frameSize.width) + "x" + Integer.valueOf((int)frameSize.height));
             assert(!(frameSize.width == 0 || frameSize.height == 0));
             if (mPreviewSize.getWidth() == frameSize.width && mPreviewSize.getHeight() == frameSize.height)
@@ -298,33 +563,180 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return false;
     }
 
+    /**
+     * Picks the largest hardware preview size which fits the view (orientation-agnostic, since
+     * sensor sizes are landscape) and whose aspect ratio is closest to it.
+     */
+    private android.util.Size selectDisplaySize(android.util.Size[] sizes, int width, int height) {
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        double viewAspect = shortSide > 0 ? (double) longSide / shortSide : 0;
+
+        android.util.Size best = null;
+        double bestAspectDiff = Double.MAX_VALUE;
+        for (android.util.Size size : sizes) {
+            int sizeLong = Math.max(size.getWidth(), size.getHeight());
+            int sizeShort = Math.min(size.getWidth(), size.getHeight());
+            if (sizeLong > longSide || sizeShort > shortSide || sizeShort == 0)
+                continue;
+            double aspectDiff = Math.abs((double) sizeLong / sizeShort - viewAspect);
+            if (best == null || aspectDiff < bestAspectDiff - ASPECT_TOLERANCE ||
+                    (Math.abs(aspectDiff - bestAspectDiff) <= ASPECT_TOLERANCE &&
+                     size.getWidth() * size.getHeight() > best.getWidth() * best.getHeight())) {
+                best = size;
+                bestAspectDiff = aspectDiff;
+            }
+        }
+        if (best == null && sizes.length > 0) {
+            Log.i(LOGTAG, "fallback to the first display stream size");
+            best = sizes[0];
+        }
+        return best;
+    }
+
+    /**
+     * Picks the analysis stream size with the resolution policy (or the default analysis target),
+     * among the sizes with the same field of view as the display stream so overlays line up.
+     */
+    private Size selectAnalysisSize(List<android.util.Size> sizes, android.util.Size displaySize) {
+        List<android.util.Size> candidates = new ArrayList<android.util.Size>();
+        double displayAspect = (double) displaySize.getWidth() / displaySize.getHeight();
+        for (android.util.Size size : sizes) {
+            if (Math.abs((double) size.getWidth() / size.getHeight() - displayAspect) <= ASPECT_TOLERANCE)
+                candidates.add(size);
+        }
+        if (candidates.isEmpty()) {
+            Log.w(LOGTAG, "No analysis size matches the display aspect ratio");
+            candidates = sizes;
+        }
+
+        ResolutionPolicy policy = mResolutionPolicy;
+        if (policy == null)
+            policy = new ResolutionPolicy(DEFAULT_ANALYSIS_WIDTH, DEFAULT_ANALYSIS_HEIGHT);
+        return policy.selectFrameSize(candidates, new JavaCameraSizeAccessor(),
+                displaySize.getWidth(), displaySize.getHeight(), mMaxWidth, mMaxHeight);
+    }
+
+    /**
+     * Reads the selected camera characteristics and computes rotation, frame sizes and scale.
+     * @return true if the preview size changed and the capture session has to be recreated
+     */
+    private boolean configureCamera(CameraManager manager, int width, int height) throws CameraAccessException {
+        CameraCharacteristics characteristics = getCameraCharacteristics(manager, mCameraID);
+        mFrameRotation = getFrameRotation(
+                characteristics.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT,
+                characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION));
+
+        mHardwareFaces.clear();
+        mActiveArraySize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        mFaceDetectMode = mHardwareFaceDetection && mActiveArraySize != null ?
+                selectFaceDetectMode(characteristics) : CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+        if (mHardwareFaceDetection)
+            Log.i(LOGTAG, "Hardware face detection mode: " + mFaceDetectMode);
+
+        // sensor timestamps can only be compared with the system clock in the realtime time base
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        mRealtimeTimestamps = timestampSource != null &&
+                timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+
+        mCaptureRateController = null;
+        if (mCaptureRateMatching) {
+            Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            if (fpsRanges != null && fpsRanges.length > 0) {
+                int[][] ranges = new int[fpsRanges.length][];
+                for (int i = 0; i < fpsRanges.length; i++)
+                    ranges[i] = new int[] { fpsRanges[i].getLower(), fpsRanges[i].getUpper() };
+                mCaptureRateController = new CaptureRateController(ranges);
+            }
+        }
+
+        boolean needReconfig = calcPreviewSize(width, height);
+        if (mFrameRotation % 180 == 0) {
+            mFrameWidth = mPreviewSize.getWidth();
+            mFrameHeight = mPreviewSize.getHeight();
+        } else {
+            mFrameWidth = mPreviewSize.getHeight();
+            mFrameHeight = mPreviewSize.getWidth();
+        }
+
+        if (mStreamMode == STREAM_MODE_DUAL) {
+            // the camera renders the view surface, it has to use one of the supported sizes
+            mScale = 0;
+            final int displayWidth = mDisplaySize.getWidth();
+            final int displayHeight = mDisplaySize.getHeight();
+            android.graphics.Rect surfaceFrame = getHolder().getSurfaceFrame();
+            boolean resize = surfaceFrame.width() != displayWidth || surfaceFrame.height() != displayHeight;
+            synchronized (mCameraLock) {
+                mSurfaceResizePending = resize;
+            }
+            if (!resize) {
+                Log.d(LOGTAG, "View surface already has the display size");
+            } else if (Looper.myLooper() == Looper.getMainLooper()) {
+                getHolder().setFixedSize(displayWidth, displayHeight);
+            } else {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        getHolder().setFixedSize(displayWidth, displayHeight);
+                    }
+                });
+            }
+        } else {
+            mScale = calculateDisplayScale(width, height);
+            AllocateCache();
+        }
+
+        if (mFpsMeter != null) {
+            mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+            if (mResolutionPolicy != null)
+                mFpsMeter.setDisplayResolution(width, height);
+        }
+
+        return needReconfig;
+    }
+
+    /**
+     * In STREAM_MODE_DUAL, the resize requested by configureCamera() creates the capture session on the
+     * camera already opened, the base class would restart the camera for it.
+     */
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        if (mStreamMode == STREAM_MODE_DUAL) {
+            synchronized (mCameraLock) {
+                if (mSurfaceResizePending && width == mDisplaySize.getWidth() && height == mDisplaySize.getHeight()) {
+                    Log.d(LOGTAG, "View surface resized to " + width + "x" + height);
+                    mSurfaceResizePending = false;
+                    Handler handler = mBackgroundHandler;
+                    if (mCameraDevice != null && handler != null) {
+                        // the device was opened while waiting for the resize
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                synchronized (mCameraLock) {
+                                    if (!mClosing)
+                                        createCameraPreviewSession();
+                                }
+                            }
+                        });
+                    }
+                    return;
+                }
+            }
+        }
+        super.surfaceChanged(holder, format, width, height);
+    }
+
     @Override
     protected boolean connectCamera(int width, int height) {
         Log.i(LOGTAG, "setCameraPreviewSize(" + width + "x" + height + ")");
         startBackgroundThread();
+        synchronized (mCameraLock) {
+            mClosing = false;
+        }
         selectCamera();
         try {
             CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(mCameraID);
-            mFrameRotation = getFrameRotation(
-                    characteristics.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT,
-                    characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION));
-
-            boolean needReconfig = calcPreviewSize(width, height);
-            if (mFrameRotation % 180 == 0) {
-                mFrameWidth = mPreviewSize.getWidth();
-                mFrameHeight = mPreviewSize.getHeight();
-            } else {
-                mFrameWidth = mPreviewSize.getHeight();
-                mFrameHeight = mPreviewSize.getWidth();
-            }
-
-            if ((getLayoutParams().width == LayoutParams.MATCH_PARENT) && (getLayoutParams().height == LayoutParams.MATCH_PARENT))
-                mScale = Math.min(((float)height)/mFrameHeight, ((float)width)/mFrameWidth);
-            else
-                mScale = 0;
-
-            AllocateCache();
+            boolean needReconfig = configureCamera(manager, width, height);
 
             if (needReconfig) {
                 if (null != mCaptureSession) {
@@ -334,12 +746,8 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 }
             }
 
-            if (mFpsMeter != null) {
-                mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
-            }
-
             Log.i(LOGTAG, "Opening camera: " + mCameraID);
-            manager.openCamera(mCameraID, mStateCallback, mBackgroundHandler);
+            openCamera(manager);
         } catch (CameraAccessException e) {
             Log.e(LOGTAG, "OpenCamera - Camera Access Exception", e);
         } catch (RuntimeException e) {
@@ -348,6 +756,91 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
+    @Override
+    protected void applyCaptureRate(int minFps, int maxFps) {
+        if (null == mCaptureSession || null == mPreviewRequestBuilder)
+            return;
+        try {
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<Integer>(minFps, maxFps));
+            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mCaptureCallback, mBackgroundHandler);
+        } catch (CameraAccessException e) {
+            Log.e(LOGTAG, "applyCaptureRate - Camera Access Exception", e);
+        } catch (IllegalStateException e) {
+            Log.e(LOGTAG, "applyCaptureRate - session is closed", e);
+        }
+    }
+
+    @Override
+    protected boolean switchCameraDevice(final int width, final int height) {
+        Handler handler = mBackgroundHandler;
+        if (handler == null)
+            return false;
+
+        // run on the background thread, between two frames, so nothing is in use while switching
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                reopenCamera(width, height);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Closes the current camera device and opens mCameraIndex, keeping the background thread,
+     * the ImageReader (when the size is unchanged) and the cache bitmap.
+     * Does nothing once disconnectCamera() has started, the switch is then dropped with the view.
+     */
+    private void reopenCamera(int width, int height) {
+        synchronized (mCameraLock) {
+            if (mClosing) {
+                Log.i(LOGTAG, "reopenCamera: camera is closing, switch dropped");
+                return;
+            }
+            Log.i(LOGTAG, "reopenCamera(" + width + "x" + height + ")");
+            int previousWidth = mFrameWidth;
+            int previousHeight = mFrameHeight;
+
+            CameraDevice c = mCameraDevice;
+            mCameraDevice = null;
+            if (null != mCaptureSession) {
+                mCaptureSession.close();
+                mCaptureSession = null;
+            }
+            if (null != c) {
+                c.close();
+            }
+
+            if (!selectCamera())
+                return;
+            try {
+                CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+                configureCamera(manager, width, height);
+                onCameraSwitched(previousWidth, previousHeight);
+
+                Log.i(LOGTAG, "Opening camera: " + mCameraID);
+                openCamera(manager);
+            } catch (CameraAccessException e) {
+                Log.e(LOGTAG, "reopenCamera - Camera Access Exception", e);
+            } catch (SecurityException e) {
+                Log.e(LOGTAG, "reopenCamera - Security Exception", e);
+            }
+        }
+    }
+
+    // Opens mCameraID on the background thread, disconnectCamera() waits for the device to be reported
+    private void openCamera(CameraManager manager) throws CameraAccessException {
+        synchronized (mCameraLock) {
+            mOpening = true;
+            try {
+                manager.openCamera(mCameraID, mStateCallback, mBackgroundHandler);
+            } catch (CameraAccessException | RuntimeException e) {
+                mOpening = false;
+                throw e;
+            }
+        }
+    }
+
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
@@ -357,12 +850,31 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             assert(planes[0].getPixelStride() == 1);
             ByteBuffer y_plane = planes[0].getBuffer();
             int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            if (mGray == null) {
+                mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+                // Owned by the frame, not by a scope the caller may have opened
+                MatScope scope = MatScope.current();
+                if (scope != null)
+                    scope.detach(mGray);
+            }
             return mGray;
         }
 
         @Override
         public Mat rgba() {
+            long start = System.nanoTime();
+            FrameTracer.begin(PipelineMetrics.STAGE_CONVERT);
+            Mat rgba;
+            // The Y/UV wrappers are released here rather than by the finalizer
+            try (MatScope scope = MatScope.open()) {
+                rgba = scope.detach(convertToRgba());
+            }
+            FrameTracer.end();
+            recordStage(PipelineMetrics.STAGE_CONVERT, start);
+            return rgba;
+        }
+
+        private Mat convertToRgba() {
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
@@ -382,6 +894,8 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
                 Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
                 long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
+                if (mRgba == null)
+                    mRgba = mMatPool.lease(h, w, CvType.CV_8UC4);
                 if (addr_diff > 0) {
                     assert(addr_diff == 1);
                     Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
@@ -441,28 +955,48 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     }
                 }
 
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
+                Mat yuv_mat = mMatPool.lease(h+h/2, w, CvType.CV_8UC1);
                 yuv_mat.put(0, 0, yuv_bytes);
+                if (mRgba == null)
+                    mRgba = mMatPool.lease(h, w, CvType.CV_8UC4);
                 Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                mMatPool.recycle(yuv_mat);
                 return mRgba;
             }
         }
 
 
-        public JavaCamera2Frame(Image image) {
+        @Override
+        public Rect[] hardwareFaces() {
+            return mFaces;
+        }
+
+        @Override
+        public long timestampNanos() {
+            return mTimestampNanos;
+        }
+
+        public JavaCamera2Frame(Image image, long timestampNanos, long sensorTimestampNanos) {
             super();
             mImage = image;
-            mRgba = new Mat();
-            mGray = new Mat();
+            mTimestampNanos = timestampNanos;
+            mFaces = isHardwareFaceDetectionActive() ? mHardwareFaces.get(sensorTimestampNanos) : null;
+            mRgba = null;
+            mGray = null;
         }
 
         @Override
         public void release() {
-            mRgba.release();
-            mGray.release();
+            // the RGBA buffer goes back to the pool for the next frames
+            mMatPool.recycle(mRgba);
+            mRgba = null;
+            if (mGray != null)
+                mGray.release();
         }
 
         private Image mImage;
+        private Rect[] mFaces;
+        private long mTimestampNanos;
         private Mat mRgba;
         private Mat mGray;
     };
@@ -8,10 +8,10 @@ import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.PreviewCallback;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Surface;
-import android.view.ViewGroup.LayoutParams;
 import android.view.WindowManager;
 
 import org.opencv.BuildConfig;
@@ -38,8 +38,14 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     private byte mBuffer[];
     private Mat[] mFrameChain;
     private int mChainIdx = 0;
+    private final long[] mFrameTimestamps = new long[2];
     private Thread mThread;
     private boolean mStopThread;
+    private boolean mSwitchRequested;
+    private int mSwitchWidth;
+    private int mSwitchHeight;
+    private int mFrameRotation = -1;
+    private List<int[]> mFpsRanges;
 
     protected Camera mCamera;
     protected RotatedCameraFrame[] mCameraFrame;
@@ -168,6 +174,20 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH && !android.os.Build.MODEL.equals("GT-I9100"))
                         params.setRecordingHint(true);
 
+                    mCaptureRateController = null;
+                    List<int[]> fpsRanges = params.getSupportedPreviewFpsRange();
+                    mFpsRanges = fpsRanges;
+                    if (mCaptureRateMatching && fpsRanges != null && !fpsRanges.isEmpty()) {
+                        /* Camera.Parameters ranges are scaled by 1000 */
+                        int[][] ranges = new int[fpsRanges.size()][];
+                        for (int i = 0; i < ranges.length; i++) {
+                            int[] range = fpsRanges.get(i);
+                            ranges[i] = new int[] { range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000,
+                                                    range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000 };
+                        }
+                        mCaptureRateController = new CaptureRateController(ranges);
+                    }
+
                     List<String> FocusModes = params.getSupportedFocusModes();
                     if (FocusModes != null && FocusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO))
                     {
@@ -188,31 +208,41 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                         mFrameHeight = params.getPreviewSize().width;
                     }
 
-                    if ((getLayoutParams().width == LayoutParams.MATCH_PARENT) && (getLayoutParams().height == LayoutParams.MATCH_PARENT))
-                        mScale = Math.min(((float)height)/mFrameHeight, ((float)width)/mFrameWidth);
-                    else
-                        mScale = 0;
+                    mScale = calculateDisplayScale(width, height);
 
                     if (mFpsMeter != null) {
                         mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+                        if (mResolutionPolicy != null)
+                            mFpsMeter.setDisplayResolution(width, height);
                     }
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
+                    if (mBuffer == null || mBuffer.length != size)
+                        mBuffer = new byte[size];
 
                     mCamera.addCallbackBuffer(mBuffer);
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(rawFrameHeight + (rawFrameHeight/2), rawFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(rawFrameHeight + (rawFrameHeight/2), rawFrameWidth, CvType.CV_8UC1);
+                    // frames survive a camera switch when the new camera has the same size and rotation
+                    boolean reuseFrames = mFrameChain != null && mCameraFrame != null && mFrameRotation == frameRotation &&
+                            mFrameChain[0].rows() == rawFrameHeight + (rawFrameHeight/2) && mFrameChain[0].cols() == rawFrameWidth;
+                    if (!reuseFrames) {
+                        releaseFrames();
 
-                    AllocateCache();
+                        mFrameChain = new Mat[2];
+                        mFrameChain[0] = new Mat(rawFrameHeight + (rawFrameHeight/2), rawFrameWidth, CvType.CV_8UC1);
+                        mFrameChain[1] = new Mat(rawFrameHeight + (rawFrameHeight/2), rawFrameWidth, CvType.CV_8UC1);
 
-                    mCameraFrame = new RotatedCameraFrame[2];
-                    mCameraFrame[0] = new RotatedCameraFrame(new JavaCameraFrame(mFrameChain[0], rawFrameWidth, rawFrameHeight), frameRotation);
-                    mCameraFrame[1] = new RotatedCameraFrame(new JavaCameraFrame(mFrameChain[1], rawFrameWidth, rawFrameHeight), frameRotation);
+                        mCameraFrame = new RotatedCameraFrame[2];
+                        mCameraFrame[0] = new RotatedCameraFrame(new JavaCameraFrame(mFrameChain[0], rawFrameWidth, rawFrameHeight, 0), frameRotation);
+                        mCameraFrame[1] = new RotatedCameraFrame(new JavaCameraFrame(mFrameChain[1], rawFrameWidth, rawFrameHeight, 1), frameRotation);
+                        mFrameRotation = frameRotation;
+                    } else {
+                        Log.d(TAG, "reusing frame buffers");
+                    }
+
+                    AllocateCache();
 
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
@@ -237,24 +267,34 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     protected void releaseCamera() {
         synchronized (this) {
-            if (mCamera != null) {
-                mCamera.stopPreview();
-                mCamera.setPreviewCallback(null);
+            stopCamera();
+            releaseFrames();
+        }
+    }
 
-                mCamera.release();
-            }
-            mCamera = null;
-            if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
-            }
-            if (mCameraFrame != null) {
-                mCameraFrame[0].mFrame.release();
-                mCameraFrame[0].release();
-                mCameraFrame[1].mFrame.release();
-                mCameraFrame[1].release();
-            }
+    private void stopCamera() {
+        if (mCamera != null) {
+            mCamera.stopPreview();
+            mCamera.setPreviewCallback(null);
+
+            mCamera.release();
         }
+        mCamera = null;
+    }
+
+    private void releaseFrames() {
+        if (mFrameChain != null) {
+            mFrameChain[0].release();
+            mFrameChain[1].release();
+        }
+        if (mCameraFrame != null) {
+            mCameraFrame[0].mFrame.release();
+            mCameraFrame[0].release();
+            mCameraFrame[1].mFrame.release();
+            mCameraFrame[1].release();
+        }
+        mFrameChain = null;
+        mCameraFrame = null;
     }
 
     private boolean mCameraFrameReady = false;
@@ -275,12 +315,72 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
+        mSwitchRequested = false;
         mThread = new Thread(new CameraWorker());
         mThread.start();
 
         return true;
     }
 
+    @Override
+    protected void applyCaptureRate(int minFps, int maxFps) {
+        synchronized (this) {
+            if (mCamera == null)
+                return;
+            try {
+                /* Find the supported range the controller picked, in Camera.Parameters units */
+                for (int[] range : mFpsRanges) {
+                    if (range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000 == minFps &&
+                            range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000 == maxFps) {
+                        Camera.Parameters params = mCamera.getParameters();
+                        params.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                                                  range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+                        mCamera.setParameters(params);
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to set preview fps range: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Override
+    protected boolean switchCameraDevice(int width, int height) {
+        synchronized (this) {
+            if (mThread == null)
+                return false;
+
+            /* The processing thread switches the camera between two frames */
+            mSwitchWidth = width;
+            mSwitchHeight = height;
+            mSwitchRequested = true;
+            this.notify();
+        }
+        return true;
+    }
+
+    /**
+     * Called on the processing thread: opens camera mCameraIndex while keeping the thread,
+     * the frame buffers and the cache bitmap when their size still matches
+     */
+    private void reopenCamera(int width, int height) {
+        Log.d(TAG, "Switching camera");
+        int previousWidth = mFrameWidth;
+        int previousHeight = mFrameHeight;
+
+        synchronized (this) {
+            stopCamera();
+            mCameraFrameReady = false;
+        }
+
+        if (!initializeCamera(width, height)) {
+            Log.e(TAG, "Camera switch failed");
+            return;
+        }
+        onCameraSwitched(previousWidth, previousHeight);
+    }
+
     @Override
     protected void disconnectCamera() {
         /* 1. We need to stop thread which updating the frames
@@ -310,13 +410,28 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
+        // Camera1 does not report sensor timestamps, the arrival time is the closest origin
+        long arrivalNanos = SystemClock.elapsedRealtimeNanos();
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
+        CaptureRateController controller = mCaptureRateController;
+        if (controller != null)
+            controller.onFrameCaptured(System.nanoTime());
+
+        int rawFrameWidth;
+        int rawFrameHeight;
         synchronized (this) {
+            if (mFrameChain == null)
+                return; // late callback of a released camera
             mFrameChain[mChainIdx].put(0, 0, frame);
+            mFrameTimestamps[mChainIdx] = arrivalNanos;
             mCameraFrameReady = true;
+            rawFrameWidth = mFrameChain[mChainIdx].cols();
+            rawFrameHeight = mFrameChain[mChainIdx].rows() * 2 / 3;
             this.notify();
         }
+        // the buffer is given back to the camera right after, it must be recorded first
+        recordPackedFrame(mPreviewFormat, frame, rawFrameWidth, rawFrameHeight, mFrameRotation, arrivalNanos);
         if (mCamera != null)
             mCamera.addCallbackBuffer(mBuffer);
     }
@@ -329,20 +444,35 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         @Override
         public Mat rgba() {
-            if (mPreviewFormat == ImageFormat.NV21)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
-            else if (mPreviewFormat == ImageFormat.YV12)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
-            else
-                throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
+            long start = System.nanoTime();
+            FrameTracer.begin(PipelineMetrics.STAGE_CONVERT);
+            try {
+                if (mPreviewFormat == ImageFormat.NV21)
+                    Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                else if (mPreviewFormat == ImageFormat.YV12)
+                    Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
+                else
+                    throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
+            } finally {
+                FrameTracer.end();
+            }
+            recordStage(PipelineMetrics.STAGE_CONVERT, start);
 
             return mRgba;
         }
 
-        public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
+        @Override
+        public long timestampNanos() {
+            synchronized (JavaCameraView.this) {
+                return mFrameTimestamps[mChainIndex];
+            }
+        }
+
+        public JavaCameraFrame(Mat Yuv420sp, int width, int height, int chainIndex) {
             super();
             mWidth = width;
             mHeight = height;
+            mChainIndex = chainIndex;
             mYuvFrameData = Yuv420sp;
             mRgba = new Mat();
         }
@@ -356,6 +486,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         private Mat mRgba;
         private int mWidth;
         private int mHeight;
+        private int mChainIndex;
     };
 
     private class CameraWorker implements Runnable {
@@ -364,15 +495,20 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         public void run() {
             do {
                 boolean hasFrame = false;
+                boolean switchCamera = false;
                 synchronized (JavaCameraView.this) {
                     try {
-                        while (!mCameraFrameReady && !mStopThread) {
+                        while (!mCameraFrameReady && !mStopThread && !mSwitchRequested) {
                             JavaCameraView.this.wait();
                         }
                     } catch (InterruptedException e) {
                         e.printStackTrace();
                     }
-                    if (mCameraFrameReady)
+                    if (mSwitchRequested) {
+                        mSwitchRequested = false;
+                        switchCamera = true;
+                    }
+                    else if (mCameraFrameReady)
                     {
                         mChainIdx = 1 - mChainIdx;
                         mCameraFrameReady = false;
@@ -380,11 +516,16 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     }
                 }
 
+                if (!mStopThread && switchCamera) {
+                    reopenCamera(mSwitchWidth, mSwitchHeight);
+                }
+
                 if (!mStopThread && hasFrame) {
                     if (!mFrameChain[1 - mChainIdx].empty())
                         deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
                 }
             } while (!mStopThread);
+            onFrameThreadExit();
             Log.d(TAG, "Finish processing thread");
         }
     }
@@ -0,0 +1,141 @@
+package org.opencv.android;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed memory histogram of latencies with logarithmic buckets.
+ * Values are kept in microseconds: exactly below 16 us, then in 8 buckets per power of two,
+ * which bounds the relative error of the percentiles to about 6% from 1 us up to several hours.
+ * Recording does not allocate, so it can be used on every frame.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;      // log2(LINEAR_BUCKETS)
+    private static final int MAX_EXPONENT = 35;     // ~9.5 hours
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final String mName;
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount = 0;
+    private long mSumNanos = 0;
+    private long mMaxNanos = 0;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records a latency
+     * @param nanos - the latency in nanoseconds, negative values are recorded as 0
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        mCounts[bucketOf(nanos / 1000)]++;
+        mCount++;
+        mSumNanos += nanos;
+        if (nanos > mMaxNanos)
+            mMaxNanos = nanos;
+    }
+
+    /**
+     * Records the time elapsed since startNanos, as returned by System.nanoTime()
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSumNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the given percentile in nanoseconds, 0 if nothing was recorded
+     * @param percentile - between 0 and 100
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * mCount);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.min(bucketMidpointMicros(i) * 1000, mMaxNanos);
+        }
+        return mMaxNanos;
+    }
+
+    /**
+     * Returns a consistent copy of the statistics
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(mName, mCount, mCount > 0 ? mSumNanos / mCount : 0,
+                getPercentile(50), getPercentile(95), getPercentile(99), mMaxNanos);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS)
+            return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int sub = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketMidpointMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS)
+            return bucket;
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + MIN_EXPONENT;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+
+    /**
+     * Statistics of one stage at the time snapshot() was called, in nanoseconds
+     */
+    public static class Snapshot {
+        public final String name;
+        public final long count;
+        public final long meanNanos;
+        public final long p50Nanos;
+        public final long p95Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        public Snapshot(String name, long count, long meanNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.name = name;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s p50 %.1f p95 %.1f p99 %.1f max %.1f ms",
+                    name, p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.opencv.android;
+
+import java.util.Arrays;
+
+/**
+ * Rolling distribution of the last latency samples, e.g. from sensor exposure to display.
+ * Unlike LatencyHistogram it forgets old samples, so it follows the current conditions.
+ * Both the sample ring and the sort buffer are preallocated.
+ */
+public class LatencyWindow {
+
+    private final long[] mSamples;
+    private final long[] mSorted;
+    private int mNext = 0;
+    private int mSize = 0;
+    private long mLast = 0;
+
+    /**
+     * @param capacity - number of most recent samples kept
+     */
+    public LatencyWindow(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        mSamples = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        mSamples[mNext] = nanos;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mSize < mSamples.length)
+            mSize++;
+        mLast = nanos;
+    }
+
+    /**
+     * Returns the most recent sample in nanoseconds, 0 if there is none
+     */
+    public synchronized long getLast() {
+        return mLast;
+    }
+
+    /**
+     * Returns the given percentile of the samples in the window in nanoseconds, 0 if there is none
+     * @param percentile - between 0 and 100
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mSize == 0)
+            return 0;
+        System.arraycopy(mSamples, 0, mSorted, 0, mSize);
+        Arrays.sort(mSorted, 0, mSize);
+        int rank = (int) Math.ceil(percentile / 100.0 * mSize);
+        return mSorted[Math.max(0, Math.min(mSize - 1, rank - 1))];
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mNext = 0;
+        mSize = 0;
+        mLast = 0;
+    }
+}
@@ -0,0 +1,46 @@
+package org.opencv.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Draws the per-stage latency breakdown of a PipelineMetrics on a Canvas.
+ * The text is only rebuilt a few times per second, so drawing it on every frame stays cheap.
+ */
+public class MetricsOverlay {
+
+    private static final long REFRESH_NANOS = 500000000L;
+    private static final float LINE_HEIGHT = 24;
+
+    private final Paint mPaint;
+    private List<String> mLines = new ArrayList<String>();
+    private long mLastRefreshNanos = 0;
+
+    public MetricsOverlay() {
+        mPaint = new Paint();
+        mPaint.setColor(Color.YELLOW);
+        mPaint.setTextSize(20);
+        mPaint.setAntiAlias(true);
+    }
+
+    public void draw(Canvas canvas, PipelineMetrics metrics, float offsetx, float offsety) {
+        long now = System.nanoTime();
+        if (mLastRefreshNanos == 0 || now - mLastRefreshNanos >= REFRESH_NANOS) {
+            List<String> lines = new ArrayList<String>();
+            for (LatencyHistogram.Snapshot stage : metrics.snapshot())
+                lines.add(stage.toString());
+            mLines = lines;
+            mLastRefreshNanos = now;
+        }
+
+        float y = offsety;
+        for (String line : mLines) {
+            canvas.drawText(line, offsetx, y, mPaint);
+            y += LINE_HEIGHT;
+        }
+    }
+}
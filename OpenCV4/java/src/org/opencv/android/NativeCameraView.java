@@ -11,9 +11,9 @@ import org.opencv.videoio.VideoWriter;
 
 import android.content.Context;
 import android.hardware.Camera;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.ViewGroup.LayoutParams;
 
 /**
  * This class is an implementation of a bridge between SurfaceView and OpenCV VideoCapture.
@@ -150,13 +150,12 @@ public class NativeCameraView extends CameraBridgeViewBase {
                 mFrameHeight = (int) mCamera.get(Videoio.CAP_PROP_FRAME_WIDTH);
             }
 
-            if ((getLayoutParams().width == LayoutParams.MATCH_PARENT) && (getLayoutParams().height == LayoutParams.MATCH_PARENT))
-                mScale = Math.min(((float)height)/mFrameHeight, ((float)width)/mFrameWidth);
-            else
-                mScale = 0;
+            mScale = calculateDisplayScale(width, height);
 
             if (mFpsMeter != null) {
                 mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+                if (mResolutionPolicy != null)
+                    mFpsMeter.setDisplayResolution(width, height);
             }
 
             AllocateCache();
@@ -196,6 +195,11 @@ public class NativeCameraView extends CameraBridgeViewBase {
             return mGray;
         }
 
+        @Override
+        public long timestampNanos() {
+            return mTimestampNanos;
+        }
+
         public NativeCameraFrame(VideoCapture capture) {
             mCapture = capture;
             mGray = new Mat();
@@ -211,6 +215,7 @@ public class NativeCameraView extends CameraBridgeViewBase {
         }
 
         private VideoCapture mCapture;
+        private long mTimestampNanos;
         private Mat mRgba;
         private Mat mGray;
         private Mat mBgr;
@@ -224,9 +229,11 @@ public class NativeCameraView extends CameraBridgeViewBase {
                     Log.e(TAG, "Camera frame grab failed");
                     break;
                 }
+                ((NativeCameraFrame) mFrame.mFrame).mTimestampNanos = SystemClock.elapsedRealtimeNanos();
 
                 deliverAndDrawFrame(mFrame);
             } while (!mStopThread);
+            onFrameThreadExit();
         }
     }
 
@@ -0,0 +1,77 @@
+package org.opencv.android;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency histograms of the named stages of the frame pipeline, e.g. YUV conversion, detection
+ * or drawing. Each stage is a LatencyHistogram created on first use; recording into an existing
+ * stage does not allocate. Shared by the camera views and the listener code.
+ */
+public class PipelineMetrics {
+
+    /** Time between two frames reaching the listener */
+    public static final String STAGE_FRAME_INTERVAL = "frame";
+    /** YUV to RGBA or gray conversion of the camera frame */
+    public static final String STAGE_CONVERT = "convert";
+    /** Rotation of the frame to the screen orientation */
+    public static final String STAGE_ROTATE = "rotate";
+    /** Time spent in onCameraFrame() of the listener */
+    public static final String STAGE_LISTENER = "listener";
+    /** Drawing of the processed frame on the view surface */
+    public static final String STAGE_DRAW = "draw";
+    /** Time from frame origin (sensor timestamp or arrival) to the end of onCameraFrame() */
+    public static final String STAGE_SENSOR_TO_ANALYSIS = "sensor_to_analysis";
+    /** Time from frame origin to the processed frame being posted to the display */
+    public static final String STAGE_SENSOR_TO_DISPLAY = "sensor_to_display";
+
+    private final Map<String, LatencyHistogram> mStages = new LinkedHashMap<String, LatencyHistogram>();
+
+    /**
+     * Returns the histogram of the given stage, creating it if needed
+     */
+    public synchronized LatencyHistogram stage(String name) {
+        LatencyHistogram histogram = mStages.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(name);
+            mStages.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Records the time elapsed since startNanos, as returned by System.nanoTime(), for the given stage
+     */
+    public void record(String name, long startNanos) {
+        long end = System.nanoTime();
+        stage(name).record(end - startNanos);
+    }
+
+    /**
+     * Returns the statistics of all the stages, in the order they were first recorded
+     */
+    public synchronized List<LatencyHistogram.Snapshot> snapshot() {
+        List<LatencyHistogram.Snapshot> result = new ArrayList<LatencyHistogram.Snapshot>(mStages.size());
+        for (LatencyHistogram histogram : mStages.values())
+            result.add(histogram.snapshot());
+        return result;
+    }
+
+    /**
+     * Returns the statistics of the given stage, or null if it was never recorded
+     */
+    public synchronized LatencyHistogram.Snapshot snapshot(String name) {
+        LatencyHistogram histogram = mStages.get(name);
+        return histogram == null ? null : histogram.snapshot();
+    }
+
+    /**
+     * Clears the recorded values of all the stages
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : mStages.values())
+            histogram.reset();
+    }
+}
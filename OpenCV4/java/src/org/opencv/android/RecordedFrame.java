@@ -0,0 +1,119 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame read back from a recording by FrameRecordReader.
+ * Packed frames (NV21, YV12) hold the whole image in the Y plane buffer, its first height rows
+ * being the luma. YUV_420_888 frames hold the three planes as the camera delivered them, with
+ * their strides. The plane buffers map the recording file, they are valid until the next frame is read.
+ */
+public class RecordedFrame {
+
+    /** Same values as android.graphics.ImageFormat, which is not available on the host JVM */
+    public static final int FORMAT_NV21 = 0x11;
+    public static final int FORMAT_YV12 = 0x32315659;
+    public static final int FORMAT_YUV_420_888 = 0x23;
+
+    private long mTimestampNanos;
+    private int mFormat;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private int mYRowStride;
+    private int mYPixelStride;
+    private int mUvRowStride;
+    private int mUvPixelStride;
+    private ByteBuffer mYPlane;
+    private ByteBuffer mUPlane;
+    private ByteBuffer mVPlane;
+
+    /**
+     * Returns the sensor timestamp of the frame, in the clock of the recording device
+     */
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    /**
+     * Returns one of the FORMAT_ constants
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns the width of the sensor frame, before rotation
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the height of the sensor frame, before rotation
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the clockwise rotation (0, 90, 180 or 270) the camera view applied to the frame
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public int getYRowStride() {
+        return mYRowStride;
+    }
+
+    public int getYPixelStride() {
+        return mYPixelStride;
+    }
+
+    public int getUvRowStride() {
+        return mUvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return mUvPixelStride;
+    }
+
+    /**
+     * Returns the Y plane, or the whole image of a packed frame
+     */
+    public ByteBuffer getYPlane() {
+        return mYPlane;
+    }
+
+    /**
+     * Returns the U plane of a YUV_420_888 frame, an empty buffer for packed frames
+     */
+    public ByteBuffer getUPlane() {
+        return mUPlane;
+    }
+
+    /**
+     * Returns the V plane of a YUV_420_888 frame, an empty buffer for packed frames
+     */
+    public ByteBuffer getVPlane() {
+        return mVPlane;
+    }
+
+    void set(long timestampNanos, int format, int width, int height, int rotation,
+             int yRowStride, int yPixelStride, int uvRowStride, int uvPixelStride,
+             ByteBuffer yPlane, ByteBuffer uPlane, ByteBuffer vPlane) {
+        mTimestampNanos = timestampNanos;
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+        mRotation = rotation;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+        mYPlane = yPlane;
+        mUPlane = uPlane;
+        mVPlane = vPlane;
+    }
+}
@@ -0,0 +1,316 @@
+package org.opencv.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.imgproc.Imgproc;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.Log;
+
+/**
+ * Camera view playing back a recording made with CameraBridgeViewBase.startFrameRecording()
+ * instead of opening a camera. The frames go through the same rotation, CvCameraViewListener2
+ * and drawing as live frames, so that performance runs and regression tests are repeatable.
+ * Frames are delivered at the recorded rate, or as fast as the listener consumes them with
+ * setRealTime(false).
+ * timestampNanos() of the delivered frames is the time they are played back, so that the
+ * latency measurements of the view stay meaningful.
+ */
+public class ReplayCameraView extends CameraBridgeViewBase {
+
+    private static final String TAG = "ReplayCameraView";
+    // Longest sleep between two checks of a stop request
+    private static final long MAX_SLEEP_NANOS = 10000000L;
+
+    private File mRecording = null;
+    private volatile boolean mRealTime = true;
+    private volatile boolean mLooping = false;
+
+    private FrameRecordReader mReader;
+    private final RecordedFrame mRecordedFrame = new RecordedFrame();
+    // Staging buffer of the YUV_420_888 conversions, reused across frames
+    private ByteBuffer mStaging = null;
+    private Thread mThread;
+    private volatile boolean mStopThread;
+
+    public ReplayCameraView(Context context, int cameraId) {
+        super(context, cameraId);
+    }
+
+    public ReplayCameraView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Sets the recording to play, taken into account the next time the view is started
+     */
+    public void setRecording(File recording) {
+        mRecording = recording;
+    }
+
+    /**
+     * Plays the frames at the recorded rate when true, the default, or without waiting when false
+     */
+    public void setRealTime(boolean realTime) {
+        mRealTime = realTime;
+    }
+
+    /**
+     * Restarts from the first frame at the end of the recording when true, stops when false, the default
+     */
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    @Override
+    protected boolean connectCamera(int width, int height) {
+        if (mRecording == null) {
+            Log.e(TAG, "No recording set");
+            return false;
+        }
+        try {
+            mReader = new FrameRecordReader(mRecording);
+            if (!mReader.next(mRecordedFrame)) {
+                Log.e(TAG, "Recording " + mRecording + " has no frame");
+                closeReader();
+                return false;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open recording " + mRecording, e);
+            closeReader();
+            return false;
+        }
+
+        setFrameSize(mRecordedFrame);
+        mScale = calculateDisplayScale(width, height);
+        if (mFpsMeter != null) {
+            mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+            if (mResolutionPolicy != null)
+                mFpsMeter.setDisplayResolution(width, height);
+        }
+        AllocateCache();
+        Log.i(TAG, "Replaying " + mRecording + ", frame size = (" + mFrameWidth + ", " + mFrameHeight + ")");
+
+        mStopThread = false;
+        mThread = new Thread(new ReplayWorker());
+        mThread.start();
+        return true;
+    }
+
+    @Override
+    protected void disconnectCamera() {
+        if (mThread != null) {
+            try {
+                mStopThread = true;
+                mThread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                mThread = null;
+                mStopThread = false;
+            }
+        }
+        closeReader();
+    }
+
+    private void setFrameSize(RecordedFrame frame) {
+        if (frame.getRotation() % 180 == 0) {
+            mFrameWidth = frame.getWidth();
+            mFrameHeight = frame.getHeight();
+        } else {
+            mFrameWidth = frame.getHeight();
+            mFrameHeight = frame.getWidth();
+        }
+    }
+
+    private void closeReader() {
+        if (mReader != null) {
+            try {
+                mReader.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close recording", e);
+            }
+            mReader = null;
+        }
+    }
+
+    private class ReplayFrame implements CvCameraViewFrame {
+        @Override
+        public Mat gray() {
+            if (mGray == null) {
+                mGray = new Mat(mFrame.getHeight(), mFrame.getWidth(), CvType.CV_8UC1,
+                        mFrame.getYPlane(), mFrame.getYRowStride());
+                // Owned by the frame, not by a scope the caller may have opened
+                MatScope scope = MatScope.current();
+                if (scope != null)
+                    scope.detach(mGray);
+            }
+            return mGray;
+        }
+
+        @Override
+        public Mat rgba() {
+            long start = System.nanoTime();
+            FrameTracer.begin(PipelineMetrics.STAGE_CONVERT);
+            // The YUV wrappers are released here rather than by the finalizer
+            try (MatScope scope = MatScope.open()) {
+                if (mRgba == null)
+                    mRgba = scope.detach(mMatPool.lease(mFrame.getHeight(), mFrame.getWidth(), CvType.CV_8UC4));
+                convertToRgba();
+            } finally {
+                FrameTracer.end();
+            }
+            recordStage(PipelineMetrics.STAGE_CONVERT, start);
+            return mRgba;
+        }
+
+        private void convertToRgba() {
+            int w = mFrame.getWidth();
+            int h = mFrame.getHeight();
+            if (mFrame.getFormat() == RecordedFrame.FORMAT_NV21) {
+                Mat yuv = new Mat(h + h / 2, w, CvType.CV_8UC1, mFrame.getYPlane());
+                Imgproc.cvtColor(yuv, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+            } else if (mFrame.getFormat() == RecordedFrame.FORMAT_YV12) {
+                Mat yuv = new Mat(h + h / 2, w, CvType.CV_8UC1, mFrame.getYPlane());
+                Imgproc.cvtColor(yuv, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // same as JavaCameraView
+            } else if (mFrame.getUvPixelStride() == 2) {
+                // The U plane holds U and V interleaved but lacks the last V, which ends the V plane
+                ByteBuffer u = mFrame.getUPlane();
+                ByteBuffer v = mFrame.getVPlane();
+                int uvStep = mFrame.getUvRowStride();
+                ByteBuffer uv = chromaBuffer(uvStep * (h / 2));
+                int position = u.position();
+                uv.put(u);
+                u.position(position);
+                uv.put(v.get(v.limit() - 1));
+                Mat y = new Mat(h, w, CvType.CV_8UC1, mFrame.getYPlane(), mFrame.getYRowStride());
+                Mat uvMat = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv, uvStep);
+                Imgproc.cvtColorTwoPlane(y, uvMat, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+            } else {
+                // Planar chroma, packed into I420 like JavaCamera2View does
+                ByteBuffer i420 = chromaBuffer(w * (h + h / 2));
+                copyRows(mFrame.getYPlane(), mFrame.getYRowStride(), w, h, i420);
+                copyRows(mFrame.getUPlane(), mFrame.getUvRowStride(), w / 2, h / 2, i420);
+                copyRows(mFrame.getVPlane(), mFrame.getUvRowStride(), w / 2, h / 2, i420);
+                Mat yuv = new Mat(h + h / 2, w, CvType.CV_8UC1, i420);
+                Imgproc.cvtColor(yuv, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+            }
+        }
+
+        // Returns the staging buffer of the chroma conversions, cleared, grown when needed
+        private ByteBuffer chromaBuffer(int size) {
+            if (mStaging == null || mStaging.capacity() < size)
+                mStaging = ByteBuffer.allocateDirect(size);
+            mStaging.clear();
+            return mStaging;
+        }
+
+        private void copyRows(ByteBuffer plane, int rowStride, int rowBytes, int rows, ByteBuffer dst) {
+            for (int i = 0; i < rows; i++) {
+                plane.limit(i * rowStride + rowBytes);
+                plane.position(i * rowStride);
+                dst.put(plane);
+            }
+            plane.clear();
+        }
+
+        @Override
+        public long timestampNanos() {
+            return mTimestampNanos;
+        }
+
+        public ReplayFrame(RecordedFrame frame, long timestampNanos) {
+            super();
+            mFrame = frame;
+            mTimestampNanos = timestampNanos;
+        }
+
+        @Override
+        public void release() {
+            // the RGBA buffer goes back to the pool for the next frames
+            mMatPool.recycle(mRgba);
+            mRgba = null;
+            if (mGray != null)
+                mGray.release();
+            mGray = null;
+        }
+
+        private final RecordedFrame mFrame;
+        private final long mTimestampNanos;
+        private Mat mRgba;
+        private Mat mGray;
+    };
+
+    private class ReplayWorker implements Runnable {
+
+        @Override
+        public void run() {
+            // the first frame was read by connectCamera()
+            long firstRecordedNanos = mRecordedFrame.getTimestampNanos();
+            long firstPlayedNanos = System.nanoTime();
+            int frames = 0;
+            try {
+                do {
+                    if (mRealTime)
+                        waitUntil(firstPlayedNanos + mRecordedFrame.getTimestampNanos() - firstRecordedNanos);
+                    if (mStopThread)
+                        break;
+                    deliver();
+                    frames++;
+
+                    if (!mReader.next(mRecordedFrame)) {
+                        if (!mLooping || !rewind())
+                            break;
+                        firstRecordedNanos = mRecordedFrame.getTimestampNanos();
+                        firstPlayedNanos = System.nanoTime();
+                    }
+                } while (!mStopThread);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read recording", e);
+            }
+            onFrameThreadExit();
+            Log.i(TAG, "Replay stopped after " + frames + " frames");
+        }
+
+        private boolean rewind() throws IOException {
+            mReader.rewind();
+            return mReader.next(mRecordedFrame);
+        }
+
+        private void deliver() {
+            int previousWidth = mFrameWidth;
+            int previousHeight = mFrameHeight;
+            setFrameSize(mRecordedFrame);
+            if (mFrameWidth != previousWidth || mFrameHeight != previousHeight) {
+                // the camera was switched during the recording
+                AllocateCache();
+                onCameraSwitched(previousWidth, previousHeight);
+            }
+
+            RotatedCameraFrame frame = new RotatedCameraFrame(
+                    new ReplayFrame(mRecordedFrame, SystemClock.elapsedRealtimeNanos()), mRecordedFrame.getRotation());
+            deliverAndDrawFrame(frame);
+            frame.mFrame.release();
+            frame.release();
+        }
+
+        private void waitUntil(long nanos) {
+            long delay;
+            while (!mStopThread && (delay = nanos - System.nanoTime()) > 0) {
+                delay = Math.min(delay, MAX_SLEEP_NANOS);
+                try {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
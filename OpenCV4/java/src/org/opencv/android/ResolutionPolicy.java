@@ -0,0 +1,124 @@
+package org.opencv.android;
+
+import java.util.List;
+
+import org.opencv.core.Size;
+
+/**
+ * Decouples the resolution frames are analysed at from the resolution they are displayed at.
+ * The camera delivers frames at the supported size with the lowest cost for the analysis target,
+ * and the bridge view scales them up to the surface when drawing.
+ * The cost of a candidate size is the sum of:
+ * - its pixel count relative to the analysis target (processing time is roughly linear in pixels),
+ * - a penalty for falling short of the target (small faces get lost),
+ * - a penalty for an aspect ratio that differs from the display (letterboxing wastes the screen).
+ * This class has no Android dependencies, so the selection can be tested off-device.
+ */
+public class ResolutionPolicy {
+    public static final float DEFAULT_UNDERSHOOT_WEIGHT = 4.0f;
+    public static final float DEFAULT_ASPECT_WEIGHT = 1.0f;
+
+    private final int mAnalysisWidth;
+    private final int mAnalysisHeight;
+    private float mUndershootWeight = DEFAULT_UNDERSHOOT_WEIGHT;
+    private float mAspectWeight = DEFAULT_ASPECT_WEIGHT;
+
+    /**
+     * @param analysisWidth - the target width of the frames delivered to the listener
+     * @param analysisHeight - the target height of the frames delivered to the listener
+     */
+    public ResolutionPolicy(int analysisWidth, int analysisHeight) {
+        if (analysisWidth <= 0 || analysisHeight <= 0)
+            throw new IllegalArgumentException("Invalid analysis size: " + analysisWidth + "x" + analysisHeight);
+        mAnalysisWidth = analysisWidth;
+        mAnalysisHeight = analysisHeight;
+    }
+
+    public int getAnalysisWidth() {
+        return mAnalysisWidth;
+    }
+
+    public int getAnalysisHeight() {
+        return mAnalysisHeight;
+    }
+
+    /**
+     * Sets how much a size smaller than the analysis target is penalised, per missing fraction
+     */
+    public void setUndershootWeight(float weight) {
+        mUndershootWeight = weight;
+    }
+
+    /**
+     * Sets how much an aspect ratio different from the display is penalised, per unit of log ratio
+     */
+    public void setAspectWeight(float weight) {
+        mAspectWeight = weight;
+    }
+
+    /**
+     * Cost of analysing frames of the given size when displaying them on the given surface.
+     * Sizes are compared orientation-agnostic since sensor sizes are reported in landscape.
+     */
+    public double cost(int width, int height, int displayWidth, int displayHeight) {
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        int targetLong = Math.max(mAnalysisWidth, mAnalysisHeight);
+        int targetShort = Math.min(mAnalysisWidth, mAnalysisHeight);
+
+        double cost = (double) longSide * shortSide / ((double) targetLong * targetShort);
+
+        double coverage = Math.min((double) longSide / targetLong, (double) shortSide / targetShort);
+        if (coverage < 1.0)
+            cost += (1.0 - coverage) * mUndershootWeight;
+
+        if (displayWidth > 0 && displayHeight > 0 && shortSide > 0) {
+            double frameAspect = Math.log((double) longSide / shortSide);
+            double displayAspect = Math.log((double) Math.max(displayWidth, displayHeight) / Math.min(displayWidth, displayHeight));
+            cost += Math.abs(frameAspect - displayAspect) * mAspectWeight;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Selects the supported size with the lowest cost which also fits the maximum frame size
+     * (MAX_UNSPECIFIED for no limit). Falls back to the first supported size if none fits.
+     */
+    public Size selectFrameSize(List<?> supportedSizes, CameraBridgeViewBase.ListItemAccessor accessor,
+                                int displayWidth, int displayHeight, int maxWidth, int maxHeight) {
+        int calcWidth = 0;
+        int calcHeight = 0;
+        double bestCost = Double.MAX_VALUE;
+
+        for (Object size : supportedSizes) {
+            int width = accessor.getWidth(size);
+            int height = accessor.getHeight(size);
+            if (width <= 0 || height <= 0)
+                continue;
+            if ((maxWidth != CameraBridgeViewBase.MAX_UNSPECIFIED && width > maxWidth) ||
+                (maxHeight != CameraBridgeViewBase.MAX_UNSPECIFIED && height > maxHeight))
+                continue;
+
+            double cost = cost(width, height, displayWidth, displayHeight);
+            if (cost < bestCost) {
+                bestCost = cost;
+                calcWidth = width;
+                calcHeight = height;
+            }
+        }
+
+        if ((calcWidth == 0 || calcHeight == 0) && supportedSizes.size() > 0) {
+            Object size = supportedSizes.get(0);
+            calcWidth = accessor.getWidth(size);
+            calcHeight = accessor.getHeight(size);
+        }
+
+        return new Size(calcWidth, calcHeight);
+    }
+
+    @Override
+    public String toString() {
+        return "analysis " + mAnalysisWidth + "x" + mAnalysisHeight;
+    }
+}
@@ -0,0 +1,86 @@
+package org.opencv.android;
+
+/**
+ * Hands off frames from a producer thread to a consumer thread without either waiting for the other.
+ * The producer fills the back slot and publishes it, which swaps it with the ready slot; the consumer
+ * takes the most recent ready slot, which swaps it with the front slot it keeps while drawing.
+ * A slot published before the consumer took the previous one replaces it, so the consumer always
+ * gets the latest frame and slow consumers drop frames instead of stalling the producer.
+ * @param <T> - the slot type, typically a reusable frame holder
+ */
+public class TripleBuffer<T> {
+
+    private final Object[] mSlots;
+    private int mBack = 0;
+    private int mReady = 1;
+    private int mFront = 2;
+    private boolean mFresh = false;
+    private long mPublished = 0;
+    private long mDropped = 0;
+
+    public TripleBuffer(T back, T ready, T front) {
+        mSlots = new Object[] { back, ready, front };
+    }
+
+    /**
+     * Returns the slot the producer may fill. Only valid until the next publish().
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T getBack() {
+        return (T) mSlots[mBack];
+    }
+
+    /**
+     * Makes the back slot available to the consumer and wakes it up
+     */
+    public synchronized void publish() {
+        if (mFresh)
+            mDropped++;
+        int ready = mReady;
+        mReady = mBack;
+        mBack = ready;
+        mFresh = true;
+        mPublished++;
+        notifyAll();
+    }
+
+    /**
+     * Waits for a slot published since the last call and takes it as the front slot.
+     * The front slot stays untouched by the producer until the next acquire().
+     * @param timeoutMs - maximum time to wait, 0 to return immediately
+     * @return the front slot, or null if nothing was published in time
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T acquire(long timeoutMs) throws InterruptedException {
+        if (!mFresh && timeoutMs > 0) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            long remaining = timeoutMs;
+            while (!mFresh && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        if (!mFresh)
+            return null;
+
+        int front = mFront;
+        mFront = mReady;
+        mReady = front;
+        mFresh = false;
+        return (T) mSlots[mFront];
+    }
+
+    /**
+     * Returns the number of slots published so far
+     */
+    public synchronized long getPublishedCount() {
+        return mPublished;
+    }
+
+    /**
+     * Returns the number of published slots replaced before the consumer took them
+     */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+}
@@ -132,6 +132,40 @@ public class Utils {
         matToBitmap(mat, bmp, false);
     }
 
+    /**
+     * Converts OpenCV Mat to an Android Bitmap reused when possible, see <b>matToBitmap(mat, bmp)</b>.
+     * <br>The conversion goes into dst when it has the size of the Mat, otherwise dst is given back to
+     * the pool and a Bitmap of the size of the Mat is leased from it. Give the returned Bitmap back with
+     * pool.recycle() once it is no longer used.
+     * @param mat is a valid input Mat object of the types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
+     * @param dst is a Bitmap to reuse, or null.
+     * @param pool is the pool the 'ARGB_8888' Bitmap is leased from when dst does not fit.
+     * @return the Bitmap holding the converted image.
+     */
+    public static Bitmap matToBitmap(Mat mat, Bitmap dst, BitmapPool pool) {
+        if (mat == null)
+            throw new IllegalArgumentException("mat == null");
+        if (pool == null)
+            throw new IllegalArgumentException("pool == null");
+        Bitmap bmp = dst;
+        if (bmp == null || bmp.isRecycled() || bmp.getWidth() != mat.cols() || bmp.getHeight() != mat.rows()) {
+            pool.recycle(bmp);
+            bmp = pool.lease(mat.cols(), mat.rows(), Bitmap.Config.ARGB_8888);
+        }
+        matToBitmap(mat, bmp, false);
+        return bmp;
+    }
+
+    /**
+     * Short form of the <b>matToBitmap(mat, dst=null, pool)</b>
+     * @param mat is a valid input Mat object of the types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
+     * @param pool is the pool the 'ARGB_8888' Bitmap is leased from.
+     * @return the Bitmap holding the converted image, to be given back with pool.recycle().
+     */
+    public static Bitmap matToBitmap(Mat mat, BitmapPool pool) {
+        return matToBitmap(mat, null, pool);
+    }
+
 
     private static native void nBitmapToMat2(Bitmap b, long m_addr, boolean unPremultiplyAlpha);
 
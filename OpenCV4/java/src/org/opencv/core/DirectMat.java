@@ -0,0 +1,76 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Continuous Mat whose pixels live in a direct ByteBuffer, so Java code reads and writes them in
+ * place through pixels() while OpenCV functions use the same memory without any copy.
+ * The buffer is referenced by this Mat and stays valid as long as it is reachable.
+ * <p>
+ * An OpenCV function writing into a DirectMat as its output keeps the buffer only if the size and
+ * type already match. Otherwise the Mat is reallocated in native memory and isBufferBacked()
+ * returns false.
+ */
+public class DirectMat extends Mat {
+
+    private final ByteBuffer mBuffer;
+    private final PixelBuffer mPixels;
+    private final long mBufferAddr;
+
+    /**
+     * Allocates a direct buffer for a Mat of the given size and type
+     */
+    public DirectMat(int rows, int cols, int type) {
+        this(ByteBuffer.allocateDirect(bufferSize(rows, cols, type)).order(ByteOrder.nativeOrder()), rows, cols, type);
+    }
+
+    /**
+     * Wraps an existing direct buffer holding continuous pixel data, e.g. an Image plane whose row
+     * stride equals its width
+     */
+    public DirectMat(ByteBuffer buffer, int rows, int cols, int type) {
+        super(rows, cols, type, checkBuffer(buffer, rows, cols, type));
+        mBuffer = buffer;
+        mPixels = new PixelBuffer(buffer, rows, cols, type);
+        mBufferAddr = dataAddr();
+    }
+
+    /**
+     * Returns the typed, bounds-checked accessors of the pixels
+     */
+    public PixelBuffer pixels() {
+        return mPixels;
+    }
+
+    /**
+     * Returns the buffer holding the pixels
+     */
+    public ByteBuffer buffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns false if an OpenCV call reallocated this Mat, the buffer is then no longer its data
+     */
+    public boolean isBufferBacked() {
+        return !empty() && dataAddr() == mBufferAddr;
+    }
+
+    private static int bufferSize(int rows, int cols, int type) {
+        long size = (long) rows * cols * CvType.ELEM_SIZE(type);
+        if (rows <= 0 || cols <= 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid size: " + rows + "x" + cols);
+        return (int) size;
+    }
+
+    // validated before the native Mat is created over the buffer
+    private static ByteBuffer checkBuffer(ByteBuffer buffer, int rows, int cols, int type) {
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("The buffer of a DirectMat must be direct");
+        int size = bufferSize(rows, cols, type);
+        if (buffer.capacity() < size)
+            throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes, " + size + " needed");
+        return buffer;
+    }
+}
@@ -59,6 +59,22 @@ public class MatOfFloat extends Mat {
         return a;
     }
 
+    /**
+     * Copies the values into dst without allocating
+     * @return the number of values
+     */
+    public int toArray(float[] dst) {
+        int num = checkVector(_channels, _depth);
+        if(num < 0)
+            throw new RuntimeException("Native Mat has unexpected type or size: " + toString());
+        if(dst.length < num * _channels)
+            throw new IllegalArgumentException("Destination holds " + dst.length + " values, " + num * _channels + " needed");
+        if(num == 0)
+            return 0;
+        get(0, 0, dst); //TODO: check ret val!
+        return num;
+    }
+
     public void fromList(List<Float> lb) {
         if(lb==null || lb.size()==0)
             return;
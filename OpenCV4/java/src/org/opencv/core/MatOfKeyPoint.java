@@ -74,6 +74,21 @@ public class MatOfKeyPoint extends Mat {
         return a;
     }
 
+    /**
+     * Copies the key points as packed x, y, size, angle, response, octave, class_id floats into dst
+     * without allocating. The length of dst must be a multiple of 7.
+     * @return the number of key points
+     */
+    public int toArray(float[] dst) {
+        int num = (int) total();
+        if(dst.length < num * _channels)
+            throw new IllegalArgumentException("Destination holds " + dst.length / _channels + " key points, " + num + " needed");
+        if(num == 0)
+            return 0;
+        get(0, 0, dst); //TODO: check ret val!
+        return num;
+    }
+
     public void fromList(List<KeyPoint> lkp) {
         KeyPoint akp[] = lkp.toArray(new KeyPoint[0]);
         fromArray(akp);
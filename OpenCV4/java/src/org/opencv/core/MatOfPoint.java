@@ -66,6 +66,21 @@ public class MatOfPoint extends Mat {
         return ap;
     }
 
+    /**
+     * Copies the points as packed x, y ints into dst without allocating.
+     * The length of dst must be a multiple of 2.
+     * @return the number of points
+     */
+    public int toArray(int[] dst) {
+        int num = (int) total();
+        if(dst.length < num * _channels)
+            throw new IllegalArgumentException("Destination holds " + dst.length / _channels + " points, " + num + " needed");
+        if(num == 0)
+            return 0;
+        get(0, 0, dst); //TODO: check ret val!
+        return num;
+    }
+
     public void fromList(List<Point> lp) {
         Point ap[] = lp.toArray(new Point[0]);
         fromArray(ap);
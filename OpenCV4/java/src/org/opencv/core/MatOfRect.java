@@ -69,6 +69,30 @@ public class MatOfRect extends Mat {
             a[i] = new Rect(buff[i*_channels], buff[i*_channels+1], buff[i*_channels+2], buff[i*_channels+3]);
         return a;
     }
+
+    /**
+     * Copies the rectangles as packed x, y, width, height ints into dst without allocating.
+     * The length of dst must be a multiple of 4.
+     * @return the number of rectangles
+     */
+    public int toArray(int[] dst) {
+        int num = (int) total();
+        if(dst.length < num * _channels)
+            throw new IllegalArgumentException("Destination holds " + dst.length / _channels + " rectangles, " + num + " needed");
+        if(num == 0)
+            return 0;
+        get(0, 0, dst); //TODO: check ret val!
+        return num;
+    }
+
+    /**
+     * Replaces the content of dst with the rectangles, without allocating once dst is large enough
+     * @return the number of rectangles
+     */
+    public int copyTo(RectBuffer dst) {
+        return dst.copyFrom(this);
+    }
+
     public void fromList(List<Rect> lr) {
         Rect ap[] = lr.toArray(new Rect[0]);
         fromArray(ap);
@@ -0,0 +1,292 @@
+package org.opencv.core;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of Mats keyed by their shape (rows, cols, type), for the temporaries of the frame pipeline
+ * which have the same shape on every frame: gray images, rotation targets, YUV staging buffers.
+ * A Mat obtained with lease() is given back with recycle() and handed out again by a later lease()
+ * of the same shape, so its native buffer is allocated once instead of on every frame.
+ * <p>
+ * At most maxPerKey idle Mats are kept per shape and at most maxIdleBytes of pixel data overall.
+ * Over budget, the idle Mats of the least recently used shapes are released first, so the shapes
+ * left behind by a camera flip or a resolution change go away.
+ * <p>
+ * With setDebugChecks(true), returned Mats are filled with a poison value and checked when leased
+ * again, which catches code still writing a Mat after giving it back.
+ */
+public class MatPool {
+
+    public static final int DEFAULT_MAX_PER_KEY = 4;
+    public static final long DEFAULT_MAX_IDLE_BYTES = 32L * 1024 * 1024;
+
+    private static final double POISON = 0xA5;
+
+    private final int mMaxPerKey;
+    private final long mMaxIdleBytes;
+    // access order, the eldest entry is the least recently used shape
+    private final LinkedHashMap<Key, Bucket> mBuckets = new LinkedHashMap<Key, Bucket>(16, 0.75f, true);
+    private final Key mLookup = new Key();
+    private final IdentityHashMap<Mat, Scalar> mPoisonSums = new IdentityHashMap<Mat, Scalar>();
+    private long mIdleBytes = 0;
+    private int mIdleCount = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+    private long mReleasedIdle = 0;
+    private volatile boolean mDebugChecks = false;
+
+    public MatPool() {
+        this(DEFAULT_MAX_PER_KEY, DEFAULT_MAX_IDLE_BYTES);
+    }
+
+    /**
+     * @param maxPerKey - maximum number of idle Mats kept per shape
+     * @param maxIdleBytes - maximum size of the pixel data of all the idle Mats
+     */
+    public MatPool(int maxPerKey, long maxIdleBytes) {
+        if (maxPerKey <= 0)
+            throw new IllegalArgumentException("Invalid number of Mats per key: " + maxPerKey);
+        if (maxIdleBytes < 0)
+            throw new IllegalArgumentException("Invalid idle byte budget: " + maxIdleBytes);
+        mMaxPerKey = maxPerKey;
+        mMaxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * Returns a Mat of the given shape, reused from the pool when possible. Its content is undefined.
+     * The Mat is owned by the caller until it is given back with recycle(), it is not tracked by the
+     * current MatScope.
+     */
+    public Mat lease(int rows, int cols, int type) {
+        Mat mat = null;
+        Scalar poisonSum = null;
+        synchronized (this) {
+            mLookup.set(rows, cols, type);
+            Bucket bucket = mBuckets.get(mLookup);
+            while (bucket != null && !bucket.idle.isEmpty()) {
+                Mat idle = bucket.idle.pollLast();
+                mIdleBytes -= bucket.key.bytes;
+                mIdleCount--;
+                poisonSum = mPoisonSums.remove(idle);
+                if (idle.rows() <= 0 || idle.cols() <= 0) {
+                    // released by its former owner while idle, its buffer is gone
+                    mReleasedIdle++;
+                    poisonSum = null;
+                    continue;
+                }
+                mat = idle;
+                break;
+            }
+            if (mat != null)
+                mHits++;
+            else
+                mMisses++;
+        }
+
+        if (mat == null) {
+            mat = create(rows, cols, type);
+            MatScope scope = MatScope.current();
+            if (scope != null)
+                scope.detach(mat);
+        } else if (poisonSum != null) {
+            checkPoison(mat, poisonSum, rows, cols, type);
+        }
+        return mat;
+    }
+
+    /**
+     * Gives a Mat back to the pool. It is pooled under its current shape, so a Mat reallocated by
+     * an OpenCV call is still reused. The caller must not use it anymore.
+     * @throws IllegalStateException if the Mat is already in the pool
+     */
+    public void recycle(Mat mat) {
+        if (mat == null)
+            return;
+        int rows = mat.rows();
+        int cols = mat.cols();
+        int type = mat.type();
+        if (rows <= 0 || cols <= 0) {
+            // empty or more than 2 dimensions, nothing worth keeping
+            mat.release();
+            return;
+        }
+
+        synchronized (this) {
+            mLookup.set(rows, cols, type);
+            Bucket bucket = mBuckets.get(mLookup);
+            if (bucket == null) {
+                Key key = new Key();
+                key.set(rows, cols, type);
+                bucket = new Bucket(key);
+                mBuckets.put(key, bucket);
+            }
+            for (Mat idle : bucket.idle) {
+                if (idle == mat)
+                    throw new IllegalStateException("Mat " + bucket.key + " was returned to the pool twice");
+            }
+            if (bucket.idle.size() >= mMaxPerKey) {
+                mEvictions++;
+                mat.release();
+                return;
+            }
+            if (mDebugChecks)
+                mPoisonSums.put(mat, poison(mat));
+            bucket.idle.addLast(mat);
+            mIdleBytes += bucket.key.bytes;
+            mIdleCount++;
+            trim(mMaxIdleBytes);
+        }
+    }
+
+    /**
+     * Releases the idle Mats of the least recently used shapes until at most maxIdleBytes are kept
+     */
+    public synchronized void trim(long maxIdleBytes) {
+        Iterator<Map.Entry<Key, Bucket>> it = mBuckets.entrySet().iterator();
+        while (mIdleBytes > maxIdleBytes && it.hasNext()) {
+            Bucket bucket = it.next().getValue();
+            while (mIdleBytes > maxIdleBytes && !bucket.idle.isEmpty())
+                evict(bucket, bucket.idle.pollFirst());
+            if (bucket.idle.isEmpty())
+                it.remove();
+        }
+    }
+
+    /**
+     * Releases all the idle Mats, e.g. when the camera stops. Leased Mats are not affected.
+     */
+    public synchronized void clear() {
+        for (Bucket bucket : mBuckets.values()) {
+            for (Mat mat : bucket.idle)
+                mat.release();
+        }
+        mBuckets.clear();
+        mPoisonSums.clear();
+        mIdleBytes = 0;
+        mIdleCount = 0;
+    }
+
+    /**
+     * Enables filling the returned Mats with a poison value and checking it when they are leased again.
+     * Costs a fill and a sum of every returned Mat, meant for debug builds.
+     */
+    public void setDebugChecks(boolean enabled) {
+        mDebugChecks = enabled;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the number of Mats released because of the per-key cap or the byte budget
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns the number of idle Mats found released when leased, i.e. released after recycle().
+     * They are dropped, a non-zero count points at code releasing a Mat it gave back.
+     */
+    public synchronized long getReleasedIdleCount() {
+        return mReleasedIdle;
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdleCount;
+    }
+
+    public synchronized long getIdleBytes() {
+        return mIdleBytes;
+    }
+
+    public synchronized void resetCounters() {
+        mHits = 0;
+        mMisses = 0;
+        mEvictions = 0;
+        mReleasedIdle = 0;
+    }
+
+    /**
+     * Allocates a new Mat of the given shape
+     */
+    protected Mat create(int rows, int cols, int type) {
+        return new Mat(rows, cols, type);
+    }
+
+    private void evict(Bucket bucket, Mat mat) {
+        mPoisonSums.remove(mat);
+        mat.release();
+        mIdleBytes -= bucket.key.bytes;
+        mIdleCount--;
+        mEvictions++;
+    }
+
+    private static Scalar poison(Mat mat) {
+        mat.setTo(Scalar.all(POISON));
+        return Core.sumElems(mat);
+    }
+
+    private static void checkPoison(Mat mat, Scalar poisonSum, int rows, int cols, int type) {
+        if (mat.rows() != rows || mat.cols() != cols || mat.type() != type)
+            throw new IllegalStateException("Mat " + rows + "x" + cols + " type " + type
+                    + " was reallocated after it was returned to the pool");
+        Scalar sum = Core.sumElems(mat);
+        for (int i = 0; i < 4; i++) {
+            if (sum.val[i] != poisonSum.val[i])
+                throw new IllegalStateException("Mat " + rows + "x" + cols + " type " + type
+                        + " was written after it was returned to the pool");
+        }
+    }
+
+    private static final class Key {
+        int rows;
+        int cols;
+        int type;
+        long bytes;
+
+        void set(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+            this.bytes = (long) rows * cols * CvType.ELEM_SIZE(type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return rows == other.rows && cols == other.cols && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (rows * 31 + cols) * 31 + type;
+        }
+
+        @Override
+        public String toString() {
+            return rows + "x" + cols + " type " + type;
+        }
+    }
+
+    private static final class Bucket {
+        final Key key;
+        final ArrayDeque<Mat> idle = new ArrayDeque<Mat>();
+
+        Bucket(Key key) {
+            this.key = key;
+        }
+    }
+}
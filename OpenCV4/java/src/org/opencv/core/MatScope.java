@@ -0,0 +1,153 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Releases the Mats created while it is open, e.g.
+ * <pre>
+ * try (MatScope scope = MatScope.open()) {
+ *     Mat gray = new Mat();
+ *     ...
+ *     return scope.detach(result);
+ * }
+ * </pre>
+ * Every Mat constructed on the thread that opened the scope, including the ones returned by
+ * OpenCV calls such as submat() or clone(), is released in reverse order by close(), so the pixel
+ * data goes back to the native heap right away instead of when the GC runs the finalizers.
+ * The Mat headers themselves are still deleted by finalize().
+ * A Mat which must outlive the scope is kept with detach(). Scopes nest per thread, a Mat
+ * belongs to the innermost open scope.
+ */
+public final class MatScope implements AutoCloseable {
+
+    private static final ThreadLocal<MatScope> sCurrent = new ThreadLocal<MatScope>();
+
+    private static final AtomicLong sTracked = new AtomicLong();
+    private static final AtomicLong sReleased = new AtomicLong();
+    private static final AtomicLong sDetached = new AtomicLong();
+    private static final AtomicLong sOpenScopes = new AtomicLong();
+
+    private final MatScope mParent;
+    private final Thread mThread;
+    private final ArrayList<Mat> mMats = new ArrayList<Mat>();
+    private boolean mClosed = false;
+
+    private MatScope(MatScope parent) {
+        mParent = parent;
+        mThread = Thread.currentThread();
+    }
+
+    /**
+     * Opens a scope on the calling thread, to be closed on the same thread
+     */
+    public static MatScope open() {
+        MatScope scope = new MatScope(sCurrent.get());
+        sCurrent.set(scope);
+        sOpenScopes.incrementAndGet();
+        return scope;
+    }
+
+    /**
+     * Returns the innermost open scope of the calling thread, null if there is none
+     */
+    public static MatScope current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Adds a Mat created before the scope was opened, to be released by close()
+     * @return the given Mat
+     */
+    public <T extends Mat> T track(T mat) {
+        checkOpen();
+        mMats.add(mat);
+        sTracked.incrementAndGet();
+        return mat;
+    }
+
+    /**
+     * Removes a Mat from the scope so that close() does not release it. The caller owns it from now on.
+     * @return the given Mat
+     */
+    public <T extends Mat> T detach(T mat) {
+        checkOpen();
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            if (mMats.get(i) == mat) {
+                mMats.remove(i);
+                sDetached.incrementAndGet();
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Returns the number of Mats the scope will release
+     */
+    public int size() {
+        return mMats.size();
+    }
+
+    /**
+     * Releases the Mats of the scope, newest first, and makes its parent the current scope again
+     * @throws IllegalStateException if an inner scope is still open or the calling thread did not open the scope
+     */
+    @Override
+    public void close() {
+        if (mClosed)
+            return;
+        if (Thread.currentThread() != mThread)
+            throw new IllegalStateException("MatScope closed on another thread than it was opened");
+        if (sCurrent.get() != this)
+            throw new IllegalStateException("MatScope closed while an inner scope is still open");
+        mClosed = true;
+        if (mParent != null)
+            sCurrent.set(mParent);
+        else
+            sCurrent.remove();
+        sOpenScopes.decrementAndGet();
+
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            mMats.get(i).release();
+            sReleased.incrementAndGet();
+        }
+        mMats.clear();
+    }
+
+    /**
+     * Returns the number of Mats tracked by any scope and not yet released nor detached.
+     * It drops back to its previous value when the scopes are closed, tests use it to find leaks.
+     */
+    public static long getLeakCount() {
+        return sTracked.get() - sReleased.get() - sDetached.get();
+    }
+
+    /**
+     * Returns the number of scopes opened and not yet closed on all the threads
+     */
+    public static long getOpenScopeCount() {
+        return sOpenScopes.get();
+    }
+
+    /**
+     * Returns the total number of Mats released by closed scopes
+     */
+    public static long getReleasedCount() {
+        return sReleased.get();
+    }
+
+    // Called by every Mat constructor
+    static void onCreated(Mat mat) {
+        MatScope scope = sCurrent.get();
+        if (scope != null) {
+            scope.mMats.add(mat);
+            sTracked.incrementAndGet();
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed)
+            throw new IllegalStateException("MatScope is closed");
+    }
+}
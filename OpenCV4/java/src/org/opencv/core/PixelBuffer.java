@@ -0,0 +1,147 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Typed view over the continuous pixel data of a Mat held in a ByteBuffer, see DirectMat.
+ * Elements are read and written in place with bounds-checked accessors which neither copy
+ * across JNI like Mat.get()/put() nor box like Mat.at().
+ * Multi-byte elements use the native byte order, as OpenCV does.
+ */
+public final class PixelBuffer {
+
+    private final ByteBuffer mBytes;
+    private final int mRows;
+    private final int mCols;
+    private final int mType;
+    private final int mDepth;
+    private final int mChannels;
+    private FloatBuffer mFloats = null;
+    private IntBuffer mInts = null;
+
+    /**
+     * @param buffer - at least rows * cols * CvType.ELEM_SIZE(type) bytes, its position is ignored
+     */
+    public PixelBuffer(ByteBuffer buffer, int rows, int cols, int type) {
+        if (rows <= 0 || cols <= 0)
+            throw new IllegalArgumentException("Invalid size: " + rows + "x" + cols);
+        long size = (long) rows * cols * CvType.ELEM_SIZE(type);
+        if (buffer.capacity() < size)
+            throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes, " + size + " needed");
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.clear();
+        bytes.order(ByteOrder.nativeOrder());
+        mBytes = bytes;
+        mRows = rows;
+        mCols = cols;
+        mType = type;
+        mDepth = CvType.depth(type);
+        mChannels = CvType.channels(type);
+    }
+
+    public int rows() {
+        return mRows;
+    }
+
+    public int cols() {
+        return mCols;
+    }
+
+    public int type() {
+        return mType;
+    }
+
+    public int channels() {
+        return mChannels;
+    }
+
+    /**
+     * Returns the bytes of the pixels in native order, position 0. The same instance is returned
+     * by every call, use absolute get/put when it is shared.
+     */
+    public ByteBuffer bytes() {
+        return mBytes;
+    }
+
+    /**
+     * Returns the pixels as floats, for CV_32F data
+     */
+    public FloatBuffer floats() {
+        checkDepth(CvType.CV_32F);
+        if (mFloats == null)
+            mFloats = whole().asFloatBuffer();
+        return mFloats;
+    }
+
+    /**
+     * Returns the pixels as ints, for CV_32S data
+     */
+    public IntBuffer ints() {
+        checkDepth(CvType.CV_32S);
+        if (mInts == null)
+            mInts = whole().asIntBuffer();
+        return mInts;
+    }
+
+    /**
+     * Returns the index of the given channel of the given pixel, in elements of the depth
+     */
+    public int index(int row, int col, int channel) {
+        if (row < 0 || row >= mRows || col < 0 || col >= mCols || channel < 0 || channel >= mChannels)
+            throw new IndexOutOfBoundsException("(" + row + ", " + col + ", " + channel + ") out of "
+                    + mRows + "x" + mCols + "x" + mChannels);
+        return (row * mCols + col) * mChannels + channel;
+    }
+
+    /**
+     * Returns an element of CV_8U data, between 0 and 255
+     */
+    public int getUByte(int row, int col, int channel) {
+        checkDepth(CvType.CV_8U);
+        return mBytes.get(index(row, col, channel)) & 0xFF;
+    }
+
+    /**
+     * Sets an element of CV_8U data, the value is truncated to 8 bits
+     */
+    public void putUByte(int row, int col, int channel, int value) {
+        checkDepth(CvType.CV_8U);
+        mBytes.put(index(row, col, channel), (byte) value);
+    }
+
+    public float getFloat(int row, int col, int channel) {
+        checkDepth(CvType.CV_32F);
+        return mBytes.getFloat(4 * index(row, col, channel));
+    }
+
+    public void putFloat(int row, int col, int channel, float value) {
+        checkDepth(CvType.CV_32F);
+        mBytes.putFloat(4 * index(row, col, channel), value);
+    }
+
+    public int getInt(int row, int col, int channel) {
+        checkDepth(CvType.CV_32S);
+        return mBytes.getInt(4 * index(row, col, channel));
+    }
+
+    public void putInt(int row, int col, int channel, int value) {
+        checkDepth(CvType.CV_32S);
+        mBytes.putInt(4 * index(row, col, channel), value);
+    }
+
+    // a view of all the bytes, independent of the position of bytes()
+    private ByteBuffer whole() {
+        ByteBuffer bytes = mBytes.duplicate();
+        bytes.clear();
+        bytes.order(ByteOrder.nativeOrder());
+        return bytes;
+    }
+
+    private void checkDepth(int depth) {
+        if (mDepth != depth)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + CvType.typeToString(mType));
+    }
+}
@@ -0,0 +1,115 @@
+package org.opencv.core;
+
+/**
+ * Reusable list of rectangles stored as packed x, y, width, height ints, filled by
+ * copyFrom() or add() without allocating once it has grown to the largest size seen.
+ * The rectangles are read with the primitive accessors, get(int, Rect) or the flyweight view().
+ */
+public class RectBuffer {
+
+    private int[] mData;
+    private int mSize = 0;
+    private final RectView mView = new RectView(this);
+
+    public RectBuffer() {
+        this(16);
+    }
+
+    /**
+     * @param capacity - number of rectangles the buffer holds before growing
+     */
+    public RectBuffer(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        mData = new int[4 * capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public void add(int x, int y, int width, int height) {
+        ensureCapacity(mSize + 1);
+        int i = 4 * mSize;
+        mData[i] = x;
+        mData[i + 1] = y;
+        mData[i + 2] = width;
+        mData[i + 3] = height;
+        mSize++;
+    }
+
+    public void add(Rect r) {
+        add(r.x, r.y, r.width, r.height);
+    }
+
+    public int x(int index) {
+        return mData[4 * checkIndex(index)];
+    }
+
+    public int y(int index) {
+        return mData[4 * checkIndex(index) + 1];
+    }
+
+    public int width(int index) {
+        return mData[4 * checkIndex(index) + 2];
+    }
+
+    public int height(int index) {
+        return mData[4 * checkIndex(index) + 3];
+    }
+
+    /**
+     * Copies the rectangle at the given index into dst
+     * @return dst
+     */
+    public Rect get(int index, Rect dst) {
+        int i = 4 * checkIndex(index);
+        dst.x = mData[i];
+        dst.y = mData[i + 1];
+        dst.width = mData[i + 2];
+        dst.height = mData[i + 3];
+        return dst;
+    }
+
+    /**
+     * Returns the view of this buffer moved to the given index. The same view is returned by
+     * every call, it must not be kept across calls.
+     */
+    public RectView view(int index) {
+        return mView.moveTo(index);
+    }
+
+    /**
+     * Replaces the content with the rectangles of a CV_32SC4 Mat, such as a MatOfRect
+     * @return the number of rectangles
+     */
+    public int copyFrom(Mat m) {
+        int count = (int) m.total();
+        if (count > 0 && m.type() != CvType.CV_32SC4)
+            throw new IllegalArgumentException("CvType.CV_32SC4 != m.type()\n" + m);
+        mSize = 0;
+        ensureCapacity(count);
+        if (count > 0)
+            m.get(0, 0, mData);
+        mSize = count;
+        return count;
+    }
+
+    private void ensureCapacity(int count) {
+        if (4 * count > mData.length) {
+            int[] data = new int[4 * Math.max(count, 2 * mData.length / 4)];
+            System.arraycopy(mData, 0, data, 0, 4 * mSize);
+            mData = data;
+        }
+    }
+
+    int checkIndex(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        return index;
+    }
+}
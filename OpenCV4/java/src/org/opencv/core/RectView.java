@@ -0,0 +1,69 @@
+package org.opencv.core;
+
+/**
+ * Flyweight over one rectangle of a RectBuffer: the accessors read the buffer directly, moveTo()
+ * selects another rectangle. Iterating detections through a view allocates nothing.
+ */
+public final class RectView {
+
+    private final RectBuffer mBuffer;
+    private int mIndex = 0;
+
+    public RectView(RectBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Selects the rectangle at the given index of the buffer
+     * @return this view
+     */
+    public RectView moveTo(int index) {
+        mIndex = mBuffer.checkIndex(index);
+        return this;
+    }
+
+    public int index() {
+        return mIndex;
+    }
+
+    public int x() {
+        return mBuffer.x(mIndex);
+    }
+
+    public int y() {
+        return mBuffer.y(mIndex);
+    }
+
+    public int width() {
+        return mBuffer.width(mIndex);
+    }
+
+    public int height() {
+        return mBuffer.height(mIndex);
+    }
+
+    public int right() {
+        return x() + width();
+    }
+
+    public int bottom() {
+        return y() + height();
+    }
+
+    public int area() {
+        return width() * height();
+    }
+
+    /**
+     * Copies the selected rectangle into dst
+     * @return dst
+     */
+    public Rect copyTo(Rect dst) {
+        return mBuffer.get(mIndex, dst);
+    }
+
+    @Override
+    public String toString() {
+        return "{" + x() + ", " + y() + ", " + width() + "x" + height() + "}";
+    }
+}
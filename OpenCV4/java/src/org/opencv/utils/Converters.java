@@ -15,6 +15,7 @@ import org.opencv.core.Point;
 import org.opencv.core.Point3;
 import org.opencv.core.Size;
 import org.opencv.core.Rect;
+import org.opencv.core.RectBuffer;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Rect2d;
 import org.opencv.core.DMatch;
@@ -303,6 +304,25 @@ public class Converters {
         }
     }
 
+    /**
+     * Same as Mat_to_vector_float(Mat, List) into a caller supplied array, without boxing
+     * @return the number of values
+     */
+    public static int Mat_to_vector_float(Mat m, float[] fs) {
+        if (fs == null)
+            throw new IllegalArgumentException("fs == null");
+        int count = m.rows();
+        if (CvType.CV_32FC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32FC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (fs.length < count)
+            throw new IllegalArgumentException("fs.length < " + count);
+
+        if (count > 0)
+            m.get(0, 0, fs);
+        return count;
+    }
+
     public static Mat vector_uchar_to_Mat(List<Byte> bs) {
         Mat res;
         int count = (bs != null) ? bs.size() : 0;
@@ -438,6 +458,19 @@ public class Converters {
         }
     }
 
+    /**
+     * Same as Mat_to_vector_Rect(Mat, List) into a reusable buffer, without allocating once it is large enough
+     */
+    public static void Mat_to_vector_Rect(Mat m, RectBuffer rs) {
+        if (rs == null)
+            throw new IllegalArgumentException("rs == null");
+        if (CvType.CV_32SC4 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32SC4 != m.type() ||  m.rows()!=1\n" + m);
+
+        rs.copyFrom(m);
+    }
+
     public static Mat vector_Rect2d_to_Mat(List<Rect2d> rs) {
         Mat res;
         int count = (rs != null) ? rs.size() : 0;
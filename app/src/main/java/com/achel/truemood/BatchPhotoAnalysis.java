@@ -0,0 +1,105 @@
+package com.achel.truemood;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.achel.truemood.core.AnalysisStats;
+import com.achel.truemood.core.BatchPhotoClassifier;
+import com.achel.truemood.core.ContentHash;
+import com.achel.truemood.core.EmotionClassifier;
+import com.achel.truemood.core.FaceDetector;
+import com.achel.truemood.core.FacePreprocessor;
+import com.achel.truemood.core.PhotoSink;
+import com.achel.truemood.core.ResultCache;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.CascadeClassifier;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+
+// Classifies the faces of a batch of photos, e.g. a gallery folder, with one face detector and interpreter
+// per worker. Faces are detected on reduced grayscale decodes, see BatchPhotoClassifier.
+// Must be called off the UI thread, OpenCV must be loaded.
+public class BatchPhotoAnalysis {
+
+    private static final String TAG = "BatchPhotoAnalysis";
+
+    private final Context context;
+    private final String modelPath;
+    private final int inputSize;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int detectionScale = BatchPhotoClassifier.DEFAULT_DETECTION_SCALE;
+    private ResultCache resultCache = null;
+
+    public BatchPhotoAnalysis(Context context, String modelPath, int inputSize) {
+        this.context = context.getApplicationContext();
+        this.modelPath = modelPath;
+        this.inputSize = inputSize;
+    }
+
+    // Number of parallel workers, the number of cores by default
+    public void setWorkerCount(int workerCount) {
+        workers = workerCount;
+    }
+
+    // Reduction of the image the faces are detected on: 1, 2, 4 or 8. Larger is faster but misses small faces.
+    public void setDetectionScale(int scale) {
+        detectionScale = scale;
+    }
+
+    // Reuses the results of the photos classified by earlier runs with the same model and settings,
+    // e.g. a cache in getCacheDir() kept open by the caller across runs
+    public void setResultCache(ResultCache cache) {
+        resultCache = cache;
+    }
+
+    // Classifies the photos, streaming each result to the sink as soon as it is done.
+    // photos is read lazily, only as fast as the workers go.
+    public AnalysisStats run(Iterator<File> photos, PhotoSink sink) throws IOException, InterruptedException {
+        // Shared read-only by the interpreters, the cascade file is extracted once for all the workers
+        final MappedByteBuffer model = FacialExpressionRecognition.loadModelFile(context.getAssets(), modelPath);
+        final String cascadePath = FacialExpressionRecognition.extractFaceDetectorFile(context).getAbsolutePath();
+
+        BatchPhotoClassifier<Mat> classifier = new BatchPhotoClassifier<>(new ImreadPhotoDecoder(),
+                new BatchPhotoClassifier.ModelFactory<Mat>() {
+                    @Override
+                    public FaceDetector<Mat> createDetector() {
+                        return new CascadeFaceDetector(new CascadeClassifier(cascadePath));
+                    }
+
+                    @Override
+                    public FacePreprocessor<Mat> createPreprocessor() {
+                        return new MatFacePreprocessor(inputSize);
+                    }
+
+                    @Override
+                    public EmotionClassifier createClassifier() {
+                        // The workers use all the cores already, one CPU thread per interpreter
+                        Interpreter.Options options = new Interpreter.Options();
+                        options.setNumThreads(1);
+                        return new TfLiteEmotionClassifier(new Interpreter(model, options));
+                    }
+
+                    @Override
+                    public void release(FaceDetector<Mat> detector, FacePreprocessor<Mat> preprocessor,
+                                        EmotionClassifier classifier) {
+                        if (classifier != null)
+                            ((TfLiteEmotionClassifier) classifier).close();
+                    }
+                },
+                inputSize);
+        classifier.setWorkerCount(workers);
+        classifier.setDetectionScale(detectionScale);
+        if (resultCache != null) {
+            classifier.setResultCache(resultCache, CascadeFaceDetector.CONFIG, ContentHash.of(model));
+        }
+
+        AnalysisStats stats = classifier.run(photos, sink);
+        Log.i(TAG, "Classified photos: " + stats);
+        return stats;
+    }
+}
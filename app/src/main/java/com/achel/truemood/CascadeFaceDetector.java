@@ -0,0 +1,85 @@
+package com.achel.truemood;
+
+import com.achel.truemood.core.FaceBoxes;
+import com.achel.truemood.core.FaceDetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.MatPool;
+import org.opencv.core.MatScope;
+import org.opencv.core.RectBuffer;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+// Detects the faces of an RGBA Mat with an OpenCV Haar Cascade classifier
+public class CascadeFaceDetector implements FaceDetector<Mat> {
+
+    // Cascade and detectMultiScale settings, part of the result cache keys: changing them invalidates the cached results
+    public static final String CONFIG = "haarcascade_frontalface_alt;scaleFactor=1.1;minNeighbors=2;minSize=0.1";
+
+    // Classifier loaded by the caller, null when it could not be loaded: no face is then found
+    private final CascadeClassifier classifier;
+
+    // Pool of the gray image, and the detected rectangles copied out of the MatOfRect, reused across frames
+    private MatPool matPool = new MatPool();
+    private final RectBuffer rects = new RectBuffer();
+
+    public CascadeFaceDetector(CascadeClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    // Leases the gray image from the given pool, e.g. the one of the camera view
+    public void setMatPool(MatPool pool) {
+        matPool = pool;
+    }
+
+    // The scope is only there to release the MatOfRect on close, hence the unreferenced resource
+    @SuppressWarnings("try")
+    @Override
+    public void detect(Mat matImage, FaceBoxes faces) {
+        faces.clear();
+
+        // The detected rectangles are released on return, not by the finalizer,
+        // and the gray image goes back to the pool for the next frame.
+        // An image decoded in grayscale already, e.g. a photo, is used as it is.
+        boolean gray = matImage.channels() == 1;
+        Mat grayScaleImage = gray ? matImage : matPool.lease(matImage.rows(), matImage.cols(), CvType.CV_8UC1);
+        try (MatScope scope = MatScope.open()) {
+            // Convert the input image to grayscale for face detection
+            if (!gray) {
+                Imgproc.cvtColor(matImage, grayScaleImage, Imgproc.COLOR_BGR2GRAY);
+            }
+
+            // Set the minimum face size threshold based on image height
+            int absoluteFaceSize = (int) (grayScaleImage.height() * 0.1);
+
+            // Create a MatOfRect to store the detected faces
+            MatOfRect faceRects = new MatOfRect();
+
+            // Detect faces if the face detector is available
+            if (classifier != null) {
+                classifier.detectMultiScale(
+                        grayScaleImage,
+                        faceRects,
+                        1.1,
+                        2,
+                        2,
+                        new Size(absoluteFaceSize, absoluteFaceSize),
+                        new Size()
+                );
+            }
+
+            // Copy the rectangles out of the MatOfRect without allocating a Rect per face
+            faceRects.copyTo(rects);
+            for (int i = 0; i < rects.size(); i++) {
+                faces.add(rects.x(i), rects.y(i), rects.width(i), rects.height(i));
+            }
+        } finally {
+            if (!gray) {
+                matPool.recycle(grayScaleImage);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.achel.truemood;
 
 import android.Manifest;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.util.Log;
@@ -8,27 +9,44 @@ import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.ImageView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
+import com.achel.truemood.core.EmotionLabels;
+import com.achel.truemood.core.SessionRecorder;
+import com.achel.truemood.core.SessionStats;
+
 import org.opencv.android.CameraActivity;
 import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.FrameTracer;
+import org.opencv.android.JavaCamera2View;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 
+import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public class EmotionCameraActivity extends CameraActivity {
 
     private static final String TAG="MainActivity"; // Tag for logging purposes
+    private static final int MAX_SESSION_LOGS = 10; // Session logs kept in the app storage, the oldest are deleted first
+    private static final long MAX_SESSION_LOG_BYTES = 32L * 1024 * 1024; // Total size of the session logs kept
     private Mat mRgba; // To hold the RGBA image frame (color image)
     private Mat mGray; // To hold the grayscale image frame
     private CameraBridgeViewBase mOpenCvCameraView; // Camera view to display video feed
     private FacialExpressionRecognition facialExpressionRecognition; // Object for emotion recognition
+    private FaceOverlayView faceOverlayView; // Transparent overlay for the face boxes and labels (dual stream mode)
+    private SessionRecorder sessionRecorder; // Binary log of the per-frame results of this session
+    private final SessionStats sessionStats = new SessionStats(); // Live summary of this session
+    private Rect[] mirroredFaces = new Rect[0]; // Mirrored hardware faces, reused while the face count does not change
 
     private ImageView flipBtn;
     private int cameraIndex = 0; // Index of the camera (0 for front-facing, 1 for back-facing)
@@ -51,22 +69,45 @@ public class EmotionCameraActivity extends CameraActivity {
         // Initialize OpenCV camera view
         mOpenCvCameraView = (CameraBridgeViewBase) findViewById(R.id.cameraViewId);
 
+        // Initialize the overlay drawn on top of the camera preview
+        faceOverlayView = findViewById(R.id.faceOverlayId);
+
         // Initialize the flip button
         flipBtn = findViewById(R.id.flipBtnId);
 
+        // Measure the latency of each pipeline stage, the breakdown is shown on debuggable builds
+        mOpenCvCameraView.enablePipelineMetrics(false);
+        if (isDebuggable()) {
+            faceOverlayView.setPipelineMetrics(mOpenCvCameraView.getPipelineMetrics());
+            // Catch per-frame Mats still written after they went back to the pool
+            mOpenCvCameraView.getMatPool().setDebugChecks(true);
+
+            // Long press on the preview records the raw camera frames for replay, the next long press stops
+            faceOverlayView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    toggleFrameRecording();
+                    return true;
+                }
+            });
+        }
+
         // Set the listener for camera frames
         mOpenCvCameraView.setCvCameraViewListener(new CameraBridgeViewBase.CvCameraViewListener2() {
             // Called when the camera view starts
             @Override
             public void onCameraViewStarted(int width, int height) {
-                mRgba = new Mat(height, width, CvType.CV_8UC4); // Create a matrix to store RGBA frame
-                mGray = new Mat(height, width, CvType.CV_8UC1); // Create a matrix to store grayscale frame
+                // The frames come with their own Mats, leased from and recycled by the camera view
+                faceOverlayView.setFrameSize(width, height); // Face boxes are expressed in frame coordinates
             }
 
             // Called when the camera view stops
             @Override
             public void onCameraViewStopped() {
-                mRgba.release(); // Release the resources when camera view stops
+                // The last frame's Mats went back to the view's pool, releasing them here would free pooled Mats
+                mRgba = null;
+                mGray = null;
+                faceOverlayView.clear(); // Remove the boxes of the last frame
             }
 
             // Called to process each frame captured by the camera
@@ -80,8 +121,20 @@ public class EmotionCameraActivity extends CameraActivity {
                     Core.flip(mGray , mGray , 1); // Flip the grayscale image if camera index is 1 (back-facing camera)
                 }
 
+                // Faces detected by the camera hardware (null when not supported, the software detector is used then)
+                Rect[] faces = inputFrame.hardwareFaces();
+                if (faces != null && cameraIndex == 1) {
+                    faces = mirrorFaces(faces, mRgba.cols()); // Mirror the faces like the image, the frame's array is left as it is
+                }
+
+                // In dual stream mode the preview is displayed by the hardware, only the results are drawn
+                if (isDualStream()) {
+                    faceOverlayView.setFaces(facialExpressionRecognition.detectEmotions(mRgba, faces), inputFrame.timestampNanos());
+                    return null;
+                }
+
                 // Perform facial expression recognition on the current frame
-                mRgba = facialExpressionRecognition.recognizeImage(mRgba, EmotionCameraActivity.this);
+                mRgba = facialExpressionRecognition.recognizeImage(mRgba, faces, EmotionCameraActivity.this);
 
                 return mRgba; // Return the processed RGBA frame
             }
@@ -99,12 +152,94 @@ public class EmotionCameraActivity extends CameraActivity {
             @Override
             public void onClick(View v) {
                 cameraIndex = cameraIndex^1; // Toggle the camera index (0 to 1, 1 to 0)
-                mOpenCvCameraView.disableView();
+                faceOverlayView.clear(); // Boxes of the previous camera are no longer valid
 
-                mOpenCvCameraView.setCameraIndex(cameraIndex); // Set the camera index
-                mOpenCvCameraView.enableView(); // Enable the camera view
+                // Switch without restarting the camera pipeline (the switch time is logged by the view)
+                mOpenCvCameraView.switchCamera(cameraIndex);
             }
         });
+
+        // Long press starts a frame trace, the next long press saves it for Perfetto
+        flipBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                toggleFrameTrace();
+                return true;
+            }
+        });
+    }
+
+    // Starts recording a frame trace, or saves the recorded one to the app storage and stops
+    private void toggleFrameTrace() {
+        if (!FrameTracer.isEnabled()) {
+            FrameTracer.enable(FrameTracer.DEFAULT_CAPACITY);
+            Toast.makeText(this, "Frame trace started", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final File traceFile = new File(getExternalFilesDir(null), "frame_trace_" + System.currentTimeMillis() + ".json");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Writing the JSON takes a while, keep it off the UI thread
+                final boolean written = FrameTracer.writeTo(traceFile);
+                FrameTracer.disable();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        String message = written ? "Frame trace saved to " + traceFile.getAbsolutePath() : "Frame trace could not be saved";
+                        Toast.makeText(EmotionCameraActivity.this, message, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        }, "FrameTraceWriter").start();
+    }
+
+    // Starts recording the camera frames to the app storage, or stops and completes the recording
+    private void toggleFrameRecording() {
+        if (mOpenCvCameraView.isFrameRecording()) {
+            mOpenCvCameraView.stopFrameRecording();
+            Toast.makeText(this, "Frame recording stopped", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        File recordingFile = new File(getExternalFilesDir(null), "frames_" + System.currentTimeMillis() + ".tmfr");
+        try {
+            mOpenCvCameraView.startFrameRecording(recordingFile);
+            Toast.makeText(this, "Recording frames to " + recordingFile.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Frame recording could not be started", Toast.LENGTH_LONG).show();
+        }
+    }
+
+    // Mirrors the face rectangles horizontally within a frame of the given width, into the reused mirroredFaces
+    private Rect[] mirrorFaces(Rect[] faces, int frameWidth) {
+        if (mirroredFaces.length != faces.length) {
+            Rect[] resized = new Rect[faces.length];
+            for (int i = 0; i < faces.length; i++) {
+                resized[i] = i < mirroredFaces.length ? mirroredFaces[i] : new Rect();
+            }
+            mirroredFaces = resized;
+        }
+        for (int i = 0; i < faces.length; i++) {
+            Rect mirrored = mirroredFaces[i];
+            mirrored.x = frameWidth - faces[i].x - faces[i].width;
+            mirrored.y = faces[i].y;
+            mirrored.width = faces[i].width;
+            mirrored.height = faces[i].height;
+        }
+        return mirroredFaces;
+    }
+
+    // Whether this is a debuggable build, which enables the debugging aids (metrics, recordings, session logs)
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    // Whether the camera view displays the preview itself and only delivers frames for analysis
+    private boolean isDualStream() {
+        return mOpenCvCameraView instanceof JavaCamera2View
+                && ((JavaCamera2View) mOpenCvCameraView).getStreamMode() == JavaCamera2View.STREAM_MODE_DUAL;
     }
 
     // Method to load the emotion recognition model and initialize the classifier
@@ -116,11 +251,77 @@ public class EmotionCameraActivity extends CameraActivity {
                     EmotionCameraActivity.this, // Context of the activity
                     "emotion_mod.tflite", // Path to the emotion recognition model (TensorFlow Lite)
                     inputSize); // Size of the input image for the model
+            facialExpressionRecognition.setPipelineMetrics(mOpenCvCameraView.getPipelineMetrics());
+            facialExpressionRecognition.setMatPool(mOpenCvCameraView.getMatPool());
+            facialExpressionRecognition.setBitmapPool(mOpenCvCameraView.getBitmapPool());
+            facialExpressionRecognition.setSessionStats(sessionStats);
+            if (isDebuggable()) {
+                startSessionRecording(); // Session logs are a debugging aid, release builds do not write them
+            }
         } catch (IOException e) {
             e.printStackTrace(); // Catch and print the error if the model loading fails
         }
     }
 
+    // Records the results of this session to the app storage, replayed and exported with SessionLogReader
+    private void startSessionRecording() {
+        File sessionDir = new File(getFilesDir(), "sessions");
+        if (!sessionDir.isDirectory() && !sessionDir.mkdirs()) {
+            Log.w(TAG, "Cannot create " + sessionDir + ", the session is not recorded");
+            return;
+        }
+        pruneSessionLogs(sessionDir);
+        try {
+            sessionRecorder = new SessionRecorder(new File(sessionDir, "session_" + System.currentTimeMillis() + ".tmsl"));
+            facialExpressionRecognition.setSessionRecorder(sessionRecorder);
+        } catch (IOException e) {
+            Log.w(TAG, "The session is not recorded", e);
+        }
+    }
+
+    // Deletes the oldest session logs so that, with the new session, at most MAX_SESSION_LOGS logs
+    // and MAX_SESSION_LOG_BYTES are kept
+    private static void pruneSessionLogs(File sessionDir) {
+        File[] logs = sessionDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".tmsl");
+            }
+        });
+        if (logs == null) {
+            return;
+        }
+        // Newest first
+        Arrays.sort(logs, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        long keptBytes = 0;
+        for (int i = 0; i < logs.length; i++) {
+            keptBytes += logs[i].length();
+            if ((i >= MAX_SESSION_LOGS - 1 || keptBytes > MAX_SESSION_LOG_BYTES) && !logs[i].delete()) {
+                Log.w(TAG, "Cannot delete the session log " + logs[i]);
+            }
+        }
+    }
+
+    // Logs the time per emotion and the dominant emotion of the session
+    private void logSessionSummary() {
+        SessionStats.Snapshot summary = sessionStats.snapshot(sessionStats.newSnapshot());
+        if (summary.getFramesWithFaces() == 0) {
+            return;
+        }
+        StringBuilder dwell = new StringBuilder();
+        for (int label = 0; label < EmotionLabels.count(); label++) {
+            dwell.append(' ').append(EmotionLabels.get(label)).append('=')
+                    .append(summary.getDwellNanos(label) / 1_000_000_000L).append('s');
+        }
+        Log.d(TAG, "Session: " + summary.getFrames() + " frames, dominant "
+                + EmotionLabels.get(summary.getDominantLabel()) + ", time per emotion:" + dwell);
+    }
+
     // Return a list of camera views (this activity only has one camera view)
     @Override
     protected List<? extends CameraBridgeViewBase> getCameraViewList() {
@@ -165,6 +366,18 @@ public class EmotionCameraActivity extends CameraActivity {
         super.onDestroy();
         if (mOpenCvCameraView != null) {
             mOpenCvCameraView.disableView(); // Disable the camera view to release resources
+            mOpenCvCameraView.stopFrameRecording(); // Complete the recording file, if any
+        }
+        logSessionSummary();
+        if (sessionRecorder != null) {
+            facialExpressionRecognition.setSessionRecorder(null);
+            try {
+                sessionRecorder.close(); // Write the last results of the session
+            } catch (IOException e) {
+                Log.w(TAG, "Session log incomplete", e);
+            }
+            Log.d(TAG, "Session recorded: " + sessionRecorder.getRecordCount() + " records, "
+                    + sessionRecorder.getDroppedCount() + " dropped");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package com.achel.truemood;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.achel.truemood.core.FaceResult;
+
+import org.opencv.android.LatencyWindow;
+import org.opencv.android.MetricsOverlay;
+import org.opencv.android.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Transparent view drawn on top of the hardware camera preview.
+// Only the face boxes and emotion labels are drawn here, the frame itself never goes through the CPU.
+public class FaceOverlayView extends View {
+
+    // Size of the analysis frames the face boxes are expressed in
+    private int frameWidth = 0;
+    private int frameHeight = 0;
+
+    // Latest results, replaced as a whole by the camera thread
+    private List<FaceResult> faces = Collections.emptyList();
+    private final Object lock = new Object();
+
+    // Origin time of the frame the results come from (SystemClock.elapsedRealtimeNanos() base, 0 if unknown)
+    private long facesOriginNanos = 0;
+    private boolean facesDrawn = false;
+
+    // Time from the camera frame origin to its results being drawn here
+    private final LatencyWindow sensorToDisplayLatency = new LatencyWindow(120);
+    private final Paint latencyPaint;
+
+    // Paints for the face boxes and the emotion labels
+    private final Paint boxPaint;
+    private final Paint labelPaint;
+
+    // Latency breakdown of the pipeline stages, drawn in the top left corner when set
+    private volatile PipelineMetrics metrics = null;
+    private final MetricsOverlay metricsOverlay = new MetricsOverlay();
+
+    public FaceOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public FaceOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        boxPaint = new Paint();
+        boxPaint.setStyle(Paint.Style.STROKE);
+        boxPaint.setColor(Color.GREEN);     // Green color for the rectangle
+        boxPaint.setStrokeWidth(3);
+        boxPaint.setAntiAlias(true);
+
+        labelPaint = FacialExpressionRecognition.createLabelPaint(context);
+
+        latencyPaint = new Paint();
+        latencyPaint.setColor(Color.GREEN);
+        latencyPaint.setTextSize(20);
+    }
+
+    // Sets the size of the analysis frames (called when the camera view starts)
+    public void setFrameSize(int width, int height) {
+        synchronized (lock) {
+            frameWidth = width;
+            frameHeight = height;
+        }
+        postInvalidate();
+    }
+
+    // Publishes the results of the latest analysis frame (safe to call from the camera thread)
+    public void setFaces(List<FaceResult> results) {
+        setFaces(results, 0);
+    }
+
+    // Same as setFaces(List) with the origin time of the frame, to measure the sensor-to-display latency
+    public void setFaces(List<FaceResult> results, long originNanos) {
+        synchronized (lock) {
+            faces = new ArrayList<>(results);
+            facesOriginNanos = originNanos;
+            facesDrawn = false;
+        }
+        postInvalidate();
+    }
+
+    // Rolling distribution of the time from the camera frame origin to its results being drawn
+    public LatencyWindow getSensorToDisplayLatency() {
+        return sensorToDisplayLatency;
+    }
+
+    // Shows the latency breakdown of the given metrics, null to hide it
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        metrics = pipelineMetrics;
+        postInvalidate();
+    }
+
+    // Removes all the face boxes
+    public void clear() {
+        setFaces(Collections.<FaceResult>emptyList());
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        List<FaceResult> current;
+        int fw;
+        int fh;
+        long originNanos = 0;
+        synchronized (lock) {
+            current = faces;
+            fw = frameWidth;
+            fh = frameHeight;
+            if (!facesDrawn) {
+                originNanos = facesOriginNanos;
+                facesDrawn = true;
+            }
+        }
+
+        // Only the first draw of a result set counts, later ones are redraws of old results
+        PipelineMetrics currentMetrics = metrics;
+        if (originNanos > 0) {
+            long latency = SystemClock.elapsedRealtimeNanos() - originNanos;
+            sensorToDisplayLatency.record(latency);
+            if (currentMetrics != null) {
+                currentMetrics.stage(PipelineMetrics.STAGE_SENSOR_TO_DISPLAY).record(latency);
+            }
+        }
+
+        // Debug overlay: current sensor-to-display latency and the breakdown of the pipeline stages
+        if (currentMetrics != null) {
+            if (sensorToDisplayLatency.size() > 0) {
+                canvas.drawText("sensor->display " + sensorToDisplayLatency.getLast() / 1000000 + " ms, p95 "
+                        + sensorToDisplayLatency.getPercentile(95) / 1000000 + " ms", 20, 55, latencyPaint);
+            }
+            metricsOverlay.draw(canvas, currentMetrics, 20, 85);
+        }
+        if (fw == 0 || fh == 0 || current.isEmpty()) {
+            return;
+        }
+
+        // The preview stream has the same field of view as the analysis stream and fills this view
+        float scaleX = (float) getWidth() / fw;
+        float scaleY = (float) getHeight() / fh;
+
+        for (FaceResult face : current) {
+            float left = face.x * scaleX;
+            float top = face.y * scaleY;
+            canvas.drawRect(left, top, (face.x + face.width) * scaleX, (face.y + face.height) * scaleY, boxPaint);
+            canvas.drawText(face.emotionText, left + 10, top - 35, labelPaint);
+        }
+    }
+}
@@ -12,13 +12,22 @@ import android.widget.TextView;
 
 import androidx.core.content.res.ResourcesCompat;
 
+import com.achel.truemood.core.FaceBoxes;
+import com.achel.truemood.core.FaceResult;
+import com.achel.truemood.core.RecognitionPipeline;
+import com.achel.truemood.core.SessionRecorder;
+import com.achel.truemood.core.SessionStats;
+import com.achel.truemood.core.StageObserver;
+
+import org.opencv.android.BitmapPool;
+import org.opencv.android.FrameTracer;
+import org.opencv.android.PipelineMetrics;
 import org.opencv.android.Utils;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfRect;
+import org.opencv.core.MatPool;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 import org.tensorflow.lite.Interpreter;
@@ -29,30 +38,50 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Array;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
 public class FacialExpressionRecognition {
 
+    // Names of the pipeline stages recorded by this class
+    public static final String STAGE_DETECT = RecognitionPipeline.STAGE_DETECT;
+    public static final String STAGE_PREPROCESS = RecognitionPipeline.STAGE_PREPROCESS;
+    public static final String STAGE_INFERENCE = RecognitionPipeline.STAGE_INFERENCE;
+    public static final String STAGE_OVERLAY = "overlay";
+    public static final String SPAN_CROP = MatFacePreprocessor.SPAN_CROP;
+
     // Interpreter for TensorFlow Lite model to recognize emotions
     private Interpreter interpreter;
 
     // Input size for the model
     private int INPUT_SIZE;
 
-    // Dimensions of the input image (height and width)
-    private int height = 0;
-    private int width = 0;
-
     // GpuDelegate for GPU acceleration
     private GpuDelegate gpuDelegate = null;
 
     // CascadeClassifier for face detection
     private CascadeClassifier faceDetector;
 
+    // Latency histograms of the stages, null when not measured
+    private PipelineMetrics metrics = null;
+
+    // Pool of the Bitmap the emotion labels are drawn on
+    private BitmapPool bitmapPool = new BitmapPool();
+
+    // Face detection, preprocessing and emotion classification of successive frames
+    private CascadeFaceDetector cascadeFaceDetector;
+    private RecognitionPipeline<Mat> pipeline;
+
+    // Faces reported by the camera hardware for the current frame, reused across frames
+    private final FaceBoxes hardwareFaces = new FaceBoxes();
+
+    // Binary log of the per-frame results of the session, null when not recorded
+    private SessionRecorder sessionRecorder = null;
+
+    // Live statistics of the session, null when not computed
+    private SessionStats sessionStats = null;
+
     // Constructor to initialize the model and the face detector
     public FacialExpressionRecognition(AssetManager assetManager , Context context , String modelPath , int inputSize ) throws IOException {
         INPUT_SIZE = inputSize;
@@ -75,10 +104,19 @@ public class FacialExpressionRecognition {
 
         // Initialize the face detection classifier
         loadFaceDetector(context);
+
+        // Chain the face detector, the preprocessing and the model into the recognition pipeline
+        cascadeFaceDetector = new CascadeFaceDetector(faceDetector);
+        pipeline = new RecognitionPipeline<>(
+                cascadeFaceDetector,
+                new MatFacePreprocessor(INPUT_SIZE),
+                new TfLiteEmotionClassifier(interpreter)
+        );
+        pipeline.setStageObserver(new TracingStageObserver());
     }
 
     // Loads the TensorFlow Lite model from assets
-    private MappedByteBuffer loadModelFile(AssetManager assetManager , String modelPath) throws IOException {
+    static MappedByteBuffer loadModelFile(AssetManager assetManager , String modelPath) throws IOException {
         // Open the model file from assets
         AssetFileDescriptor assetFileDescriptor = assetManager.openFd(modelPath);
         FileInputStream inputSteam = new FileInputStream(assetFileDescriptor.getFileDescriptor());
@@ -95,31 +133,8 @@ public class FacialExpressionRecognition {
     // Loads the face detection classifier (Haar Cascade)
     private void loadFaceDetector(Context context) {
         try {
-            // Open the resource for Haar Cascade face detection model
-            InputStream inputStream = context.getResources().openRawResource(R.raw.haarcascade_frontalface_alt);
-
-            // Create a directory to store the classifier file
-            File cascadeDir = context.getDir("cascade" , Context.MODE_PRIVATE);
-            File cascadeFile = new File(cascadeDir , "haarcascade_frontalface_alt");
-
-            // Open an output stream to write the classifier data to the file
-            FileOutputStream outputStream = new FileOutputStream(cascadeFile);
-
-            // Buffer to read the classifier file in chunks
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-
-            // Copy data from input stream to output stream
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer , 0 , bytesRead);
-            }
-
-            // Close streams after reading
-            inputStream.close();
-            outputStream.close();
-
             // Initialize the face detector with the classifier file
-            faceDetector = new CascadeClassifier(cascadeFile.getAbsolutePath());
+            faceDetector = new CascadeClassifier(extractFaceDetectorFile(context).getAbsolutePath());
 
             // Log a success message if the classifier is loaded
             Log.d("Facial Expression" , "Face detector loaded successfully");
@@ -129,164 +144,188 @@ public class FacialExpressionRecognition {
         }
     }
 
-    // Recognizes faces and emotions in the input image (Mat)
-    public Mat recognizeImage(Mat matImage , Context context) {
+    // Copies the Haar Cascade classifier from the resources to a file, which is what CascadeClassifier loads
+    static File extractFaceDetectorFile(Context context) throws IOException {
+        // Open the resource for Haar Cascade face detection model
+        InputStream inputStream = context.getResources().openRawResource(R.raw.haarcascade_frontalface_alt);
 
-        // Convert the input image to grayscale for face detection
-        Mat grayScaleImage = new Mat();
-        Imgproc.cvtColor(matImage, grayScaleImage, Imgproc.COLOR_BGR2GRAY);
-
-        // Set the height and width based on the grayscale image
-        height = grayScaleImage.height();
-        width = grayScaleImage.width();
-
-        // Set the minimum face size threshold based on image height
-        int absoluteFaceSize = (int) (height * 0.1);
-
-        // Create a MatOfRect to store the detected faces
-        MatOfRect faces = new MatOfRect();
-
-        // Detect faces if the face detector is available
-        if (faceDetector != null) {
-            faceDetector.detectMultiScale(
-                    grayScaleImage,
-                    faces,
-                    1.1,
-                    2,
-                    2,
-                    new Size(absoluteFaceSize, absoluteFaceSize),
-                    new Size()
-            );
+        // Create a directory to store the classifier file
+        File cascadeDir = context.getDir("cascade" , Context.MODE_PRIVATE);
+        File cascadeFile = new File(cascadeDir , "haarcascade_frontalface_alt");
+
+        // Open an output stream to write the classifier data to the file
+        FileOutputStream outputStream = new FileOutputStream(cascadeFile);
+
+        // Buffer to read the classifier file in chunks
+        byte[] buffer = new byte[4096];
+        int bytesRead;
+
+        // Copy data from input stream to output stream
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer , 0 , bytesRead);
         }
 
-        // Convert the MatOfRect to a Rect array for easier processing
-        Rect[] faceArray = faces.toArray();
+        // Close streams after reading
+        inputStream.close();
+        outputStream.close();
 
-        // Load custom font from resources to display emotion text
-        Typeface customTypeface = ResourcesCompat.getFont(context, R.font.aldrich);
-        Paint paint = new Paint();
-        paint.setTypeface(customTypeface);  // Set the custom font
-        paint.setTextSize(50);              // Set the text size
-        paint.setColor(0xFFFF0000);         // Set the text color (Red)
-        paint.setAntiAlias(true);           // Enable anti-aliasing for smooth text rendering
+        return cascadeFile;
+    }
 
-        // Loop through all the detected faces
-        for (int i = 0; i < faceArray.length; i++) {
-            // Draw a rectangle around each detected face
-            Imgproc.rectangle(
-                    matImage,
-                    faceArray[i].tl(),
-                    faceArray[i].br(),
-                    new Scalar(0, 255, 0),  // Green color for the rectangle
-                    3
-            );
+    // Records the detection, preprocessing, inference and overlay latencies into the given metrics
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        metrics = pipelineMetrics;
+    }
 
-            // Crop the detected face from the image for emotion recognition
-            Rect roi = new Rect(
-                    (int) faceArray[i].tl().x,
-                    (int) faceArray[i].tl().y,
-                    (int) faceArray[i].br().x - (int) faceArray[i].tl().x,
-                    (int) faceArray[i].br().y - (int) faceArray[i].tl().y
-            );
+    // Leases the per-frame temporaries from the given pool, e.g. the one of the camera view
+    public void setMatPool(MatPool pool) {
+        cascadeFaceDetector.setMatPool(pool);
+    }
 
-            // Create a Mat for the cropped region of interest (ROI)
-            Mat croppedRgba = new Mat(matImage, roi);
+    // Leases the Bitmap the labels are drawn on from the given pool, e.g. the one of the camera view
+    public void setBitmapPool(BitmapPool pool) {
+        bitmapPool = pool;
+    }
 
-            // Convert the cropped face to Bitmap format for processing
-            Bitmap bitmap = Bitmap.createBitmap(
-                    croppedRgba.cols(),
-                    croppedRgba.rows(),
-                    Bitmap.Config.ARGB_8888
-            );
-            Utils.matToBitmap(croppedRgba, bitmap);
+    // Records the results of every frame into the given session log, null to stop recording
+    public void setSessionRecorder(SessionRecorder recorder) {
+        sessionRecorder = recorder;
+    }
+
+    // Updates the given statistics with the results of every frame, null to stop
+    public void setSessionStats(SessionStats stats) {
+        sessionStats = stats;
+    }
+
+    // Records the time elapsed since start for the given stage
+    private void record(String stage, long start) {
+        if (metrics != null) {
+            metrics.record(stage, start);
+        }
+    }
 
-            // Resize the Bitmap to match the model's input size
-            Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, INPUT_SIZE, INPUT_SIZE, false);
+    // Recognizes faces and emotions in the input image (Mat) and draws the results on it
+    public Mat recognizeImage(Mat matImage , Context context) {
+        return recognizeImage(matImage, null, context);
+    }
 
-            // Convert the Bitmap to a ByteBuffer for input into the TensorFlow Lite model
-            ByteBuffer byteBuffer = convertBitmapToByteBuffer(scaledBitmap);
+    // Same as recognizeImage(Mat, Context) with faces already detected (e.g. by the camera hardware).
+    // When detectedFaces is null the Haar Cascade face detector is used.
+    public Mat recognizeImage(Mat matImage , Rect[] detectedFaces , Context context) {
 
-            // Use the model to predict the emotion
-            float[][] emotion = new float[1][1];
-            interpreter.run(byteBuffer, emotion);
+        // Detect the faces and predict their emotions before drawing anything on the image
+        List<FaceResult> results = detectEmotions(matImage, detectedFaces);
 
-            // Log the predicted emotion value
-            float emotionValue = (float) Array.get(Array.get(emotion, 0), 0);
-            Log.d("Facial Expression", "Output: " + emotionValue);
+        // Nothing to draw if no face was found
+        if (results.isEmpty()) {
+            return matImage;
+        }
 
-            // Get the emotion label based on the predicted value
-            String emotionText = getEmotionText(emotionValue);
+        long overlayStart = System.nanoTime();
+        FrameTracer.begin(STAGE_OVERLAY);
+
+        // Load custom font from resources to display emotion text
+        Paint paint = createLabelPaint(context);
+
+        // Draw a rectangle around each detected face
+        for (FaceResult result : results) {
+            Imgproc.rectangle(
+                    matImage,
+                    new Point(result.x, result.y),
+                    new Point(result.x + result.width, result.y + result.height),
+                    new Scalar(0, 255, 0),  // Green color for the rectangle
+                    3
+            );
+        }
 
-            // Convert the Mat to Bitmap for drawing the emotion text on the image
-            Bitmap matBitmap = Bitmap.createBitmap(matImage.width(), matImage.height(), Bitmap.Config.ARGB_8888);
-            Utils.matToBitmap(matImage, matBitmap);
+        // Convert the Mat to Bitmap for drawing the emotion texts on the image, reusing the Bitmap of an earlier frame
+        Bitmap matBitmap = Utils.matToBitmap(matImage, bitmapPool);
 
-            // Create a Canvas to draw on the Bitmap
-            Canvas canvas = new Canvas(matBitmap);
+        // Create a Canvas to draw on the Bitmap
+        Canvas canvas = new Canvas(matBitmap);
 
-            // Draw the emotion text above the detected face
+        // Draw the emotion text above each detected face
+        for (FaceResult result : results) {
             canvas.drawText(
-                    emotionText,
-                    (float) (faceArray[i].tl().x + 10),  // X position
-                    (float) (faceArray[i].tl().y - 35),  // Y position
+                    result.emotionText,
+                    (float) (result.x + 10),  // X position
+                    (float) (result.y - 35),  // Y position
                     paint
             );
-
-            // Convert the Bitmap back to Mat after drawing the text
-            Utils.bitmapToMat(matBitmap, matImage);
         }
 
+        // Convert the Bitmap back to Mat after drawing the texts
+        Utils.bitmapToMat(matBitmap, matImage);
+        bitmapPool.recycle(matBitmap);
+        FrameTracer.end();
+        record(STAGE_OVERLAY, overlayStart);
+
         return matImage;
     }
 
-    // Converts the emotion value to a human-readable emotion label
-    private String getEmotionText(float emotionValue) {
-        String val = "";
-
-        // Map the emotion value to an emotion label
-        if(emotionValue >= 0 & emotionValue < 0.5){
-            val = "Surprise";
-        } else if(emotionValue >= 0.5 & emotionValue < 1.5){
-            val = "Fear";
-        } else if(emotionValue >= 1.5 & emotionValue < 2.5){
-            val = "Angry";
-        } else if(emotionValue >= 2.5 & emotionValue < 3.5){
-            val = "Neutral";
-        } else if(emotionValue >= 3.5 & emotionValue < 4.5){
-            val = "Sad";
-        } else if(emotionValue >= 4.5 & emotionValue < 5.5){
-            val = "Disgust";
+    // Detects the faces in the input image (Mat) and predicts their emotions without drawing anything
+    public List<FaceResult> detectEmotions(Mat matImage) {
+        return detectEmotions(matImage, null);
+    }
+
+    // Same as detectEmotions(Mat) with faces already detected (e.g. by the camera hardware).
+    // When detectedFaces is null the Haar Cascade face detector is used.
+    public List<FaceResult> detectEmotions(Mat matImage, Rect[] detectedFaces) {
+
+        // Use the faces reported by the camera when available, they come for free
+        List<FaceResult> results;
+        if (detectedFaces == null) {
+            results = pipeline.process(matImage);
         } else {
-            val = "Happy";
+            hardwareFaces.clear();
+            for (Rect face : detectedFaces) {
+                hardwareFaces.add(face.x, face.y, face.width, face.height);
+            }
+            results = pipeline.process(matImage, hardwareFaces);
+        }
+
+        // Copied into the recorder's ring, written to the file by its own thread
+        long now = System.nanoTime();
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.record(now, results);
+        }
+
+        // Constant time per face, readable from the UI thread with SessionStats.snapshot()
+        SessionStats stats = sessionStats;
+        if (stats != null) {
+            stats.update(now, results);
         }
+        return results;
+    }
 
-        return val;
+    // Creates the Paint used to draw the emotion labels
+    public static Paint createLabelPaint(Context context) {
+        Typeface customTypeface = ResourcesCompat.getFont(context, R.font.aldrich);
+        Paint paint = new Paint();
+        paint.setTypeface(customTypeface);  // Set the custom font
+        paint.setTextSize(50);              // Set the text size
+        paint.setColor(0xFFFF0000);         // Set the text color (Red)
+        paint.setAntiAlias(true);           // Enable anti-aliasing for smooth text rendering
+        return paint;
     }
 
-    // Converts the Bitmap image to ByteBuffer for input to the TensorFlow Lite model
-    private ByteBuffer convertBitmapToByteBuffer(Bitmap scaledBitmap) {
-        ByteBuffer byteBuffer;
-        int sizeImage = INPUT_SIZE; // Input size of the image (e.g., 48x48)
-
-        byteBuffer = ByteBuffer.allocateDirect(4 * 1 * sizeImage * sizeImage * 3);
-        byteBuffer.order(ByteOrder.nativeOrder());  // Set byte order for the buffer
-
-        // Get pixel values from the Bitmap
-        int[] intValues = new int[sizeImage * sizeImage];
-        scaledBitmap.getPixels(intValues, 0, scaledBitmap.getWidth(), 0, 0, scaledBitmap.getWidth(), scaledBitmap.getHeight());
-
-        int pixel = 0;
-        // Loop through all pixels and convert each RGB value to float and add to ByteBuffer
-        for (int i = 0; i < sizeImage; i++) {
-            for (int j = 0; j < sizeImage; j++) {
-                final int val = intValues[pixel++];
-                byteBuffer.putFloat(((val >> 16) & 0xFF) / 255.0f);
-                byteBuffer.putFloat(((val >> 8) & 0xFF) / 255.0f);
-                byteBuffer.putFloat((val & 0xFF) / 255.0f);
+    // Traces the pipeline stages and records their latencies into the metrics, when set
+    private class TracingStageObserver implements StageObserver {
+        @Override
+        public void onStageBegin(String stage, int face) {
+            if (face < 0) {
+                FrameTracer.begin(stage);
+            } else {
+                FrameTracer.begin(stage, face);
             }
         }
 
-        return byteBuffer;
+        @Override
+        public void onStageEnd(String stage, int face, long startNanos) {
+            FrameTracer.end();
+            record(stage, startNanos);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package com.achel.truemood;
+
+import com.achel.truemood.core.PhotoDecoder;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+
+// Decodes photos with Imgcodecs.imread. The IMREAD_REDUCED_* modes let libjpeg downscale in the DCT
+// domain, so a 1/4 or 1/8 decode of a JPEG costs a fraction of a full one.
+public class ImreadPhotoDecoder implements PhotoDecoder<Mat> {
+
+    @Override
+    public Mat decodeGray(File file, int scale) {
+        return decode(file, grayFlags(scale));
+    }
+
+    @Override
+    public Mat decodeColor(File file, int scale) {
+        Mat image = decode(file, colorFlags(scale));
+        if (image != null) {
+            // imread decodes to BGR, the preprocessor reads the channels as RGB like the camera frames
+            Imgproc.cvtColor(image, image, Imgproc.COLOR_BGR2RGB);
+        }
+        return image;
+    }
+
+    @Override
+    public int width(Mat image) {
+        return image.cols();
+    }
+
+    @Override
+    public int height(Mat image) {
+        return image.rows();
+    }
+
+    @Override
+    public void release(Mat image) {
+        image.release();
+    }
+
+    // Returns null instead of the empty Mat imread gives for a missing or unsupported file
+    private static Mat decode(File file, int flags) {
+        Mat image = Imgcodecs.imread(file.getAbsolutePath(), flags);
+        if (image.empty()) {
+            image.release();
+            return null;
+        }
+        return image;
+    }
+
+    private static int grayFlags(int scale) {
+        switch (scale) {
+            case 1:
+                return Imgcodecs.IMREAD_GRAYSCALE;
+            case 2:
+                return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+            case 4:
+                return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+            case 8:
+                return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+            default:
+                throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+    }
+
+    private static int colorFlags(int scale) {
+        switch (scale) {
+            case 1:
+                return Imgcodecs.IMREAD_COLOR;
+            case 2:
+                return Imgcodecs.IMREAD_REDUCED_COLOR_2;
+            case 4:
+                return Imgcodecs.IMREAD_REDUCED_COLOR_4;
+            case 8:
+                return Imgcodecs.IMREAD_REDUCED_COLOR_8;
+            default:
+                throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.achel.truemood;
+
+import com.achel.truemood.core.FacePreprocessor;
+import com.achel.truemood.core.PixelNormalizer;
+
+import org.opencv.android.FrameTracer;
+import org.opencv.core.DirectMat;
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.PixelBuffer;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Crops a face from an RGBA (or gray) Mat, resizes it to the model input size and normalizes
+// its RGB values to floats between 0 and 1
+public class MatFacePreprocessor implements FacePreprocessor<Mat> {
+
+    // Name of the span covering the crop and resize
+    public static final String SPAN_CROP = "crop";
+
+    // Input size for the model
+    private final int inputSize;
+
+    // Rectangle of the face being processed, the face resized to the model input and the model
+    // input normalized from it, reused across faces
+    private final Rect roi = new Rect();
+    private DirectMat scaledFace = null;
+    private final ByteBuffer inputBuffer;
+
+    public MatFacePreprocessor(int inputSize) {
+        this.inputSize = inputSize;
+        inputBuffer = ByteBuffer.allocateDirect(4 * 1 * inputSize * inputSize * 3);
+        inputBuffer.order(ByteOrder.nativeOrder());  // Set byte order for the buffer
+    }
+
+    @Override
+    public ByteBuffer preprocess(Mat matImage, int x, int y, int width, int height) {
+        FrameTracer.begin(SPAN_CROP);
+
+        // Crop the detected face from the image for emotion recognition
+        roi.x = x;
+        roi.y = y;
+        roi.width = width;
+        roi.height = height;
+
+        // The ROI header is released when the scope closes instead of by the finalizer
+        DirectMat face;
+        try (MatScope scope = MatScope.open()) {
+            face = getScaledFace(matImage.type(), scope);
+
+            // Create a Mat for the cropped region of interest (ROI)
+            Mat croppedRgba = new Mat(matImage, roi);
+
+            // Resize the face to match the model's input size, straight into memory readable from Java.
+            // Nearest neighbour like the unfiltered Bitmap scaling used before.
+            Imgproc.resize(croppedRgba, face, face.size(), 0, 0, Imgproc.INTER_NEAREST);
+        }
+        FrameTracer.end();
+
+        // Convert the face pixels to a ByteBuffer for input into the TensorFlow Lite model
+        return convertFaceToByteBuffer(face.pixels());
+    }
+
+    // Returns the Mat the faces are resized into, reused while the input image type does not change
+    private DirectMat getScaledFace(int type, MatScope scope) {
+        if (scaledFace == null || scaledFace.pixels().type() != type) {
+            // Owned by this object, not by the scope of preprocess()
+            scaledFace = scope.detach(new DirectMat(inputSize, inputSize, type));
+        }
+        return scaledFace;
+    }
+
+    // Converts the resized face to the float RGB input of the TensorFlow Lite model, read in place
+    private ByteBuffer convertFaceToByteBuffer(PixelBuffer face) {
+        // The input buffer is reused for every face, the interpreter copies it when running
+        inputBuffer.rewind();
+        PixelNormalizer.toFloatRgb(face.bytes(), inputSize, inputSize, face.channels(), inputBuffer);
+        return inputBuffer;
+    }
+}
@@ -0,0 +1,125 @@
+package com.achel.truemood;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.achel.truemood.core.AnalysisStats;
+import com.achel.truemood.core.ContentHash;
+import com.achel.truemood.core.OfflineVideoAnalyzer;
+import com.achel.truemood.core.RecognitionPipeline;
+import com.achel.truemood.core.ResultCache;
+import com.achel.truemood.core.TimelineCsvWriter;
+import com.achel.truemood.core.VideoSource;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.CascadeClassifier;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Headless analysis of a recorded video (e.g. an interview) into a per-frame emotion timeline CSV.
+// The video is split into segments analysed in parallel, each worker with its own VideoCapture,
+// face detector and interpreter. Must be called off the UI thread, OpenCV must be loaded.
+public class OfflineVideoAnalysis {
+
+    private static final String TAG = "OfflineVideoAnalysis";
+
+    private final Context context;
+    private final String modelPath;
+    private final int inputSize;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int frameStride = 1;
+    private ResultCache resultCache = null;
+
+    public OfflineVideoAnalysis(Context context, String modelPath, int inputSize) {
+        this.context = context.getApplicationContext();
+        this.modelPath = modelPath;
+        this.inputSize = inputSize;
+    }
+
+    // Number of parallel workers, the number of cores by default
+    public void setWorkerCount(int workerCount) {
+        workers = workerCount;
+    }
+
+    // Analyses every stride-th frame only, e.g. 3 for 10 results per second of a 30 fps video
+    public void setFrameStride(int stride) {
+        frameStride = stride;
+    }
+
+    // Reuses the results of the segments analysed by earlier runs with the same model and settings,
+    // e.g. a cache in getCacheDir() kept open by the caller across runs
+    public void setResultCache(ResultCache cache) {
+        resultCache = cache;
+    }
+
+    // Analyses the video and writes its timeline, returns the decode, detect and inference throughput
+    public AnalysisStats run(final File video, File timeline) throws IOException, InterruptedException {
+        long frameCount;
+        double fps;
+        VideoCaptureSource probe = new VideoCaptureSource(video);
+        try {
+            frameCount = probe.getFrameCount();
+            fps = probe.getFps();
+        } finally {
+            probe.close();
+        }
+
+        // Shared read-only by the interpreters, the cascade file is extracted once for all the workers
+        final MappedByteBuffer model = FacialExpressionRecognition.loadModelFile(context.getAssets(), modelPath);
+        final String cascadePath = FacialExpressionRecognition.extractFaceDetectorFile(context).getAbsolutePath();
+
+        OfflineVideoAnalyzer<Mat> analyzer = new OfflineVideoAnalyzer<>(
+                new OfflineVideoAnalyzer.SourceFactory<Mat>() {
+                    @Override
+                    public VideoSource<Mat> open() throws IOException {
+                        return new VideoCaptureSource(video);
+                    }
+                },
+                new OfflineVideoAnalyzer.PipelineFactory<Mat>() {
+                    @Override
+                    public RecognitionPipeline<Mat> create() {
+                        // The workers use all the cores already, one CPU thread per interpreter
+                        Interpreter.Options options = new Interpreter.Options();
+                        options.setNumThreads(1);
+                        Interpreter interpreter = new Interpreter(model, options);
+                        return new RecognitionPipeline<>(
+                                new CascadeFaceDetector(new CascadeClassifier(cascadePath)),
+                                new MatFacePreprocessor(inputSize),
+                                new TfLiteEmotionClassifier(interpreter)
+                        );
+                    }
+
+                    @Override
+                    public void release(RecognitionPipeline<Mat> pipeline) {
+                        ((TfLiteEmotionClassifier) pipeline.getClassifier()).close();
+                    }
+                },
+                frameCount, fps);
+        analyzer.setWorkerCount(workers);
+        analyzer.setFrameStride(frameStride);
+        if (resultCache != null) {
+            analyzer.setResultCache(resultCache, ContentHash.of(video), CascadeFaceDetector.CONFIG
+                    + ";input=" + inputSize, ContentHash.of(model));
+        }
+
+        Log.i(TAG, "Analysing " + video + ": " + frameCount + " frames at " + fps + " fps, "
+                + workers + " workers, stride " + frameStride);
+        TimelineCsvWriter writer = new TimelineCsvWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(timeline), StandardCharsets.UTF_8)));
+        AnalysisStats stats;
+        try {
+            stats = analyzer.run(writer);
+        } finally {
+            writer.close();
+        }
+        Log.i(TAG, "Analysed " + video + ": " + stats);
+        return stats;
+    }
+}
@@ -0,0 +1,32 @@
+package com.achel.truemood;
+
+import com.achel.truemood.core.EmotionClassifier;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+
+// Runs the TensorFlow Lite emotion model, which regresses a single value per face
+public class TfLiteEmotionClassifier implements EmotionClassifier {
+
+    private final Interpreter interpreter;
+
+    // Output of the model, reused across faces
+    private final float[][] emotion = new float[1][1];
+
+    public TfLiteEmotionClassifier(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    @Override
+    public float classify(ByteBuffer input) {
+        // Use the model to predict the emotion
+        interpreter.run(input, emotion);
+        return emotion[0][0];
+    }
+
+    // Frees the native interpreter, the classifier must not be used afterwards
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.achel.truemood;
+
+import com.achel.truemood.core.VideoSource;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.File;
+import java.io.IOException;
+
+// Decodes a video file with OpenCV's VideoCapture into RGBA Mats, the layout of the camera frames
+public class VideoCaptureSource implements VideoSource<Mat> {
+
+    private final VideoCapture capture;
+
+    // Decoded BGR frame and its RGBA conversion, reused across frames
+    private final Mat bgr = new Mat();
+    private final Mat rgba = new Mat();
+
+    public VideoCaptureSource(File video) throws IOException {
+        capture = new VideoCapture(video.getAbsolutePath());
+        if (!capture.isOpened()) {
+            capture.release();
+            throw new IOException("Cannot open video " + video);
+        }
+    }
+
+    // Returns the number of frames reported by the container, it may be approximate
+    public long getFrameCount() {
+        return (long) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+    }
+
+    // Returns the frame rate reported by the container
+    public double getFps() {
+        return capture.get(Videoio.CAP_PROP_FPS);
+    }
+
+    @Override
+    public void seek(long frameIndex) throws IOException {
+        // Seeking to the current position would make some backends decode from the previous key frame again
+        if ((long) capture.get(Videoio.CAP_PROP_POS_FRAMES) == frameIndex) {
+            return;
+        }
+        if (!capture.set(Videoio.CAP_PROP_POS_FRAMES, frameIndex)) {
+            throw new IOException("Cannot seek to frame " + frameIndex);
+        }
+    }
+
+    @Override
+    public Mat read() {
+        if (!capture.read(bgr) || bgr.empty()) {
+            return null;
+        }
+        Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+        return rgba;
+    }
+
+    @Override
+    public boolean skip() {
+        // grab() demuxes and decodes without the conversion to a Mat
+        return capture.grab();
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+        bgr.release();
+        rgba.release();
+    }
+}
@@ -0,0 +1,78 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CaptureRateController}, run on the development machine (host).
+ */
+public class CaptureRateControllerTest {
+
+    private static final int[][] RANGES = { {15, 15}, {7, 15}, {15, 24}, {24, 24}, {15, 30}, {30, 30} };
+    private static final long MS = 1000000L;
+
+    // Processes frames back to back, each taking frameMs, starting at startNanos
+    private static long process(CaptureRateController controller, long startNanos, int frames, long frameMs) {
+        long now = startNanos;
+        for (int i = 0; i < frames; i++) {
+            controller.onFrameCaptured(now);
+            controller.onFrameProcessed(now, now + frameMs * MS);
+            now += frameMs * MS;
+        }
+        return now;
+    }
+
+    @Test
+    public void selectRange_lowestMaxReachingRate() {
+        assertArrayEquals(new int[]{15, 15}, CaptureRateController.selectRange(RANGES, 12));
+        assertArrayEquals(new int[]{24, 24}, CaptureRateController.selectRange(RANGES, 20));
+        assertArrayEquals(new int[]{30, 30}, CaptureRateController.selectRange(RANGES, 60));
+    }
+
+    @Test
+    public void update_waitsForWarmup() {
+        CaptureRateController controller = new CaptureRateController(RANGES);
+        long now = process(controller, 1, CaptureRateController.WARMUP_FRAMES - 1, 80);
+
+        assertNull(controller.update(now));
+        assertNull(controller.getRequestedRange());
+    }
+
+    @Test
+    public void update_matchesSustainableRate() {
+        CaptureRateController controller = new CaptureRateController(RANGES);
+        long now = process(controller, 1, CaptureRateController.WARMUP_FRAMES, 80);
+
+        assertEquals(12.5, controller.getSustainableRate(), 0.01);
+        assertArrayEquals(new int[]{15, 15}, controller.update(now));
+        assertArrayEquals(new int[]{15, 15}, controller.getRequestedRange());
+        assertEquals(12.5, controller.getProcessedRate(), 0.5);
+    }
+
+    @Test
+    public void update_renegotiatesOnlyOnSubstantialChange() {
+        CaptureRateController controller = new CaptureRateController(RANGES);
+        long now = process(controller, 1, CaptureRateController.WARMUP_FRAMES, 80);
+        assertNotNull(controller.update(now));
+
+        // small change, after the minimum interval: keep the range
+        now = process(controller, now, 100, 75);
+        assertNull(controller.update(now));
+
+        // processing got much faster: go up to 30 fps
+        now = process(controller, now, 100, 30);
+        assertArrayEquals(new int[]{30, 30}, controller.update(now));
+    }
+
+    @Test
+    public void update_respectsMinimumInterval() {
+        CaptureRateController controller = new CaptureRateController(RANGES);
+        long now = process(controller, 1, CaptureRateController.WARMUP_FRAMES, 80);
+        assertNotNull(controller.update(now));
+
+        now = process(controller, now, 40, 30);
+        assertTrue(now - 1 < 2 * CaptureRateController.MIN_INTERVAL_NANOS);
+        assertNull(controller.update(now - CaptureRateController.MIN_INTERVAL_NANOS / 2));
+    }
+}
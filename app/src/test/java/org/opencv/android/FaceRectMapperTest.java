@@ -0,0 +1,72 @@
+package org.opencv.android;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceRectMapper}, run on the development machine (host).
+ */
+public class FaceRectMapperTest {
+
+    // 4000x3000 active array, no zoom
+    private static final int ARRAY_WIDTH = 4000;
+    private static final int ARRAY_HEIGHT = 3000;
+
+    @Test
+    public void map_sameAspectScalesToStream() {
+        FaceRectMapper mapper = new FaceRectMapper();
+        mapper.setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 640, 480, 0);
+
+        assertEquals(new Rect(160, 120, 80, 64), mapper.map(1000, 750, 1500, 1150));
+    }
+
+    @Test
+    public void map_widerStreamCropsTopAndBottom() {
+        FaceRectMapper mapper = new FaceRectMapper();
+        // 16:9 stream of a 4:3 array shows the 4000x2250 band in the middle
+        mapper.setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 1280, 720, 0);
+
+        assertEquals(new Rect(0, 0, 320, 160), mapper.map(0, 375, 1000, 875));
+    }
+
+    @Test
+    public void map_zoomCropRegion() {
+        FaceRectMapper mapper = new FaceRectMapper();
+        // 2x digital zoom: crop region is the centre quarter of the array
+        mapper.setTransform(1000, 750, 2000, 1500, 640, 480, 0);
+
+        assertEquals(new Rect(0, 0, 320, 240), mapper.map(1000, 750, 2000, 1500));
+    }
+
+    @Test
+    public void map_clipsAndDropsInvisibleFaces() {
+        FaceRectMapper mapper = new FaceRectMapper();
+        mapper.setTransform(1000, 750, 2000, 1500, 640, 480, 0);
+
+        assertEquals(new Rect(0, 0, 160, 120), mapper.map(0, 0, 1500, 1125));
+        assertNull(mapper.map(0, 0, 900, 700));
+    }
+
+    @Test
+    public void map_rotations() {
+        FaceRectMapper mapper = new FaceRectMapper();
+        // face at (160, 120, 80, 64) in a 640x480 stream
+        int left = 1000, top = 750, right = 1500, bottom = 1150;
+
+        mapper.setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 640, 480, 90);
+        assertEquals(new Rect(480 - 184, 160, 64, 80), mapper.map(left, top, right, bottom));
+
+        mapper.setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 640, 480, 180);
+        assertEquals(new Rect(640 - 240, 480 - 184, 80, 64), mapper.map(left, top, right, bottom));
+
+        mapper.setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 640, 480, 270);
+        assertEquals(new Rect(120, 640 - 240, 64, 80), mapper.map(left, top, right, bottom));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTransform_rejectsUnsupportedRotation() {
+        new FaceRectMapper().setTransform(0, 0, ARRAY_WIDTH, ARRAY_HEIGHT, 640, 480, 45);
+    }
+}
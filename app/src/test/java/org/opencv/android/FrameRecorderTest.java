@@ -0,0 +1,106 @@
+package org.opencv.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameRecorder} and {@link FrameRecordReader}, run on the development machine (host).
+ */
+public class FrameRecorderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (i * 31 + seed);
+        return data;
+    }
+
+    private static byte[] remaining(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    @Test
+    public void readsBackPackedAndPlanarFrames() throws IOException {
+        File file = mFolder.newFile();
+        byte[] nv21 = bytes(4 * 2 * 3 / 2, 1);
+        ByteBuffer y = ByteBuffer.wrap(bytes(8 * 2, 2));
+        ByteBuffer u = ByteBuffer.wrap(bytes(7, 3));
+        ByteBuffer v = ByteBuffer.wrap(bytes(7, 4));
+        // a chunk smaller than the frames, every frame gets its own mapping
+        FrameRecorder recorder = new FrameRecorder(file, 32);
+        assertTrue(recorder.writeFrame(RecordedFrame.FORMAT_NV21, nv21, 4, 2, 90, 1000L));
+        assertTrue(recorder.writeYuv420888(4, 2, 270, 2000L, y, 8, 1, u, v, 8, 2));
+        recorder.close();
+
+        assertEquals(0, y.position());
+        assertFalse(recorder.writeFrame(RecordedFrame.FORMAT_NV21, nv21, 4, 2, 0, 3000L));
+        assertEquals(file.length(), recorder.getBytesWritten());
+
+        FrameRecordReader reader = new FrameRecordReader(file, 64);
+        RecordedFrame frame = new RecordedFrame();
+        assertTrue(reader.next(frame));
+        assertEquals(RecordedFrame.FORMAT_NV21, frame.getFormat());
+        assertEquals(4, frame.getWidth());
+        assertEquals(2, frame.getHeight());
+        assertEquals(90, frame.getRotation());
+        assertEquals(1000L, frame.getTimestampNanos());
+        assertArrayEquals(nv21, remaining(frame.getYPlane()));
+        assertEquals(0, frame.getUPlane().remaining());
+
+        assertTrue(reader.next(frame));
+        assertEquals(RecordedFrame.FORMAT_YUV_420_888, frame.getFormat());
+        assertEquals(270, frame.getRotation());
+        assertEquals(8, frame.getYRowStride());
+        assertEquals(2, frame.getUvPixelStride());
+        assertArrayEquals(remaining(y), remaining(frame.getYPlane()));
+        assertArrayEquals(remaining(u), remaining(frame.getUPlane()));
+        assertArrayEquals(remaining(v), remaining(frame.getVPlane()));
+
+        assertFalse(reader.next(frame));
+        reader.rewind();
+        assertTrue(reader.next(frame));
+        assertEquals(1000L, frame.getTimestampNanos());
+        reader.close();
+    }
+
+    @Test
+    public void unclosedRecording_endsAtLastCompleteFrame() throws IOException {
+        File file = mFolder.newFile();
+        FrameRecorder recorder = new FrameRecorder(file, 4096);
+        recorder.writeFrame(RecordedFrame.FORMAT_NV21, bytes(6, 0), 2, 2, 0, 1L);
+        recorder.writeFrame(RecordedFrame.FORMAT_NV21, bytes(6, 1), 2, 2, 0, 2L);
+        // never closed, the rest of the mapped chunk is zero
+
+        FrameRecordReader reader = new FrameRecordReader(file);
+        RecordedFrame frame = new RecordedFrame();
+        assertTrue(reader.next(frame));
+        assertTrue(reader.next(frame));
+        assertEquals(2L, frame.getTimestampNanos());
+        assertFalse(reader.next(frame));
+        assertEquals(2, reader.getFrameIndex());
+        reader.close();
+        recorder.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void notARecording_throws() throws IOException {
+        File file = mFolder.newFile();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.write(bytes(64, 0));
+        out.close();
+        new FrameRecordReader(file);
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameTraceRing}, run on the development machine (host).
+ */
+public class FrameTraceRingTest {
+
+    private static String toJson(FrameTraceRing ring) throws IOException {
+        StringWriter writer = new StringWriter();
+        ring.writeJson(writer);
+        return writer.toString();
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1))
+            count++;
+        return count;
+    }
+
+    @Test
+    public void writeJson_writesSpansWithIds() throws IOException {
+        FrameTraceRing ring = new FrameTraceRing(16);
+        ring.begin("camera_frame", 7, -1, 1000000, 1);
+        ring.begin("inference", 7, 2, 1500000, 1);
+        ring.end(2500000, 1);
+        ring.end(3000000, 1);
+
+        String json = toJson(ring);
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json.contains("{\"ph\":\"B\",\"ts\":1000.000,\"pid\":1,\"tid\":1,\"name\":\"camera_frame\",\"args\":{\"frame\":7}}"));
+        assertTrue(json.contains("\"name\":\"inference\",\"args\":{\"frame\":7,\"face\":2}}"));
+        assertTrue(json.contains("{\"ph\":\"E\",\"ts\":3000.000,\"pid\":1,\"tid\":1}"));
+        assertEquals(2, count(json, "\"ph\":\"B\""));
+        assertEquals(2, count(json, "\"ph\":\"E\""));
+    }
+
+    @Test
+    public void ring_overwritesOldestAndSkipsOrphanEnds() throws IOException {
+        FrameTraceRing ring = new FrameTraceRing(3);
+        ring.begin("camera_frame", 1, -1, 1000, 1);
+        ring.begin("convert", 1, -1, 2000, 1);
+        ring.end(3000, 1);
+        ring.end(4000, 1);
+        ring.begin("camera_frame", 2, -1, 5000, 1);
+
+        assertEquals(3, ring.size());
+        String json = toJson(ring);
+        // the remaining events are E(convert), E(camera_frame) and B(camera_frame 2)
+        assertEquals(0, count(json, "\"ph\":\"E\""));
+        assertEquals(1, count(json, "\"ph\":\"B\""));
+        assertTrue(json.contains("\"frame\":2"));
+    }
+
+    @Test
+    public void writeJson_keepsThreadsApart() throws IOException {
+        FrameTraceRing ring = new FrameTraceRing(8);
+        ring.end(500, 2);
+        ring.begin("draw", 3, -1, 1000, 2);
+        ring.begin("listener", 4, -1, 1100, 1);
+        ring.end(1200, 2);
+        ring.end(1300, 1);
+
+        String json = toJson(ring);
+        assertEquals(2, count(json, "\"ph\":\"E\""));
+        assertFalse(json.contains("\"ts\":0.500"));
+    }
+
+    @Test
+    public void clear_dropsEvents() throws IOException {
+        FrameTraceRing ring = new FrameTraceRing(4);
+        ring.begin("detect", 1, -1, 1000, 1);
+        ring.clear();
+
+        assertEquals(0, ring.size());
+        assertEquals(0, count(toJson(ring), "\"ph\""));
+    }
+}
@@ -0,0 +1,56 @@
+package org.opencv.android;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link HardwareFaceRing}, run on the development machine (host).
+ */
+public class HardwareFaceRingTest {
+
+    @Test
+    public void get_matchesTimestamp() {
+        HardwareFaceRing ring = new HardwareFaceRing(4);
+        ring.put(1000, new Rect[] { new Rect(1, 2, 3, 4) }, 1);
+        ring.put(2000, new Rect[] { new Rect(5, 6, 7, 8), new Rect(9, 10, 11, 12) }, 2);
+
+        assertArrayEquals(new Rect[] { new Rect(1, 2, 3, 4) }, ring.get(1000));
+        assertEquals(2, ring.get(2000).length);
+    }
+
+    @Test
+    public void get_resultNotArrivedUsesLatestEarlier() {
+        HardwareFaceRing ring = new HardwareFaceRing(4);
+        ring.put(1000, new Rect[] { new Rect(1, 2, 3, 4) }, 1);
+        ring.put(2000, new Rect[] { new Rect(5, 6, 7, 8) }, 1);
+
+        assertEquals(new Rect(5, 6, 7, 8), ring.get(3000)[0]);
+        assertEquals(0, ring.get(500).length);
+    }
+
+    @Test
+    public void put_copiesOnlyCountAndReusesSlots() {
+        HardwareFaceRing ring = new HardwareFaceRing(1);
+        Rect[] mapped = { new Rect(1, 2, 3, 4), new Rect(5, 6, 7, 8) };
+        ring.put(1000, mapped, 1);
+        Rect[] first = ring.get(1000);
+        mapped[0].x = 100;
+        ring.put(2000, mapped, 1);
+
+        assertEquals(1, first.length);
+        assertSame(first, ring.get(2000));
+        assertEquals(100, first[0].x);
+        assertEquals(0, ring.get(1000).length);
+    }
+
+    @Test
+    public void clear_dropsResults() {
+        HardwareFaceRing ring = new HardwareFaceRing(2);
+        ring.put(1000, new Rect[] { new Rect(1, 2, 3, 4) }, 1);
+        ring.clear();
+
+        assertEquals(0, ring.get(1000).length);
+    }
+}
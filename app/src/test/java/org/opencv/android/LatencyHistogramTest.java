@@ -0,0 +1,73 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}, run on the development machine (host).
+ */
+public class LatencyHistogramTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void empty_reportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram("stage");
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.p50Nanos);
+        assertEquals(0, snapshot.maxNanos);
+    }
+
+    @Test
+    public void percentiles_withinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram("stage");
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * MS);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count);
+        assertEquals(50 * MS, snapshot.p50Nanos, 50 * MS * 0.07);
+        assertEquals(95 * MS, snapshot.p95Nanos, 95 * MS * 0.07);
+        assertEquals(99 * MS, snapshot.p99Nanos, 99 * MS * 0.07);
+        assertEquals(100 * MS, snapshot.maxNanos);
+        assertEquals(50500000L, snapshot.meanNanos);
+    }
+
+    @Test
+    public void percentiles_showTail() {
+        LatencyHistogram histogram = new LatencyHistogram("stage");
+        for (int i = 0; i < 98; i++)
+            histogram.record(5 * MS);
+        histogram.record(40 * MS);
+        histogram.record(200 * MS);
+
+        assertEquals(5 * MS, histogram.getPercentile(50), 5 * MS * 0.07);
+        assertEquals(5 * MS, histogram.getPercentile(95), 5 * MS * 0.07);
+        assertEquals(40 * MS, histogram.getPercentile(99), 40 * MS * 0.07);
+        assertEquals(200 * MS, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void buckets_coverWholeRange() {
+        for (long micros = 0; micros < 1L << 36; micros = micros * 3 / 2 + 1) {
+            long midpoint = LatencyHistogram.bucketMidpointMicros(LatencyHistogram.bucketOf(micros));
+            assertEquals("value " + micros, micros, midpoint, Math.max(1, micros * 0.07));
+        }
+        assertEquals(LatencyHistogram.bucketOf(Long.MAX_VALUE), LatencyHistogram.bucketOf(1L << 40));
+    }
+
+    @Test
+    public void reset_clearsValues() {
+        LatencyHistogram histogram = new LatencyHistogram("stage");
+        histogram.record(10 * MS);
+        histogram.record(-1);
+        assertEquals(2, histogram.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.snapshot().maxNanos);
+    }
+}
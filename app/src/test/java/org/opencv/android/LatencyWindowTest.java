@@ -0,0 +1,49 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyWindow}, run on the development machine (host).
+ */
+public class LatencyWindowTest {
+
+    @Test
+    public void empty_reportsZero() {
+        LatencyWindow window = new LatencyWindow(4);
+
+        assertEquals(0, window.size());
+        assertEquals(0, window.getLast());
+        assertEquals(0, window.getPercentile(95));
+    }
+
+    @Test
+    public void percentiles_overSamples() {
+        LatencyWindow window = new LatencyWindow(100);
+        for (int i = 100; i >= 1; i--)
+            window.record(i);
+
+        assertEquals(1, window.getLast());
+        assertEquals(50, window.getPercentile(50));
+        assertEquals(95, window.getPercentile(95));
+        assertEquals(100, window.getPercentile(100));
+        assertEquals(1, window.getPercentile(0));
+    }
+
+    @Test
+    public void window_forgetsOldSamples() {
+        LatencyWindow window = new LatencyWindow(3);
+        window.record(500);
+        window.record(10);
+        window.record(20);
+        window.record(30);
+
+        assertEquals(3, window.size());
+        assertEquals(30, window.getPercentile(100));
+        assertEquals(30, window.getLast());
+
+        window.clear();
+        assertEquals(0, window.size());
+    }
+}
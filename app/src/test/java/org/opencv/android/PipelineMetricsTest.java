@@ -0,0 +1,48 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PipelineMetrics}, run on the development machine (host).
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void snapshot_keepsStageOrder() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.stage(PipelineMetrics.STAGE_CONVERT).record(2000000);
+        metrics.stage("inference").record(8000000);
+        metrics.stage(PipelineMetrics.STAGE_CONVERT).record(3000000);
+
+        List<LatencyHistogram.Snapshot> snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals(PipelineMetrics.STAGE_CONVERT, snapshot.get(0).name);
+        assertEquals(2, snapshot.get(0).count);
+        assertEquals("inference", snapshot.get(1).name);
+        assertEquals(8000000, snapshot.get(1).maxNanos);
+    }
+
+    @Test
+    public void record_measuresElapsedTime() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        long start = System.nanoTime() - 5000000;
+        metrics.record("detect", start);
+
+        assertTrue(metrics.snapshot("detect").maxNanos >= 5000000);
+        assertNull(metrics.snapshot("draw"));
+    }
+
+    @Test
+    public void reset_keepsStages() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.stage("detect").record(1000);
+        metrics.reset();
+
+        assertEquals(0, metrics.snapshot("detect").count);
+        assertEquals(1, metrics.snapshot().size());
+    }
+}
@@ -0,0 +1,117 @@
+package org.opencv.android;
+
+import org.junit.Test;
+import org.opencv.core.Size;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ResolutionPolicy}, run on the development machine (host).
+ */
+public class ResolutionPolicyTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final int NO_LIMIT = CameraBridgeViewBase.MAX_UNSPECIFIED;
+
+    // Output sizes of a typical phone back camera, as reported by the HAL (landscape, largest first)
+    private static final List<int[]> PHONE_SIZES = Arrays.asList(
+            new int[]{4032, 3024}, new int[]{3840, 2160}, new int[]{1920, 1080}, new int[]{1440, 1080},
+            new int[]{1280, 960}, new int[]{1280, 720}, new int[]{960, 720}, new int[]{800, 600},
+            new int[]{720, 480}, new int[]{640, 480}, new int[]{640, 360}, new int[]{352, 288},
+            new int[]{320, 240}, new int[]{176, 144});
+
+    private static final CameraBridgeViewBase.ListItemAccessor ACCESSOR = new CameraBridgeViewBase.ListItemAccessor() {
+        @Override
+        public int getWidth(Object obj) {
+            return ((int[]) obj)[0];
+        }
+
+        @Override
+        public int getHeight(Object obj) {
+            return ((int[]) obj)[1];
+        }
+    };
+
+    private static void assertSize(int width, int height, Size size) {
+        assertEquals(width, (int) size.width);
+        assertEquals(height, (int) size.height);
+    }
+
+    @Test
+    public void cost_targetMatchingDisplay_isOneInAnyOrientation() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+
+        assertEquals(1.0, policy.cost(640, 480, 640, 480), EPSILON);
+        assertEquals(1.0, policy.cost(480, 640, 1440, 1080), EPSILON);
+    }
+
+    @Test
+    public void cost_undershootPenalisedAsMuchAsSameOversize() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+
+        // pixels only when larger, a quarter of the pixels plus half missing times the weight when smaller
+        assertEquals(4.0, policy.cost(1280, 960, 0, 0), EPSILON);
+        assertEquals(0.25 + 0.5 * ResolutionPolicy.DEFAULT_UNDERSHOOT_WEIGHT, policy.cost(320, 240, 0, 0), EPSILON);
+        // with the default weight 20% too small costs as much as 20% too large
+        assertEquals(1.44, policy.cost(512, 384, 0, 0), EPSILON);
+        assertEquals(1.44, policy.cost(768, 576, 0, 0), EPSILON);
+
+        policy.setUndershootWeight(8.0f);
+        assertTrue(policy.cost(512, 384, 0, 0) > policy.cost(768, 576, 0, 0));
+    }
+
+    @Test
+    public void cost_aspectMismatch_addsLogRatioDifference() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+
+        // 4:3 frames on a 16:9 display
+        assertEquals(1.0 + Math.log(4.0 / 3.0), policy.cost(640, 480, 1920, 1080), EPSILON);
+        policy.setAspectWeight(0.0f);
+        assertEquals(1.0, policy.cost(640, 480, 1920, 1080), EPSILON);
+    }
+
+    @Test
+    public void selectFrameSize_phoneSizes_picksClosestToTarget() {
+        // portrait 19.5:9 phone screen
+        assertSize(640, 480, new ResolutionPolicy(640, 480)
+                .selectFrameSize(PHONE_SIZES, ACCESSOR, 1080, 2340, NO_LIMIT, NO_LIMIT));
+        assertSize(1280, 720, new ResolutionPolicy(1280, 720)
+                .selectFrameSize(PHONE_SIZES, ACCESSOR, 1080, 2340, NO_LIMIT, NO_LIMIT));
+        assertSize(640, 360, new ResolutionPolicy(640, 360)
+                .selectFrameSize(PHONE_SIZES, ACCESSOR, 1920, 1080, NO_LIMIT, NO_LIMIT));
+    }
+
+    @Test
+    public void selectFrameSize_aspectWeight_prefersDisplayAspect() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+        assertSize(640, 480, policy.selectFrameSize(PHONE_SIZES, ACCESSOR, 1920, 1080, NO_LIMIT, NO_LIMIT));
+
+        // 3:2 is closer to the 16:9 display, worth its extra pixels once the aspect weighs more
+        policy.setAspectWeight(3.0f);
+        assertSize(720, 480, policy.selectFrameSize(PHONE_SIZES, ACCESSOR, 1920, 1080, NO_LIMIT, NO_LIMIT));
+    }
+
+    @Test
+    public void selectFrameSize_noUndershootWeight_picksSmallest() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+        policy.setUndershootWeight(0.0f);
+
+        assertSize(176, 144, policy.selectFrameSize(PHONE_SIZES, ACCESSOR, 0, 0, NO_LIMIT, NO_LIMIT));
+    }
+
+    @Test
+    public void selectFrameSize_maxFrameSize_limitsCandidatesOrFallsBackToFirst() {
+        ResolutionPolicy policy = new ResolutionPolicy(640, 480);
+
+        assertSize(352, 288, policy.selectFrameSize(PHONE_SIZES, ACCESSOR, 1080, 2340, 400, 300));
+        assertSize(4032, 3024, policy.selectFrameSize(PHONE_SIZES, ACCESSOR, 1080, 2340, 100, 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidSize_throws() {
+        new ResolutionPolicy(640, 0);
+    }
+}
@@ -0,0 +1,86 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TripleBuffer}, run on the development machine (host).
+ */
+public class TripleBufferTest {
+
+    private static class Slot {
+        int value;
+    }
+
+    private static TripleBuffer<Slot> newBuffer() {
+        return new TripleBuffer<Slot>(new Slot(), new Slot(), new Slot());
+    }
+
+    @Test
+    public void acquire_returnsNullWithoutPublish() throws InterruptedException {
+        assertNull(newBuffer().acquire(0));
+        assertNull(newBuffer().acquire(10));
+    }
+
+    @Test
+    public void acquire_returnsPublishedSlotOnce() throws InterruptedException {
+        TripleBuffer<Slot> buffer = newBuffer();
+        buffer.getBack().value = 1;
+        buffer.publish();
+
+        assertEquals(1, buffer.acquire(0).value);
+        assertNull(buffer.acquire(0));
+    }
+
+    @Test
+    public void acquire_returnsLatestAndCountsDropped() throws InterruptedException {
+        TripleBuffer<Slot> buffer = newBuffer();
+        for (int i = 1; i <= 5; i++) {
+            buffer.getBack().value = i;
+            buffer.publish();
+        }
+
+        assertEquals(5, buffer.acquire(0).value);
+        assertEquals(5, buffer.getPublishedCount());
+        assertEquals(4, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void publish_neverHandsOutFrontSlot() throws InterruptedException {
+        TripleBuffer<Slot> buffer = newBuffer();
+        buffer.getBack().value = 1;
+        buffer.publish();
+        Slot front = buffer.acquire(0);
+
+        for (int i = 2; i < 10; i++) {
+            assertNotSame(front, buffer.getBack());
+            buffer.getBack().value = i;
+            buffer.publish();
+        }
+        assertEquals(1, front.value);
+    }
+
+    @Test
+    public void acquire_wakesUpOnPublish() throws InterruptedException {
+        final TripleBuffer<Slot> buffer = newBuffer();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                buffer.getBack().value = 7;
+                buffer.publish();
+            }
+        });
+        producer.start();
+
+        Slot slot = buffer.acquire(5000);
+        producer.join();
+        assertNotNull(slot);
+        assertEquals(7, slot.value);
+    }
+}
@@ -0,0 +1,168 @@
+package org.opencv.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MatPool}, run on the development machine (host).
+ */
+public class MatPoolTest {
+
+    // Wraps a dummy address with a fixed shape so that no native code is needed
+    private static class FakeMat extends Mat {
+        final int rows;
+        final int cols;
+        final int type;
+        int releases = 0;
+
+        FakeMat(int rows, int cols, int type) {
+            super(1);
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        // a released Mat is empty, like a native one
+        @Override
+        public int rows() {
+            return releases > 0 ? 0 : rows;
+        }
+
+        @Override
+        public int cols() {
+            return releases > 0 ? 0 : cols;
+        }
+
+        @Override
+        public int type() {
+            return type;
+        }
+
+        @Override
+        public void release() {
+            releases++;
+        }
+    }
+
+    private static class FakePool extends MatPool {
+        FakePool(int maxPerKey, long maxIdleBytes) {
+            super(maxPerKey, maxIdleBytes);
+        }
+
+        @Override
+        protected Mat create(int rows, int cols, int type) {
+            return new FakeMat(rows, cols, type);
+        }
+    }
+
+    @Test
+    public void lease_reusesRecycledMatOfSameShape() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        Mat first = pool.lease(10, 20, CvType.CV_8UC1);
+        pool.recycle(first);
+
+        assertSame(first, pool.lease(10, 20, CvType.CV_8UC1));
+        assertNotSame(first, pool.lease(10, 20, CvType.CV_8UC1));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void lease_differentShape_misses() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        pool.recycle(pool.lease(10, 20, CvType.CV_8UC1));
+
+        Mat other = pool.lease(10, 20, CvType.CV_8UC4);
+
+        assertEquals(0, pool.getHitCount());
+        assertEquals(CvType.CV_8UC4, other.type());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void recycle_overPerKeyCap_releases() {
+        MatPool pool = new FakePool(1, 1 << 20);
+        FakeMat a = (FakeMat) pool.lease(4, 4, CvType.CV_8UC1);
+        FakeMat b = (FakeMat) pool.lease(4, 4, CvType.CV_8UC1);
+        pool.recycle(a);
+        pool.recycle(b);
+
+        assertEquals(0, a.releases);
+        assertEquals(1, b.releases);
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void recycle_overByteBudget_evictsLeastRecentlyUsedShape() {
+        // room for two 100 byte Mats
+        MatPool pool = new FakePool(4, 200);
+        FakeMat old = (FakeMat) pool.lease(10, 10, CvType.CV_8UC1);
+        FakeMat recent = (FakeMat) pool.lease(5, 20, CvType.CV_8UC1);
+        FakeMat next = (FakeMat) pool.lease(20, 5, CvType.CV_8UC1);
+        pool.recycle(old);
+        pool.recycle(recent);
+        pool.recycle(next);
+
+        assertEquals(1, old.releases);
+        assertEquals(0, recent.releases);
+        assertEquals(0, next.releases);
+        assertEquals(200, pool.getIdleBytes());
+        assertEquals(1, pool.getEvictionCount());
+    }
+
+    @Test
+    public void recycle_twice_throws() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        Mat mat = pool.lease(4, 4, CvType.CV_8UC1);
+        pool.recycle(mat);
+        try {
+            pool.recycle(mat);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void lease_matReleasedWhileIdle_isDropped() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        Mat released = pool.lease(10, 20, CvType.CV_8UC1);
+        pool.recycle(released);
+        released.release();
+
+        Mat leased = pool.lease(10, 20, CvType.CV_8UC1);
+
+        assertNotSame(released, leased);
+        assertEquals(20, leased.cols());
+        assertEquals(1, pool.getReleasedIdleCount());
+        assertEquals(0, pool.getHitCount());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void clear_releasesIdleMats() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        FakeMat mat = (FakeMat) pool.lease(4, 4, CvType.CV_16SC2);
+        pool.recycle(mat);
+        pool.clear();
+
+        assertEquals(1, mat.releases);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void lease_insideScope_notReleasedByScope() {
+        MatPool pool = new FakePool(4, 1 << 20);
+        FakeMat mat;
+        try (MatScope scope = MatScope.open()) {
+            mat = (FakeMat) pool.lease(4, 4, CvType.CV_8UC1);
+            assertEquals(0, scope.size());
+        }
+
+        assertEquals(0, mat.releases);
+    }
+}
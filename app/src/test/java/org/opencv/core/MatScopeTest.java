@@ -0,0 +1,110 @@
+package org.opencv.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MatScope}, run on the development machine (host).
+ */
+public class MatScopeTest {
+
+    // Wraps a dummy address so that no native code is needed, counts the releases
+    private static class FakeMat extends Mat {
+        int releases = 0;
+
+        FakeMat() {
+            super(1);
+        }
+
+        @Override
+        public void release() {
+            releases++;
+        }
+    }
+
+    private long mLeaksBefore;
+
+    @Before
+    public void setUp() {
+        mLeaksBefore = MatScope.getLeakCount();
+    }
+
+    @After
+    public void tearDown() {
+        assertNull(MatScope.current());
+        assertEquals(mLeaksBefore, MatScope.getLeakCount());
+    }
+
+    @Test
+    public void close_releasesCreatedMats() {
+        FakeMat a;
+        FakeMat b;
+        try (MatScope scope = MatScope.open()) {
+            a = new FakeMat();
+            b = new FakeMat();
+            assertEquals(2, scope.size());
+            assertEquals(mLeaksBefore + 2, MatScope.getLeakCount());
+        }
+
+        assertEquals(1, a.releases);
+        assertEquals(1, b.releases);
+    }
+
+    @Test
+    public void matOutsideScope_notTracked() {
+        FakeMat outside = new FakeMat();
+        try (MatScope scope = MatScope.open()) {
+            assertEquals(0, scope.size());
+        }
+
+        assertEquals(0, outside.releases);
+    }
+
+    @Test
+    public void detach_keepsMatAlive() {
+        FakeMat kept;
+        FakeMat dropped;
+        try (MatScope scope = MatScope.open()) {
+            kept = scope.detach(new FakeMat());
+            dropped = new FakeMat();
+        }
+
+        assertEquals(0, kept.releases);
+        assertEquals(1, dropped.releases);
+    }
+
+    @Test
+    public void nestedScopes_releaseOwnMats() {
+        FakeMat outer;
+        FakeMat inner;
+        try (MatScope outerScope = MatScope.open()) {
+            outer = new FakeMat();
+            try (MatScope innerScope = MatScope.open()) {
+                inner = new FakeMat();
+                assertSame(innerScope, MatScope.current());
+            }
+            assertEquals(1, inner.releases);
+            assertEquals(0, outer.releases);
+            assertSame(outerScope, MatScope.current());
+        }
+
+        assertEquals(1, outer.releases);
+    }
+
+    @Test
+    public void closeOutOfOrder_throws() {
+        MatScope outer = MatScope.open();
+        MatScope inner = MatScope.open();
+        try {
+            outer.close();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        inner.close();
+        outer.close();
+    }
+}
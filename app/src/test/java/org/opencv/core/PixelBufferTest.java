@@ -0,0 +1,56 @@
+package org.opencv.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PixelBuffer}, run on the development machine (host).
+ */
+public class PixelBufferTest {
+
+    @Test
+    public void uByte_readsAndWritesInterleavedChannels() {
+        ByteBuffer data = ByteBuffer.allocateDirect(2 * 3 * 4);
+        PixelBuffer pixels = new PixelBuffer(data, 2, 3, CvType.CV_8UC4);
+
+        pixels.putUByte(1, 2, 3, 250);
+
+        assertEquals(250, pixels.getUByte(1, 2, 3));
+        assertEquals((byte) 250, data.get((1 * 3 + 2) * 4 + 3));
+        assertEquals(0, pixels.getUByte(0, 0, 0));
+    }
+
+    @Test
+    public void floats_useNativeOrder() {
+        ByteBuffer data = ByteBuffer.allocateDirect(2 * 2 * 4);
+        PixelBuffer pixels = new PixelBuffer(data, 2, 2, CvType.CV_32FC1);
+
+        pixels.putFloat(1, 0, 0, 0.5f);
+
+        assertEquals(0.5f, pixels.floats().get(2), 0f);
+        assertEquals(0.5f, data.order(ByteOrder.nativeOrder()).getFloat(8), 0f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds_throws() {
+        PixelBuffer pixels = new PixelBuffer(ByteBuffer.allocateDirect(12), 2, 2, CvType.CV_8UC3);
+
+        pixels.getUByte(0, 0, 3);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void wrongDepth_throws() {
+        PixelBuffer pixels = new PixelBuffer(ByteBuffer.allocateDirect(16), 2, 2, CvType.CV_32SC1);
+
+        pixels.getFloat(0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferTooSmall_throws() {
+        new PixelBuffer(ByteBuffer.allocateDirect(15), 2, 2, CvType.CV_32SC1);
+    }
+}
@@ -0,0 +1,59 @@
+package org.opencv.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RectBuffer} and {@link RectView}, run on the development machine (host).
+ */
+public class RectBufferTest {
+
+    @Test
+    public void add_growsPastCapacity() {
+        RectBuffer buffer = new RectBuffer(1);
+        for (int i = 0; i < 10; i++)
+            buffer.add(i, 2 * i, 3 * i, 4 * i);
+
+        assertEquals(10, buffer.size());
+        assertEquals(9, buffer.x(9));
+        assertEquals(18, buffer.y(9));
+        assertEquals(27, buffer.width(9));
+        assertEquals(36, buffer.height(9));
+        assertEquals(0, buffer.x(0));
+    }
+
+    @Test
+    public void get_fillsGivenRect() {
+        RectBuffer buffer = new RectBuffer();
+        buffer.add(new Rect(1, 2, 3, 4));
+        Rect dst = new Rect();
+
+        assertSame(dst, buffer.get(0, dst));
+        assertEquals(new Rect(1, 2, 3, 4), dst);
+    }
+
+    @Test
+    public void view_readsBufferInPlace() {
+        RectBuffer buffer = new RectBuffer();
+        buffer.add(10, 20, 30, 40);
+        buffer.add(1, 2, 3, 4);
+
+        RectView view = buffer.view(0);
+        assertEquals(40, view.right());
+        assertEquals(60, view.bottom());
+        assertEquals(1200, view.area());
+        assertSame(view, buffer.view(1));
+        assertEquals(1, view.x());
+        assertEquals(4, view.height());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_afterClear_throws() {
+        RectBuffer buffer = new RectBuffer();
+        buffer.add(1, 2, 3, 4);
+        buffer.clear();
+
+        buffer.x(0);
+    }
+}
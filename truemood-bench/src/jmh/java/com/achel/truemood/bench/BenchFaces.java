@@ -0,0 +1,45 @@
+package com.achel.truemood.bench;
+
+import java.util.Random;
+
+// Deterministic face boxes for the benchmarks, packed as x, y, width, height like MatOfRect data
+final class BenchFaces {
+
+    private BenchFaces() {
+    }
+
+    // Returns count boxes of 60 to 200 pixels inside a frame of the given size.
+    // Every fourth box is a rescaled copy of the previous one, as the cascade reports at several scales.
+    static int[] boxes(int count, int frameWidth, int frameHeight, long seed) {
+        Random random = new Random(seed);
+        int[] packed = new int[4 * count];
+        for (int i = 0; i < count; i++) {
+            int p = 4 * i;
+            if (i % 4 == 3) {
+                int grow = 4 + random.nextInt(8);
+                packed[p] = Math.max(packed[p - 4] - grow, 0);
+                packed[p + 1] = Math.max(packed[p - 3] - grow, 0);
+                packed[p + 2] = Math.min(packed[p - 2] + 2 * grow, frameWidth - packed[p]);
+                packed[p + 3] = Math.min(packed[p - 1] + 2 * grow, frameHeight - packed[p + 1]);
+            } else {
+                int size = 60 + random.nextInt(141);
+                packed[p] = random.nextInt(frameWidth - size);
+                packed[p + 1] = random.nextInt(frameHeight - size);
+                packed[p + 2] = size;
+                packed[p + 3] = size;
+            }
+        }
+        return packed;
+    }
+
+    // Returns a copy of the boxes moved by up to maxShift pixels, as between two camera frames
+    static int[] jitter(int[] packed, int maxShift, long seed) {
+        Random random = new Random(seed);
+        int[] moved = packed.clone();
+        for (int p = 0; p < moved.length; p += 4) {
+            moved[p] = Math.max(moved[p] + random.nextInt(2 * maxShift + 1) - maxShift, 0);
+            moved[p + 1] = Math.max(moved[p + 1] + random.nextInt(2 * maxShift + 1) - maxShift, 0);
+        }
+        return moved;
+    }
+}
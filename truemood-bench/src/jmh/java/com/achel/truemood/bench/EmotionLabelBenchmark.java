@@ -0,0 +1,38 @@
+package com.achel.truemood.bench;
+
+import com.achel.truemood.core.EmotionLabels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+// Mapping of the model output to its label, one operation per value
+@State(Scope.Thread)
+public class EmotionLabelBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private final float[] values = new float[VALUES];
+
+    @Setup
+    public void setUp() {
+        // Spread over all the labels and a little outside, like the regression output of the model
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = random.nextFloat() * 7.0f - 0.25f;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void labelOf(Blackhole blackhole) {
+        for (int i = 0; i < VALUES; i++) {
+            blackhole.consume(EmotionLabels.labelOf(values[i]));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.achel.truemood.bench;
+
+import com.achel.truemood.core.BoxMath;
+import com.achel.truemood.core.FaceBoxes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Marshalling of the detected rectangles and overlap computations, one operation per frame
+@State(Scope.Thread)
+public class FaceBoxesBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int faces;
+
+    // Rectangles as packed by MatOfRect, 4 ints per face
+    private int[] packed;
+    private final FaceBoxes boxes = new FaceBoxes();
+
+    @Setup
+    public void setUp() {
+        packed = BenchFaces.boxes(faces, 640, 480, 42);
+        boxes.set(packed, faces);
+    }
+
+    // Copy of the packed rectangles into the reused boxes, as the detector adapters do
+    @Benchmark
+    public FaceBoxes marshal() {
+        boxes.set(packed, faces);
+        return boxes;
+    }
+
+    // Intersection over union of every pair of faces
+    @Benchmark
+    public float iouAllPairs() {
+        float sum = 0;
+        for (int i = 0; i < faces; i++) {
+            int a = 4 * i;
+            for (int j = i + 1; j < faces; j++) {
+                int b = 4 * j;
+                sum += BoxMath.iou(packed[a], packed[a + 1], packed[a + 2], packed[a + 3],
+                        packed[b], packed[b + 1], packed[b + 2], packed[b + 3]);
+            }
+        }
+        return sum;
+    }
+
+    // Non-maximum suppression, including the copy restoring the boxes it removed
+    @Benchmark
+    public int suppressOverlaps() {
+        boxes.set(packed, faces);
+        boxes.suppressOverlaps(0.3f);
+        return boxes.size();
+    }
+}
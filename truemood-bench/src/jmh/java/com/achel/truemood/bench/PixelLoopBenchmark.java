@@ -0,0 +1,63 @@
+package com.achel.truemood.bench;
+
+import com.achel.truemood.core.PixelNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+// Normalization of a 48x48 face into the float RGB model input, one operation per face
+@State(Scope.Thread)
+public class PixelLoopBenchmark {
+
+    private static final int SIZE = 48;
+
+    // 1 for the gray camera frame, 4 for RGBA
+    @Param({"1", "4"})
+    public int channels;
+
+    private ByteBuffer pixels;
+    private int[] argbPixels;
+    private ByteBuffer input;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[SIZE * SIZE * channels];
+        random.nextBytes(bytes);
+        pixels = ByteBuffer.allocateDirect(bytes.length);
+        pixels.put(bytes);
+        argbPixels = new int[SIZE * SIZE];
+        for (int i = 0; i < argbPixels.length; i++) {
+            argbPixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        input = ByteBuffer.allocateDirect(4 * SIZE * SIZE * 3).order(ByteOrder.nativeOrder());
+    }
+
+    // Current path: packed pixels of the resized DirectMat read in place
+    @Benchmark
+    public ByteBuffer packedPixels() {
+        input.rewind();
+        PixelNormalizer.toFloatRgb(pixels, SIZE, SIZE, channels, input);
+        return input;
+    }
+
+    // Former path: ARGB ints as returned by Bitmap.getPixel(), unpacked per channel
+    @Benchmark
+    public ByteBuffer argbInts() {
+        input.rewind();
+        for (int i = 0; i < argbPixels.length; i++) {
+            int pixel = argbPixels[i];
+            input.putFloat(((pixel >> 16) & 0xFF) / 255.0f);
+            input.putFloat(((pixel >> 8) & 0xFF) / 255.0f);
+            input.putFloat((pixel & 0xFF) / 255.0f);
+        }
+        return input;
+    }
+}
@@ -0,0 +1,95 @@
+package com.achel.truemood.bench;
+
+import com.achel.truemood.core.EmotionClassifier;
+import com.achel.truemood.core.FaceBoxes;
+import com.achel.truemood.core.FaceDetector;
+import com.achel.truemood.core.FacePreprocessor;
+import com.achel.truemood.core.FaceResult;
+import com.achel.truemood.core.FaceTracker;
+import com.achel.truemood.core.FrameScheduler;
+import com.achel.truemood.core.RecognitionPipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Per-frame bookkeeping of the scheduler and the tracker, one operation per frame.
+// Frames alternate between two sets of slightly moved faces, so every track is matched on every frame.
+@State(Scope.Thread)
+public class TrackingBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int faces;
+
+    private final FaceBoxes[] frames = { new FaceBoxes(), new FaceBoxes() };
+    private int frame = 0;
+
+    private final FaceTracker tracker = new FaceTracker();
+    private final FrameScheduler scheduler = new FrameScheduler(3, 5, 2);
+    private int[] selected;
+
+    private RecognitionPipeline<FaceBoxes> pipeline;
+
+    @Setup
+    public void setUp() {
+        // 1280x720 leaves room for 16 faces without them all overlapping
+        int[] packed = BenchFaces.boxes(faces, 1280, 720, 42);
+        frames[0].set(packed, faces);
+        frames[1].set(BenchFaces.jitter(packed, 6, 43), faces);
+        selected = new int[faces];
+        tracker.update(frames[0]);
+
+        // Fakes doing no work so that only the pipeline bookkeeping is measured
+        final ByteBuffer input = ByteBuffer.allocateDirect(4);
+        FaceDetector<FaceBoxes> detector = new FaceDetector<FaceBoxes>() {
+            @Override
+            public void detect(FaceBoxes frame, FaceBoxes detected) {
+                detected.clear();
+                for (int i = 0; i < frame.size(); i++) {
+                    detected.add(frame.x(i), frame.y(i), frame.width(i), frame.height(i));
+                }
+            }
+        };
+        FacePreprocessor<FaceBoxes> preprocessor = new FacePreprocessor<FaceBoxes>() {
+            @Override
+            public ByteBuffer preprocess(FaceBoxes frame, int x, int y, int width, int height) {
+                return input;
+            }
+        };
+        EmotionClassifier classifier = new EmotionClassifier() {
+            @Override
+            public float classify(ByteBuffer input) {
+                return 3.0f;
+            }
+        };
+        pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier);
+    }
+
+    // Matching of the detected faces to the tracks
+    @Benchmark
+    public int trackerUpdate() {
+        frame ^= 1;
+        tracker.nextFrame();
+        tracker.update(frames[frame]);
+        return tracker.size();
+    }
+
+    // Choice of the tracks to classify on a frame
+    @Benchmark
+    public int selectForClassification() {
+        tracker.nextFrame();
+        return scheduler.selectForClassification(tracker, selected);
+    }
+
+    // A whole frame of the pipeline with fake stages, detecting and classifying every face
+    @Benchmark
+    public List<FaceResult> pipelineFrame() {
+        frame ^= 1;
+        return pipeline.process(frames[frame]);
+    }
+}
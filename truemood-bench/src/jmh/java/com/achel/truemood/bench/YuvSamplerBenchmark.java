@@ -0,0 +1,54 @@
+package com.achel.truemood.bench;
+
+import com.achel.truemood.core.YuvFaceSampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Sampling of a 200x200 face from an NV21 frame into a 48x48 float tensor, one operation per face
+@State(Scope.Thread)
+public class YuvSamplerBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String frame;
+
+    @Param({"1", "3"})
+    public int channels;
+
+    // 90 for a portrait display of the back camera
+    @Param({"0", "90"})
+    public int rotation;
+
+    private YuvFaceSampler sampler;
+    private int left;
+    private int top;
+
+    @Setup
+    public void setUp() {
+        int separator = frame.indexOf('x');
+        int width = Integer.parseInt(frame.substring(0, separator));
+        int height = Integer.parseInt(frame.substring(separator + 1));
+
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(nv21);
+        sampler = new YuvFaceSampler(48, 48, channels, true);
+        sampler.setNv21Frame(nv21, width, height, rotation);
+
+        // Centre of the upright frame
+        int uprightWidth = rotation == 90 ? height : width;
+        int uprightHeight = rotation == 90 ? width : height;
+        left = (uprightWidth - 200) / 2;
+        top = (uprightHeight - 200) / 2;
+    }
+
+    @Benchmark
+    public ByteBuffer sample() {
+        return sampler.sample(left, top, 200, 200);
+    }
+}
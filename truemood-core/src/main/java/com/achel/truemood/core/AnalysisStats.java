@@ -0,0 +1,148 @@
+package com.achel.truemood.core;
+
+import java.util.Locale;
+
+// Counters and stage times of an offline analysis. Each worker fills its own instance, they are
+// summed at the end, so the stage rates are per worker while getFramesPerSecond() is overall.
+public class AnalysisStats {
+
+    private long analyzedFrames = 0;
+    private long skippedFrames = 0;
+    private long cachedFrames = 0;
+    private long faces = 0;
+    private long detections = 0;
+    private long classifications = 0;
+    private long decodeNanos = 0;
+    private long detectNanos = 0;
+    private long preprocessNanos = 0;
+    private long inferenceNanos = 0;
+    private long wallNanos = 0;
+
+    public long getAnalyzedFrames() {
+        return analyzedFrames;
+    }
+
+    // Returns the frames passed over because of the frame stride, or the photos which could not be decoded
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    // Returns the frames or photos whose results were taken from the ResultCache instead of being analysed
+    public long getCachedFrames() {
+        return cachedFrames;
+    }
+
+    public long getFaces() {
+        return faces;
+    }
+
+    public long getDetections() {
+        return detections;
+    }
+
+    public long getClassifications() {
+        return classifications;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    public long getDetectNanos() {
+        return detectNanos;
+    }
+
+    public long getPreprocessNanos() {
+        return preprocessNanos;
+    }
+
+    public long getInferenceNanos() {
+        return inferenceNanos;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    // Returns the analysed frames per second of elapsed time, all workers together
+    public double getFramesPerSecond() {
+        return rate(analyzedFrames, wallNanos);
+    }
+
+    // Returns the frames decoded per second of decoding by a worker, seeking and skipping included
+    public double getDecodeFramesPerSecond() {
+        return rate(analyzedFrames, decodeNanos);
+    }
+
+    // Returns the frames run through the face detector per second of detection by a worker
+    public double getDetectFramesPerSecond() {
+        return rate(detections, detectNanos);
+    }
+
+    // Returns the faces classified per second of preprocessing and inference by a worker
+    public double getInferenceFacesPerSecond() {
+        return rate(classifications, preprocessNanos + inferenceNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d frames (%d skipped, %d cached), %d faces in %.1f s, %.1f fps; per worker: decode %.1f fps, "
+                        + "detect %.1f fps, infer %.1f faces/s",
+                analyzedFrames, skippedFrames, cachedFrames, faces, wallNanos / 1e9, getFramesPerSecond(),
+                getDecodeFramesPerSecond(), getDetectFramesPerSecond(), getInferenceFacesPerSecond());
+    }
+
+    void addFrame(int faceCount) {
+        analyzedFrames++;
+        faces += faceCount;
+    }
+
+    void addSkippedFrame() {
+        skippedFrames++;
+    }
+
+    void addCached(SegmentResult result) {
+        cachedFrames += result.size();
+        for (int i = 0; i < result.size(); i++) {
+            faces += result.faces(i).size();
+        }
+    }
+
+    void addDecode(long nanos) {
+        decodeNanos += nanos;
+    }
+
+    void addStage(String stage, long nanos) {
+        if (RecognitionPipeline.STAGE_DETECT.equals(stage)) {
+            detections++;
+            detectNanos += nanos;
+        } else if (RecognitionPipeline.STAGE_PREPROCESS.equals(stage)) {
+            preprocessNanos += nanos;
+        } else if (RecognitionPipeline.STAGE_INFERENCE.equals(stage)) {
+            classifications++;
+            inferenceNanos += nanos;
+        }
+    }
+
+    void add(AnalysisStats other) {
+        analyzedFrames += other.analyzedFrames;
+        skippedFrames += other.skippedFrames;
+        cachedFrames += other.cachedFrames;
+        faces += other.faces;
+        detections += other.detections;
+        classifications += other.classifications;
+        decodeNanos += other.decodeNanos;
+        detectNanos += other.detectNanos;
+        preprocessNanos += other.preprocessNanos;
+        inferenceNanos += other.inferenceNanos;
+    }
+
+    void setWallNanos(long nanos) {
+        wallNanos = nanos;
+    }
+
+    private static double rate(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,318 @@
+package com.achel.truemood.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Classifies the faces of a batch of photos, e.g. a gallery, with several workers.
+// Faces are detected on a grayscale decode reduced by the detection scale. Photos with faces are decoded
+// a second time in color, at the smallest resolution which keeps every face at least as large as the model
+// input, and only the faces are preprocessed. Photos without faces are never decoded at full size.
+// The photos are handed to the workers through a bounded queue: the caller blocks while it is full, so a
+// lazy iterator over a large gallery is only read as fast as the workers go. Results are streamed to the
+// sink as they complete, nothing is kept per photo.
+public class BatchPhotoClassifier<F> {
+
+    public static final int DEFAULT_DETECTION_SCALE = 4;
+
+    // Largest reduction supported by the decoders, see PhotoDecoder
+    private static final int MAX_SCALE = 8;
+
+    // How long the caller and the workers wait on the queue before checking for a failure
+    private static final long POLL_MILLIS = 50;
+
+    // Creates the detector, preprocessor and classifier of a worker, called once per worker.
+    // release() frees them when the worker stops, also on failure, with null for those not created.
+    public interface ModelFactory<F> {
+        FaceDetector<F> createDetector() throws IOException;
+
+        FacePreprocessor<F> createPreprocessor() throws IOException;
+
+        EmotionClassifier createClassifier() throws IOException;
+
+        void release(FaceDetector<F> detector, FacePreprocessor<F> preprocessor, EmotionClassifier classifier);
+    }
+
+    // A photo to classify, END tells a worker to stop
+    private static class Task {
+        static final Task END = new Task(-1, null);
+
+        final long index;
+        final File file;
+
+        Task(long index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+
+    private final PhotoDecoder<F> decoder;
+    private final ModelFactory<F> modelFactory;
+    private final int faceInputSize;
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 0;
+    private int detectionScale = DEFAULT_DETECTION_SCALE;
+    private ResultCache resultCache = null;
+    private String detectorConfig;
+    private String modelHash;
+
+    // faceInputSize is the input size of the emotion model, the faces are decoded at least that large when possible
+    public BatchPhotoClassifier(PhotoDecoder<F> decoder, ModelFactory<F> modelFactory, int faceInputSize) {
+        if (faceInputSize <= 0)
+            throw new IllegalArgumentException("Invalid face input size: " + faceInputSize);
+        this.decoder = decoder;
+        this.modelFactory = modelFactory;
+        this.faceInputSize = faceInputSize;
+    }
+
+    // Number of workers, the number of cores by default
+    public void setWorkerCount(int workers) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("Invalid worker count: " + workers);
+        workerCount = workers;
+    }
+
+    // Number of photos waiting for a worker before the caller blocks, twice the worker count by default
+    public void setQueueCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+        queueCapacity = capacity;
+    }
+
+    // Reduction of the image the faces are detected on: 1, 2, 4 or 8
+    public void setDetectionScale(int scale) {
+        if (!isScale(scale))
+            throw new IllegalArgumentException("Invalid detection scale: " + scale);
+        detectionScale = scale;
+    }
+
+    // Takes the results of the photos from the cache when an earlier run classified the same content with the
+    // same detector configuration and model, and stores the new ones. Each photo is hashed to look it up.
+    // The detection scale and face input size are added to the detector configuration.
+    public void setResultCache(ResultCache cache, String detectorConfig, String modelHash) {
+        this.resultCache = cache;
+        this.detectorConfig = detectorConfig;
+        this.modelHash = modelHash;
+    }
+
+    // Classifies the photos and writes the result of each to the sink. The sink is called by the worker
+    // threads, one at a time. A failure of the decoder, the models or the sink stops the batch.
+    public AnalysisStats run(Iterator<File> photos, PhotoSink sink) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity > 0 ? queueCapacity : 2 * workerCount);
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        List<Future<AnalysisStats>> futures = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(executor.submit(new Worker(queue, sink, aborted)));
+        }
+        executor.shutdown();
+
+        AnalysisStats total = new AnalysisStats();
+        try {
+            long index = 0;
+            while (!aborted.get() && photos.hasNext()) {
+                put(queue, new Task(index++, photos.next()), aborted);
+            }
+            for (int i = 0; i < workerCount; i++) {
+                put(queue, Task.END, aborted);
+            }
+            for (Future<AnalysisStats> future : futures) {
+                total.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException("Photo classification failed", cause);
+        } finally {
+            aborted.set(true);
+            executor.shutdownNow();
+            // the models are released by the workers on their way out, so they are all freed on return
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        total.setWallNanos(System.nanoTime() - start);
+        return total;
+    }
+
+    // Returns the reduction to decode the faces at: the largest one keeping the smallest face, given in
+    // full resolution pixels, at least inputSize pixels wide and high
+    static int classificationScale(int smallestFace, int inputSize) {
+        int scale = 1;
+        while (scale < MAX_SCALE && smallestFace / (2 * scale) >= inputSize) {
+            scale *= 2;
+        }
+        return scale;
+    }
+
+    private static boolean isScale(int scale) {
+        return scale == 1 || scale == 2 || scale == 4 || scale == 8;
+    }
+
+    // Waits for room in the queue, gives up when a worker failed
+    private static void put(BlockingQueue<Task> queue, Task task, AtomicBoolean aborted) throws InterruptedException {
+        while (!aborted.get() && !queue.offer(task, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            // the workers are busy, the caller waits
+        }
+    }
+
+    private class Worker implements Callable<AnalysisStats> {
+        private final BlockingQueue<Task> queue;
+        private final PhotoSink sink;
+        private final AtomicBoolean aborted;
+        private final AnalysisStats stats = new AnalysisStats();
+        private final FaceBoxes faces = new FaceBoxes();
+        private final String cacheConfig = detectorConfig + ";scale=" + detectionScale + ";input=" + faceInputSize;
+
+        Worker(BlockingQueue<Task> queue, PhotoSink sink, AtomicBoolean aborted) {
+            this.queue = queue;
+            this.sink = sink;
+            this.aborted = aborted;
+        }
+
+        @Override
+        public AnalysisStats call() throws Exception {
+            FaceDetector<F> detector = null;
+            FacePreprocessor<F> preprocessor = null;
+            EmotionClassifier classifier = null;
+            try {
+                detector = modelFactory.createDetector();
+                preprocessor = modelFactory.createPreprocessor();
+                classifier = modelFactory.createClassifier();
+                while (!aborted.get()) {
+                    Task task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (task == Task.END)
+                        break;
+                    if (task == null)
+                        continue;
+
+                    List<FaceResult> results = classifyOrLoad(task.file, detector, preprocessor, classifier);
+                    synchronized (sink) {
+                        sink.onPhoto(task.index, task.file, results);
+                    }
+                }
+            } catch (Throwable t) {
+                // the caller and the other workers stop instead of waiting for this one
+                aborted.set(true);
+                throw t;
+            } finally {
+                modelFactory.release(detector, preprocessor, classifier);
+            }
+            return stats;
+        }
+
+        private List<FaceResult> classifyOrLoad(File file, FaceDetector<F> detector, FacePreprocessor<F> preprocessor,
+                                                EmotionClassifier classifier) throws IOException {
+            if (resultCache == null)
+                return classify(file, detector, preprocessor, classifier);
+
+            ResultCache.Key key;
+            try {
+                key = new ResultCache.Key(ContentHash.of(file), 0, cacheConfig, modelHash);
+            } catch (FileNotFoundException e) {
+                // reported by the decoder like any unreadable photo
+                return classify(file, detector, preprocessor, classifier);
+            }
+            SegmentResult cached = resultCache.get(key);
+            if (cached != null) {
+                stats.addCached(cached);
+                return cached.faces(0);
+            }
+            List<FaceResult> results = classify(file, detector, preprocessor, classifier);
+            if (results != null) {
+                SegmentResult result = new SegmentResult();
+                result.add(0, results);
+                resultCache.put(key, result);
+            }
+            return results;
+        }
+
+        private List<FaceResult> classify(File file, FaceDetector<F> detector, FacePreprocessor<F> preprocessor,
+                                          EmotionClassifier classifier) throws IOException {
+            long decodeStart = System.nanoTime();
+            F gray = decoder.decodeGray(file, detectionScale);
+            stats.addDecode(System.nanoTime() - decodeStart);
+            if (gray == null) {
+                stats.addSkippedFrame();
+                return null;
+            }
+            try {
+                long detectStart = System.nanoTime();
+                detector.detect(gray, faces);
+                stats.addStage(RecognitionPipeline.STAGE_DETECT, System.nanoTime() - detectStart);
+            } finally {
+                decoder.release(gray);
+            }
+            if (faces.size() == 0) {
+                stats.addFrame(0);
+                return Collections.emptyList();
+            }
+
+            int smallestFace = Integer.MAX_VALUE;
+            for (int i = 0; i < faces.size(); i++) {
+                smallestFace = Math.min(smallestFace, Math.min(faces.width(i), faces.height(i)) * detectionScale);
+            }
+            int scale = classificationScale(smallestFace, faceInputSize);
+
+            decodeStart = System.nanoTime();
+            F color = decoder.decodeColor(file, scale);
+            stats.addDecode(System.nanoTime() - decodeStart);
+            if (color == null) {
+                stats.addSkippedFrame();
+                return null;
+            }
+
+            List<FaceResult> results = new ArrayList<>(faces.size());
+            try {
+                int imageWidth = decoder.width(color);
+                int imageHeight = decoder.height(color);
+                for (int i = 0; i < faces.size(); i++) {
+                    // Full resolution box, then the box in the color image, clamped as the reduced sizes are rounded up
+                    int x = faces.x(i) * detectionScale;
+                    int y = faces.y(i) * detectionScale;
+                    int width = faces.width(i) * detectionScale;
+                    int height = faces.height(i) * detectionScale;
+                    int left = Math.min(x / scale, imageWidth - 1);
+                    int top = Math.min(y / scale, imageHeight - 1);
+                    int right = Math.min((x + width) / scale, imageWidth);
+                    int bottom = Math.min((y + height) / scale, imageHeight);
+                    if (right <= left || bottom <= top)
+                        continue;
+
+                    long preprocessStart = System.nanoTime();
+                    ByteBuffer input = preprocessor.preprocess(color, left, top, right - left, bottom - top);
+                    stats.addStage(RecognitionPipeline.STAGE_PREPROCESS, System.nanoTime() - preprocessStart);
+
+                    long inferenceStart = System.nanoTime();
+                    float value = classifier.classify(input);
+                    stats.addStage(RecognitionPipeline.STAGE_INFERENCE, System.nanoTime() - inferenceStart);
+
+                    results.add(new FaceResult(x, y, width, height, value, EmotionLabels.labelOf(value)));
+                }
+            } finally {
+                decoder.release(color);
+            }
+            stats.addFrame(results.size());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.achel.truemood.core;
+
+// Geometry of axis-aligned face boxes given as x, y, width, height
+public final class BoxMath {
+
+    private BoxMath() {
+    }
+
+    // Returns the intersection over union of two boxes, 0 when they do not overlap or are empty
+    public static float iou(int ax, int ay, int aw, int ah, int bx, int by, int bw, int bh) {
+        int left = Math.max(ax, bx);
+        int top = Math.max(ay, by);
+        int right = Math.min(ax + aw, bx + bw);
+        int bottom = Math.min(ay + ah, by + bh);
+        if (right <= left || bottom <= top) {
+            return 0f;
+        }
+        long intersection = (long) (right - left) * (bottom - top);
+        long union = (long) aw * ah + (long) bw * bh - intersection;
+        return union <= 0 ? 0f : (float) intersection / union;
+    }
+}
@@ -0,0 +1,59 @@
+package com.achel.truemood.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// SHA-256 of files and buffers as hex strings, used as cache keys for videos, photos and models
+public final class ContentHash {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    // Returns the hash of the content of the file
+    public static String of(File file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    // Returns the hash of the remaining bytes of the buffer, e.g. a memory-mapped model, without moving its position
+    public static String of(ByteBuffer buffer) {
+        MessageDigest digest = sha256();
+        digest.update(buffer.duplicate());
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,10 @@
+package com.achel.truemood.core;
+
+import java.nio.ByteBuffer;
+
+// Runs the emotion model on a preprocessed face
+public interface EmotionClassifier {
+
+    // Returns the raw model output for the given input, see EmotionLabels for its meaning
+    float classify(ByteBuffer input);
+}
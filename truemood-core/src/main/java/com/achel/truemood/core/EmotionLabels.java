@@ -0,0 +1,47 @@
+package com.achel.truemood.core;
+
+// Maps the raw output of the emotion model to a human-readable label.
+// The model regresses a single value, each label covers the values rounding to its index.
+public final class EmotionLabels {
+
+    public static final String SURPRISE = "Surprise";
+    public static final String FEAR = "Fear";
+    public static final String ANGRY = "Angry";
+    public static final String NEUTRAL = "Neutral";
+    public static final String SAD = "Sad";
+    public static final String DISGUST = "Disgust";
+    public static final String HAPPY = "Happy";
+
+    // Labels in the order of the model output values 0 to 6
+    private static final String[] LABELS = { SURPRISE, FEAR, ANGRY, NEUTRAL, SAD, DISGUST, HAPPY };
+
+    private EmotionLabels() {
+    }
+
+    // Returns the label of the given model output, values outside of [0, 5.5) map to Happy
+    public static String labelOf(float emotionValue) {
+        return LABELS[indexOf(emotionValue)];
+    }
+
+    // Returns the index of the label of the given model output, between 0 and count() - 1
+    public static int indexOf(float emotionValue) {
+        if (emotionValue >= 0) {
+            for (int i = 0; i < LABELS.length - 1; i++) {
+                if (emotionValue < i + 0.5f) {
+                    return i;
+                }
+            }
+        }
+        return LABELS.length - 1;
+    }
+
+    // Returns the number of labels
+    public static int count() {
+        return LABELS.length;
+    }
+
+    // Returns the label of the given index, between 0 and count() - 1
+    public static String get(int index) {
+        return LABELS[index];
+    }
+}
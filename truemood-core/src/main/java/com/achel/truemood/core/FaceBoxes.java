@@ -0,0 +1,137 @@
+package com.achel.truemood.core;
+
+// Reusable list of face boxes stored as packed x, y, width, height ints.
+// Detectors fill it on every frame without allocating once it has grown to the largest face count seen.
+public class FaceBoxes {
+
+    private int[] data;
+    private int size = 0;
+
+    // Scratch space of suppressOverlaps()
+    private int[] order = new int[0];
+    private boolean[] kept = new boolean[0];
+
+    public FaceBoxes() {
+        this(16);
+    }
+
+    public FaceBoxes(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        data = new int[4 * capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int x, int y, int width, int height) {
+        ensureCapacity(size + 1);
+        int i = 4 * size;
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = width;
+        data[i + 3] = height;
+        size++;
+    }
+
+    // Replaces the content with count boxes packed as x, y, width, height in src
+    public void set(int[] src, int count) {
+        if (src.length < 4 * count)
+            throw new IllegalArgumentException("Source holds " + src.length / 4 + " boxes, " + count + " needed");
+        size = 0;
+        ensureCapacity(count);
+        System.arraycopy(src, 0, data, 0, 4 * count);
+        size = count;
+    }
+
+    public int x(int index) {
+        return data[4 * checkIndex(index)];
+    }
+
+    public int y(int index) {
+        return data[4 * checkIndex(index) + 1];
+    }
+
+    public int width(int index) {
+        return data[4 * checkIndex(index) + 2];
+    }
+
+    public int height(int index) {
+        return data[4 * checkIndex(index) + 3];
+    }
+
+    // Returns the intersection over union of the box at the given index with the given box
+    public float iou(int index, int x, int y, int width, int height) {
+        int i = 4 * checkIndex(index);
+        return BoxMath.iou(data[i], data[i + 1], data[i + 2], data[i + 3], x, y, width, height);
+    }
+
+    // Non-maximum suppression: removes every box overlapping a larger box by more than maxIou.
+    // Detectors without scores report the same face at several scales, the largest box is kept.
+    // The remaining boxes keep their order.
+    public void suppressOverlaps(float maxIou) {
+        if (size < 2) {
+            return;
+        }
+        if (order.length < size) {
+            order = new int[size];
+            kept = new boolean[size];
+        }
+
+        // Sort the indices by decreasing area, insertion sort as there are only a few faces
+        for (int i = 0; i < size; i++) {
+            int area = area(i);
+            int j = i;
+            while (j > 0 && area(order[j - 1]) < area) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+            kept[i] = false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            int candidate = order[i];
+            boolean keep = true;
+            for (int j = 0; j < i && keep; j++) {
+                int other = order[j];
+                if (kept[other] && iou(candidate, x(other), y(other), width(other), height(other)) > maxIou) {
+                    keep = false;
+                }
+            }
+            kept[candidate] = keep;
+        }
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (kept[i]) {
+                System.arraycopy(data, 4 * i, data, 4 * count, 4);
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    private int area(int index) {
+        return width(index) * height(index);
+    }
+
+    private void ensureCapacity(int count) {
+        if (4 * count > data.length) {
+            int[] grown = new int[4 * Math.max(count, 2 * data.length / 4)];
+            System.arraycopy(data, 0, grown, 0, 4 * size);
+            data = grown;
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        return index;
+    }
+}
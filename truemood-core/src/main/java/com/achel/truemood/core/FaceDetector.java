@@ -0,0 +1,8 @@
+package com.achel.truemood.core;
+
+// Finds the faces of a frame. F is the frame type of the platform, e.g. an OpenCV Mat on Android.
+public interface FaceDetector<F> {
+
+    // Replaces the content of faces with the boxes of the faces found in frame
+    void detect(F frame, FaceBoxes faces);
+}
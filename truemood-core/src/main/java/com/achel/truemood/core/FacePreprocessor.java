@@ -0,0 +1,11 @@
+package com.achel.truemood.core;
+
+import java.nio.ByteBuffer;
+
+// Turns the box of a face in a frame into the input tensor of the emotion model
+public interface FacePreprocessor<F> {
+
+    // Returns the model input for the face at the given box of frame.
+    // The buffer may be reused by the next call, it must be consumed before that.
+    ByteBuffer preprocess(F frame, int x, int y, int width, int height);
+}
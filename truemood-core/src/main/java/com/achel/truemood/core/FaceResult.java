@@ -0,0 +1,32 @@
+package com.achel.truemood.core;
+
+// Emotion recognition result for one detected face
+public class FaceResult {
+
+    // Bounding box of the face in frame coordinates
+    public final int x;
+    public final int y;
+    public final int width;
+    public final int height;
+
+    // Raw model output and the emotion label it maps to
+    public final float emotionValue;
+    public final String emotionText;
+
+    // Id of the FaceTracker track the face belongs to, stable across frames, -1 when not tracked
+    public final int trackId;
+
+    public FaceResult(int x, int y, int width, int height, float emotionValue, String emotionText) {
+        this(x, y, width, height, emotionValue, emotionText, -1);
+    }
+
+    public FaceResult(int x, int y, int width, int height, float emotionValue, String emotionText, int trackId) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.emotionValue = emotionValue;
+        this.emotionText = emotionText;
+        this.trackId = trackId;
+    }
+}
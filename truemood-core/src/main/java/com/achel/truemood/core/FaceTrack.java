@@ -0,0 +1,96 @@
+package com.achel.truemood.core;
+
+// A face followed across frames by FaceTracker, with its last box and emotion.
+// Instances are reused by the tracker once the face is lost, do not keep them across frames.
+public final class FaceTrack {
+
+    private int id;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+    // Number of consecutive detections without this face, 0 when it was detected last time
+    private int missedDetections;
+
+    // Frames since the emotion was last classified, and the result of that classification
+    private int framesSinceClassified;
+    private boolean classified;
+    private float emotionValue;
+    private String emotionText;
+
+    FaceTrack() {
+    }
+
+    void start(int id, int x, int y, int width, int height) {
+        this.id = id;
+        setBox(x, y, width, height);
+        missedDetections = 0;
+        framesSinceClassified = 0;
+        classified = false;
+        emotionValue = 0f;
+        emotionText = null;
+    }
+
+    void setBox(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    void setMissedDetections(int missedDetections) {
+        this.missedDetections = missedDetections;
+    }
+
+    void nextFrame() {
+        framesSinceClassified++;
+    }
+
+    void setEmotion(float value, String text) {
+        emotionValue = value;
+        emotionText = text;
+        classified = true;
+        framesSinceClassified = 0;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMissedDetections() {
+        return missedDetections;
+    }
+
+    public int getFramesSinceClassified() {
+        return framesSinceClassified;
+    }
+
+    public boolean isClassified() {
+        return classified;
+    }
+
+    public float getEmotionValue() {
+        return emotionValue;
+    }
+
+    public String getEmotionText() {
+        return emotionText;
+    }
+}
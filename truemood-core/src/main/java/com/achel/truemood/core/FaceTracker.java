@@ -0,0 +1,119 @@
+package com.achel.truemood.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+// Associates the detected faces of successive frames by box overlap so that each face keeps an id,
+// its last emotion and how long ago it was classified. This lets the scheduler skip detection or
+// classification on some frames. A face not detected for more than maxMissedDetections detections is dropped.
+public class FaceTracker {
+
+    public static final float DEFAULT_MIN_IOU = 0.3f;
+    public static final int DEFAULT_MAX_MISSED_DETECTIONS = 2;
+
+    private final float minIou;
+    private final int maxMissedDetections;
+
+    // Current tracks in creation order, and lost tracks kept for reuse
+    private final ArrayList<FaceTrack> tracks = new ArrayList<>();
+    private final ArrayDeque<FaceTrack> free = new ArrayDeque<>();
+    private int nextId = 1;
+
+    // Scratch space of update()
+    private boolean[] trackMatched = new boolean[0];
+
+    public FaceTracker() {
+        this(DEFAULT_MIN_IOU, DEFAULT_MAX_MISSED_DETECTIONS);
+    }
+
+    public FaceTracker(float minIou, int maxMissedDetections) {
+        if (minIou <= 0 || minIou > 1)
+            throw new IllegalArgumentException("Invalid minimum IoU: " + minIou);
+        if (maxMissedDetections < 0)
+            throw new IllegalArgumentException("Invalid number of missed detections: " + maxMissedDetections);
+        this.minIou = minIou;
+        this.maxMissedDetections = maxMissedDetections;
+    }
+
+    // Starts a new frame: every track gets one frame older
+    public void nextFrame() {
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.get(i).nextFrame();
+        }
+    }
+
+    // Matches the detections of the current frame to the tracks. Each detection goes to the unmatched
+    // track it overlaps most, if by at least minIou, otherwise it starts a new track.
+    public void update(FaceBoxes detections) {
+        int trackCount = tracks.size();
+        if (trackMatched.length < trackCount) {
+            trackMatched = new boolean[Math.max(trackCount, 2 * trackMatched.length)];
+        }
+        for (int t = 0; t < trackCount; t++) {
+            trackMatched[t] = false;
+        }
+
+        for (int d = 0; d < detections.size(); d++) {
+            int x = detections.x(d);
+            int y = detections.y(d);
+            int width = detections.width(d);
+            int height = detections.height(d);
+
+            int best = -1;
+            float bestIou = minIou;
+            for (int t = 0; t < trackCount; t++) {
+                if (trackMatched[t]) {
+                    continue;
+                }
+                FaceTrack track = tracks.get(t);
+                float iou = BoxMath.iou(track.getX(), track.getY(), track.getWidth(), track.getHeight(), x, y, width, height);
+                if (iou >= bestIou) {
+                    best = t;
+                    bestIou = iou;
+                }
+            }
+
+            if (best >= 0) {
+                FaceTrack track = tracks.get(best);
+                track.setBox(x, y, width, height);
+                track.setMissedDetections(0);
+                trackMatched[best] = true;
+            } else {
+                FaceTrack track = free.isEmpty() ? new FaceTrack() : free.poll();
+                track.start(nextId++, x, y, width, height);
+                tracks.add(track);
+            }
+        }
+
+        // Age the tracks without detection, new tracks are past trackCount and stay
+        int kept = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            FaceTrack track = tracks.get(t);
+            if (t < trackCount && !trackMatched[t]) {
+                track.setMissedDetections(track.getMissedDetections() + 1);
+                if (track.getMissedDetections() > maxMissedDetections) {
+                    free.add(track);
+                    continue;
+                }
+            }
+            tracks.set(kept++, track);
+        }
+        while (tracks.size() > kept) {
+            tracks.remove(tracks.size() - 1);
+        }
+    }
+
+    public int size() {
+        return tracks.size();
+    }
+
+    public FaceTrack get(int index) {
+        return tracks.get(index);
+    }
+
+    // Drops all the tracks, e.g. when the camera is switched
+    public void clear() {
+        free.addAll(tracks);
+        tracks.clear();
+    }
+}
@@ -0,0 +1,66 @@
+package com.achel.truemood.core;
+
+// Decides which work the recognition pipeline does on a frame: face detection every detectInterval
+// frames (and on every frame while no face is tracked), and classification of the tracks whose
+// emotion is older than classifyInterval frames, at most maxClassificationsPerFrame per frame.
+// The defaults detect and classify every face on every frame.
+public class FrameScheduler {
+
+    private final int detectInterval;
+    private final int classifyInterval;
+    private final int maxClassificationsPerFrame;
+
+    public FrameScheduler() {
+        this(1, 1, Integer.MAX_VALUE);
+    }
+
+    public FrameScheduler(int detectInterval, int classifyInterval, int maxClassificationsPerFrame) {
+        if (detectInterval <= 0)
+            throw new IllegalArgumentException("Invalid detection interval: " + detectInterval);
+        if (classifyInterval <= 0)
+            throw new IllegalArgumentException("Invalid classification interval: " + classifyInterval);
+        if (maxClassificationsPerFrame <= 0)
+            throw new IllegalArgumentException("Invalid classification budget: " + maxClassificationsPerFrame);
+        this.detectInterval = detectInterval;
+        this.classifyInterval = classifyInterval;
+        this.maxClassificationsPerFrame = maxClassificationsPerFrame;
+    }
+
+    // Returns whether faces are detected on the given frame, numbered from 0
+    public boolean shouldDetect(long frameIndex, int trackCount) {
+        return trackCount == 0 || frameIndex % detectInterval == 0;
+    }
+
+    // Returns whether the emotion of the track is due for classification
+    public boolean isDue(FaceTrack track) {
+        return !track.isClassified() || track.getFramesSinceClassified() >= classifyInterval;
+    }
+
+    // Writes into selected the indices of the tracks to classify on this frame and returns their count.
+    // Tracks never classified come first, then the ones classified longest ago.
+    // selected must hold at least tracker.size() entries.
+    public int selectForClassification(FaceTracker tracker, int[] selected) {
+        int count = 0;
+        for (int i = 0; i < tracker.size(); i++) {
+            FaceTrack track = tracker.get(i);
+            if (!isDue(track)) {
+                continue;
+            }
+
+            // Insertion sort by decreasing staleness, there are only a few faces
+            int priority = staleness(track);
+            int j = count;
+            while (j > 0 && staleness(tracker.get(selected[j - 1])) < priority) {
+                selected[j] = selected[j - 1];
+                j--;
+            }
+            selected[j] = i;
+            count++;
+        }
+        return Math.min(count, maxClassificationsPerFrame);
+    }
+
+    private static int staleness(FaceTrack track) {
+        return track.isClassified() ? track.getFramesSinceClassified() : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,278 @@
+package com.achel.truemood.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Analyses a recorded video with several workers. The video is cut into segments of consecutive frames
+// which the workers take in order; each worker has its own video source and pipeline (detector and
+// interpreter are not shared across threads) and seeks to the start of every segment it takes.
+// Results are written to the sink in frame order as soon as the segments before them are done, at most
+// a few segments per worker are kept in memory.
+// Tracking restarts at every segment, track ids are only meaningful within a segment. That also makes the
+// segments independent, so with a ResultCache a re-run only analyses the segments it has no results for.
+public class OfflineVideoAnalyzer<F> {
+
+    public static final int DEFAULT_SEGMENT_FRAMES = 300;
+
+    // Opens a source on the video, called once per worker
+    public interface SourceFactory<F> {
+        VideoSource<F> open() throws IOException;
+    }
+
+    // Creates a pipeline with its own detector and classifier, called once per worker.
+    // release() frees what create() allocated (e.g. the interpreter), called when the worker stops, also on failure.
+    public interface PipelineFactory<F> {
+        RecognitionPipeline<F> create() throws IOException;
+
+        void release(RecognitionPipeline<F> pipeline);
+    }
+
+    private final SourceFactory<F> sourceFactory;
+    private final PipelineFactory<F> pipelineFactory;
+    private final long frameCount;
+    private final double fps;
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+    private int frameStride = 1;
+    private int segmentFrames = DEFAULT_SEGMENT_FRAMES;
+    private ResultCache resultCache = null;
+    private String contentHash;
+    private String detectorConfig;
+    private String modelHash;
+
+    // frameCount and fps as reported by the container, e.g. CAP_PROP_FRAME_COUNT and CAP_PROP_FPS.
+    // A video shorter than frameCount simply ends early.
+    public OfflineVideoAnalyzer(SourceFactory<F> sourceFactory, PipelineFactory<F> pipelineFactory,
+                                long frameCount, double fps) {
+        if (frameCount < 0)
+            throw new IllegalArgumentException("Invalid frame count: " + frameCount);
+        this.sourceFactory = sourceFactory;
+        this.pipelineFactory = pipelineFactory;
+        this.frameCount = frameCount;
+        this.fps = fps > 0 ? fps : 30;
+    }
+
+    // Number of workers, the number of cores by default
+    public void setWorkerCount(int workers) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("Invalid worker count: " + workers);
+        workerCount = workers;
+    }
+
+    // Analyses every stride-th frame only (frames 0, stride, 2 * stride...), the others are passed with
+    // VideoSource.skip(), which may still decode them (VideoCapture.grab() does) but neither converts nor analyses them
+    public void setFrameStride(int stride) {
+        if (stride <= 0)
+            throw new IllegalArgumentException("Invalid frame stride: " + stride);
+        frameStride = stride;
+    }
+
+    // Frames per segment, rounded up to a multiple of the frame stride
+    public void setSegmentFrames(int frames) {
+        if (frames <= 0)
+            throw new IllegalArgumentException("Invalid segment size: " + frames);
+        segmentFrames = frames;
+    }
+
+    // Takes the results of the segments from the cache when an earlier run analysed them with the same detector
+    // configuration and model, and stores the results of the others. contentHash identifies the video, e.g.
+    // ContentHash.of() its file. The frame stride and segment size are added to the detector configuration.
+    public void setResultCache(ResultCache cache, String contentHash, String detectorConfig, String modelHash) {
+        this.resultCache = cache;
+        this.contentHash = contentHash;
+        this.detectorConfig = detectorConfig;
+        this.modelHash = modelHash;
+    }
+
+    // Analyses the video and writes the results of the analysed frames to the sink, in frame order.
+    // The sink is called by the worker threads, one at a time.
+    public AnalysisStats run(TimelineSink sink) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // Segments start on a multiple of the stride so that the analysed frames do not depend on the segmentation
+        long framesPerSegment = ((long) segmentFrames + frameStride - 1) / frameStride * frameStride;
+        long segmentCount = (frameCount + framesPerSegment - 1) / framesPerSegment;
+        int workers = (int) Math.max(1, Math.min(workerCount, segmentCount));
+
+        SegmentQueue queue = new SegmentQueue(sink, segmentCount, 2L * workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<AnalysisStats>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(new Worker(queue, framesPerSegment,
+                    detectorConfig + ";stride=" + frameStride + ";segment=" + framesPerSegment)));
+        }
+        executor.shutdown();
+
+        AnalysisStats total = new AnalysisStats();
+        try {
+            for (Future<AnalysisStats> future : futures) {
+                total.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException("Video analysis failed", cause);
+        } finally {
+            queue.abort();
+            executor.shutdownNow();
+            // the pipelines are released by the workers on their way out, so they are all freed on return
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        total.setWallNanos(System.nanoTime() - start);
+        return total;
+    }
+
+    // Hands the segments out in order and writes their results in order
+    private class SegmentQueue {
+        private final TimelineSink sink;
+        private final long segmentCount;
+        private final long maxAhead;
+        private final Map<Long, SegmentResult> done = new HashMap<>();
+        private long nextSegment = 0;
+        private long nextToWrite = 0;
+        private boolean aborted = false;
+
+        SegmentQueue(TimelineSink sink, long segmentCount, long maxAhead) {
+            this.sink = sink;
+            this.segmentCount = segmentCount;
+            this.maxAhead = maxAhead;
+        }
+
+        // Returns the next segment to analyse, -1 when there is none left.
+        // Waits while too many segments wait for an earlier one to be written.
+        synchronized long take() throws InterruptedException {
+            while (!aborted && nextSegment < segmentCount && nextSegment - nextToWrite >= maxAhead) {
+                wait();
+            }
+            if (aborted || nextSegment >= segmentCount)
+                return -1;
+            return nextSegment++;
+        }
+
+        synchronized void complete(long segment, SegmentResult result) throws IOException {
+            if (aborted)
+                return;
+            done.put(segment, result);
+            SegmentResult next;
+            while ((next = done.remove(nextToWrite)) != null) {
+                for (int i = 0; i < next.size(); i++) {
+                    long frame = next.frameIndex(i);
+                    sink.onFrame(frame, (long) (frame * 1000 / fps), next.faces(i));
+                }
+                nextToWrite++;
+            }
+            notifyAll();
+        }
+
+        // Stops handing segments out, e.g. when a worker failed
+        synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+    }
+
+    private class Worker implements Callable<AnalysisStats>, StageObserver {
+        private final SegmentQueue queue;
+        private final long framesPerSegment;
+        private final String cacheConfig;
+        private final AnalysisStats stats = new AnalysisStats();
+
+        Worker(SegmentQueue queue, long framesPerSegment, String cacheConfig) {
+            this.queue = queue;
+            this.framesPerSegment = framesPerSegment;
+            this.cacheConfig = cacheConfig;
+        }
+
+        @Override
+        public AnalysisStats call() throws Exception {
+            try (VideoSource<F> source = sourceFactory.open()) {
+                RecognitionPipeline<F> pipeline = pipelineFactory.create();
+                try {
+                    pipeline.setStageObserver(this);
+                    long segment;
+                    while ((segment = queue.take()) >= 0) {
+                        queue.complete(segment, analyzeOrLoad(segment, source, pipeline));
+                    }
+                } finally {
+                    pipelineFactory.release(pipeline);
+                }
+            } catch (Throwable t) {
+                // the other workers stop instead of waiting for this one's segment
+                queue.abort();
+                throw t;
+            }
+            return stats;
+        }
+
+        private SegmentResult analyzeOrLoad(long segment, VideoSource<F> source, RecognitionPipeline<F> pipeline)
+                throws IOException {
+            if (resultCache == null)
+                return analyze(segment, source, pipeline);
+
+            ResultCache.Key key = new ResultCache.Key(contentHash, segment, cacheConfig, modelHash);
+            SegmentResult result = resultCache.get(key);
+            if (result != null) {
+                stats.addCached(result);
+                return result;
+            }
+            result = analyze(segment, source, pipeline);
+            resultCache.put(key, result);
+            return result;
+        }
+
+        private SegmentResult analyze(long segment, VideoSource<F> source, RecognitionPipeline<F> pipeline)
+                throws IOException {
+            SegmentResult result = new SegmentResult();
+            long first = segment * framesPerSegment;
+            long end = Math.min(first + framesPerSegment, frameCount);
+            pipeline.reset();
+
+            long decodeStart = System.nanoTime();
+            source.seek(first);
+            stats.addDecode(System.nanoTime() - decodeStart);
+
+            for (long frame = first; frame < end; frame++) {
+                decodeStart = System.nanoTime();
+                if (frame % frameStride != 0) {
+                    boolean skipped = source.skip();
+                    stats.addDecode(System.nanoTime() - decodeStart);
+                    if (!skipped)
+                        break;
+                    stats.addSkippedFrame();
+                    continue;
+                }
+
+                F image = source.read();
+                stats.addDecode(System.nanoTime() - decodeStart);
+                if (image == null)
+                    break; // the video is shorter than reported
+
+                List<FaceResult> faces = pipeline.process(image);
+                stats.addFrame(faces.size());
+                result.add(frame, faces);
+            }
+            return result;
+        }
+
+        @Override
+        public void onStageBegin(String stage, int face) {
+        }
+
+        @Override
+        public void onStageEnd(String stage, int face, long startNanos) {
+            stats.addStage(stage, System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.achel.truemood.core;
+
+import java.io.File;
+import java.io.IOException;
+
+// Decodes photos at a reduced resolution, e.g. OpenCV's imread with IMREAD_REDUCED_* which downscales
+// JPEGs in the DCT domain instead of decoding every pixel. F is the image type of the platform.
+public interface PhotoDecoder<F> {
+
+    // Returns the photo in grayscale, 1/scale of its size (scale is 1, 2, 4 or 8), or null when it is not a readable image
+    F decodeGray(File file, int scale) throws IOException;
+
+    // Returns the photo in the color layout of the preprocessor, 1/scale of its size, or null when it is not a readable image
+    F decodeColor(File file, int scale) throws IOException;
+
+    int width(F image);
+
+    int height(F image);
+
+    // Frees a decoded image, it is not used anymore
+    void release(F image);
+}
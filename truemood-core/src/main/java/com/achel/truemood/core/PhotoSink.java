@@ -0,0 +1,13 @@
+package com.achel.truemood.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+// Receives the results of a batch photo classification, as soon as each photo is done
+public interface PhotoSink {
+
+    // Called once per photo, in completion order; index is the position of the photo in the input.
+    // faces is empty when no face was found, null when the file is not a readable image.
+    void onPhoto(long index, File file, List<FaceResult> faces) throws IOException;
+}
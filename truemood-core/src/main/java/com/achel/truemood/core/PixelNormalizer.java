@@ -0,0 +1,32 @@
+package com.achel.truemood.core;
+
+import java.nio.ByteBuffer;
+
+// Converts the 8-bit pixels of a resized face to the float RGB input of the emotion model,
+// each value divided by 255. Only depends on java.nio so the loop can be benchmarked on the JVM.
+public final class PixelNormalizer {
+
+    private PixelNormalizer() {
+    }
+
+    // Reads width * height packed pixels of the given channel count from src (absolute reads from index 0)
+    // and writes 3 floats per pixel into dst from its position. A gray pixel (1 channel) is used for
+    // red, green and blue, a fourth channel (alpha) is ignored.
+    public static void toFloatRgb(ByteBuffer src, int width, int height, int channels, ByteBuffer dst) {
+        if (channels != 1 && channels != 3 && channels != 4)
+            throw new IllegalArgumentException("Unsupported channel count: " + channels);
+        int pixels = width * height;
+        if (src.capacity() < pixels * channels)
+            throw new IllegalArgumentException("Source of " + src.capacity() + " bytes, " + pixels * channels + " needed");
+
+        // A gray face has a single channel used for red, green and blue
+        int green = channels >= 3 ? 1 : 0;
+        int blue = channels >= 3 ? 2 : 0;
+
+        for (int i = 0, p = 0; i < pixels; i++, p += channels) {
+            dst.putFloat((src.get(p) & 0xFF) / 255.0f);
+            dst.putFloat((src.get(p + green) & 0xFF) / 255.0f);
+            dst.putFloat((src.get(p + blue) & 0xFF) / 255.0f);
+        }
+    }
+}
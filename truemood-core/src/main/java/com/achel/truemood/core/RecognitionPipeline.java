@@ -0,0 +1,126 @@
+package com.achel.truemood.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Detects, tracks and classifies the faces of successive frames.
+// The platform parts (detector, preprocessor, classifier) are behind interfaces, so the scheduling and
+// tracking logic runs the same on the device and in JVM tests with fakes.
+public class RecognitionPipeline<F> {
+
+    // Names of the stages reported to the StageObserver
+    public static final String STAGE_DETECT = "detect";
+    public static final String STAGE_PREPROCESS = "preprocess";
+    public static final String STAGE_INFERENCE = "inference";
+
+    private final FaceDetector<F> detector;
+    private final FacePreprocessor<F> preprocessor;
+    private final EmotionClassifier classifier;
+    private final FrameScheduler scheduler;
+    private final FaceTracker tracker;
+    private StageObserver observer = StageObserver.NONE;
+
+    // Faces found by the detector on the current frame, and the tracks selected for classification
+    private final FaceBoxes detected = new FaceBoxes();
+    private int[] selected = new int[16];
+    private long frameIndex = 0;
+
+    public RecognitionPipeline(FaceDetector<F> detector, FacePreprocessor<F> preprocessor, EmotionClassifier classifier) {
+        this(detector, preprocessor, classifier, new FrameScheduler(), new FaceTracker());
+    }
+
+    public RecognitionPipeline(FaceDetector<F> detector, FacePreprocessor<F> preprocessor, EmotionClassifier classifier,
+                               FrameScheduler scheduler, FaceTracker tracker) {
+        this.detector = detector;
+        this.preprocessor = preprocessor;
+        this.classifier = classifier;
+        this.scheduler = scheduler;
+        this.tracker = tracker;
+    }
+
+    public void setStageObserver(StageObserver stageObserver) {
+        observer = stageObserver == null ? StageObserver.NONE : stageObserver;
+    }
+
+    public FaceTracker getTracker() {
+        return tracker;
+    }
+
+    public EmotionClassifier getClassifier() {
+        return classifier;
+    }
+
+    // Processes a frame with the faces found by the detector, when the scheduler asks for detection
+    public List<FaceResult> process(F frame) {
+        return process(frame, null);
+    }
+
+    // Processes a frame. faces, when not null, are used instead of running the detector,
+    // e.g. the faces reported by the camera hardware.
+    // Returns the classified faces detected on this frame, or tracked when detection was skipped.
+    public List<FaceResult> process(F frame, FaceBoxes faces) {
+        long index = frameIndex++;
+        tracker.nextFrame();
+
+        boolean detectedNow = false;
+        if (faces != null) {
+            tracker.update(faces);
+            detectedNow = true;
+        } else if (scheduler.shouldDetect(index, tracker.size())) {
+            long detectStart = System.nanoTime();
+            observer.onStageBegin(STAGE_DETECT, -1);
+            detector.detect(frame, detected);
+            observer.onStageEnd(STAGE_DETECT, -1, detectStart);
+            tracker.update(detected);
+            detectedNow = true;
+        }
+
+        classifyDueTracks(frame);
+
+        List<FaceResult> results = new ArrayList<>(tracker.size());
+        for (int i = 0; i < tracker.size(); i++) {
+            FaceTrack track = tracker.get(i);
+            // A face missed by this frame's detection is not reported, its box would be stale
+            if (!track.isClassified() || (detectedNow && track.getMissedDetections() > 0)) {
+                continue;
+            }
+            results.add(new FaceResult(track.getX(), track.getY(), track.getWidth(), track.getHeight(),
+                    track.getEmotionValue(), track.getEmotionText(), track.getId()));
+        }
+        return results;
+    }
+
+    // Drops the tracks and restarts the frame numbering, e.g. when the camera is switched
+    public void reset() {
+        tracker.clear();
+        frameIndex = 0;
+    }
+
+    private void classifyDueTracks(F frame) {
+        if (selected.length < tracker.size()) {
+            selected = new int[Math.max(tracker.size(), 2 * selected.length)];
+        }
+        int count = scheduler.selectForClassification(tracker, selected);
+        for (int k = 0; k < count; k++) {
+            int face = selected[k];
+            FaceTrack track = tracker.get(face);
+            // A face missed by the last detection keeps its last emotion until it is found again
+            if (track.getMissedDetections() > 0) {
+                continue;
+            }
+
+            long preprocessStart = System.nanoTime();
+            observer.onStageBegin(STAGE_PREPROCESS, face);
+            ByteBuffer input = preprocessor.preprocess(frame, track.getX(), track.getY(), track.getWidth(), track.getHeight());
+            observer.onStageEnd(STAGE_PREPROCESS, face, preprocessStart);
+
+            long inferenceStart = System.nanoTime();
+            observer.onStageBegin(STAGE_INFERENCE, face);
+            float value = classifier.classify(input);
+            observer.onStageEnd(STAGE_INFERENCE, face, inferenceStart);
+
+            track.setEmotion(value, EmotionLabels.labelOf(value));
+        }
+    }
+}
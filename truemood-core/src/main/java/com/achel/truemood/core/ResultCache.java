@@ -0,0 +1,425 @@
+package com.achel.truemood.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// On-disk cache of analysis results, so that re-running an analysis over the same videos or photos only
+// recomputes what changed. Results are keyed by the content hash of the file, the segment (or frame),
+// the detector configuration and the model hash: changing the model or the detector settings misses.
+// <p>
+// The results are appended to a single file. Every record starts with its key, so opening the cache
+// only reads the keys to build the in-memory index, the results are read back on get().
+// The cache keeps at most maxBytes of records, the least recently used ones are evicted first.
+// Evictions and replaced records leave dead space which is reclaimed by rewriting the file once it
+// exceeds maxBytes; the live records are written least recently used first, so the recency order
+// survives a restart. The rewrite happens synchronously in the put() that crosses the threshold, under
+// the cache lock: every worker using the cache waits for it, which costs up to maxBytes of copying.
+// A record torn by a crash is dropped when the cache is opened.
+// The methods are thread-safe, the workers of an analysis share one cache.
+public class ResultCache implements Closeable {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // "TMRC" and the file format version
+    private static final int MAGIC = 0x544D5243;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte KIND_RESULT = 1;
+    private static final byte KIND_REMOVED = 2;
+
+    // Record length, kind and key length before the key
+    private static final int RECORD_PREFIX = 4 + 1 + 2;
+    private static final int CRC_SIZE = 4;
+    private static final int FACE_SIZE = 6 * 4;
+
+    // Identifies the results of one segment of one file
+    public static final class Key {
+        final String contentHash;
+        final long segment;
+        final String detectorConfig;
+        final String modelHash;
+
+        // segment is the frame or segment index within the file, 0 for a photo
+        public Key(String contentHash, long segment, String detectorConfig, String modelHash) {
+            if (contentHash == null || detectorConfig == null || modelHash == null)
+                throw new NullPointerException("Null key field");
+            this.contentHash = contentHash;
+            this.segment = segment;
+            this.detectorConfig = detectorConfig;
+            this.modelHash = modelHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return segment == other.segment && contentHash.equals(other.contentHash)
+                    && detectorConfig.equals(other.detectorConfig) && modelHash.equals(other.modelHash);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = contentHash.hashCode();
+            hash = hash * 31 + (int) (segment ^ (segment >>> 32));
+            hash = hash * 31 + detectorConfig.hashCode();
+            return hash * 31 + modelHash.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return contentHash + "#" + segment + " " + detectorConfig + " " + modelHash;
+        }
+    }
+
+    // Position and size of a record in the file
+    private static final class Entry {
+        long offset;
+        final int size;
+
+        Entry(long offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+    // access order, the eldest entry is the least recently used
+    private final LinkedHashMap<Key, Entry> index = new LinkedHashMap<>(64, 0.75f, true);
+    private FileChannel channel;
+    private long end;
+    private long liveBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ResultCache(File file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES);
+    }
+
+    // Opens the cache file, creating it if needed, and loads its index
+    public ResultCache(File file, long maxBytes) throws IOException {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        this.file = file;
+        this.maxBytes = maxBytes;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        load();
+    }
+
+    // Returns the cached results of the key, null when they are not cached
+    public synchronized SegmentResult get(Key key) throws IOException {
+        checkOpen();
+        Entry entry = index.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(entry.size);
+        readFully(record, entry.offset);
+        byte[] bytes = record.array();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 4, bytes.length - 4 - CRC_SIZE);
+        if ((int) crc.getValue() != record.getInt(bytes.length - CRC_SIZE)) {
+            // damaged on disk, recomputed by the caller
+            remove(key, entry);
+            misses++;
+            return null;
+        }
+        hits++;
+        int keyLength = record.getShort(5) & 0xFFFF;
+        return decodeResult(new DataInputStream(new ByteArrayInputStream(bytes, RECORD_PREFIX + keyLength,
+                bytes.length - RECORD_PREFIX - keyLength - CRC_SIZE)));
+    }
+
+    // Stores the results of the key, replacing the cached ones. Evicts the least recently used results over the size bound.
+    public synchronized void put(Key key, SegmentResult result) throws IOException {
+        checkOpen();
+        byte[] record = encodeRecord(KIND_RESULT, key, result);
+        if (record.length > maxBytes)
+            return;
+        Entry old = index.remove(key);
+        if (old != null)
+            liveBytes -= old.size;
+        long offset = append(record);
+        index.put(key, new Entry(offset, record.length));
+        liveBytes += record.length;
+
+        Iterator<Map.Entry<Key, Entry>> it = index.entrySet().iterator();
+        while (liveBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            it.remove();
+            liveBytes -= eldest.getValue().size;
+            append(encodeRecord(KIND_REMOVED, eldest.getKey(), null));
+            evictions++;
+        }
+        if (end - HEADER_SIZE - liveBytes > maxBytes)
+            compact();
+    }
+
+    public synchronized boolean contains(Key key) {
+        return index.containsKey(key);
+    }
+
+    // Returns the number of cached results
+    public synchronized int size() {
+        return index.size();
+    }
+
+    // Returns the size of the cached records, at most maxBytes
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    // Returns the size of the file, dead space included
+    public synchronized long getFileBytes() {
+        return end;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Reads the header and the keys of the records, drops a torn record at the end
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size < HEADER_SIZE || !read(header, 0) || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            // new file, or one of another format: the cache starts empty
+            reset();
+            return;
+        }
+
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX);
+        long offset = HEADER_SIZE;
+        while (offset + RECORD_PREFIX <= size) {
+            prefix.clear();
+            if (!read(prefix, offset))
+                break;
+            int recordSize = prefix.getInt(0);
+            byte kind = prefix.get(4);
+            int keyLength = prefix.getShort(5) & 0xFFFF;
+            if (recordSize < RECORD_PREFIX + keyLength + CRC_SIZE || offset + recordSize > size
+                    || (kind != KIND_RESULT && kind != KIND_REMOVED))
+                break;
+            ByteBuffer keyBytes = ByteBuffer.allocate(keyLength);
+            if (!read(keyBytes, offset + RECORD_PREFIX))
+                break;
+            Key key = decodeKey(keyBytes.array());
+
+            Entry old = index.remove(key);
+            if (old != null)
+                liveBytes -= old.size;
+            if (kind == KIND_RESULT) {
+                index.put(key, new Entry(offset, recordSize));
+                liveBytes += recordSize;
+            }
+            offset += recordSize;
+        }
+        end = offset;
+        if (end < size)
+            channel.truncate(end);
+    }
+
+    private void reset() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(channel, header, 0);
+        end = HEADER_SIZE;
+        index.clear();
+        liveBytes = 0;
+    }
+
+    private void remove(Key key, Entry entry) throws IOException {
+        index.remove(key);
+        liveBytes -= entry.size;
+        append(encodeRecord(KIND_REMOVED, key, null));
+    }
+
+    private long append(byte[] record) throws IOException {
+        long offset = end;
+        writeFully(channel, ByteBuffer.wrap(record), offset);
+        end += record.length;
+        return offset;
+    }
+
+    // Rewrites the live records, least recently used first, into a new file which replaces the current one
+    private void compact() throws IOException {
+        File compacted = new File(file.getPath() + ".tmp");
+        List<Entry> entries = new ArrayList<>(index.values());
+        try (FileChannel out = new RandomAccessFile(compacted, "rw").getChannel()) {
+            out.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(out, header, 0);
+            long offset = HEADER_SIZE;
+            for (Entry entry : entries) {
+                ByteBuffer record = ByteBuffer.allocate(entry.size);
+                readFully(record, entry.offset);
+                record.flip();
+                writeFully(out, record, offset);
+                offset += entry.size;
+            }
+            out.force(false);
+        }
+        channel.close();
+        boolean moved = false;
+        try {
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            // when the move fails the original file is untouched, reopening it keeps the cache usable
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            if (!moved)
+                compacted.delete();
+        }
+
+        long offset = HEADER_SIZE;
+        for (Entry entry : entries) {
+            entry.offset = offset;
+            offset += entry.size;
+        }
+        end = offset;
+    }
+
+    private boolean read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        if (!read(buffer, position))
+            throw new IOException("Cache file " + file + " is truncated at " + position);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void checkOpen() {
+        if (channel == null)
+            throw new IllegalStateException("ResultCache is closed");
+    }
+
+    // length, kind, key length, key, result (for KIND_RESULT), CRC32 of everything after the length
+    private static byte[] encodeRecord(byte kind, Key key, SegmentResult result) throws IOException {
+        byte[] keyBytes = encodeKey(key);
+        if (keyBytes.length > 0xFFFF)
+            throw new IllegalArgumentException("Cache key too long: " + key);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_PREFIX + keyBytes.length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(kind);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        if (result != null) {
+            out.writeInt(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                List<FaceResult> faces = result.faces(i);
+                out.writeLong(result.frameIndex(i));
+                out.writeInt(faces.size());
+                for (FaceResult face : faces) {
+                    out.writeInt(face.x);
+                    out.writeInt(face.y);
+                    out.writeInt(face.width);
+                    out.writeInt(face.height);
+                    out.writeFloat(face.emotionValue);
+                    out.writeInt(face.trackId);
+                }
+            }
+        }
+        out.writeInt(0);
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int size = record.capacity();
+        record.putInt(0, size);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, size - 4 - CRC_SIZE);
+        record.putInt(size - CRC_SIZE, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static byte[] encodeKey(Key key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(key.contentHash);
+        out.writeLong(key.segment);
+        out.writeUTF(key.detectorConfig);
+        out.writeUTF(key.modelHash);
+        return bytes.toByteArray();
+    }
+
+    private static Key decodeKey(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String contentHash = in.readUTF();
+        long segment = in.readLong();
+        String detectorConfig = in.readUTF();
+        String modelHash = in.readUTF();
+        return new Key(contentHash, segment, detectorConfig, modelHash);
+    }
+
+    // The labels are not stored, they follow from the model output
+    private static SegmentResult decodeResult(DataInputStream in) throws IOException {
+        SegmentResult result = new SegmentResult();
+        int frames = in.readInt();
+        for (int i = 0; i < frames; i++) {
+            long frameIndex = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > in.available() / FACE_SIZE)
+                throw new IOException("Invalid face count " + count + " in the result cache");
+            List<FaceResult> faces = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                int x = in.readInt();
+                int y = in.readInt();
+                int width = in.readInt();
+                int height = in.readInt();
+                float value = in.readFloat();
+                int trackId = in.readInt();
+                faces.add(new FaceResult(x, y, width, height, value, EmotionLabels.labelOf(value), trackId));
+            }
+            result.add(frameIndex, faces);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,29 @@
+package com.achel.truemood.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Results of the analysed frames of a segment of a video, or of a single photo (frame 0)
+public class SegmentResult {
+
+    private final List<Long> frames = new ArrayList<>();
+    private final List<List<FaceResult>> faces = new ArrayList<>();
+
+    public void add(long frameIndex, List<FaceResult> frameFaces) {
+        frames.add(frameIndex);
+        faces.add(frameFaces);
+    }
+
+    // Returns the number of analysed frames
+    public int size() {
+        return frames.size();
+    }
+
+    public long frameIndex(int index) {
+        return frames.get(index);
+    }
+
+    public List<FaceResult> faces(int index) {
+        return faces.get(index);
+    }
+}
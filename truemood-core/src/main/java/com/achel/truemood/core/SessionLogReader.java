@@ -0,0 +1,214 @@
+package com.achel.truemood.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a session log written by SessionRecorder, for replay and export. The segment headers are loaded
+// when the log is opened and serve as an index by time; the segments are mapped one at a time.
+// Logs cut short by a crash are read up to their last drained record.
+public class SessionLogReader implements Closeable {
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long startMillis;
+    private final long startNanos;
+    // Number of records and time of the first record of every segment
+    private final int[] segmentRecords;
+    private final long[] segmentFirstNanos;
+    private final long recordCount;
+
+    private MappedByteBuffer segment = null;
+    private int segmentIndex = -1;
+    private int recordInSegment = 0;
+
+    // Opens the log and loads its segment index
+    public SessionLogReader(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        try {
+            channel = raf.getChannel();
+            long size = channel.size();
+            ByteBuffer header = read(0, SessionRecorder.HEADER_SIZE, size, file);
+            if (header.getInt(0) != SessionRecorder.MAGIC)
+                throw new IOException("Not a session log: " + file);
+            int version = header.getInt(4);
+            if (version != SessionRecorder.VERSION)
+                throw new IOException("Unsupported session log version " + version + ": " + file);
+            if (header.getInt(8) != SessionRecorder.RECORD_SIZE || header.getInt(12) != SessionRecorder.SEGMENT_RECORDS)
+                throw new IOException("Unsupported session log layout: " + file);
+            startMillis = header.getLong(16);
+            startNanos = header.getLong(24);
+
+            int segments = (int) ((size - SessionRecorder.HEADER_SIZE + SessionRecorder.SEGMENT_SIZE - 1)
+                    / SessionRecorder.SEGMENT_SIZE);
+            segmentRecords = new int[segments];
+            segmentFirstNanos = new long[segments];
+            long records = 0;
+            for (int i = 0; i < segments; i++) {
+                long start = segmentStart(i);
+                if (start + SessionRecorder.SEGMENT_HEADER_SIZE > size)
+                    break;
+                ByteBuffer segmentHeader = read(start, SessionRecorder.SEGMENT_HEADER_SIZE, size, file);
+                if (segmentHeader.getInt(0) != SessionRecorder.SEGMENT_MAGIC || segmentHeader.getInt(4) != i)
+                    throw new IOException("Corrupt segment " + i + " in session log " + file);
+                // a segment header counts the records drained, the file may hold less after a crash
+                long room = (size - start - SessionRecorder.SEGMENT_HEADER_SIZE) / SessionRecorder.RECORD_SIZE;
+                segmentRecords[i] = (int) Math.min(segmentHeader.getInt(8), room);
+                segmentFirstNanos[i] = segmentHeader.getLong(16);
+                records += segmentRecords[i];
+            }
+            recordCount = records;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    // Returns the wall clock time (System.currentTimeMillis()) at the start of the session
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    // Returns the System.nanoTime() at the start of the session, the base of the record times
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getSegmentCount() {
+        return segmentRecords.length;
+    }
+
+    // Goes back to the first record
+    public void rewind() {
+        segment = null;
+        segmentIndex = -1;
+        recordInSegment = 0;
+    }
+
+    // Moves to the first record at or after the given time, found through the segment index
+    public void seek(long timeNanos) throws IOException {
+        rewind();
+        int first = 0;
+        // last segment starting at or before the time
+        int low = 0;
+        int high = segmentRecords.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (segmentRecords[mid] > 0 && segmentFirstNanos[mid] <= timeNanos) {
+                first = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        segmentIndex = first - 1;
+        SessionRecord record = new SessionRecord();
+        while (next(record)) {
+            if (record.getTimeNanos() >= timeNanos) {
+                recordInSegment--;
+                return;
+            }
+        }
+    }
+
+    // Reads the next record into the given one
+    // Returns false at the end of the log
+    public boolean next(SessionRecord record) throws IOException {
+        while (segment == null || recordInSegment >= segmentRecords[segmentIndex]) {
+            if (segmentIndex + 1 >= segmentRecords.length)
+                return false;
+            segmentIndex++;
+            recordInSegment = 0;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart(segmentIndex),
+                    SessionRecorder.SEGMENT_HEADER_SIZE + (long) segmentRecords[segmentIndex] * SessionRecorder.RECORD_SIZE);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int offset = SessionRecorder.SEGMENT_HEADER_SIZE + recordInSegment * SessionRecorder.RECORD_SIZE;
+        recordInSegment++;
+        record.set(segment.getLong(offset + SessionRecord.TIME_OFFSET),
+                segment.getInt(offset + SessionRecord.FRAME_OFFSET),
+                segment.getShort(offset + SessionRecord.FACE_COUNT_OFFSET),
+                segment.getInt(offset + SessionRecord.TRACK_OFFSET),
+                segment.getShort(offset + SessionRecord.X_OFFSET),
+                segment.getShort(offset + SessionRecord.Y_OFFSET),
+                segment.getShort(offset + SessionRecord.WIDTH_OFFSET),
+                segment.getShort(offset + SessionRecord.HEIGHT_OFFSET),
+                segment.getFloat(offset + SessionRecord.EMOTION_OFFSET),
+                segment.get(offset + SessionRecord.LABEL_OFFSET));
+        return true;
+    }
+
+    // Replays the records from the current position to the sink, one call per frame, with the time
+    // in milliseconds since the start of the session
+    public void replay(TimelineSink sink) throws IOException {
+        SessionRecord record = new SessionRecord();
+        List<FaceResult> faces = new ArrayList<>();
+        long frame = -1;
+        long timeMillis = 0;
+        while (next(record)) {
+            if (record.getFrameIndex() != frame) {
+                if (frame >= 0)
+                    sink.onFrame(frame, timeMillis, faces);
+                faces = new ArrayList<>();
+                frame = record.getFrameIndex();
+                timeMillis = (record.getTimeNanos() - startNanos) / 1_000_000;
+            }
+            if (record.getFaceCount() > 0)
+                faces.add(record.toFaceResult());
+        }
+        if (frame >= 0)
+            sink.onFrame(frame, timeMillis, faces);
+    }
+
+    // Returns the rollups of the whole log for charting, built in one pass over the records
+    public TimelineRollups buildRollups() throws IOException {
+        TimelineRollups rollups = new TimelineRollups(startNanos);
+        SessionRecord record = new SessionRecord();
+        rewind();
+        while (next(record)) {
+            rollups.add(record.getTimeNanos(), record.getLabelIndex());
+        }
+        rewind();
+        return rollups;
+    }
+
+    // Writes the whole log as a TimelineCsvWriter CSV. The writer is flushed, not closed.
+    public void exportCsv(Writer writer) throws IOException {
+        rewind();
+        replay(new TimelineCsvWriter(writer));
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        raf.close();
+    }
+
+    private static long segmentStart(int index) {
+        return SessionRecorder.HEADER_SIZE + index * SessionRecorder.SEGMENT_SIZE;
+    }
+
+    private ByteBuffer read(long position, int length, long size, File file) throws IOException {
+        if (position + length > size)
+            throw new IOException("Truncated session log: " + file);
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Truncated session log: " + file);
+        }
+        return buffer;
+    }
+}
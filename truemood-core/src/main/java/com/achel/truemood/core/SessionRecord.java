@@ -0,0 +1,98 @@
+package com.achel.truemood.core;
+
+// One record of a session log, filled in place by SessionLogReader.next() so that reading allocates nothing.
+// A frame with n faces has n records; a frame without face has one record with getFaceCount() == 0.
+public class SessionRecord {
+
+    // Layout of a record in the ring and in the log, SessionRecorder.RECORD_SIZE bytes, little-endian
+    static final int TIME_OFFSET = 0;
+    static final int FRAME_OFFSET = 8;
+    static final int TRACK_OFFSET = 12;
+    static final int X_OFFSET = 16;
+    static final int Y_OFFSET = 18;
+    static final int WIDTH_OFFSET = 20;
+    static final int HEIGHT_OFFSET = 22;
+    static final int EMOTION_OFFSET = 24;
+    static final int LABEL_OFFSET = 28;
+    // one padding byte at 29
+    static final int FACE_COUNT_OFFSET = 30;
+
+    private long timeNanos;
+    private int frameIndex;
+    private int faceCount;
+    private int trackId;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private float emotionValue;
+    private int labelIndex;
+
+    // Returns the System.nanoTime() of the results, see SessionLogReader.getStartNanos()
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    // Returns the index of the frame in the session, counted from 0
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    // Returns the number of faces of the frame, 0 for the record of a frame without face
+    public int getFaceCount() {
+        return faceCount;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Returns the raw model output
+    public float getEmotionValue() {
+        return emotionValue;
+    }
+
+    // Returns the EmotionLabels index of the emotion, -1 for a frame without face
+    public int getLabelIndex() {
+        return labelIndex;
+    }
+
+    // Returns the emotion label, null for a frame without face
+    public String getLabel() {
+        return labelIndex < 0 ? null : EmotionLabels.get(labelIndex);
+    }
+
+    public FaceResult toFaceResult() {
+        return new FaceResult(x, y, width, height, emotionValue, getLabel(), trackId);
+    }
+
+    void set(long timeNanos, int frameIndex, int faceCount, int trackId, int x, int y, int width, int height,
+             float emotionValue, int labelIndex) {
+        this.timeNanos = timeNanos;
+        this.frameIndex = frameIndex;
+        this.faceCount = faceCount;
+        this.trackId = trackId;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.emotionValue = emotionValue;
+        this.labelIndex = labelIndex;
+    }
+}
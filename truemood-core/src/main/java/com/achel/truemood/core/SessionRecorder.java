@@ -0,0 +1,263 @@
+package com.achel.truemood.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Records the per-frame results of a session into a compact binary log, read back with SessionLogReader.
+// The camera thread copies every face into a fixed-size record of a preallocated ring and returns: no I/O,
+// no lock and no allocation. A background thread drains the ring into the log file through memory-mapped
+// segments. When the ring is full, which takes seconds of a stalled storage, records are dropped and
+// counted instead of blocking the camera.
+// <p>
+// File layout, little-endian: a header (MAGIC, VERSION, RECORD_SIZE, SEGMENT_RECORDS, the wall clock and
+// System.nanoTime() at the start of the session) followed by segments of SEGMENT_RECORDS records. Each
+// segment starts with a header (SEGMENT_MAGIC, index, record count, first and last time) updated as records
+// are drained, so the segment headers are an index by time and a log cut short by a crash stays readable.
+// The drain thread also keeps the TimelineRollups of the session up to date for the timeline charts.
+// record(): from one thread at a time. close(): from any thread.
+public class SessionRecorder implements Closeable {
+
+    // "TMSL" and the file format version
+    static final int MAGIC = 0x544D534C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    // "SEGM"
+    static final int SEGMENT_MAGIC = 0x5345474D;
+    static final int SEGMENT_HEADER_SIZE = 32;
+    static final int SEGMENT_RECORDS = 4096;
+    static final int RECORD_SIZE = 32;
+    static final long SEGMENT_SIZE = SEGMENT_HEADER_SIZE + (long) SEGMENT_RECORDS * RECORD_SIZE;
+
+    public static final int DEFAULT_RING_RECORDS = 8192;
+
+    // How often the background thread drains the ring when the camera does not wake it up
+    private static final long DRAIN_INTERVAL_NANOS = 200_000_000L;
+
+    private final ByteBuffer ring;
+    private final int ringMask;
+    // Records written by the camera thread and read by the drain thread, they only grow
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private int frameIndex = 0;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Thread drainThread;
+    private volatile boolean closing = false;
+    private volatile IOException failure = null;
+    private boolean closed = false;
+
+    // Drain thread state: the mapped segment being filled and the number of records in the file
+    private final ByteBuffer ringView;
+    private MappedByteBuffer segment = null;
+    private int segmentIndex = -1;
+    private int segmentCount = 0;
+    private volatile long recordCount = 0;
+    private final TimelineRollups rollups;
+
+    public SessionRecorder(File file) throws IOException {
+        this(file, DEFAULT_RING_RECORDS);
+    }
+
+    // ringRecords is rounded up to a power of two
+    public SessionRecorder(File file, int ringRecords) throws IOException {
+        if (ringRecords <= 0 || ringRecords > (1 << 24))
+            throw new IllegalArgumentException("Invalid ring size: " + ringRecords);
+        int capacity = Integer.highestOneBit(ringRecords);
+        if (capacity < ringRecords)
+            capacity <<= 1;
+        ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ringView = ring.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ringMask = capacity - 1;
+
+        this.file = file;
+        long startNanos = System.nanoTime();
+        rollups = new TimelineRollups(startNanos);
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        try {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(SEGMENT_RECORDS)
+                    .putLong(System.currentTimeMillis()).putLong(startNanos).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "SessionRecorder");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    // Records the results of a frame, called by the camera thread. Never blocks: the results are dropped
+    // when the ring is full or the recorder is closed.
+    public void record(long timeNanos, List<FaceResult> faces) {
+        if (closing)
+            return;
+        int frame = frameIndex++;
+        int count = faces.size();
+        if (count == 0) {
+            put(timeNanos, frame, 0, -1, 0, 0, 0, 0, 0, -1);
+        }
+        for (int i = 0; i < count; i++) {
+            FaceResult face = faces.get(i);
+            put(timeNanos, frame, count, face.trackId, face.x, face.y, face.width, face.height,
+                    face.emotionValue, EmotionLabels.indexOf(face.emotionValue));
+        }
+        // wake the drain thread early when the ring fills up faster than the drain interval
+        if (head.get() - tail.get() > ringMask / 2)
+            LockSupport.unpark(drainThread);
+    }
+
+    // Returns the per second, 10 seconds and minute histograms of the records written so far, for charts
+    public TimelineRollups getRollups() {
+        return rollups;
+    }
+
+    // Returns the number of records written to the file so far
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Returns the number of records lost because the ring was full
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Writes the remaining records and closes the file
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        closing = true;
+        LockSupport.unpark(drainThread);
+        boolean interrupted = false;
+        while (drainThread.isAlive()) {
+            try {
+                drainThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        try {
+            segment = null;
+            // the last segment only takes the room of its records
+            if (segmentCount > 0) {
+                int last = (int) (recordCount - (long) (segmentCount - 1) * SEGMENT_RECORDS);
+                channel.truncate(HEADER_SIZE + (segmentCount - 1) * SEGMENT_SIZE + SEGMENT_HEADER_SIZE
+                        + (long) last * RECORD_SIZE);
+            }
+        } finally {
+            raf.close();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void put(long timeNanos, int frame, int faceCount, int trackId, int x, int y, int width, int height,
+                     float emotionValue, int labelIndex) {
+        long h = head.get();
+        if (h - tail.get() > ringMask) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int offset = (int) (h & ringMask) * RECORD_SIZE;
+        ring.putLong(offset + SessionRecord.TIME_OFFSET, timeNanos);
+        ring.putInt(offset + SessionRecord.FRAME_OFFSET, frame);
+        ring.putInt(offset + SessionRecord.TRACK_OFFSET, trackId);
+        ring.putShort(offset + SessionRecord.X_OFFSET, clampShort(x));
+        ring.putShort(offset + SessionRecord.Y_OFFSET, clampShort(y));
+        ring.putShort(offset + SessionRecord.WIDTH_OFFSET, clampShort(width));
+        ring.putShort(offset + SessionRecord.HEIGHT_OFFSET, clampShort(height));
+        ring.putFloat(offset + SessionRecord.EMOTION_OFFSET, emotionValue);
+        ring.put(offset + SessionRecord.LABEL_OFFSET, (byte) labelIndex);
+        ring.put(offset + SessionRecord.LABEL_OFFSET + 1, (byte) 0);
+        ring.putShort(offset + SessionRecord.FACE_COUNT_OFFSET, clampShort(faceCount));
+        // publishes the record to the drain thread
+        head.lazySet(h + 1);
+    }
+
+    private static short clampShort(int value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private void drainLoop() {
+        try {
+            while (!closing) {
+                drain();
+                LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+            }
+            drain();
+        } catch (IOException e) {
+            failure = e;
+            // the camera thread keeps recording into the ring, which fills up and drops
+        }
+    }
+
+    // Copies the published records of the ring to the mapped segments
+    private void drain() throws IOException {
+        long t = tail.get();
+        long h = head.get();
+        if (t == h)
+            return;
+        while (t < h) {
+            if (segment == null || !segment.hasRemaining())
+                nextSegment();
+            int offset = (int) (t & ringMask) * RECORD_SIZE;
+            ringView.limit(offset + RECORD_SIZE).position(offset);
+            segment.put(ringView);
+            long time = ring.getLong(offset + SessionRecord.TIME_OFFSET);
+            rollups.add(time, ring.get(offset + SessionRecord.LABEL_OFFSET));
+            t++;
+            // frees the slot for the camera thread
+            tail.lazySet(t);
+
+            int inSegment = (segment.position() - SEGMENT_HEADER_SIZE) / RECORD_SIZE;
+            if (inSegment == 1)
+                segment.putLong(16, time);
+            segment.putInt(8, inSegment);
+            segment.putLong(24, time);
+            recordCount++;
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        segmentIndex++;
+        long start = HEADER_SIZE + segmentIndex * SEGMENT_SIZE;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, SEGMENT_MAGIC);
+        segment.putInt(4, segmentIndex);
+        segment.putInt(8, 0);
+        segment.position(SEGMENT_HEADER_SIZE);
+        segmentCount = segmentIndex + 1;
+    }
+}
@@ -0,0 +1,279 @@
+package com.achel.truemood.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Live summary of a session, updated from the per-frame results: time per emotion, label transitions of
+// the tracked faces, dominant emotion per track and time per emotion over a rolling window.
+// update() costs O(faces) with no allocation: the counters live in a primitive array, the rolling window is
+// a ring of fixed time buckets and the tracks are kept in a fixed table indexed by track id.
+// <p>
+// One thread updates (the camera thread), any thread reads with snapshot() without taking a lock: the
+// counters are published under a sequence number (seqlock) and a reader copies them again if an update
+// ran meanwhile. A Snapshot is reused across calls, so the UI thread can poll every frame without garbage.
+public class SessionStats {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 60_000;
+    public static final int DEFAULT_WINDOW_BUCKETS = 60;
+    public static final int DEFAULT_TRACK_SLOTS = 64;
+
+    // Gaps longer than this (camera paused, app in background) are not counted as dwell time
+    public static final long MAX_FRAME_GAP_NANOS = 1_000_000_000L;
+
+    private static final int LABELS = EmotionLabels.count();
+
+    // Layout of the published counters
+    private static final int FRAMES = 0;
+    private static final int FRAMES_WITH_FACES = 1;
+    private static final int DURATION = 2;
+    private static final int LABEL_FACES = 3;
+    private static final int LABEL_DWELL = LABEL_FACES + LABELS;
+    private static final int TRANSITIONS = LABEL_DWELL + LABELS;
+    private static final int WINDOW_DWELL = TRANSITIONS + LABELS * LABELS;
+    private static final int TRACK_IDS = WINDOW_DWELL + LABELS;
+
+    private final int trackSlots;
+    private final int trackDwell;
+    private final AtomicLongArray counters;
+    // Odd while an update is running
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Updater state, not published
+    private final long bucketNanos;
+    private final int bucketCount;
+    private final long[] bucketDwell;
+    private long currentBucket = Long.MIN_VALUE;
+    private final int[] lastLabel;
+    private long lastTimeNanos = Long.MIN_VALUE;
+
+    public SessionStats() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_WINDOW_BUCKETS, DEFAULT_TRACK_SLOTS);
+    }
+
+    // windowMillis is the rolling window, made of windowBuckets buckets: the window slides a bucket at a time.
+    // trackSlots is the number of tracks followed at once, a new track takes the slot of the track whose id
+    // is congruent modulo trackSlots.
+    public SessionStats(long windowMillis, int windowBuckets, int trackSlots) {
+        if (windowBuckets <= 0 || windowMillis < windowBuckets)
+            throw new IllegalArgumentException("Invalid window: " + windowMillis + " ms in " + windowBuckets + " buckets");
+        if (trackSlots <= 0)
+            throw new IllegalArgumentException("Invalid track slot count: " + trackSlots);
+        this.trackSlots = trackSlots;
+        trackDwell = TRACK_IDS + trackSlots;
+        counters = new AtomicLongArray(trackDwell + trackSlots * LABELS);
+        for (int slot = 0; slot < trackSlots; slot++) {
+            counters.set(TRACK_IDS + slot, -1);
+        }
+        bucketNanos = windowMillis * 1_000_000 / windowBuckets;
+        bucketCount = windowBuckets;
+        bucketDwell = new long[windowBuckets * LABELS];
+        lastLabel = new int[trackSlots];
+    }
+
+    // Adds the results of a frame, called by one thread. timeNanos is System.nanoTime() or any monotonic clock.
+    public void update(long timeNanos, List<FaceResult> faces) {
+        long dt = lastTimeNanos == Long.MIN_VALUE ? 0 : Math.max(0, timeNanos - lastTimeNanos);
+        if (dt > MAX_FRAME_GAP_NANOS)
+            dt = 0;
+        lastTimeNanos = timeNanos;
+
+        long seq = sequence.get();
+        sequence.set(seq + 1);
+
+        add(FRAMES, 1);
+        add(DURATION, dt);
+        if (!faces.isEmpty())
+            add(FRAMES_WITH_FACES, 1);
+        int bucket = advanceWindow(timeNanos);
+
+        for (int i = 0; i < faces.size(); i++) {
+            FaceResult face = faces.get(i);
+            int label = EmotionLabels.indexOf(face.emotionValue);
+            add(LABEL_FACES + label, 1);
+            add(LABEL_DWELL + label, dt);
+            add(WINDOW_DWELL + label, dt);
+            bucketDwell[bucket * LABELS + label] += dt;
+
+            if (face.trackId < 0)
+                continue;
+            int slot = face.trackId % trackSlots;
+            if (counters.get(TRACK_IDS + slot) != face.trackId) {
+                // a new track replaces the one of its slot
+                counters.set(TRACK_IDS + slot, face.trackId);
+                for (int l = 0; l < LABELS; l++) {
+                    counters.set(trackDwell + slot * LABELS + l, 0);
+                }
+                lastLabel[slot] = -1;
+            }
+            if (lastLabel[slot] >= 0 && lastLabel[slot] != label)
+                add(TRANSITIONS + lastLabel[slot] * LABELS + label, 1);
+            lastLabel[slot] = label;
+            add(trackDwell + slot * LABELS + label, dt);
+        }
+
+        sequence.set(seq + 2);
+    }
+
+    // Copies the current statistics into the given snapshot, which is returned.
+    // Never blocks the updater; retries while an update runs, which takes microseconds.
+    public Snapshot snapshot(Snapshot out) {
+        if (out.values.length != counters.length())
+            throw new IllegalArgumentException("Snapshot of another configuration");
+        while (true) {
+            long seq = sequence.get();
+            if ((seq & 1) == 0) {
+                for (int i = 0; i < out.values.length; i++) {
+                    out.values[i] = counters.get(i);
+                }
+                if (sequence.get() == seq)
+                    return out;
+            }
+            Thread.yield();
+        }
+    }
+
+    // Returns a snapshot to pass to snapshot(), to be reused
+    public Snapshot newSnapshot() {
+        return new Snapshot(counters.length(), trackSlots, trackDwell);
+    }
+
+    // Starts a new session, called by the updating thread
+    public void reset() {
+        long seq = sequence.get();
+        sequence.set(seq + 1);
+        for (int i = 0; i < TRACK_IDS; i++) {
+            counters.set(i, 0);
+        }
+        for (int slot = 0; slot < trackSlots; slot++) {
+            counters.set(TRACK_IDS + slot, -1);
+        }
+        Arrays.fill(bucketDwell, 0);
+        currentBucket = Long.MIN_VALUE;
+        lastTimeNanos = Long.MIN_VALUE;
+        sequence.set(seq + 2);
+    }
+
+    private void add(int index, long delta) {
+        counters.set(index, counters.get(index) + delta);
+    }
+
+    // Moves the window to the bucket of the given time, clearing the buckets it slides past,
+    // and returns the ring index of the current bucket
+    private int advanceWindow(long timeNanos) {
+        long bucket = Math.floorDiv(timeNanos, bucketNanos);
+        if (currentBucket == Long.MIN_VALUE) {
+            currentBucket = bucket;
+        } else if (bucket > currentBucket) {
+            long steps = Math.min(bucket - currentBucket, bucketCount);
+            for (long k = 1; k <= steps; k++) {
+                int index = (int) Math.floorMod(currentBucket + k, (long) bucketCount);
+                for (int l = 0; l < LABELS; l++) {
+                    long dwell = bucketDwell[index * LABELS + l];
+                    if (dwell != 0) {
+                        add(WINDOW_DWELL + l, -dwell);
+                        bucketDwell[index * LABELS + l] = 0;
+                    }
+                }
+            }
+            currentBucket = bucket;
+        }
+        // a clock going backwards stays in the current bucket
+        return (int) Math.floorMod(currentBucket, (long) bucketCount);
+    }
+
+    // Consistent copy of the statistics at one point of the session
+    public static class Snapshot {
+        private final long[] values;
+        private final int trackSlots;
+        private final int trackDwell;
+
+        Snapshot(int size, int trackSlots, int trackDwell) {
+            values = new long[size];
+            this.trackSlots = trackSlots;
+            this.trackDwell = trackDwell;
+        }
+
+        public long getFrames() {
+            return values[FRAMES];
+        }
+
+        public long getFramesWithFaces() {
+            return values[FRAMES_WITH_FACES];
+        }
+
+        // Returns the time covered by the frames, gaps longer than MAX_FRAME_GAP_NANOS excluded
+        public long getDurationNanos() {
+            return values[DURATION];
+        }
+
+        // Returns the number of faces classified with the label (EmotionLabels index), over all frames
+        public long getFaceCount(int label) {
+            return values[LABEL_FACES + label];
+        }
+
+        // Returns the time faces showed the label, summed over the faces
+        public long getDwellNanos(int label) {
+            return values[LABEL_DWELL + label];
+        }
+
+        // Returns the time faces showed the label during the rolling window
+        public long getWindowDwellNanos(int label) {
+            return values[WINDOW_DWELL + label];
+        }
+
+        // Returns how often a tracked face changed from one label to another
+        public long getTransitions(int fromLabel, int toLabel) {
+            return values[TRANSITIONS + fromLabel * LABELS + toLabel];
+        }
+
+        // Returns the label shown longest over the session, -1 before the first face
+        public int getDominantLabel() {
+            return argMax(LABEL_DWELL, LABEL_FACES);
+        }
+
+        // Returns the label shown longest during the rolling window, -1 when no face was seen in it
+        public int getWindowDominantLabel() {
+            return argMax(WINDOW_DWELL, -1);
+        }
+
+        // Returns the number of track slots, see getTrackId()
+        public int getTrackSlots() {
+            return trackSlots;
+        }
+
+        // Returns the id of the track in the slot, -1 when the slot was never used
+        public int getTrackId(int slot) {
+            return (int) values[TRACK_IDS + slot];
+        }
+
+        // Returns the time the track of the slot showed the label
+        public long getTrackDwellNanos(int slot, int label) {
+            return values[trackDwell + slot * LABELS + label];
+        }
+
+        // Returns the label the track of the slot showed longest, -1 when the slot is unused
+        public int getTrackDominantLabel(int slot) {
+            if (getTrackId(slot) < 0)
+                return -1;
+            return argMax(trackDwell + slot * LABELS, -1);
+        }
+
+        // Index of the largest of LABELS values; ties and all-zero dwell times are broken by the counts
+        // at tieBreak when given. -1 when everything is zero.
+        private int argMax(int start, int tieBreak) {
+            int best = -1;
+            for (int l = 0; l < LABELS; l++) {
+                long value = values[start + l];
+                long count = tieBreak < 0 ? 0 : values[tieBreak + l];
+                if (value == 0 && count == 0)
+                    continue;
+                if (best < 0 || value > values[start + best]
+                        || (value == values[start + best] && tieBreak >= 0 && count > values[tieBreak + best]))
+                    best = l;
+            }
+            return best;
+        }
+    }
+}
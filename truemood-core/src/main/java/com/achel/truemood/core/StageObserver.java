@@ -0,0 +1,23 @@
+package com.achel.truemood.core;
+
+// Notified around each stage of the recognition pipeline, e.g. to record latencies or trace spans.
+// Calls are made on the thread running the pipeline and are properly nested.
+public interface StageObserver {
+
+    // Observer doing nothing, used when none is set
+    StageObserver NONE = new StageObserver() {
+        @Override
+        public void onStageBegin(String stage, int face) {
+        }
+
+        @Override
+        public void onStageEnd(String stage, int face, long startNanos) {
+        }
+    };
+
+    // Called before the stage runs. face is the index of the track being processed, -1 for whole-frame stages.
+    void onStageBegin(String stage, int face);
+
+    // Called after the stage ran, startNanos is the System.nanoTime() taken when it began
+    void onStageEnd(String stage, int face, long startNanos);
+}
@@ -0,0 +1,46 @@
+package com.achel.truemood.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+// Writes a per-frame emotion timeline as CSV: one row per face, and one row without face columns
+// for the frames where no face was found, so that gaps in the timeline are explicit.
+public class TimelineCsvWriter implements TimelineSink, Closeable {
+
+    public static final String HEADER = "frame,time_ms,faces,track,x,y,width,height,value,label";
+
+    private final Writer writer;
+    private final StringBuilder row = new StringBuilder(96);
+
+    public TimelineCsvWriter(Writer writer) throws IOException {
+        this.writer = writer;
+        writer.write(HEADER);
+        writer.write('\n');
+    }
+
+    @Override
+    public void onFrame(long frameIndex, long timeMillis, List<FaceResult> faces) throws IOException {
+        if (faces.isEmpty()) {
+            row.setLength(0);
+            row.append(frameIndex).append(',').append(timeMillis).append(",0,,,,,,,\n");
+            writer.append(row);
+            return;
+        }
+        for (FaceResult face : faces) {
+            row.setLength(0);
+            row.append(frameIndex).append(',').append(timeMillis).append(',').append(faces.size()).append(',')
+                    .append(face.trackId).append(',')
+                    .append(face.x).append(',').append(face.y).append(',')
+                    .append(face.width).append(',').append(face.height).append(',')
+                    .append(face.emotionValue).append(',').append(face.emotionText).append('\n');
+            writer.append(row);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
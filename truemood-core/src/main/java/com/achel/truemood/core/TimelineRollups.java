@@ -0,0 +1,128 @@
+package com.achel.truemood.core;
+
+import java.util.Arrays;
+
+// Emotion histograms of a session at several time resolutions (by default per second, per 10 seconds and per
+// minute), built incrementally as the records arrive. A chart of the session queries the coarsest level whose
+// buckets are still finer than its pixels, so drawing a 3 hour session costs O(pixels), not O(frames).
+// Every bucket counts the faces per label (EmotionLabels index) and, in the last column, the frames without face.
+// The methods are synchronized: the session writer adds, the UI queries.
+public class TimelineRollups {
+
+    // Values per bucket: one count per label, then the frames without face
+    public static final int HISTOGRAM_SIZE = EmotionLabels.count() + 1;
+    public static final int NO_FACE = HISTOGRAM_SIZE - 1;
+
+    private static final long[] DEFAULT_LEVEL_MILLIS = {1_000, 10_000, 60_000};
+
+    private final long startNanos;
+    private final long[] levelNanos;
+    // Histograms of every level, HISTOGRAM_SIZE counts per bucket, and the number of buckets in use
+    private final int[][] counts;
+    private final int[] bucketCounts;
+
+    public TimelineRollups(long startNanos) {
+        this(startNanos, DEFAULT_LEVEL_MILLIS);
+    }
+
+    // startNanos is the time of the start of the session, levelMillis the bucket sizes from the finest to the coarsest
+    public TimelineRollups(long startNanos, long... levelMillis) {
+        if (levelMillis.length == 0)
+            throw new IllegalArgumentException("No rollup level");
+        for (int i = 0; i < levelMillis.length; i++) {
+            if (levelMillis[i] <= 0 || (i > 0 && levelMillis[i] <= levelMillis[i - 1]))
+                throw new IllegalArgumentException("Rollup levels must grow: " + Arrays.toString(levelMillis));
+        }
+        this.startNanos = startNanos;
+        levelNanos = new long[levelMillis.length];
+        counts = new int[levelMillis.length][];
+        bucketCounts = new int[levelMillis.length];
+        for (int i = 0; i < levelMillis.length; i++) {
+            levelNanos[i] = levelMillis[i] * 1_000_000;
+            counts[i] = new int[64 * HISTOGRAM_SIZE];
+        }
+    }
+
+    // Adds a face with the given label index, or a frame without face with -1
+    public synchronized void add(long timeNanos, int labelIndex) {
+        int column = labelIndex < 0 || labelIndex >= NO_FACE ? NO_FACE : labelIndex;
+        long offset = Math.max(0, timeNanos - startNanos);
+        for (int level = 0; level < levelNanos.length; level++) {
+            long bucket = offset / levelNanos[level];
+            if (bucket >= Integer.MAX_VALUE / HISTOGRAM_SIZE)
+                continue;
+            ensureBuckets(level, (int) bucket + 1);
+            counts[level][(int) bucket * HISTOGRAM_SIZE + column]++;
+        }
+    }
+
+    public int getLevelCount() {
+        return levelNanos.length;
+    }
+
+    public long getLevelMillis(int level) {
+        return levelNanos[level] / 1_000_000;
+    }
+
+    // Returns the number of buckets of the level up to the last record
+    public synchronized int getBucketCount(int level) {
+        return bucketCounts[level];
+    }
+
+    // Returns the duration covered by the records, rounded up to the finest bucket
+    public synchronized long getDurationMillis() {
+        return bucketCounts[0] * getLevelMillis(0);
+    }
+
+    // Returns the coarsest level whose buckets are not larger than a column of the range,
+    // the finest level when the columns are shorter than its buckets
+    public int chooseLevel(long rangeMillis, int columns) {
+        long columnNanos = rangeMillis * 1_000_000 / Math.max(1, columns);
+        int level = 0;
+        while (level + 1 < levelNanos.length && levelNanos[level + 1] <= columnNanos) {
+            level++;
+        }
+        return level;
+    }
+
+    // Fills out with one histogram (HISTOGRAM_SIZE counts) per column of [fromMillis, toMillis), session time.
+    // Each bucket of the chosen level is counted in the column its start falls in.
+    // Returns the level used; its buckets are at most a column wide unless the range is zoomed in below the
+    // finest level, then the raw records can be read with SessionLogReader.seek().
+    public synchronized int query(long fromMillis, long toMillis, int columns, int[] out) {
+        if (columns <= 0 || toMillis <= fromMillis)
+            throw new IllegalArgumentException("Invalid query: " + columns + " columns in [" + fromMillis + ", " + toMillis + ")");
+        if (out.length < columns * HISTOGRAM_SIZE)
+            throw new IllegalArgumentException("Output holds " + out.length / HISTOGRAM_SIZE + " histograms, " + columns + " needed");
+        Arrays.fill(out, 0, columns * HISTOGRAM_SIZE, 0);
+
+        long range = toMillis - fromMillis;
+        int level = chooseLevel(range, columns);
+        long bucketMillis = getLevelMillis(level);
+        int[] histograms = counts[level];
+        long first = Math.max(0, fromMillis / bucketMillis);
+        long last = Math.min(bucketCounts[level], (toMillis + bucketMillis - 1) / bucketMillis);
+        for (long bucket = first; bucket < last; bucket++) {
+            long bucketStart = bucket * bucketMillis;
+            // the first bucket may start before the range, it goes to the first column
+            int column = (int) Math.max(0, (bucketStart - fromMillis) * columns / range);
+            if (column >= columns)
+                break;
+            int src = (int) bucket * HISTOGRAM_SIZE;
+            int dst = column * HISTOGRAM_SIZE;
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                out[dst + i] += histograms[src + i];
+            }
+        }
+        return level;
+    }
+
+    private void ensureBuckets(int level, int buckets) {
+        if (buckets * HISTOGRAM_SIZE > counts[level].length) {
+            counts[level] = Arrays.copyOf(counts[level], Math.max(buckets, 2 * counts[level].length / HISTOGRAM_SIZE) * HISTOGRAM_SIZE);
+        }
+        if (buckets > bucketCounts[level]) {
+            bucketCounts[level] = buckets;
+        }
+    }
+}
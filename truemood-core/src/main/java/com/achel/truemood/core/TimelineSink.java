@@ -0,0 +1,11 @@
+package com.achel.truemood.core;
+
+import java.io.IOException;
+import java.util.List;
+
+// Receives the per-frame results of an analysis, in frame order
+public interface TimelineSink {
+
+    // Called once per analysed frame. faces is empty when no face was found.
+    void onFrame(long frameIndex, long timeMillis, List<FaceResult> faces) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.achel.truemood.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Decodes the frames of a video file in order, e.g. with OpenCV's VideoCapture.
+// Used by one thread at a time, offline analysis opens one source per worker.
+public interface VideoSource<F> extends Closeable {
+
+    // Positions the source so that the next read() or skip() is about the given frame, numbered from 0
+    void seek(long frameIndex) throws IOException;
+
+    // Decodes the next frame, null at the end of the video. The frame may be reused by the next call.
+    F read() throws IOException;
+
+    // Moves past the next frame without decoding it when possible, false at the end of the video
+    boolean skip() throws IOException;
+}
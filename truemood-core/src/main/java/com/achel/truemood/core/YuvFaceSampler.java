@@ -0,0 +1,232 @@
+package com.achel.truemood.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Samples a face rectangle straight from the camera's YUV planes into the model input tensor.
+// This skips the full-frame RGBA conversion, the cropped/scaled Bitmaps and the pixel loop that
+// the Mat based path needs, and only touches the pixels that end up in the tensor.
+// The class only depends on java.nio so it can be unit tested and benchmarked on the JVM.
+public class YuvFaceSampler {
+
+    // Supported tensor layouts
+    public static final int CHANNELS_GRAY = 1;
+    public static final int CHANNELS_RGB = 3;
+
+    // Output tensor size and layout
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int channels;
+    private final boolean floatOutput;
+
+    // Reusable direct buffer handed to the interpreter
+    private final ByteBuffer output;
+
+    // Current frame planes (strides come from Image.Plane)
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int yRowStride;
+    private int yPixelStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    // Sensor frame size and the rotation applied to get the upright frame the faces were found in
+    private int frameWidth;
+    private int frameHeight;
+    private int rotation;
+
+    public YuvFaceSampler(int targetWidth, int targetHeight, int channels, boolean floatOutput) {
+        if (targetWidth <= 0 || targetHeight <= 0)
+            throw new IllegalArgumentException("Invalid target size: " + targetWidth + "x" + targetHeight);
+        if (channels != CHANNELS_GRAY && channels != CHANNELS_RGB)
+            throw new IllegalArgumentException("Unsupported channel count: " + channels);
+
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.channels = channels;
+        this.floatOutput = floatOutput;
+
+        int bytesPerValue = floatOutput ? 4 : 1;
+        output = ByteBuffer.allocateDirect(targetWidth * targetHeight * channels * bytesPerValue);
+        output.order(ByteOrder.nativeOrder());
+    }
+
+    // Sets the planes of the current YUV_420_888 frame.
+    // rotation is the clockwise rotation (0, 90, 180 or 270) that turns the sensor frame into
+    // the upright frame the face rectangles are expressed in.
+    public void setFrame(int frameWidth, int frameHeight, int rotation,
+                         ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                         ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270)
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.rotation = rotation;
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.yPixelStride = yPixelStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+    }
+
+    // Sets an NV21 frame as delivered by the old Camera API preview callback
+    public void setNv21Frame(byte[] data, int frameWidth, int frameHeight, int rotation) {
+        int chromaOffset = frameWidth * frameHeight;
+        ByteBuffer y = ByteBuffer.wrap(data);
+        ByteBuffer v = ByteBuffer.wrap(data, chromaOffset, data.length - chromaOffset).slice();
+        ByteBuffer u = ByteBuffer.wrap(data, chromaOffset + 1, data.length - chromaOffset - 1).slice();
+        setFrame(frameWidth, frameHeight, rotation, y, frameWidth, 1, u, v, frameWidth, 2);
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public boolean isFloatOutput() {
+        return floatOutput;
+    }
+
+    // Returns the reusable output buffer (valid until the next call to sample())
+    public ByteBuffer getOutputBuffer() {
+        return output;
+    }
+
+    // Bilinearly samples the face rectangle (in upright frame coordinates) into the output buffer.
+    // Float output is normalised to [0, 1], uint8 output keeps the raw 0..255 range.
+    public ByteBuffer sample(int left, int top, int width, int height) {
+        if (yPlane == null)
+            throw new IllegalStateException("setFrame() must be called before sample()");
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid face size: " + width + "x" + height);
+
+        boolean swapAxes = rotation == 90 || rotation == 270;
+        int uprightWidth = swapAxes ? frameHeight : frameWidth;
+        int uprightHeight = swapAxes ? frameWidth : frameHeight;
+
+        float scaleX = (float) width / targetWidth;
+        float scaleY = (float) height / targetHeight;
+
+        output.clear();
+        for (int oy = 0; oy < targetHeight; oy++) {
+            // Pixel centre of the output row mapped back into the upright frame
+            float uy = clamp(top + (oy + 0.5f) * scaleY - 0.5f, uprightHeight - 1);
+
+            for (int ox = 0; ox < targetWidth; ox++) {
+                float ux = clamp(left + (ox + 0.5f) * scaleX - 0.5f, uprightWidth - 1);
+
+                // Undo the display rotation to find the position on the sensor
+                float sx;
+                float sy;
+                switch (rotation) {
+                    case 90:
+                        sx = uy;
+                        sy = frameHeight - 1 - ux;
+                        break;
+                    case 180:
+                        sx = frameWidth - 1 - ux;
+                        sy = frameHeight - 1 - uy;
+                        break;
+                    case 270:
+                        sx = frameWidth - 1 - uy;
+                        sy = ux;
+                        break;
+                    default:
+                        sx = ux;
+                        sy = uy;
+                        break;
+                }
+
+                float luma = sampleLuma(sx, sy);
+                if (channels == CHANNELS_GRAY) {
+                    putValue(luma);
+                } else {
+                    // Chroma is subsampled 2x2, its sample centres sit between the luma samples
+                    float cx = clamp(sx * 0.5f - 0.25f, (frameWidth + 1) / 2 - 1);
+                    float cy = clamp(sy * 0.5f - 0.25f, (frameHeight + 1) / 2 - 1);
+                    float u = sampleChroma(uPlane, cx, cy) - 128.0f;
+                    float v = sampleChroma(vPlane, cx, cy) - 128.0f;
+
+                    // BT.601 limited range, same coefficients as OpenCV's YUV2RGB conversions
+                    float c = 1.164f * Math.max(luma - 16.0f, 0.0f);
+                    putValue(c + 1.596f * v);
+                    putValue(c - 0.391f * u - 0.813f * v);
+                    putValue(c + 2.018f * u);
+                }
+            }
+        }
+        output.rewind();
+        return output;
+    }
+
+    private float sampleLuma(float x, float y) {
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, frameWidth - 1);
+        int y1 = Math.min(y0 + 1, frameHeight - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int row0 = y0 * yRowStride;
+        int row1 = y1 * yRowStride;
+        int col0 = x0 * yPixelStride;
+        int col1 = x1 * yPixelStride;
+
+        return lerp(lerp(yPlane.get(row0 + col0) & 0xFF, yPlane.get(row0 + col1) & 0xFF, fx),
+                    lerp(yPlane.get(row1 + col0) & 0xFF, yPlane.get(row1 + col1) & 0xFF, fx),
+                    fy);
+    }
+
+    private float sampleChroma(ByteBuffer plane, float x, float y) {
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, (frameWidth + 1) / 2 - 1);
+        int y1 = Math.min(y0 + 1, (frameHeight + 1) / 2 - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int row0 = y0 * uvRowStride;
+        int row1 = y1 * uvRowStride;
+        int col0 = x0 * uvPixelStride;
+        int col1 = x1 * uvPixelStride;
+
+        return lerp(lerp(plane.get(row0 + col0) & 0xFF, plane.get(row0 + col1) & 0xFF, fx),
+                    lerp(plane.get(row1 + col0) & 0xFF, plane.get(row1 + col1) & 0xFF, fx),
+                    fy);
+    }
+
+    private void putValue(float value) {
+        if (value < 0.0f) {
+            value = 0.0f;
+        } else if (value > 255.0f) {
+            value = 255.0f;
+        }
+
+        if (floatOutput) {
+            output.putFloat(value / 255.0f);
+        } else {
+            output.put((byte) (int) (value + 0.5f));
+        }
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    private static float clamp(float value, int max) {
+        if (value < 0.0f)
+            return 0.0f;
+        return value > max ? max : value;
+    }
+}
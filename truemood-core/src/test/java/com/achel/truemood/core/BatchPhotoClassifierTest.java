@@ -0,0 +1,274 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BatchPhotoClassifier} with a fake decoder and fake models,
+ * run on the development machine (host).
+ */
+public class BatchPhotoClassifierTest {
+
+    // The fake photos are 800x600. "face_N" has one face of N pixels at (100, 80), "empty" has none,
+    // "broken" is not an image.
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    // Decodes, as "file:gray|color:scale"
+    private final List<String> decodes = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger released = new AtomicInteger();
+    // Workers whose models were released
+    private final AtomicInteger releasedModels = new AtomicInteger();
+    // Box the last face was preprocessed at, per file
+    private final Map<String, int[]> preprocessed = new ConcurrentHashMap<>();
+
+    // A decoded image is {width, height, scale, face size}
+    private class FakeDecoder implements PhotoDecoder<int[]> {
+        @Override
+        public int[] decodeGray(File file, int scale) {
+            return decode(file, "gray", scale);
+        }
+
+        @Override
+        public int[] decodeColor(File file, int scale) {
+            return decode(file, "color", scale);
+        }
+
+        private int[] decode(File file, String mode, int scale) {
+            String name = file.getName();
+            decodes.add(name + ":" + mode + ":" + scale);
+            if (name.equals("broken"))
+                return null;
+            int face = name.startsWith("face_") ? Integer.parseInt(name.substring(5)) : 0;
+            return new int[]{(WIDTH + scale - 1) / scale, (HEIGHT + scale - 1) / scale, scale, face};
+        }
+
+        @Override
+        public int width(int[] image) {
+            return image[0];
+        }
+
+        @Override
+        public int height(int[] image) {
+            return image[1];
+        }
+
+        @Override
+        public void release(int[] image) {
+            released.incrementAndGet();
+        }
+    }
+
+    private BatchPhotoClassifier<int[]> classifier() {
+        return new BatchPhotoClassifier<>(new FakeDecoder(), new BatchPhotoClassifier.ModelFactory<int[]>() {
+            @Override
+            public FaceDetector<int[]> createDetector() {
+                return new FaceDetector<int[]>() {
+                    @Override
+                    public void detect(int[] image, FaceBoxes faces) {
+                        faces.clear();
+                        int scale = image[2];
+                        if (image[3] > 0)
+                            faces.add(100 / scale, 80 / scale, image[3] / scale, image[3] / scale);
+                    }
+                };
+            }
+
+            @Override
+            public FacePreprocessor<int[]> createPreprocessor() {
+                return new FacePreprocessor<int[]>() {
+                    final ByteBuffer input = ByteBuffer.allocate(4);
+
+                    @Override
+                    public ByteBuffer preprocess(int[] image, int x, int y, int width, int height) {
+                        preprocessed.put("face_" + image[3], new int[]{x, y, width, height, image[2]});
+                        input.putInt(0, width);
+                        return input;
+                    }
+                };
+            }
+
+            @Override
+            public EmotionClassifier createClassifier() {
+                return new EmotionClassifier() {
+                    @Override
+                    public float classify(ByteBuffer input) {
+                        return input.getInt(0) % 7;
+                    }
+                };
+            }
+
+            @Override
+            public void release(FaceDetector<int[]> detector, FacePreprocessor<int[]> preprocessor,
+                                EmotionClassifier classifier) {
+                assertNotNull(classifier);
+                releasedModels.incrementAndGet();
+            }
+        }, 48);
+    }
+
+    private static List<File> files(String... names) {
+        List<File> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(new File(name));
+        }
+        return files;
+    }
+
+    private static class RecordingSink implements PhotoSink {
+        final Map<Long, List<FaceResult>> results = new ConcurrentHashMap<>();
+        final List<Long> nullResults = Collections.synchronizedList(new ArrayList<Long>());
+
+        @Override
+        public void onPhoto(long index, File file, List<FaceResult> faces) {
+            if (faces == null)
+                nullResults.add(index);
+            else
+                results.put(index, faces);
+        }
+    }
+
+    @Test
+    public void classificationScale_keepsSmallestFaceAtLeastInputSize() {
+        assertEquals(1, BatchPhotoClassifier.classificationScale(60, 48));
+        assertEquals(2, BatchPhotoClassifier.classificationScale(96, 48));
+        assertEquals(2, BatchPhotoClassifier.classificationScale(191, 48));
+        assertEquals(4, BatchPhotoClassifier.classificationScale(192, 48));
+        assertEquals(8, BatchPhotoClassifier.classificationScale(4000, 48));
+    }
+
+    @Test
+    public void run_detectsReducedAndClassifiesFacesAtNeededResolution() throws Exception {
+        BatchPhotoClassifier<int[]> classifier = classifier();
+        classifier.setWorkerCount(1);
+        RecordingSink sink = new RecordingSink();
+
+        AnalysisStats stats = classifier.run(files("face_200").iterator(), sink);
+
+        // 200 pixel face: detected on the 1/4 gray image, cropped from the 1/4 color image (50 pixels)
+        assertEquals("face_200:gray:4", decodes.get(0));
+        assertEquals("face_200:color:4", decodes.get(1));
+        assertArrayEquals(new int[]{25, 20, 50, 50, 4}, preprocessed.get("face_200"));
+        FaceResult face = sink.results.get(0L).get(0);
+        assertEquals(100, face.x);
+        assertEquals(80, face.y);
+        assertEquals(200, face.width);
+        assertEquals(50 % 7, face.emotionValue, 0);
+        assertEquals(1, stats.getAnalyzedFrames());
+        assertEquals(1, stats.getClassifications());
+        assertEquals(2, released.get());
+        assertEquals(1, releasedModels.get());
+    }
+
+    @Test
+    public void run_photoWithoutFace_notDecodedInColor() throws Exception {
+        BatchPhotoClassifier<int[]> classifier = classifier();
+        classifier.setDetectionScale(8);
+        RecordingSink sink = new RecordingSink();
+
+        AnalysisStats stats = classifier.run(files("empty", "broken").iterator(), sink);
+
+        assertTrue(decodes.contains("empty:gray:8"));
+        assertFalse(decodes.contains("empty:color:1"));
+        assertEquals(2, decodes.size());
+        assertTrue(sink.results.get(0L).isEmpty());
+        assertEquals(Collections.singletonList(1L), sink.nullResults);
+        assertEquals(1, stats.getSkippedFrames());
+        assertEquals(1, stats.getAnalyzedFrames());
+    }
+
+    @Test
+    public void run_slowSink_blocksCallerWithBoundedQueue() throws Exception {
+        final BatchPhotoClassifier<int[]> classifier = classifier();
+        classifier.setWorkerCount(1);
+        classifier.setQueueCapacity(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger taken = new AtomicInteger();
+        final Iterator<File> photos = new Iterator<File>() {
+            @Override
+            public boolean hasNext() {
+                return taken.get() < 20;
+            }
+
+            @Override
+            public File next() {
+                taken.incrementAndGet();
+                return new File("face_100");
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final RecordingSink results = new RecordingSink();
+        final PhotoSink sink = new PhotoSink() {
+            @Override
+            public void onPhoto(long index, File file, List<FaceResult> faces) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                results.onPhoto(index, file, faces);
+            }
+        };
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    classifier.run(photos, sink);
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        });
+        caller.start();
+        Thread.sleep(300);
+
+        // one photo at the sink, two in the queue and one waiting for room
+        assertTrue("read " + taken.get() + " photos ahead", taken.get() <= 4);
+        release.countDown();
+        caller.join(5000);
+        assertNull(failure.get());
+        assertEquals(20, results.results.size());
+    }
+
+    @Test
+    public void run_sinkFailure_propagates() throws Exception {
+        BatchPhotoClassifier<int[]> classifier = classifier();
+        classifier.setWorkerCount(2);
+        List<File> photos = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            photos.add(new File("face_100"));
+        }
+        try {
+            classifier.run(photos.iterator(), new PhotoSink() {
+                @Override
+                public void onPhoto(long index, File file, List<FaceResult> faces) throws IOException {
+                    if (index == 10)
+                        throw new IOException("Disk full");
+                }
+            });
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+        assertEquals(2, releasedModels.get());
+    }
+}
@@ -0,0 +1,28 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EmotionLabels}, run on the development machine (host).
+ */
+public class EmotionLabelsTest {
+
+    @Test
+    public void labelOf_roundsToNearestLabel() {
+        assertEquals(EmotionLabels.SURPRISE, EmotionLabels.labelOf(0f));
+        assertEquals(EmotionLabels.SURPRISE, EmotionLabels.labelOf(0.49f));
+        assertEquals(EmotionLabels.FEAR, EmotionLabels.labelOf(0.5f));
+        assertEquals(EmotionLabels.NEUTRAL, EmotionLabels.labelOf(3.2f));
+        assertEquals(EmotionLabels.DISGUST, EmotionLabels.labelOf(5.49f));
+        assertEquals(EmotionLabels.HAPPY, EmotionLabels.labelOf(5.5f));
+    }
+
+    @Test
+    public void labelOf_outOfRange_isHappy() {
+        assertEquals(EmotionLabels.HAPPY, EmotionLabels.labelOf(-1f));
+        assertEquals(EmotionLabels.HAPPY, EmotionLabels.labelOf(42f));
+        assertEquals(EmotionLabels.HAPPY, EmotionLabels.labelOf(Float.NaN));
+    }
+}
@@ -0,0 +1,54 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceBoxes} and {@link BoxMath}, run on the development machine (host).
+ */
+public class FaceBoxesTest {
+
+    @Test
+    public void iou_ofOverlappingBoxes() {
+        assertEquals(1f, BoxMath.iou(0, 0, 10, 10, 0, 0, 10, 10), 1e-6f);
+        assertEquals(50f / 150f, BoxMath.iou(0, 0, 10, 10, 5, 0, 10, 10), 1e-6f);
+        assertEquals(0f, BoxMath.iou(0, 0, 10, 10, 10, 0, 10, 10), 0f);
+        assertEquals(0f, BoxMath.iou(0, 0, 0, 0, 0, 0, 0, 0), 0f);
+    }
+
+    @Test
+    public void add_growsPastCapacity() {
+        FaceBoxes boxes = new FaceBoxes(1);
+        for (int i = 0; i < 20; i++)
+            boxes.add(i, i + 1, i + 2, i + 3);
+
+        assertEquals(20, boxes.size());
+        assertEquals(19, boxes.x(19));
+        assertEquals(22, boxes.height(19));
+    }
+
+    @Test
+    public void suppressOverlaps_keepsLargestOfOverlappingBoxes() {
+        FaceBoxes boxes = new FaceBoxes();
+        boxes.add(2, 2, 10, 10);        // same face as the next one at a smaller scale
+        boxes.add(0, 0, 12, 12);
+        boxes.add(100, 100, 20, 20);    // another face
+
+        boxes.suppressOverlaps(0.3f);
+
+        assertEquals(2, boxes.size());
+        assertEquals(0, boxes.x(0));
+        assertEquals(12, boxes.width(0));
+        assertEquals(100, boxes.x(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_afterClear_throws() {
+        FaceBoxes boxes = new FaceBoxes();
+        boxes.add(1, 2, 3, 4);
+        boxes.clear();
+
+        boxes.x(0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceTracker}, run on the development machine (host).
+ */
+public class FaceTrackerTest {
+
+    private static FaceBoxes boxes(int... xywh) {
+        FaceBoxes boxes = new FaceBoxes();
+        for (int i = 0; i < xywh.length; i += 4)
+            boxes.add(xywh[i], xywh[i + 1], xywh[i + 2], xywh[i + 3]);
+        return boxes;
+    }
+
+    @Test
+    public void update_keepsIdOfMovingFace() {
+        FaceTracker tracker = new FaceTracker();
+        tracker.update(boxes(0, 0, 100, 100));
+        int id = tracker.get(0).getId();
+
+        tracker.update(boxes(10, 5, 100, 100));
+
+        assertEquals(1, tracker.size());
+        assertEquals(id, tracker.get(0).getId());
+        assertEquals(10, tracker.get(0).getX());
+    }
+
+    @Test
+    public void update_newFaceGetsNewId() {
+        FaceTracker tracker = new FaceTracker();
+        tracker.update(boxes(0, 0, 100, 100));
+
+        tracker.update(boxes(0, 0, 100, 100, 300, 0, 100, 100));
+
+        assertEquals(2, tracker.size());
+        assertNotEquals(tracker.get(0).getId(), tracker.get(1).getId());
+    }
+
+    @Test
+    public void update_dropsFaceMissedTooOften() {
+        FaceTracker tracker = new FaceTracker(0.3f, 1);
+        tracker.update(boxes(0, 0, 100, 100));
+
+        tracker.update(boxes());
+        assertEquals(1, tracker.size());
+        assertEquals(1, tracker.get(0).getMissedDetections());
+
+        tracker.update(boxes());
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void update_foundAgain_resetsMissedDetections() {
+        FaceTracker tracker = new FaceTracker(0.3f, 2);
+        tracker.update(boxes(0, 0, 100, 100));
+        int id = tracker.get(0).getId();
+        tracker.update(boxes());
+
+        tracker.update(boxes(0, 0, 100, 100));
+
+        assertEquals(id, tracker.get(0).getId());
+        assertEquals(0, tracker.get(0).getMissedDetections());
+    }
+
+    @Test
+    public void update_twoDetectionsOnOneTrack_onlyOneMatches() {
+        FaceTracker tracker = new FaceTracker();
+        tracker.update(boxes(0, 0, 100, 100));
+        int id = tracker.get(0).getId();
+
+        tracker.update(boxes(0, 0, 100, 100, 5, 5, 100, 100));
+
+        assertEquals(2, tracker.size());
+        assertEquals(id, tracker.get(0).getId());
+        assertEquals(0, tracker.get(0).getX());
+    }
+}
@@ -0,0 +1,241 @@
+package com.achel.truemood.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link OfflineVideoAnalyzer} with a fake video and fake pipeline stages,
+ * run on the development machine (host).
+ */
+public class OfflineVideoAnalyzerTest {
+
+    // Every frame of the fake video has one face whose x is the frame index
+    private static final int FRAMES = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+    private final AtomicInteger decoded = new AtomicInteger();
+    private volatile int failAt = -1;
+
+    private class FakeSource implements VideoSource<int[]> {
+        private final int[] frame = new int[4];
+        private long position = 0;
+
+        FakeSource() {
+            opened.incrementAndGet();
+        }
+
+        @Override
+        public void seek(long frameIndex) {
+            position = frameIndex;
+        }
+
+        @Override
+        public int[] read() throws IOException {
+            if (position >= FRAMES)
+                return null;
+            if (position == failAt)
+                throw new IOException("Broken frame " + position);
+            if (position == 0) {
+                // the first segment finishes last
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            decoded.incrementAndGet();
+            frame[0] = (int) position++;
+            frame[2] = 20;
+            frame[3] = 20;
+            return frame;
+        }
+
+        @Override
+        public boolean skip() {
+            return position++ < FRAMES;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private OfflineVideoAnalyzer<int[]> analyzer(long frameCount) {
+        return new OfflineVideoAnalyzer<>(
+                new OfflineVideoAnalyzer.SourceFactory<int[]>() {
+                    @Override
+                    public VideoSource<int[]> open() {
+                        return new FakeSource();
+                    }
+                },
+                new OfflineVideoAnalyzer.PipelineFactory<int[]>() {
+                    @Override
+                    public RecognitionPipeline<int[]> create() {
+                        return new RecognitionPipeline<>(
+                                new FaceDetector<int[]>() {
+                                    @Override
+                                    public void detect(int[] frame, FaceBoxes faces) {
+                                        faces.set(frame, 1);
+                                    }
+                                },
+                                new FacePreprocessor<int[]>() {
+                                    final ByteBuffer input = ByteBuffer.allocate(4);
+
+                                    @Override
+                                    public ByteBuffer preprocess(int[] frame, int x, int y, int width, int height) {
+                                        input.putInt(0, x);
+                                        return input;
+                                    }
+                                },
+                                new EmotionClassifier() {
+                                    @Override
+                                    public float classify(ByteBuffer input) {
+                                        return input.getInt(0) % 7;
+                                    }
+                                });
+                    }
+
+                    @Override
+                    public void release(RecognitionPipeline<int[]> pipeline) {
+                        released.incrementAndGet();
+                    }
+                },
+                frameCount, 25);
+    }
+
+    private static class RecordingSink implements TimelineSink {
+        final List<Long> frames = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        final List<Integer> xs = new ArrayList<>();
+
+        @Override
+        public void onFrame(long frameIndex, long timeMillis, List<FaceResult> faces) {
+            frames.add(frameIndex);
+            times.add(timeMillis);
+            xs.add(faces.get(0).x);
+        }
+    }
+
+    @Test
+    public void run_writesFramesInOrderWithOneSourcePerWorker() throws Exception {
+        OfflineVideoAnalyzer<int[]> analyzer = analyzer(FRAMES);
+        analyzer.setWorkerCount(4);
+        analyzer.setSegmentFrames(10);
+        RecordingSink sink = new RecordingSink();
+
+        AnalysisStats stats = analyzer.run(sink);
+
+        assertEquals(FRAMES, sink.frames.size());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i, (long) sink.frames.get(i));
+            assertEquals(i, (int) sink.xs.get(i));
+            assertEquals(i * 40L, (long) sink.times.get(i));
+        }
+        assertEquals(4, opened.get());
+        assertEquals(4, released.get());
+        assertEquals(FRAMES, stats.getAnalyzedFrames());
+        assertEquals(FRAMES, stats.getDetections());
+        assertEquals(FRAMES, stats.getClassifications());
+    }
+
+    @Test
+    public void run_frameStride_skipsFramesWithoutDecoding() throws Exception {
+        OfflineVideoAnalyzer<int[]> analyzer = analyzer(FRAMES);
+        analyzer.setWorkerCount(3);
+        analyzer.setFrameStride(3);
+        // rounded up to 9 so that every segment starts on an analysed frame
+        analyzer.setSegmentFrames(8);
+        RecordingSink sink = new RecordingSink();
+
+        AnalysisStats stats = analyzer.run(sink);
+
+        assertEquals(34, sink.frames.size());
+        for (int i = 0; i < sink.frames.size(); i++) {
+            assertEquals(3L * i, (long) sink.frames.get(i));
+        }
+        assertEquals(34, decoded.get());
+        assertEquals(FRAMES - 34, stats.getSkippedFrames());
+    }
+
+    @Test
+    public void run_videoShorterThanReported_endsEarly() throws Exception {
+        OfflineVideoAnalyzer<int[]> analyzer = analyzer(FRAMES + 50);
+        analyzer.setSegmentFrames(30);
+        RecordingSink sink = new RecordingSink();
+
+        analyzer.run(sink);
+
+        assertEquals(FRAMES, sink.frames.size());
+    }
+
+    @Test
+    public void run_decodeFailure_propagates() throws Exception {
+        failAt = 42;
+        OfflineVideoAnalyzer<int[]> analyzer = analyzer(FRAMES);
+        analyzer.setWorkerCount(2);
+        analyzer.setSegmentFrames(5);
+        try {
+            analyzer.run(new RecordingSink());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("Broken frame 42", e.getMessage());
+        }
+        assertEquals(2, released.get());
+    }
+
+    @Test
+    public void run_withResultCache_reanalysesOnlyWhatChanged() throws Exception {
+        try (ResultCache cache = new ResultCache(folder.newFile())) {
+            OfflineVideoAnalyzer<int[]> analyzer = analyzer(FRAMES);
+            analyzer.setSegmentFrames(10);
+            analyzer.setResultCache(cache, "video", "detector", "model");
+            analyzer.run(new RecordingSink());
+            assertEquals(FRAMES, decoded.get());
+
+            RecordingSink sink = new RecordingSink();
+            AnalysisStats stats = analyzer.run(sink);
+
+            assertEquals(FRAMES, decoded.get());
+            assertEquals(FRAMES, stats.getCachedFrames());
+            assertEquals(0, stats.getAnalyzedFrames());
+            for (int i = 0; i < FRAMES; i++) {
+                assertEquals(i, (int) sink.xs.get(i));
+            }
+
+            // a new model misses every segment
+            analyzer.setResultCache(cache, "video", "detector", "model 2");
+            analyzer.run(new RecordingSink());
+            assertEquals(2 * FRAMES, decoded.get());
+        }
+    }
+
+    @Test
+    public void timelineCsv_writesOneRowPerFaceAndEmptyFrames() throws IOException {
+        StringWriter out = new StringWriter();
+        TimelineCsvWriter writer = new TimelineCsvWriter(out);
+        List<FaceResult> faces = new ArrayList<>();
+        faces.add(new FaceResult(1, 2, 3, 4, 3.25f, EmotionLabels.NEUTRAL, 7));
+
+        writer.onFrame(5, 200, faces);
+        writer.onFrame(6, 240, new ArrayList<FaceResult>());
+        writer.close();
+
+        assertEquals(TimelineCsvWriter.HEADER + "\n"
+                + "5,200,1,7,1,2,3,4,3.25,Neutral\n"
+                + "6,240,0,,,,,,,\n", out.toString());
+    }
+}
@@ -0,0 +1,49 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PixelNormalizer}, run on the development machine (host).
+ */
+public class PixelNormalizerTest {
+
+    @Test
+    public void toFloatRgb_rgba_dropsAlpha() {
+        ByteBuffer src = ByteBuffer.wrap(new byte[] { 0, (byte) 255, 51, 7, (byte) 102, 0, 0, (byte) 255 });
+        ByteBuffer dst = ByteBuffer.allocate(2 * 3 * 4).order(ByteOrder.nativeOrder());
+
+        PixelNormalizer.toFloatRgb(src, 2, 1, 4, dst);
+
+        assertEquals(dst.capacity(), dst.position());
+        dst.rewind();
+        assertEquals(0f, dst.getFloat(), 1e-6f);
+        assertEquals(1f, dst.getFloat(), 1e-6f);
+        assertEquals(0.2f, dst.getFloat(), 1e-6f);
+        assertEquals(0.4f, dst.getFloat(), 1e-6f);
+        assertEquals(0f, dst.getFloat(), 1e-6f);
+        assertEquals(0f, dst.getFloat(), 1e-6f);
+    }
+
+    @Test
+    public void toFloatRgb_gray_replicatesChannel() {
+        ByteBuffer src = ByteBuffer.wrap(new byte[] { (byte) 204 });
+        ByteBuffer dst = ByteBuffer.allocate(3 * 4).order(ByteOrder.nativeOrder());
+
+        PixelNormalizer.toFloatRgb(src, 1, 1, 1, dst);
+
+        dst.rewind();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0.8f, dst.getFloat(), 1e-6f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toFloatRgb_sourceTooSmall_throws() {
+        PixelNormalizer.toFloatRgb(ByteBuffer.allocate(10), 2, 2, 3, ByteBuffer.allocate(48));
+    }
+}
@@ -0,0 +1,166 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RecognitionPipeline} and {@link FrameScheduler} with fake detector,
+ * preprocessor and classifier, run on the development machine (host).
+ */
+public class RecognitionPipelineTest {
+
+    // Frames are the boxes the fake detector reports for them
+    private static class FakeDetector implements FaceDetector<int[]> {
+        int calls = 0;
+
+        @Override
+        public void detect(int[] frame, FaceBoxes faces) {
+            calls++;
+            faces.set(frame, frame.length / 4);
+        }
+    }
+
+    // Passes the x of the face to the classifier
+    private static class FakePreprocessor implements FacePreprocessor<int[]> {
+        final ByteBuffer input = ByteBuffer.allocate(4);
+        final List<Integer> faces = new ArrayList<>();
+
+        @Override
+        public ByteBuffer preprocess(int[] frame, int x, int y, int width, int height) {
+            faces.add(x);
+            input.putInt(0, x);
+            return input;
+        }
+    }
+
+    // Classifies a face from its x: x / 100 is the model output
+    private static class FakeClassifier implements EmotionClassifier {
+        int calls = 0;
+
+        @Override
+        public float classify(ByteBuffer input) {
+            calls++;
+            return input.getInt(0) / 100f;
+        }
+    }
+
+    private final FakeDetector detector = new FakeDetector();
+    private final FakePreprocessor preprocessor = new FakePreprocessor();
+    private final FakeClassifier classifier = new FakeClassifier();
+
+    private static int[] frame(int... xywh) {
+        return xywh;
+    }
+
+    @Test
+    public void defaults_detectAndClassifyEveryFaceOnEveryFrame() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier);
+
+        List<FaceResult> first = pipeline.process(frame(0, 0, 50, 50, 300, 0, 50, 50));
+        List<FaceResult> second = pipeline.process(frame(0, 0, 50, 50, 300, 0, 50, 50));
+
+        assertEquals(2, detector.calls);
+        assertEquals(4, classifier.calls);
+        assertEquals(2, second.size());
+        assertEquals(EmotionLabels.SURPRISE, first.get(0).emotionText);
+        assertEquals(3f, first.get(1).emotionValue, 0f);
+        assertEquals(EmotionLabels.NEUTRAL, first.get(1).emotionText);
+        assertEquals(first.get(0).trackId, second.get(0).trackId);
+    }
+
+    @Test
+    public void detectInterval_reusesTracksBetweenDetections() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier,
+                new FrameScheduler(3, 3, Integer.MAX_VALUE), new FaceTracker());
+
+        for (int i = 0; i < 6; i++) {
+            List<FaceResult> results = pipeline.process(frame(100, 0, 50, 50));
+            assertEquals(1, results.size());
+            assertEquals(100, results.get(0).x);
+        }
+
+        // frames 0 and 3 run the detector, and the face is classified on them only
+        assertEquals(2, detector.calls);
+        assertEquals(2, classifier.calls);
+    }
+
+    @Test
+    public void noTrack_detectsOnEveryFrame() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier,
+                new FrameScheduler(10, 1, Integer.MAX_VALUE), new FaceTracker());
+
+        pipeline.process(frame());
+        pipeline.process(frame());
+        List<FaceResult> results = pipeline.process(frame(0, 0, 50, 50));
+
+        assertEquals(3, detector.calls);
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void classificationBudget_spreadsFacesOverFrames() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier,
+                new FrameScheduler(1, 1, 1), new FaceTracker());
+        int[] faces = frame(0, 0, 50, 50, 200, 0, 50, 50, 400, 0, 50, 50);
+
+        assertEquals(1, pipeline.process(faces).size());
+        assertEquals(2, pipeline.process(faces).size());
+        assertEquals(3, pipeline.process(faces).size());
+
+        // new faces first, then the one classified longest ago
+        pipeline.process(faces);
+        assertEquals(4, classifier.calls);
+        assertEquals(0, (int) preprocessor.faces.get(3));
+    }
+
+    @Test
+    public void externalFaces_skipDetector() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier);
+        FaceBoxes hardwareFaces = new FaceBoxes();
+        hardwareFaces.add(600, 0, 50, 50);
+
+        List<FaceResult> results = pipeline.process(frame(), hardwareFaces);
+
+        assertEquals(0, detector.calls);
+        assertEquals(1, results.size());
+        assertEquals(EmotionLabels.HAPPY, results.get(0).emotionText);
+    }
+
+    @Test
+    public void missedFace_notReportedNorClassified() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier);
+        pipeline.process(frame(0, 0, 50, 50));
+
+        List<FaceResult> results = pipeline.process(frame());
+
+        assertTrue(results.isEmpty());
+        assertEquals(1, classifier.calls);
+        assertEquals(1, pipeline.getTracker().size());
+    }
+
+    @Test
+    public void observer_seesNestedStages() {
+        RecognitionPipeline<int[]> pipeline = new RecognitionPipeline<>(detector, preprocessor, classifier);
+        final List<String> events = new ArrayList<>();
+        pipeline.setStageObserver(new StageObserver() {
+            @Override
+            public void onStageBegin(String stage, int face) {
+                events.add("+" + stage + face);
+            }
+
+            @Override
+            public void onStageEnd(String stage, int face, long startNanos) {
+                events.add("-" + stage + face);
+            }
+        });
+
+        pipeline.process(frame(0, 0, 50, 50));
+
+        assertEquals("[+detect-1, -detect-1, +preprocess0, -preprocess0, +inference0, -inference0]", events.toString());
+    }
+}
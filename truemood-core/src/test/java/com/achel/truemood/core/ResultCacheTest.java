@@ -0,0 +1,145 @@
+package com.achel.truemood.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ResultCache}, run on the development machine (host).
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ResultCache.Key key(long segment) {
+        return new ResultCache.Key("content", segment, "detector", "model");
+    }
+
+    // One frame per segment, with one face whose x is the segment
+    private static SegmentResult result(long segment) {
+        List<FaceResult> faces = new ArrayList<>();
+        faces.add(new FaceResult((int) segment, 2, 30, 40, 6.25f, EmotionLabels.HAPPY, 9));
+        SegmentResult result = new SegmentResult();
+        result.add(segment * 10, faces);
+        result.add(segment * 10 + 1, Collections.<FaceResult>emptyList());
+        return result;
+    }
+
+    @Test
+    public void get_returnsStoredResults() throws IOException {
+        try (ResultCache cache = new ResultCache(folder.newFile())) {
+            cache.put(key(3), result(3));
+
+            SegmentResult result = cache.get(key(3));
+
+            assertEquals(2, result.size());
+            assertEquals(30, result.frameIndex(0));
+            FaceResult face = result.faces(0).get(0);
+            assertEquals(3, face.x);
+            assertEquals(40, face.height);
+            assertEquals(6.25f, face.emotionValue, 0);
+            assertEquals(EmotionLabels.HAPPY, face.emotionText);
+            assertEquals(9, face.trackId);
+            assertTrue(result.faces(1).isEmpty());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void get_differentModelOrConfig_misses() throws IOException {
+        try (ResultCache cache = new ResultCache(folder.newFile())) {
+            cache.put(key(1), result(1));
+
+            assertNull(cache.get(new ResultCache.Key("content", 1, "detector", "other model")));
+            assertNull(cache.get(new ResultCache.Key("content", 1, "other detector", "model")));
+            assertNull(cache.get(new ResultCache.Key("other content", 1, "detector", "model")));
+            assertNull(cache.get(key(2)));
+            assertEquals(4, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void reopen_loadsIndexAndDropsTornRecord() throws IOException {
+        File file = folder.newFile();
+        try (ResultCache cache = new ResultCache(file)) {
+            cache.put(key(1), result(1));
+            cache.put(key(2), result(2));
+            cache.put(key(1), result(5));
+        }
+        // a crash in the middle of appending a record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(1000);
+            raf.writeByte(1);
+        }
+
+        try (ResultCache cache = new ResultCache(file)) {
+            assertEquals(2, cache.size());
+            assertEquals(5, cache.get(key(1)).faces(0).get(0).x);
+            assertEquals(2, cache.get(key(2)).faces(0).get(0).x);
+            assertEquals(file.length(), cache.getFileBytes());
+
+            cache.put(key(3), result(3));
+        }
+        try (ResultCache cache = new ResultCache(file)) {
+            assertEquals(3, cache.size());
+        }
+    }
+
+    @Test
+    public void put_overSizeBound_evictsLeastRecentlyUsed() throws IOException {
+        File file = folder.newFile();
+        long recordSize;
+        try (ResultCache cache = new ResultCache(file)) {
+            cache.put(key(0), result(0));
+            recordSize = cache.getLiveBytes();
+        }
+
+        // room for three records
+        try (ResultCache cache = new ResultCache(file, 3 * recordSize)) {
+            cache.put(key(1), result(1));
+            cache.put(key(2), result(2));
+            assertNotNull(cache.get(key(0)));
+            cache.put(key(3), result(3));
+
+            assertFalse(cache.contains(key(1)));
+            assertTrue(cache.contains(key(0)));
+            assertEquals(3, cache.size());
+            assertEquals(1, cache.getEvictionCount());
+
+            // the dead records are reclaimed once they outgrow the bound
+            for (int i = 4; i < 20; i++) {
+                cache.put(key(i), result(i));
+            }
+            assertTrue(cache.getFileBytes() <= 3 * cache.getLiveBytes() + 100);
+        }
+        try (ResultCache cache = new ResultCache(file, 3 * recordSize)) {
+            assertEquals(3, cache.size());
+            assertEquals(19, cache.get(key(19)).faces(0).get(0).x);
+        }
+    }
+
+    @Test
+    public void open_otherFile_startsEmpty() throws IOException {
+        File file = folder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeBytes("not a result cache");
+        }
+
+        try (ResultCache cache = new ResultCache(file)) {
+            assertEquals(0, cache.size());
+            cache.put(key(1), result(1));
+            assertNotNull(cache.get(key(1)));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.achel.truemood.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SessionRecorder} and {@link SessionLogReader}, run on the development machine (host).
+ */
+public class SessionRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<FaceResult> faces(int count, int frame) {
+        List<FaceResult> faces = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float value = (frame + i) % 7;
+            faces.add(new FaceResult(frame % 1000, i * 100, 50, 60, value, EmotionLabels.labelOf(value), i + 1));
+        }
+        return faces;
+    }
+
+    @Test
+    public void record_readBackInOrder() throws IOException {
+        File file = folder.newFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        recorder.record(1_000, faces(2, 0));
+        recorder.record(2_000, Collections.<FaceResult>emptyList());
+        recorder.record(3_000, faces(1, 2));
+        recorder.close();
+
+        assertEquals(4, recorder.getRecordCount());
+        assertEquals(0, recorder.getDroppedCount());
+        try (SessionLogReader reader = new SessionLogReader(file)) {
+            assertEquals(4, reader.getRecordCount());
+            SessionRecord record = new SessionRecord();
+
+            assertTrue(reader.next(record));
+            assertEquals(1_000, record.getTimeNanos());
+            assertEquals(0, record.getFrameIndex());
+            assertEquals(2, record.getFaceCount());
+            assertEquals(1, record.getTrackId());
+            assertEquals(60, record.getHeight());
+            assertTrue(reader.next(record));
+            assertEquals(100, record.getY());
+            assertEquals(1f, record.getEmotionValue(), 0);
+            assertEquals(EmotionLabels.FEAR, record.getLabel());
+
+            assertTrue(reader.next(record));
+            assertEquals(1, record.getFrameIndex());
+            assertEquals(0, record.getFaceCount());
+            assertNull(record.getLabel());
+
+            assertTrue(reader.next(record));
+            assertEquals(2, record.getFrameIndex());
+            assertEquals(EmotionLabels.ANGRY, record.getLabel());
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void exportCsv_writesOneRowPerFaceAndEmptyFrames() throws IOException {
+        File file = folder.newFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        recorder.record(System.nanoTime(), faces(1, 3));
+        recorder.record(System.nanoTime(), Collections.<FaceResult>emptyList());
+        recorder.close();
+
+        StringWriter out = new StringWriter();
+        try (SessionLogReader reader = new SessionLogReader(file)) {
+            reader.exportCsv(out);
+        }
+
+        String[] rows = out.toString().split("\n");
+        assertEquals(3, rows.length);
+        assertEquals(TimelineCsvWriter.HEADER, rows[0]);
+        assertTrue(rows[1], rows[1].matches("0,\\d+,1,1,3,0,50,60,3.0,Neutral"));
+        assertTrue(rows[2], rows[2].matches("1,\\d+,0,,,,,,,"));
+    }
+
+    @Test
+    public void longSession_spansSegmentsAndSeeksByTime() throws IOException {
+        File file = folder.newFile();
+        int frames = 3 * SessionRecorder.SEGMENT_RECORDS;
+        SessionRecorder recorder = new SessionRecorder(file, frames);
+        List<FaceResult> face = faces(1, 0);
+        for (int i = 0; i < frames; i++) {
+            recorder.record(i * 1_000L, face);
+        }
+        recorder.close();
+
+        try (SessionLogReader reader = new SessionLogReader(file)) {
+            assertEquals(3, reader.getSegmentCount());
+            assertEquals(frames, reader.getRecordCount());
+
+            SessionRecord record = new SessionRecord();
+            reader.seek(10_000_500L);
+            assertTrue(reader.next(record));
+            assertEquals(10_001, record.getFrameIndex());
+
+            reader.seek(0);
+            int count = 0;
+            while (reader.next(record)) {
+                assertEquals(count++, record.getFrameIndex());
+            }
+            assertEquals(frames, count);
+        }
+    }
+
+    @Test
+    public void fullRing_dropsInsteadOfBlocking() throws IOException {
+        File file = folder.newFile();
+        SessionRecorder recorder = new SessionRecorder(file, 4);
+        for (int i = 0; i < 100; i++) {
+            recorder.record(i, faces(3, i));
+        }
+        recorder.close();
+        recorder.record(1000, faces(1, 0));
+
+        assertEquals(300, recorder.getRecordCount() + recorder.getDroppedCount());
+        try (SessionLogReader reader = new SessionLogReader(file)) {
+            assertEquals(recorder.getRecordCount(), reader.getRecordCount());
+        }
+    }
+}
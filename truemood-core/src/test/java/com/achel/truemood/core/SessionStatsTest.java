@@ -0,0 +1,142 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SessionStats}, run on the development machine (host).
+ */
+public class SessionStatsTest {
+
+    private static final long MS = 1_000_000L;
+
+    // Labels by EmotionLabels index
+    private static final int ANGRY = 2;
+    private static final int NEUTRAL = 3;
+    private static final int HAPPY = 6;
+
+    private static List<FaceResult> face(int trackId, int label) {
+        return Collections.singletonList(new FaceResult(0, 0, 10, 10, label, EmotionLabels.get(label), trackId));
+    }
+
+    @Test
+    public void update_countsDwellTimeAndTransitions() {
+        SessionStats stats = new SessionStats();
+        stats.update(0, face(1, NEUTRAL));
+        stats.update(100 * MS, face(1, NEUTRAL));
+        stats.update(200 * MS, face(1, HAPPY));
+        stats.update(300 * MS, face(1, HAPPY));
+        stats.update(400 * MS, face(1, HAPPY));
+        stats.update(500 * MS, Collections.<FaceResult>emptyList());
+
+        SessionStats.Snapshot snapshot = stats.snapshot(stats.newSnapshot());
+
+        assertEquals(6, snapshot.getFrames());
+        assertEquals(5, snapshot.getFramesWithFaces());
+        assertEquals(500 * MS, snapshot.getDurationNanos());
+        assertEquals(100 * MS, snapshot.getDwellNanos(NEUTRAL));
+        assertEquals(300 * MS, snapshot.getDwellNanos(HAPPY));
+        assertEquals(3, snapshot.getFaceCount(HAPPY));
+        assertEquals(1, snapshot.getTransitions(NEUTRAL, HAPPY));
+        assertEquals(0, snapshot.getTransitions(HAPPY, NEUTRAL));
+        assertEquals(HAPPY, snapshot.getDominantLabel());
+    }
+
+    @Test
+    public void update_longGap_notCountedAsDwell() {
+        SessionStats stats = new SessionStats();
+        stats.update(0, face(1, NEUTRAL));
+        stats.update(10_000 * MS, face(1, NEUTRAL));
+
+        SessionStats.Snapshot snapshot = stats.snapshot(stats.newSnapshot());
+
+        assertEquals(0, snapshot.getDwellNanos(NEUTRAL));
+        // the face count still breaks the tie
+        assertEquals(NEUTRAL, snapshot.getDominantLabel());
+    }
+
+    @Test
+    public void tracks_haveTheirOwnDominantLabel() {
+        SessionStats stats = new SessionStats(60_000, 60, 4);
+        for (int i = 1; i <= 10; i++) {
+            List<FaceResult> faces = new ArrayList<>();
+            faces.add(face(1, ANGRY).get(0));
+            faces.add(face(2, i < 3 ? ANGRY : HAPPY).get(0));
+            stats.update(i * 100 * MS, faces);
+        }
+        // track 5 takes the slot of track 1
+        stats.update(1100 * MS, face(5, NEUTRAL));
+
+        SessionStats.Snapshot snapshot = stats.snapshot(stats.newSnapshot());
+
+        assertEquals(2, snapshot.getTrackId(2));
+        assertEquals(HAPPY, snapshot.getTrackDominantLabel(2));
+        assertEquals(5, snapshot.getTrackId(1));
+        assertEquals(NEUTRAL, snapshot.getTrackDominantLabel(1));
+        assertEquals(-1, snapshot.getTrackDominantLabel(0));
+        assertEquals(1, snapshot.getTransitions(ANGRY, HAPPY));
+    }
+
+    @Test
+    public void window_forgetsOldBuckets() {
+        // 1 s window of 10 buckets of 100 ms
+        SessionStats stats = new SessionStats(1000, 10, 8);
+        for (int i = 0; i <= 10; i++) {
+            stats.update(i * 100 * MS, face(1, ANGRY));
+        }
+        for (int i = 11; i <= 25; i++) {
+            stats.update(i * 100 * MS, face(1, HAPPY));
+        }
+        SessionStats.Snapshot snapshot = stats.snapshot(stats.newSnapshot());
+
+        assertEquals(0, snapshot.getWindowDwellNanos(ANGRY));
+        assertEquals(1000 * MS, snapshot.getWindowDwellNanos(HAPPY));
+        assertEquals(HAPPY, snapshot.getWindowDominantLabel());
+        assertEquals(1000 * MS, snapshot.getDwellNanos(ANGRY));
+        assertEquals(1500 * MS, snapshot.getDwellNanos(HAPPY));
+
+        // a pause longer than the window empties it
+        stats.update(10_000 * MS, Collections.<FaceResult>emptyList());
+        assertEquals(-1, stats.snapshot(snapshot).getWindowDominantLabel());
+    }
+
+    @Test
+    public void snapshot_whileUpdating_isConsistent() throws Exception {
+        final SessionStats stats = new SessionStats();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SessionStats.Snapshot snapshot = stats.newSnapshot();
+                while (!done.get()) {
+                    stats.snapshot(snapshot);
+                    // every frame has one face, counted in both counters by the same update
+                    long faces = 0;
+                    for (int l = 0; l < EmotionLabels.count(); l++) {
+                        faces += snapshot.getFaceCount(l);
+                    }
+                    if (faces != snapshot.getFrames()) {
+                        failure.set(faces + " faces in " + snapshot.getFrames() + " frames");
+                        return;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200_000; i++) {
+            stats.update(i * MS, face(i / 1000, i % 7));
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}
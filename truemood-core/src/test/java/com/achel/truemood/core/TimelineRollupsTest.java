@@ -0,0 +1,119 @@
+package com.achel.truemood.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TimelineRollups}, run on the development machine (host).
+ */
+public class TimelineRollupsTest {
+
+    private static final long MS = 1_000_000L;
+    private static final int HAPPY = 6;
+    private static final int SAD = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 3 minutes at 10 fps: happy the first minute, sad after, no face in the last 10 seconds
+    private static TimelineRollups threeMinutes(long start) {
+        TimelineRollups rollups = new TimelineRollups(start);
+        for (int i = 0; i < 1800; i++) {
+            long time = start + i * 100 * MS;
+            rollups.add(time, i >= 1700 ? -1 : i < 600 ? HAPPY : SAD);
+        }
+        return rollups;
+    }
+
+    private static int sum(int[] histograms, int columns, int value) {
+        int total = 0;
+        for (int c = 0; c < columns; c++) {
+            total += histograms[c * TimelineRollups.HISTOGRAM_SIZE + value];
+        }
+        return total;
+    }
+
+    @Test
+    public void chooseLevel_coarsestNotWiderThanAColumn() {
+        TimelineRollups rollups = new TimelineRollups(0);
+        assertEquals(0, rollups.chooseLevel(10_000, 100));
+        assertEquals(0, rollups.chooseLevel(60_000, 10));
+        assertEquals(1, rollups.chooseLevel(100_000, 10));
+        assertEquals(1, rollups.chooseLevel(3 * 3600_000, 800));
+        assertEquals(2, rollups.chooseLevel(3 * 3600_000, 100));
+    }
+
+    @Test
+    public void query_wholeSession_usesMinuteBuckets() {
+        TimelineRollups rollups = threeMinutes(5_000 * MS);
+        assertEquals(180, rollups.getBucketCount(0));
+        assertEquals(3, rollups.getBucketCount(2));
+        assertEquals(180_000, rollups.getDurationMillis());
+        int[] out = new int[3 * TimelineRollups.HISTOGRAM_SIZE];
+
+        int level = rollups.query(0, 180_000, 3, out);
+
+        assertEquals(2, level);
+        assertEquals(600, out[HAPPY]);
+        assertEquals(0, out[SAD]);
+        assertEquals(600, out[TimelineRollups.HISTOGRAM_SIZE + SAD]);
+        assertEquals(500, out[2 * TimelineRollups.HISTOGRAM_SIZE + SAD]);
+        assertEquals(100, out[2 * TimelineRollups.HISTOGRAM_SIZE + TimelineRollups.NO_FACE]);
+    }
+
+    @Test
+    public void query_zoomedIn_usesSecondBuckets() {
+        TimelineRollups rollups = threeMinutes(0);
+        int[] out = new int[20 * TimelineRollups.HISTOGRAM_SIZE];
+
+        int level = rollups.query(50_000, 70_000, 20, out);
+
+        assertEquals(0, level);
+        for (int c = 0; c < 20; c++) {
+            int label = c < 10 ? HAPPY : SAD;
+            assertEquals("column " + c, 10, out[c * TimelineRollups.HISTOGRAM_SIZE + label]);
+        }
+        assertEquals(100, sum(out, 20, HAPPY));
+        assertEquals(100, sum(out, 20, SAD));
+    }
+
+    @Test
+    public void query_pastTheEnd_isEmpty() {
+        TimelineRollups rollups = threeMinutes(0);
+        int[] out = new int[4 * TimelineRollups.HISTOGRAM_SIZE];
+
+        rollups.query(200_000, 240_000, 4, out);
+
+        for (int value : out) {
+            assertEquals(0, value);
+        }
+    }
+
+    @Test
+    public void sessionRecorder_keepsRollupsMatchingTheLog() throws Exception {
+        File file = folder.newFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            FaceResult face = new FaceResult(0, 0, 10, 10, HAPPY, EmotionLabels.HAPPY, 1);
+            recorder.record(start + i * 100 * MS, Collections.singletonList(face));
+        }
+        recorder.close();
+
+        int[] live = new int[2 * TimelineRollups.HISTOGRAM_SIZE];
+        int[] rebuilt = new int[2 * TimelineRollups.HISTOGRAM_SIZE];
+        recorder.getRollups().query(0, 20_000, 2, live);
+        try (SessionLogReader reader = new SessionLogReader(file)) {
+            reader.buildRollups().query(0, 20_000, 2, rebuilt);
+        }
+
+        assertArrayEquals(rebuilt, live);
+        assertEquals(100, sum(live, 2, HAPPY));
+    }
+}
@@ -0,0 +1,129 @@
+package com.achel.truemood.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link YuvFaceSampler}, run on the development machine (host).
+ */
+public class YuvFaceSamplerTest {
+
+    // Builds an NV21 frame whose luma is given by (x, y) -> value and with neutral chroma
+    private static byte[] nv21Frame(int width, int height, int[][] luma) {
+        byte[] data = new byte[width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[y * width + x] = (byte) luma[y][x];
+            }
+        }
+        for (int i = width * height; i < data.length; i++) {
+            data[i] = (byte) 128;
+        }
+        return data;
+    }
+
+    private static int[][] gradient(int width, int height) {
+        int[][] luma = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                luma[y][x] = (x * 7 + y * 13) & 0xFF;
+            }
+        }
+        return luma;
+    }
+
+    @Test
+    public void sample_sameSizeGrayCropIsExactCopy() {
+        int[][] luma = gradient(16, 12);
+        YuvFaceSampler sampler = new YuvFaceSampler(4, 4, YuvFaceSampler.CHANNELS_GRAY, false);
+        sampler.setNv21Frame(nv21Frame(16, 12, luma), 16, 12, 0);
+
+        ByteBuffer out = sampler.sample(5, 3, 4, 4);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(luma[3 + y][5 + x], out.get() & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void sample_downscaleAveragesNeighbours() {
+        int[][] luma = new int[2][4];
+        luma[0] = new int[]{0, 100, 200, 200};
+        luma[1] = new int[]{0, 100, 200, 200};
+        YuvFaceSampler sampler = new YuvFaceSampler(2, 1, YuvFaceSampler.CHANNELS_GRAY, true);
+        sampler.setNv21Frame(nv21Frame(4, 2, luma), 4, 2, 0);
+
+        ByteBuffer out = sampler.sample(0, 0, 4, 2);
+        assertEquals(50 / 255.0f, out.getFloat(), 1e-4f);
+        assertEquals(200 / 255.0f, out.getFloat(), 1e-4f);
+    }
+
+    @Test
+    public void sample_neutralChromaGivesGrayRgb() {
+        int[][] luma = gradient(8, 8);
+        YuvFaceSampler sampler = new YuvFaceSampler(8, 8, YuvFaceSampler.CHANNELS_RGB, true);
+        sampler.setNv21Frame(nv21Frame(8, 8, luma), 8, 8, 0);
+
+        ByteBuffer out = sampler.sample(0, 0, 8, 8);
+        assertEquals(8 * 8 * 3 * 4, out.remaining());
+        for (int i = 0; i < 8 * 8; i++) {
+            float r = out.getFloat();
+            float g = out.getFloat();
+            float b = out.getFloat();
+            assertEquals(r, g, 1e-6f);
+            assertEquals(g, b, 1e-6f);
+        }
+    }
+
+    @Test
+    public void sample_planarAndInterleavedChromaMatch() {
+        int w = 6;
+        int h = 4;
+        int[][] luma = gradient(w, h);
+        byte[] nv21 = nv21Frame(w, h, luma);
+        byte[] u = new byte[(w / 2) * (h / 2)];
+        byte[] v = new byte[(w / 2) * (h / 2)];
+        for (int i = 0; i < u.length; i++) {
+            u[i] = (byte) (90 + 10 * i);
+            v[i] = (byte) (200 - 10 * i);
+            nv21[w * h + 2 * i] = v[i];
+            nv21[w * h + 2 * i + 1] = u[i];
+        }
+
+        YuvFaceSampler interleaved = new YuvFaceSampler(5, 3, YuvFaceSampler.CHANNELS_RGB, false);
+        interleaved.setNv21Frame(nv21, w, h, 0);
+        ByteBuffer expected = interleaved.sample(0, 0, w, h);
+
+        YuvFaceSampler planar = new YuvFaceSampler(5, 3, YuvFaceSampler.CHANNELS_RGB, false);
+        planar.setFrame(w, h, 0, ByteBuffer.wrap(nv21), w, 1, ByteBuffer.wrap(u), ByteBuffer.wrap(v), w / 2, 1);
+        ByteBuffer actual = planar.sample(0, 0, w, h);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void sample_rotationMapsUprightRectToSensor() {
+        int[][] luma = gradient(6, 4);
+        byte[] frame = nv21Frame(6, 4, luma);
+        YuvFaceSampler sampler = new YuvFaceSampler(1, 1, YuvFaceSampler.CHANNELS_GRAY, false);
+
+        // Upright frame is 4x6 after a clockwise rotation: upright (x, y) = sensor (y, H - 1 - x)
+        sampler.setNv21Frame(frame, 6, 4, 90);
+        assertEquals(luma[4 - 1 - 1][2], sampler.sample(1, 2, 1, 1).get() & 0xFF);
+
+        sampler.setNv21Frame(frame, 6, 4, 180);
+        assertEquals(luma[4 - 1 - 2][6 - 1 - 1], sampler.sample(1, 2, 1, 1).get() & 0xFF);
+
+        sampler.setNv21Frame(frame, 6, 4, 270);
+        assertEquals(luma[1][6 - 1 - 2], sampler.sample(1, 2, 1, 1).get() & 0xFF);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sample_withoutFrameThrows() {
+        new YuvFaceSampler(48, 48, YuvFaceSampler.CHANNELS_GRAY, true).sample(0, 0, 10, 10);
+    }
+}